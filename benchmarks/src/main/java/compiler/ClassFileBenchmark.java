@@ -0,0 +1,59 @@
+package compiler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassFileBenchmark - Throughput of bytecode generation and of whole compilations to a class
+ * file, like {@link CompilerBenchmark}. A generated program is one class, and a class file
+ * holds at most 65535 constants, which programs of about 250,000 lines and more exceed, so
+ * these stop at 100,000 lines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ClassFileBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    @Param({"42"})
+    public long seed;
+
+    private String source;
+    private ASTNode ast;
+    private SymbolTable symbols;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+        source = CorpusGenerator.program("BENCH", lines, seed);
+        symbols = new SymbolTable();
+        ast = new CobolParser(CobolLexer.lex(source), symbols).parseProgram();
+    }
+
+    @Benchmark
+    public byte[] generateBytecode(CompilerBenchmark.Lines counter) {
+        counter.sourceLines += lines;
+        return new BytecodeGenerator(ast, "BENCH", symbols).generate();
+    }
+
+    @Benchmark
+    public byte[] compileToClass(CompilerBenchmark.Lines counter) {
+        counter.sourceLines += lines;
+        return new CompilationUnit("BENCH", source).compileToClass("BENCH");
+    }
+}
@@ -0,0 +1,111 @@
+package compiler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompilerBenchmark - Throughput of each compiler phase and of whole compilations, over
+ * programs from {@link CorpusGenerator}. Every benchmark counts the source lines it handled,
+ * reported as the "sourceLines" rate next to the operations rate. {@link #main} adds the GC
+ * profiler, whose gc.alloc.rate.norm is the bytes allocated per operation of each phase.
+ * The phases that produce a class file are in {@link ClassFileBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CompilerBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int lines;
+
+    @Param({"42"})
+    public long seed;
+
+    private String source;
+    private TokenBuffer tokens;
+    private ASTNode ast;
+    private SymbolTable symbols;
+
+    /**
+     * Source lines handled, a secondary result of every benchmark.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Lines {
+        public long sourceLines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sourceLines = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+        source = CorpusGenerator.program("BENCH", lines, seed);
+        tokens = CobolLexer.lex(source);
+        symbols = new SymbolTable();
+        ast = new CobolParser(tokens, symbols).parseProgram();
+    }
+
+    @Benchmark
+    public TokenBuffer lex(Lines counter) {
+        counter.sourceLines += lines;
+        return CobolLexer.lex(source);
+    }
+
+    @Benchmark
+    public ASTNode parse(Lines counter) {
+        counter.sourceLines += lines;
+        return new CobolParser(tokens, new SymbolTable()).parseProgram();
+    }
+
+    @Benchmark
+    public void generateJava(Lines counter) throws IOException {
+        counter.sourceLines += lines;
+        new JavaCodeGenerator(ast, "BENCH", symbols).generateCode(Writer.nullWriter());
+    }
+
+    /**
+     * Lexing, parsing, optimizing and generating Java source, as a batch compilation does per unit.
+     */
+    @Benchmark
+    public void compileToJava(Lines counter) throws IOException {
+        counter.sourceLines += lines;
+        new CompilationUnit("BENCH", source).compile("BENCH", Writer.nullWriter());
+    }
+
+    /**
+     * Runs the benchmarks selected by the usual JMH options, those of both classes by default, with the GC profiler.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options).addProfiler(GCProfiler.class);
+        if (options.getIncludes().isEmpty()) {
+            builder.include(CompilerBenchmark.class.getSimpleName()).include(ClassFileBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,126 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * CorpusGenerator - Generates COBOL programs of a given size for benchmarking.
+ * A program is a WORKING-STORAGE of customer-like records and paragraphs of MOVE, COMPUTE,
+ * DISPLAY and PERFORM statements, in roughly the mix of batch business code. The same name,
+ * size and seed always give the same program, so runs can be compared with each other.
+ * Run with {@code <folder> <lines>...} to write one program per size into a folder.
+ */
+public final class CorpusGenerator {
+    /** One five-line 01 record per fifty lines of program. */
+    private static final int LINES_PER_RECORD = 50;
+    private static final int STATEMENTS_PER_PARAGRAPH = 20;
+    /** The header and twenty statements of a paragraph take about this many lines. */
+    private static final int LINES_PER_PARAGRAPH = 26;
+
+    private final Random random;
+    private final StringBuilder text;
+    private final int records;
+    private int lineCount;
+
+    private CorpusGenerator(int lines, long seed) {
+        this.random = new Random(seed);
+        this.text = new StringBuilder(lines * 40);
+        this.records = Math.max(4, lines / LINES_PER_RECORD);
+    }
+
+    /**
+     * @param name PROGRAM-ID of the program.
+     * @param lines Number of lines to generate, at least one hundred or so for the data division.
+     * @param seed Seed of the statement mix.
+     * @return The program text.
+     */
+    public static String program(String name, int lines, long seed) {
+        CorpusGenerator generator = new CorpusGenerator(lines, seed);
+        generator.generate(name, lines);
+        return generator.text.toString();
+    }
+
+    private void generate(String name, int lines) {
+        line("IDENTIFICATION DIVISION.");
+        line("PROGRAM-ID. " + name + ".");
+        line("DATA DIVISION.");
+        line("WORKING-STORAGE SECTION.");
+        line("01 TOTAL PIC S9(11)V99 VALUE 0.");
+        line("01 FLAG PIC 9 VALUE 0.");
+        line("01 LOOPS PIC 9(3) VALUE 3.");
+        for (int i = 1; i <= records; i++) {
+            line("01 REC-" + i + ".");
+            line("   05 REC-" + i + "-ID PIC 9(6) VALUE " + i + ".");
+            line("   05 REC-" + i + "-NAME PIC X(12) VALUE \"NAME " + i + "\".");
+            line("   05 REC-" + i + "-AMOUNT PIC S9(7)V99 COMP-3 VALUE 0.");
+            line("   05 REC-" + i + "-COUNT PIC S9(4) COMP VALUE 0.");
+        }
+        line("PROCEDURE DIVISION.");
+        int paragraphs = Math.max(1, (lines - lineCount - 3) / LINES_PER_PARAGRAPH);
+        line("MAIN-PARA.");
+        line("PERFORM PARA-1 THRU PARA-" + paragraphs + ".");
+        line("STOP RUN.");
+        for (int p = 1; p <= paragraphs; p++) {
+            line("PARA-" + p + ".");
+            // the last paragraph takes up whatever is left of the lines
+            for (int s = 0; p < paragraphs ? s < STATEMENTS_PER_PARAGRAPH : lineCount < lines - 1; s++) {
+                statement(p, paragraphs);
+            }
+        }
+        line("EXIT.");
+    }
+
+    /**
+     * Appends one statement: 30% MOVE, 30% COMPUTE, 15% DISPLAY, 10% PERFORM of a later
+     * paragraph, 10% inline PERFORM TIMES, and the rest COMPUTE with ON SIZE ERROR or GO TO.
+     */
+    private void statement(int paragraph, int paragraphs) {
+        int record = 1 + random.nextInt(records);
+        int other = 1 + random.nextInt(records);
+        int roll = random.nextInt(100);
+        if (roll < 15) {
+            line("MOVE \"CUSTOMER " + random.nextInt(10000) + "\" TO REC-" + record + "-NAME.");
+        } else if (roll < 30) {
+            line("MOVE REC-" + other + "-ID TO REC-" + record + "-ID.");
+        } else if (roll < 45) {
+            line("COMPUTE REC-" + record + "-AMOUNT = REC-" + other + "-AMOUNT * 1.05 + " + random.nextInt(100) + ".");
+        } else if (roll < 60) {
+            line("COMPUTE TOTAL ROUNDED = TOTAL + REC-" + record + "-AMOUNT / " + (2 + random.nextInt(9)) + ".");
+        } else if (roll < 75) {
+            line("DISPLAY \"PROCESSING RECORD " + record + "\".");
+        } else if (roll < 85 && paragraph < paragraphs) {
+            line("PERFORM PARA-" + (paragraph + 1 + random.nextInt(paragraphs - paragraph)) + ".");
+        } else if (roll < 95) {
+            line("PERFORM LOOPS TIMES");
+            line("    COMPUTE REC-" + record + "-COUNT = REC-" + record + "-COUNT + 1");
+            line("END-PERFORM.");
+        } else if (roll < 98 || paragraph == paragraphs) {
+            line("COMPUTE REC-" + record + "-COUNT = REC-" + other + "-COUNT * 100");
+            line("    ON SIZE ERROR MOVE 1 TO FLAG");
+            line("END-COMPUTE.");
+        } else {
+            line("GO TO PARA-" + (paragraph + 1) + ".");
+        }
+    }
+
+    private void line(String line) {
+        text.append(line).append('\n');
+        lineCount++;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <folder> <lines>...");
+            System.exit(2);
+        }
+        Path folder = Paths.get(args[0]);
+        Files.createDirectories(folder);
+        for (int i = 1; i < args.length; i++) {
+            String name = "CORPUS-" + args[i];
+            Files.writeString(folder.resolve(name + ".cbl"), program(name, Integer.parseInt(args[i]), 42));
+        }
+    }
+}
@@ -1,47 +1,98 @@
-package compiler;
-
-
-import java.util.List;
-
-/**
- * ASTNode - Represents a node in the Abstract Syntax Tree (AST).
- * Each node corresponds to a COBOL construct (e.g., Statements, Expressions).
- */
-public class ASTNode {
-    private final String type;
-    private final String value;
-    private final List<ASTNode> children;
-
-    public ASTNode(String type) {
-        this.type = type;
-        this.value = "";
-        this.children = new java.util.ArrayList<>();
-    }
-
-    public ASTNode(String type, String value) {
-        this.type = type;
-        this.value = value;
-        this.children = new java.util.ArrayList<>();
-    }
-
-    public void addChild(ASTNode child) {
-        children.add(child);
-    }
-
-    public String getType() {
-        return type;
-    }
-
-    public String getValue() {
-        return value;
-    }
-
-    public List<ASTNode> getChildren() {
-        return children;
-    }
-
-    @Override
-    public String toString() {
-        return "ASTNode{" + "type='" + type + "', value='" + value + "', children=" + children + "}";
-    }
-}
\ No newline at end of file
+package compiler;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ASTNode - Represents a node in the Abstract Syntax Tree (AST).
+ * Each node corresponds to a COBOL construct (e.g., Statements, Expressions).
+ * Most nodes are leaves, so a node only allocates its child list when it gets a first child.
+ */
+public class ASTNode {
+    private final NodeKind kind;
+    private final String value;
+    private List<ASTNode> children = Collections.emptyList();
+
+    public ASTNode(NodeKind kind) {
+        this(kind, "");
+    }
+
+    public ASTNode(NodeKind kind, String value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public ASTNode(String type) {
+        this(NodeKind.of(type));
+    }
+
+    public ASTNode(String type, String value) {
+        this(NodeKind.of(type), value);
+    }
+
+    public void addChild(ASTNode child) {
+        if (children.isEmpty()) {
+            children = new ArrayList<>(4);
+        }
+        children.add(child);
+    }
+
+    public NodeKind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The label of the node's kind, e.g. "DisplayStatement".
+     */
+    public String getType() {
+        return kind.label();
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The children; a leaf's is an empty list that cannot be added to, use {@link #addChild}.
+     */
+    public List<ASTNode> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return The first child of the given kind, or null if there is none.
+     */
+    public ASTNode getChild(NodeKind kind) {
+        for (ASTNode child : children) {
+            if (child.kind == kind) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The first child of the given type, or null if there is none.
+     */
+    public ASTNode getChild(String type) {
+        return getChild(NodeKind.of(type));
+    }
+
+    /**
+     * @return A deep copy of this node, which the optimizer can change without changing this one.
+     */
+    public ASTNode copy() {
+        ASTNode copy = new ASTNode(kind, value);
+        for (ASTNode child : children) {
+            copy.addChild(child.copy());
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ASTNode{" + "type='" + kind.label() + "', value='" + value + "', children=" + children + "}";
+    }
+}
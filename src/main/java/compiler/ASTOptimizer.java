@@ -0,0 +1,564 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ASTOptimizer - Rewrites a parsed program into a smaller one that behaves the same, before
+ * either backend generates code for it. Each {@link Pass} can be turned on or off on its own,
+ * and {@link #getStatistics()} tells what each one did.
+ * {@link #passesFromSystem()} reads the passes from the system property
+ * {@code cobol.optimize} or the environment variable {@code COBOL_OPTIMIZE}: "all" (the
+ * default), "none", or a comma-separated list such as {@code fold,displays}.
+ */
+final class ASTOptimizer {
+    /**
+     * Pass - One rewrite of the AST, in the order they run.
+     */
+    enum Pass {
+        /** Replaces numeric items in COMPUTE expressions by the literal a MOVE or COMPUTE just stored. */
+        PROPAGATE_MOVES("moves"),
+        /** Evaluates +, -, * and ** on literals in COMPUTE expressions. */
+        FOLD_CONSTANTS("fold"),
+        /** Drops statements after STOP RUN or GO TO and paragraphs control never reaches. */
+        REMOVE_DEAD_CODE("dead-code"),
+        /** Turns consecutive DISPLAYs of literals into one DISPLAY of several lines. */
+        MERGE_DISPLAYS("displays"),
+        /** Drops WORKING-STORAGE records the procedure never names. */
+        REMOVE_UNUSED_DATA("unused-data");
+
+        final String option;
+
+        Pass(String option) {
+            this.option = option;
+        }
+    }
+
+    /**
+     * What one pass did: how many nodes or records it rewrote or removed, and how the AST shrank.
+     */
+    static final class PassStatistics {
+        final Pass pass;
+        final int changes;
+        final int nodesBefore;
+        final int nodesAfter;
+        final long nanos;
+
+        PassStatistics(Pass pass, int changes, int nodesBefore, int nodesAfter, long nanos) {
+            this.pass = pass;
+            this.changes = changes;
+            this.nodesBefore = nodesBefore;
+            this.nodesAfter = nodesAfter;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-12s %5d changes, %6d -> %6d nodes, %8.3f ms",
+                    pass.option, changes, nodesBefore, nodesAfter, nanos / 1e6);
+        }
+    }
+
+    private final SymbolTable symbols;
+    private final Set<Pass> passes;
+    private final List<PassStatistics> statistics = new ArrayList<>();
+    private int changes;
+
+    /**
+     * @param symbols The program's data items; unused records are removed from it.
+     * @param passes The passes to run.
+     */
+    ASTOptimizer(SymbolTable symbols, Set<Pass> passes) {
+        this.symbols = symbols;
+        this.passes = passes.isEmpty() ? EnumSet.noneOf(Pass.class) : EnumSet.copyOf(passes);
+    }
+
+    /**
+     * @return The passes named by the cobol.optimize setting, all of them if it is not set.
+     */
+    static Set<Pass> passesFromSystem() {
+        String setting = System.getProperty("cobol.optimize");
+        if (setting == null) {
+            setting = System.getenv("COBOL_OPTIMIZE");
+        }
+        return parsePasses(setting == null ? "all" : setting);
+    }
+
+    /**
+     * @param setting "all", "none", or pass options separated by commas, e.g. "fold,displays".
+     */
+    static Set<Pass> parsePasses(String setting) {
+        Set<Pass> passes = EnumSet.noneOf(Pass.class);
+        for (String option : setting.split(",")) {
+            option = option.trim().toLowerCase(Locale.ROOT);
+            if (option.equals("all")) {
+                passes.addAll(EnumSet.allOf(Pass.class));
+            } else if (!option.equals("none") && !option.isEmpty()) {
+                passes.add(pass(option));
+            }
+        }
+        return passes;
+    }
+
+    private static Pass pass(String option) {
+        for (Pass pass : Pass.values()) {
+            if (pass.option.equals(option)) {
+                return pass;
+            }
+        }
+        throw new IllegalArgumentException("Unknown optimization " + option);
+    }
+
+    /**
+     * Runs the enabled passes over the program in place and logs what each did.
+     * @param root The program node from {@link CobolParser#parseProgram()}.
+     */
+    void optimize(ASTNode root) {
+        for (Pass pass : passes) {
+            int before = count(root);
+            long start = System.nanoTime();
+            changes = 0;
+            switch (pass) {
+                case PROPAGATE_MOVES:
+                    propagate(root.getChildren());
+                    break;
+                case FOLD_CONSTANTS:
+                    fold(root);
+                    break;
+                case REMOVE_DEAD_CODE:
+                    removeDeadCode(root);
+                    break;
+                case MERGE_DISPLAYS:
+                    mergeDisplays(root.getChildren());
+                    break;
+                case REMOVE_UNUSED_DATA:
+                    removeUnusedData(root);
+                    break;
+            }
+            PassStatistics passStatistics = new PassStatistics(pass, changes, before, count(root), System.nanoTime() - start);
+            statistics.add(passStatistics);
+            Debugger.log(() -> "Optimized " + passStatistics);
+        }
+    }
+
+    /**
+     * @return One entry per pass run by {@link #optimize}, in order.
+     */
+    List<PassStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * @return The number of nodes in the tree under and including the node.
+     */
+    static int count(ASTNode node) {
+        int count = 1;
+        for (ASTNode child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    // ---- PROPAGATE_MOVES ----
+
+    /**
+     * Tracks the numeric items whose value a statement list has just set to a literal that
+     * fits them exactly, and substitutes that literal where a COMPUTE reads them. Knowledge
+     * only flows straight down one list: it is forgotten at paragraph headers and at any
+     * statement that may store into items in ways not tracked here, and a store forgets
+     * every item sharing the stored record's bytes.
+     */
+    private void propagate(List<ASTNode> statements) {
+        Map<DataItem, BigDecimal> known = new HashMap<>();
+        for (ASTNode statement : statements) {
+            switch (statement.getKind()) {
+                case MOVE_STATEMENT:
+                    ASTNode source = statement.getChildren().get(0);
+                    DataItem target = declared(statement.getChildren().get(1));
+                    BigDecimal value = source.getKind() == NodeKind.VALUE ? number(source.getValue()) : null;
+                    if (value == null && source.getKind() == NodeKind.VARIABLE && target != null
+                            && target.getCategory() == DataItem.Category.NUMERIC) {
+                        value = known.get(declared(source)); // numeric to numeric moves align like the literal
+                    }
+                    store(known, target, value);
+                    break;
+                case COMPUTE_STATEMENT:
+                    substitute(statement, known);
+                    List<ASTNode> children = statement.getChildren();
+                    ASTNode expression = null;
+                    for (ASTNode child : children) {
+                        if (child.getKind() == NodeKind.TARGET) {
+                            DataItem item = declared(child.getChildren().get(0));
+                            store(known, item, null);
+                        } else if (!child.getKind().isBlock()) {
+                            expression = child;
+                        } else {
+                            propagate(child.getChildren());
+                            known.clear(); // the phrases may store anything
+                        }
+                    }
+                    if (children.size() == 2 && children.get(0).getValue().isEmpty()
+                            && expression != null && expression.getKind() == NodeKind.LITERAL) {
+                        store(known, declared(children.get(0).getChildren().get(0)), number(expression.getValue()));
+                    }
+                    break;
+                case DISPLAY_STATEMENT:
+                case OPEN_STATEMENT:
+                case CLOSE_STATEMENT:
+                    break;
+                default:
+                    for (ASTNode child : statement.getChildren()) {
+                        if (child.getKind().isBlock()) {
+                            propagate(child.getChildren());
+                        }
+                    }
+                    if (statement.getKind().isHeader()) {
+                        propagate(statement.getChildren());
+                    }
+                    known.clear();
+                    break;
+            }
+        }
+    }
+
+    private DataItem declared(ASTNode reference) {
+        return reference.getKind() == NodeKind.VARIABLE ? DataField.lookup(symbols, reference) : null;
+    }
+
+    /**
+     * Forgets what is known of the items sharing the target's bytes, then remembers the
+     * value if it is a literal the target holds exactly.
+     */
+    private void store(Map<DataItem, BigDecimal> known, DataItem target, BigDecimal value) {
+        if (target == null) {
+            return; // an undeclared item is a field of its own that no tracked item shares
+        }
+        DataItem area = area(target);
+        known.keySet().removeIf(item -> area(item) == area);
+        if (value != null && holdsExactly(target, value)) {
+            known.put(target, value);
+        }
+    }
+
+    private DataItem area(DataItem item) {
+        DataItem record = item.getRecord();
+        while (record.getRedefines() != null) {
+            record = record.getRedefines();
+        }
+        FileDefinition file = symbols.fileOf(record);
+        return file == null ? record : file.getRecords().get(0);
+    }
+
+    private static boolean holdsExactly(DataItem item, BigDecimal value) {
+        return item.getCategory() == DataItem.Category.NUMERIC && item.getDigits() <= FixedPoint.MAX_DIGITS
+                && item.getScale() >= 0 && item.getUsage() != Usage.INDEX && value.signum() >= 0
+                && value.scale() <= item.getScale()
+                && value.precision() - value.scale() <= item.getDigits() - item.getScale();
+    }
+
+    // Replaces known items in the expression, but not in an exponent, which must be written as a literal
+    private void substitute(ASTNode node, Map<DataItem, BigDecimal> known) {
+        List<ASTNode> children = node.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            ASTNode child = children.get(i);
+            if (child.getKind() == NodeKind.TARGET || child.getKind().isBlock()
+                    || (node.getValue().equals("**") && i == 1)) {
+                continue;
+            }
+            if (child.getKind() == NodeKind.VARIABLE) {
+                DataItem item = DataField.lookup(symbols, child);
+                BigDecimal value = item == null ? null : known.get(item);
+                if (value != null) {
+                    // at the item's own scale, so the expression keeps the scales the item gave it
+                    children.set(i, new ASTNode(NodeKind.LITERAL, value.setScale(item.getScale()).toPlainString()));
+                    changes++;
+                }
+            } else {
+                substitute(child, known);
+            }
+        }
+    }
+
+    private static BigDecimal number(String literal) {
+        if (literal.isEmpty() || !Character.isDigit(literal.charAt(0))) {
+            return null;
+        }
+        try {
+            return new BigDecimal(literal);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ---- FOLD_CONSTANTS ----
+
+    /**
+     * Folds the COMPUTE expressions below the node bottom-up. Division is left alone: its
+     * scale depends on the receiving items, which the backends work out.
+     */
+    private void fold(ASTNode node) {
+        List<ASTNode> children = node.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            ASTNode child = children.get(i);
+            fold(child);
+            if (node.getKind() == NodeKind.COMPUTE_STATEMENT || node.getKind() == NodeKind.OPERATOR
+                    || node.getKind() == NodeKind.NEGATE) {
+                ASTNode folded = foldExpression(child);
+                if (folded != child) {
+                    children.set(i, folded);
+                    changes++;
+                }
+            }
+        }
+    }
+
+    private static ASTNode foldExpression(ASTNode node) {
+        if (node.getKind() == NodeKind.NEGATE) {
+            ASTNode operand = node.getChildren().get(0);
+            if (operand.getKind() == NodeKind.NEGATE && constant(operand.getChildren().get(0)) != null) {
+                return operand.getChildren().get(0);
+            }
+            return node;
+        }
+        if (node.getKind() != NodeKind.OPERATOR) {
+            return node;
+        }
+        BigDecimal left = constant(node.getChildren().get(0));
+        BigDecimal right = constant(node.getChildren().get(1));
+        if (left == null || right == null) {
+            return node;
+        }
+        BigDecimal result;
+        switch (node.getValue()) {
+            case "+":
+                result = left.add(right);
+                break;
+            case "-":
+                result = left.subtract(right);
+                break;
+            case "*":
+                result = left.multiply(right);
+                break;
+            case "**":
+                int exponent = Arithmetic.exponent(node);
+                if ((long) left.precision() * exponent > 2 * FixedPoint.MAX_DIGITS) {
+                    return node;
+                }
+                result = left.pow(exponent);
+                break;
+            default:
+                return node;
+        }
+        ASTNode literal = new ASTNode(NodeKind.LITERAL, result.abs().toPlainString());
+        if (result.signum() >= 0) {
+            return literal;
+        }
+        ASTNode negate = new ASTNode(NodeKind.NEGATE);
+        negate.addChild(literal);
+        return negate;
+    }
+
+    // The value of a literal or a negated literal, else null
+    private static BigDecimal constant(ASTNode node) {
+        if (node.getKind() == NodeKind.LITERAL) {
+            return number(node.getValue());
+        }
+        if (node.getKind() == NodeKind.NEGATE && node.getChildren().get(0).getKind() == NodeKind.LITERAL) {
+            BigDecimal value = number(node.getChildren().get(0).getValue());
+            return value == null ? null : value.negate();
+        }
+        return null;
+    }
+
+    // ---- REMOVE_DEAD_CODE ----
+
+    private void removeDeadCode(ASTNode root) {
+        truncate(root.getChildren(), true);
+        for (ASTNode child : root.getChildren()) {
+            if (child.getKind().isHeader()) {
+                truncate(child.getChildren(), false);
+            }
+        }
+        removeUnreachableParagraphs(root);
+    }
+
+    /**
+     * Drops the statements after one control cannot get past, in the list and in the
+     * blocks nested in its statements.
+     * @param headers True for the program's list, whose paragraph headers start new code.
+     */
+    private void truncate(List<ASTNode> statements, boolean headers) {
+        boolean dead = false;
+        for (int i = 0; i < statements.size(); i++) {
+            ASTNode statement = statements.get(i);
+            if (headers && statement.getKind().isHeader()) {
+                dead = false;
+                continue;
+            }
+            if (dead) {
+                statements.remove(i--);
+                changes++;
+                continue;
+            }
+            for (ASTNode child : statement.getChildren()) {
+                if (child.getKind().isBlock()) {
+                    truncate(child.getChildren(), false);
+                }
+            }
+            dead = !ProcedureLayout.completes(statement);
+        }
+    }
+
+    /**
+     * Removes the paragraphs no PERFORM, GO TO or SORT procedure names and that no
+     * paragraph running before them falls into. Sections stay, since removing a header would
+     * move the paragraphs after it into the section before, but lose their statements.
+     */
+    private void removeUnreachableParagraphs(ASTNode root) {
+        List<ASTNode> headers = new ArrayList<>();
+        for (ASTNode child : root.getChildren()) {
+            if (child.getKind().isHeader()) {
+                headers.add(child);
+            }
+        }
+        if (headers.isEmpty()) {
+            return;
+        }
+        ProcedureLayout layout = new ProcedureLayout(root);
+        List<ProcedureLayout.Paragraph> paragraphs = layout.getParagraphs();
+        int offset = paragraphs.size() - headers.size(); // 1 if statements come before the first header
+        boolean[] live = new boolean[paragraphs.size()];
+        List<Integer> pending = new ArrayList<>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int number = pending.remove(pending.size() - 1);
+            if (live[number]) {
+                continue;
+            }
+            live[number] = true;
+            List<ASTNode> statements = paragraphs.get(number).statements;
+            reach(layout, statements, pending);
+            if (number + 1 < live.length && ProcedureLayout.completes(statements)) {
+                pending.add(number + 1);
+            }
+        }
+        Set<ASTNode> dead = new HashSet<>();
+        for (int i = offset; i < live.length; i++) {
+            ASTNode header = headers.get(i - offset);
+            if (!live[i]) {
+                if (header.getKind() == NodeKind.PARAGRAPH) {
+                    dead.add(header);
+                } else {
+                    changes += header.getChildren().size();
+                    header.getChildren().clear();
+                }
+            }
+        }
+        changes += dead.size();
+        root.getChildren().removeIf(dead::contains);
+    }
+
+    private static void reach(ProcedureLayout layout, List<ASTNode> nodes, List<Integer> pending) {
+        for (ASTNode node : nodes) {
+            if (node.getKind() == NodeKind.GO_TO_STATEMENT) {
+                pending.add(layout.target(node));
+            } else if (ProcedureLayout.isPerform(node)) {
+                int[] range = layout.range(node);
+                for (int i = range[0]; i <= range[1]; i++) {
+                    pending.add(i);
+                }
+            }
+            reach(layout, node.getChildren(), pending);
+        }
+    }
+
+    // ---- MERGE_DISPLAYS ----
+
+    /**
+     * Merges each run of DISPLAYs into its first one, whose "Line" children hold the
+     * literals of the others, so the program prints them with one call.
+     */
+    private void mergeDisplays(List<ASTNode> statements) {
+        ASTNode merged = null;
+        for (int i = 0; i < statements.size(); i++) {
+            ASTNode statement = statements.get(i);
+            if (statement.getKind() == NodeKind.DISPLAY_STATEMENT) {
+                if (merged == null) {
+                    merged = new ASTNode(NodeKind.DISPLAY_STATEMENT, statement.getValue());
+                    for (ASTNode line : statement.getChildren()) {
+                        merged.addChild(line);
+                    }
+                    statements.set(i, merged);
+                } else {
+                    merged.addChild(new ASTNode(NodeKind.LINE, statement.getValue()));
+                    for (ASTNode line : statement.getChildren()) {
+                        merged.addChild(line);
+                    }
+                    statements.remove(i--);
+                    changes++;
+                }
+                continue;
+            }
+            merged = null;
+            if (statement.getKind().isHeader()) {
+                mergeDisplays(statement.getChildren());
+            }
+            for (ASTNode child : statement.getChildren()) {
+                if (child.getKind().isBlock()) {
+                    mergeDisplays(child.getChildren());
+                }
+            }
+        }
+    }
+
+    // ---- REMOVE_UNUSED_DATA ----
+
+    /**
+     * Removes the level-01 and 77 records none of whose names the procedure mentions.
+     * Records of a file, records in a REDEFINES and SQLCODE, which EXEC SQL sets, are kept.
+     */
+    private void removeUnusedData(ASTNode root) {
+        Set<String> names = new HashSet<>();
+        collectNames(root, names);
+        Set<DataItem> redefined = new HashSet<>();
+        for (DataItem record : symbols.getRecords()) {
+            if (record.getRedefines() != null) {
+                redefined.add(record.getRedefines());
+            }
+        }
+        for (DataItem record : new ArrayList<>(symbols.getRecords())) {
+            if (record.getRedefines() == null && !redefined.contains(record) && symbols.fileOf(record) == null
+                    && !record.getName().equals("SQLCODE") && !mentions(record, names)) {
+                symbols.removeRecord(record);
+                changes++;
+            }
+        }
+    }
+
+    private static void collectNames(ASTNode node, Set<String> names) {
+        names.add(node.getValue());
+        for (ASTNode child : node.getChildren()) {
+            collectNames(child, names);
+        }
+    }
+
+    private static boolean mentions(DataItem item, Set<String> names) {
+        if (names.contains(item.getName())) {
+            return true;
+        }
+        for (DataItem child : item.getChildren()) {
+            if (mentions(child, names)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
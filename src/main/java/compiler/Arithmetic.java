@@ -0,0 +1,145 @@
+package compiler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arithmetic - Static analysis of COMPUTE expressions shared by both backends.
+ * Every intermediate result gets a scale known at generation time, and the whole
+ * expression is evaluated either on scaled longs or, when some intermediate result may
+ * need more than 18 digits or an operand is held as a BigDecimal, on BigDecimals.
+ */
+final class Arithmetic {
+    /** Decimal places kept by a division when no receiving item says otherwise. */
+    private static final int DEFAULT_DIVISION_SCALE = 8;
+
+    private final Map<String, DataField> fields;
+    private final int divisionScale;
+
+    /**
+     * @param fields The program's fields by COBOL name.
+     * @param targets The COMPUTE's receiving fields; a division keeps one decimal place more
+     *                than the most precise of them, so ROUNDED sees the next digit.
+     */
+    Arithmetic(Map<String, DataField> fields, List<DataField> targets) {
+        this.fields = fields;
+        int scale = -1;
+        for (DataField target : targets) {
+            if (target.digits > 0) {
+                scale = Math.max(scale, target.scale + 1);
+            }
+        }
+        this.divisionScale = scale < 0 ? DEFAULT_DIVISION_SCALE : scale;
+    }
+
+    DataField field(ASTNode variable) {
+        return fields.get(DataField.key(variable));
+    }
+
+    /**
+     * @return True if the expression must be evaluated on BigDecimals: an operand is held as
+     *         a BigDecimal or some intermediate result may need more than 18 digits.
+     */
+    boolean needsDecimal(ASTNode node) {
+        if (node.getKind() == NodeKind.VARIABLE) {
+            DataField field = field(node);
+            if (field.kind == DataField.Kind.TEXT) {
+                throw new RuntimeException("Arithmetic on non-numeric item " + node.getValue());
+            }
+            return field.kind == DataField.Kind.DECIMAL;
+        }
+        for (ASTNode child : node.getChildren()) {
+            if (!node.getValue().equals("**") || child == node.getChildren().get(0)) {
+                if (needsDecimal(child)) {
+                    return true;
+                }
+            }
+        }
+        return integerDigits(node) + scale(node) > FixedPoint.MAX_DIGITS;
+    }
+
+    /**
+     * @return The scale of the expression's result.
+     */
+    int scale(ASTNode node) {
+        switch (node.getKind()) {
+            case LITERAL:
+                int point = node.getValue().indexOf('.');
+                return point < 0 ? 0 : node.getValue().length() - point - 1;
+            case VARIABLE:
+                return Math.max(field(node).scale, 0);
+            case NEGATE:
+                return scale(node.getChildren().get(0));
+            default:
+                int left = scale(node.getChildren().get(0));
+                int right = scale(node.getChildren().get(1));
+                switch (node.getValue()) {
+                    case "+":
+                    case "-":
+                        return Math.max(left, right);
+                    case "*":
+                        return left + right;
+                    case "/":
+                        return Math.max(left, divisionScale);
+                    default:
+                        return left * exponent(node);
+                }
+        }
+    }
+
+    /**
+     * @return An upper bound for the number of digits before the decimal point.
+     */
+    private int integerDigits(ASTNode node) {
+        switch (node.getKind()) {
+            case LITERAL:
+                int point = node.getValue().indexOf('.');
+                return point < 0 ? node.getValue().length() : point;
+            case VARIABLE:
+                DataField field = field(node);
+                return field.kind == DataField.Kind.LONG ? Math.max(field.digits - field.scale, 0) : 0;
+            case NEGATE:
+                return integerDigits(node.getChildren().get(0));
+            default:
+                int left = integerDigits(node.getChildren().get(0));
+                int right = integerDigits(node.getChildren().get(1));
+                switch (node.getValue()) {
+                    case "+":
+                    case "-":
+                        return Math.max(left, right) + 1;
+                    case "*":
+                        return left + right;
+                    case "/":
+                        return left + scale(node.getChildren().get(1));
+                    default:
+                        return left * exponent(node);
+                }
+        }
+    }
+
+    /**
+     * @return How many decimal places a long division keeps beyond dividend scale minus divisor scale.
+     */
+    int divisionShift(ASTNode division) {
+        return scale(division) - scale(division.getChildren().get(0)) + scale(division.getChildren().get(1));
+    }
+
+    /**
+     * @return The exponent of a "**" node, which must be a non-negative integer literal.
+     */
+    static int exponent(ASTNode power) {
+        ASTNode exponent = power.getChildren().get(1);
+        if (exponent.getKind() != NodeKind.LITERAL || exponent.getValue().indexOf('.') >= 0
+                || exponent.getValue().length() > 3) {
+            throw new RuntimeException("Only integer literal exponents up to 999 are supported");
+        }
+        return Integer.parseInt(exponent.getValue());
+    }
+
+    /**
+     * @return The unscaled value of a numeric literal, e.g. 1250 for "12.50".
+     */
+    static long unscaled(String literal) {
+        return Long.parseLong(literal.replace(".", ""));
+    }
+}
@@ -0,0 +1,11 @@
+package compiler;
+
+/**
+ * Backend - How a parsed program is turned into something the JVM can run.
+ */
+public enum Backend {
+    /** Java source text from {@link JavaCodeGenerator}, compiled by a Java compiler afterwards. */
+    SOURCE,
+    /** A class file written directly by {@link BytecodeGenerator}. */
+    BYTECODE
+}
@@ -0,0 +1,325 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BatchCompiler - Compiles many COBOL programs in parallel.
+ * Units are spread over a work-stealing {@link ForkJoinPool}. Every unit is compiled in
+ * isolation and writes its own output file; a unit that fails is recorded in the report
+ * and does not stop the others. With a {@link CompilationCache}, units whose source,
+ * options and dependencies are unchanged are not compiled again.
+ */
+public class BatchCompiler {
+    private final Path outputFolder;
+    private final int parallelism;
+    /** Each worker lexes its units one after another into the same token arrays. */
+    private final ThreadLocal<TokenBuffer> tokenArenas = ThreadLocal.withInitial(() -> new TokenBuffer("", 1 << 14));
+    private CompilationCache cache;
+    private CopybookLibrary copybooks;
+    private Path jarFile;
+    private Backend backend = Backend.SOURCE;
+    /** The phase totals of the run in progress. */
+    private CompilerMetrics metrics;
+
+    /**
+     * @param outputFolder Folder that receives one Java file per unit and the summary report.
+     * @param parallelism Number of worker threads, usually the number of cores.
+     */
+    public BatchCompiler(Path outputFolder, int parallelism) {
+        this.outputFolder = outputFolder;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Enables the incremental compilation cache.
+     * @param cache The cache to consult before compiling each unit.
+     */
+    public void setCache(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Enables COPY expansion. The library and its cache of lexed copybooks are shared by all units.
+     * @param copybooks The library COPY statements are resolved against.
+     */
+    public void setCopybookLibrary(CopybookLibrary copybooks) {
+        this.copybooks = copybooks;
+    }
+
+    /**
+     * Selects the backend; the default generates Java source.
+     * @param backend {@link Backend#BYTECODE} writes class files instead of Java files.
+     */
+    public void setBackend(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Also compiles the generated Java sources, all in one in-memory compiler invocation,
+     * and streams the class files into a jar. Units whose Java does not compile are reported as failed.
+     * @param jarFile The jar to write.
+     */
+    public void setJarOutput(Path jarFile) {
+        this.jarFile = jarFile;
+    }
+
+    /**
+     * Collects COBOL sources from the arguments. A directory contributes every .cbl/.cob file
+     * below it, an argument starting with '@' names a file listing one source path per line,
+     * and anything else is taken as a source file.
+     * @param arguments Directories, list files and source files.
+     * @return The sources, in a stable order.
+     */
+    public static List<Path> collectSources(List<String> arguments) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("@")) {
+                for (String line : Files.readAllLines(Path.of(argument.substring(1)))) {
+                    if (!line.isBlank()) {
+                        sources.add(Path.of(line.trim()));
+                    }
+                }
+            } else if (Files.isDirectory(Path.of(argument))) {
+                try (Stream<Path> files = Files.walk(Path.of(argument))) {
+                    sources.addAll(files.filter(BatchCompiler::isCobolSource).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                sources.add(Path.of(argument));
+            }
+        }
+        return sources;
+    }
+
+    private static boolean isCobolSource(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(path) && (name.endsWith(".cbl") || name.endsWith(".cob"));
+    }
+
+    /**
+     * Compiles all sources and writes the summary report.
+     * @param sources The COBOL source files.
+     * @return The per-unit results, in the order of the sources.
+     */
+    public BatchReport compile(List<Path> sources) throws IOException {
+        Files.createDirectories(outputFolder);
+        String[] classNames = assignClassNames(sources);
+        BatchReport.UnitResult[] results = new BatchReport.UnitResult[sources.size()];
+        byte[][] outputs = new byte[sources.size()][];
+        metrics = new CompilerMetrics();
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new CompileRange(sources, classNames, results, outputs, 0, sources.size()));
+        } finally {
+            pool.shutdown();
+        }
+        if (jarFile != null) {
+            writeJar(classNames, results, outputs);
+        }
+        BatchReport report = new BatchReport(List.of(results), System.nanoTime() - start, parallelism, metrics);
+
+        Files.writeString(outputFolder.resolve("batch-summary.txt"), report.toString());
+        return report;
+    }
+
+    /**
+     * Writes the classes of all successful units to the jar. Java sources are first compiled
+     * together in one in-memory compiler invocation; units whose Java does not compile fail.
+     */
+    private void writeJar(String[] classNames, BatchReport.UnitResult[] results, byte[][] outputs) throws IOException {
+        Map<String, byte[]> classes;
+        if (backend == Backend.BYTECODE) {
+            classes = new TreeMap<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].isSuccess()) {
+                    classes.put(classNames[i], outputs[i]);
+                }
+            }
+        } else {
+            Map<String, String> javaSources = new LinkedHashMap<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].isSuccess()) {
+                    javaSources.put(classNames[i], new String(outputs[i], StandardCharsets.UTF_8));
+                }
+            }
+            InMemoryJavaCompiler.Result compiled = new InMemoryJavaCompiler().compileEach(javaSources);
+            for (int i = 0; i < results.length; i++) {
+                String error = compiled.getErrors().get(classNames[i]);
+                if (error != null) {
+                    results[i] = BatchReport.UnitResult.failure(results[i].getSource(), "javac: " + error, results[i].getElapsedNanos());
+                }
+            }
+            classes = compiled.getClasses();
+        }
+        if (jarFile.getParent() != null) {
+            Files.createDirectories(jarFile.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(jarFile)) {
+            InMemoryJavaCompiler.writeJar(classes, null, out);
+        }
+    }
+
+    /**
+     * Picks a distinct class name per unit up front, so output files never collide.
+     */
+    private static String[] assignClassNames(List<Path> sources) {
+        String[] classNames = new String[sources.size()];
+        Set<String> taken = new HashSet<>();
+        for (int i = 0; i < classNames.length; i++) {
+            String base = CompilationUnit.classNameFor(sources.get(i).getFileName().toString());
+            String className = base;
+            for (int suffix = 2; !taken.add(className.toLowerCase(Locale.ROOT)); suffix++) {
+                className = base + "_" + suffix;
+            }
+            classNames[i] = className;
+        }
+        return classNames;
+    }
+
+    private BatchReport.UnitResult compileOne(Path source, String className, byte[][] outputs, int index) {
+        long start = System.nanoTime();
+        CompilationUnit unit = null;
+        try {
+            CharSequence text = CobolSourceReader.open(source);
+            Path output = outputFolder.resolve(className + (backend == Backend.BYTECODE ? ".class" : ".java"));
+            String key = null;
+            if (cache != null) {
+                String options = "class=" + className + " backend=" + backend
+                        + " optimize=" + ASTOptimizer.passesFromSystem();
+                if (copybooks != null) {
+                    options += " copy=" + copybooks.getFolders();
+                }
+                key = cache.key(text, options);
+                String cached = cache.lookup(key);
+                if (cached != null) {
+                    outputs[index] = backend == Backend.BYTECODE
+                            ? Base64.getDecoder().decode(cached) : cached.getBytes(StandardCharsets.UTF_8);
+                    Files.write(output, outputs[index]);
+                    return BatchReport.UnitResult.cached(source, output, System.nanoTime() - start);
+                }
+            }
+            unit = new CompilationUnit(source.toString(), text);
+            unit.setCopybookLibrary(copybooks);
+            unit.setTokenArena(tokenArenas.get());
+            unit.setMetrics(metrics);
+            if (backend == Backend.BYTECODE) {
+                outputs[index] = unit.compileToClass(className);
+            } else if (cache == null && jarFile == null) {
+                // nothing else needs the source, so it goes straight to the file while it is generated
+                try (Writer out = Files.newBufferedWriter(output)) {
+                    unit.compile(className, out);
+                }
+                return BatchReport.UnitResult.success(source, output, System.nanoTime() - start);
+            } else {
+                outputs[index] = unit.compile(className).getBytes(StandardCharsets.UTF_8);
+            }
+            CompilerMetrics.Span write = CompilerMetrics.start(metrics, CompilerMetrics.Phase.WRITE, unit.getName());
+            Files.write(output, outputs[index]);
+            write.end(outputs[index].length);
+            if (cache != null) {
+                storeInCache(key, backend == Backend.BYTECODE ? Base64.getEncoder().encodeToString(outputs[index])
+                        : new String(outputs[index], StandardCharsets.UTF_8), source, unit);
+            }
+            return BatchReport.UnitResult.success(source, output, System.nanoTime() - start);
+        } catch (Exception e) {
+            return BatchReport.UnitResult.failure(source, describe(e), System.nanoTime() - start);
+        } finally {
+            if (unit != null && !unit.getDebugLog().isEmpty()) {
+                writeDebugLog(unit, className);
+            }
+        }
+    }
+
+    private void storeInCache(String key, String output, Path source, CompilationUnit unit) {
+        List<Path> dependencies = new ArrayList<>(unit.getDependencies());
+        for (String program : unit.getCalledPrograms()) {
+            for (String extension : new String[] {".cbl", ".cob"}) {
+                Path callee = source.resolveSibling(program + extension);
+                if (Files.isRegularFile(callee)) {
+                    dependencies.add(callee);
+                }
+            }
+        }
+        try {
+            cache.store(key, output, dependencies);
+        } catch (IOException e) {
+            Debugger.log("Could not cache " + source + ": " + e.getMessage());
+        }
+    }
+
+    private void writeDebugLog(CompilationUnit unit, String className) {
+        try {
+            Files.write(outputFolder.resolve(className + ".log"), unit.getDebugLog(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Debugger.log("Could not write debug log for " + unit.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The message of a failed unit: the exception and its message, or its stack trace if it has none.
+     */
+    static String describe(Exception e) {
+        if (e.getMessage() != null) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        return trace.toString();
+    }
+
+    /**
+     * Splits the source list in halves until single units remain, so idle workers can steal work.
+     */
+    private final class CompileRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> sources;
+        private final String[] classNames;
+        private final BatchReport.UnitResult[] results;
+        private final byte[][] outputs;
+        private final int from;
+        private final int to;
+
+        CompileRange(List<Path> sources, String[] classNames, BatchReport.UnitResult[] results, byte[][] outputs,
+                     int from, int to) {
+            this.sources = sources;
+            this.classNames = classNames;
+            this.results = results;
+            this.outputs = outputs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = compileOne(sources.get(from), classNames[from], outputs, from);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CompileRange(sources, classNames, results, outputs, from, middle),
+                        new CompileRange(sources, classNames, results, outputs, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package compiler;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * BatchReport - Outcome of a batch compilation run.
+ */
+public class BatchReport {
+    private final List<UnitResult> results;
+    private final long elapsedNanos;
+    private final int parallelism;
+    private final CompilerMetrics metrics;
+
+    BatchReport(List<UnitResult> results, long elapsedNanos, int parallelism, CompilerMetrics metrics) {
+        this.results = results;
+        this.elapsedNanos = elapsedNanos;
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+    }
+
+    public List<UnitResult> getResults() {
+        return results;
+    }
+
+    public int getSucceeded() {
+        int succeeded = 0;
+        for (UnitResult result : results) {
+            if (result.isSuccess()) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    public int getCached() {
+        int cached = 0;
+        for (UnitResult result : results) {
+            if (result.isCached()) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    public int getFailed() {
+        return results.size() - getSucceeded();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The time, items and allocations of each phase, summed over the units compiled in this run.
+     */
+    public CompilerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The summary report, one line per unit followed by totals and the totals per phase.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (UnitResult result : results) {
+            report.append(result.isCached() ? "CACHED " : result.isSuccess() ? "OK     " : "FAILED ")
+                    .append(result.getSource())
+                    .append(String.format(" (%.1f ms)", result.getElapsedNanos() / 1e6));
+            if (result.isSuccess()) {
+                report.append(" -> ").append(result.getOutput());
+            } else {
+                report.append(": ").append(result.getError());
+            }
+            report.append('\n');
+        }
+        double seconds = elapsedNanos / 1e9;
+        report.append(String.format("%d units, %d succeeded (%d from cache), %d failed in %.2f s on %d threads (%.1f units/s)%n",
+                results.size(), getSucceeded(), getCached(), getFailed(), seconds, parallelism,
+                seconds > 0 ? results.size() / seconds : 0.0));
+        report.append(metrics);
+        return report.toString();
+    }
+
+    /**
+     * UnitResult - Outcome of compiling one unit in a batch.
+     */
+    public static class UnitResult {
+        private final Path source;
+        private final Path output;
+        private final String error;
+        private final long elapsedNanos;
+        private final boolean cached;
+
+        private UnitResult(Path source, Path output, String error, long elapsedNanos, boolean cached) {
+            this.source = source;
+            this.output = output;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+            this.cached = cached;
+        }
+
+        static UnitResult success(Path source, Path output, long elapsedNanos) {
+            return new UnitResult(source, output, null, elapsedNanos, false);
+        }
+
+        static UnitResult cached(Path source, Path output, long elapsedNanos) {
+            return new UnitResult(source, output, null, elapsedNanos, true);
+        }
+
+        static UnitResult failure(Path source, String error, long elapsedNanos) {
+            return new UnitResult(source, null, error, elapsedNanos, false);
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return True if the output was taken from the compilation cache.
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,1642 @@
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BytecodeGenerator - Converts the COBOL AST straight into a class file.
+ * It is the second backend next to {@link JavaCodeGenerator}: the class it emits
+ * behaves like the Java source that generator produces, but no Java text is built
+ * and no Java compiler is needed. Constant pool, operand stack sizes, exception
+ * tables and stack map frames are all worked out here.
+ */
+public class BytecodeGenerator {
+    private static final int CLASS_VERSION = 55; // Java 11
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String DECIMAL = "java/math/BigDecimal";
+    private static final String SESSION = "compiler/SQLSession";
+    private static final String ARGS = "[Ljava/lang/String;";
+    private static final String FIXED = "compiler/FixedPoint";
+    private static final String STORAGE = "compiler/Storage";
+    private static final String FILE = "compiler/SequentialFile";
+    private static final String SORT = "compiler/SortFile";
+    private static final String BYTES = "[B";
+    private static final String LONG = "J";
+    private static final String INT = "I";
+
+    private final ASTNode root;
+    private final String className;
+    private final WorkingStorage storage;
+    private final Map<String, DataField> fields;
+    private final EmbeddedSQL sql;
+    private final ProcedureLayout layout;
+    private final ConstantPool pool = new ConstantPool();
+
+    /**
+     * @param root The root AST node of the parsed COBOL program.
+     * @param className Name of the generated class.
+     */
+    public BytecodeGenerator(ASTNode root, String className) {
+        this(root, className, new SymbolTable());
+    }
+
+    /**
+     * @param root The root AST node of the parsed COBOL program.
+     * @param className Name of the generated class.
+     * @param symbolTable The program's DATA DIVISION, which decides the type of each field.
+     */
+    public BytecodeGenerator(ASTNode root, String className, SymbolTable symbolTable) {
+        this.root = root;
+        this.className = className;
+        this.storage = new WorkingStorage(symbolTable);
+        this.fields = DataField.collect(root, storage);
+        this.sql = new EmbeddedSQL(root, fields, storage);
+        this.layout = new ProcedureLayout(root);
+    }
+
+    /**
+     * Generates the class file.
+     * @return The bytes of {@code <className>.class}.
+     */
+    public byte[] generate() {
+        List<Object[]> methods = new ArrayList<>(); // access flags, name, descriptor, code
+        Code initializer = generateStaticInitializer();
+        if (initializer != null) {
+            methods.add(new Object[] {ACC_STATIC, "<clinit>", "()V", initializer});
+        }
+        Code constructor = new Code(className);
+        constructor.load(0);
+        constructor.invoke(Code.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        constructor.op(Code.RETURN, 0);
+        methods.add(new Object[] {ACC_PUBLIC, "<init>", "()V", constructor});
+        methods.add(new Object[] {ACC_PUBLIC | ACC_STATIC, "main", "(" + ARGS + ")V", generateMain()});
+        if (!layout.isFlat()) {
+            generateParagraphs(methods);
+        }
+
+        int thisClass = pool.classRef(className);
+        int superClass = pool.classRef(OBJECT);
+        List<int[]> fieldInfos = new ArrayList<>(); // access flags, name, descriptor
+        for (String record : storage.getImages().keySet()) {
+            fieldInfos.add(new int[] {ACC_STATIC | ACC_FINAL, pool.utf8(record), pool.utf8(BYTES)});
+        }
+        for (FileDefinition file : storage.getSymbols().getFiles()) {
+            fieldInfos.add(new int[] {ACC_STATIC | ACC_FINAL, pool.utf8(JavaCodeGenerator.javaName(file.getName())),
+                    pool.utf8("L" + (file.isSort() ? SORT : FILE) + ";")});
+        }
+        if (sql.isUsed()) {
+            fieldInfos.add(new int[] {ACC_STATIC | ACC_FINAL, pool.utf8("sql"), pool.utf8("L" + SESSION + ";")});
+        }
+        for (DataField field : fields.values()) {
+            if (!field.inStorage()) {
+                fieldInfos.add(new int[] {ACC_STATIC, pool.utf8(field.javaName), pool.utf8(field.descriptor())});
+            }
+        }
+        List<byte[]> codes = new ArrayList<>();
+        for (Object[] method : methods) {
+            codes.add(((Code) method[3]).toAttribute(pool, (String) method[1]));
+            pool.utf8((String) method[1]);
+            pool.utf8((String) method[2]);
+        }
+        int exceptions = pool.utf8("Exceptions");
+        int sqlException = pool.classRef("java/sql/SQLException");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            pool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+
+            out.writeShort(fieldInfos.size());
+            for (int[] field : fieldInfos) {
+                out.writeShort(field[0]);
+                out.writeShort(field[1]);
+                out.writeShort(field[2]);
+                out.writeShort(0);
+            }
+
+            out.writeShort(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                Object[] method = methods.get(i);
+                // every method but the constructor and initializer throws SQLException, as in the source backend
+                boolean throwing = !((String) method[1]).startsWith("<");
+                out.writeShort((Integer) method[0]);
+                out.writeShort(pool.utf8((String) method[1]));
+                out.writeShort(pool.utf8((String) method[2]));
+                out.writeShort(throwing ? 2 : 1);
+                out.write(codes.get(i));
+                if (throwing) {
+                    out.writeShort(exceptions);
+                    out.writeInt(4);
+                    out.writeShort(1);
+                    out.writeShort(sqlException);
+                }
+            }
+
+            out.writeShort(0); // class attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Fills each record array from its initial image, split into string constants, and
+     * creates the files and the SQL session.
+     * @return The code of {@code <clinit>}, or null if the program has no records and no SQL.
+     */
+    private Code generateStaticInitializer() {
+        if (storage.getImages().isEmpty() && !sql.isUsed()) {
+            return null; // a file always has an FD record
+        }
+        Code code = new Code();
+        for (Map.Entry<String, byte[]> record : storage.getImages().entrySet()) {
+            List<String> chunks = WorkingStorage.chunks(record.getValue());
+            code.pushInt(chunks.size());
+            code.typeOp(Code.ANEWARRAY, STRING, 0);
+            for (int i = 0; i < chunks.size(); i++) {
+                code.op(Code.DUP, 1);
+                code.pushInt(i);
+                code.ldc(chunks.get(i));
+                code.op(Code.AASTORE, -3);
+            }
+            code.invoke(Code.INVOKESTATIC, STORAGE, "image", "([L" + STRING + ";)" + BYTES, false);
+            code.putStatic(className, record.getKey(), BYTES);
+        }
+        for (FileDefinition file : storage.getSymbols().getFiles()) {
+            if (file.isSort()) {
+                code.typeOp(Code.NEW, SORT, 1);
+                code.op(Code.DUP, 1);
+                code.ldc(file.getName());
+                code.pushInt(file.getRecordLength());
+                code.invoke(Code.INVOKESPECIAL, SORT, "<init>", "(L" + STRING + ";I)V", false);
+                code.putStatic(className, JavaCodeGenerator.javaName(file.getName()), "L" + SORT + ";");
+                continue;
+            }
+            code.typeOp(Code.NEW, FILE, 1);
+            code.op(Code.DUP, 1);
+            code.ldc(file.getName());
+            code.ldc(file.getAssignment());
+            code.pushInt(file.isAssignedToLiteral() ? 1 : 0);
+            code.pushInt(JavaCodeGenerator.fileFormat(file));
+            code.pushInt(file.getRecordLength());
+            code.invoke(Code.INVOKESPECIAL, FILE, "<init>", "(L" + STRING + ";L" + STRING + ";ZII)V", false);
+            code.putStatic(className, JavaCodeGenerator.javaName(file.getName()), "L" + FILE + ";");
+        }
+        if (sql.isUsed()) {
+            List<String> texts = sql.getTexts();
+            code.typeOp(Code.NEW, SESSION, 1);
+            code.op(Code.DUP, 1);
+            code.pushInt(texts.size());
+            code.typeOp(Code.ANEWARRAY, STRING, 0);
+            for (int i = 0; i < texts.size(); i++) {
+                code.op(Code.DUP, 1);
+                code.pushInt(i);
+                code.ldc(texts.get(i));
+                code.op(Code.AASTORE, -3);
+            }
+            code.invoke(Code.INVOKESPECIAL, SESSION, "<init>", "([L" + STRING + ";)V", false);
+            code.putStatic(className, "sql", "L" + SESSION + ";");
+        }
+        code.op(Code.RETURN, 0);
+        return code;
+    }
+
+    /**
+     * Runs the statements of a flat program, or the dispatch loop over all paragraphs.
+     * With SQL, the body runs under a catch-all handler that aborts the session and rethrows,
+     * like the source backend's try/catch; the session is closed wherever the program returns.
+     */
+    private Code generateMain() {
+        Code code = new Code(ARGS);
+        Label start = new Label();
+        code.place(start);
+        if (layout.isFlat()) {
+            generateBlock(code, root.getChildren());
+        } else {
+            code.pushInt(0);
+            code.pushInt(layout.getParagraphs().size() - 1);
+            code.invoke(Code.INVOKESTATIC, className, "perform", "(II)Z", false);
+            code.op(Code.POP, -1);
+        }
+        if (code.reachable) {
+            generateReturn(code);
+        }
+        if (sql.isUsed()) {
+            Label handler = new Label();
+            code.frame(handler, new String[] {ARGS}, "java/lang/Throwable");
+            int scope = code.scope();
+            int failure = code.allocate("java/lang/Throwable");
+            code.store(failure);
+            code.getStatic(className, "sql", "L" + SESSION + ";");
+            code.invoke(Code.INVOKEVIRTUAL, SESSION, "abort", "()V", false);
+            code.load(failure);
+            code.op(Code.ATHROW, -1);
+            code.release(scope);
+            code.handler(start, handler, handler);
+        }
+        return code;
+    }
+
+    /**
+     * Adds the same dispatch loop, dispatch switches and paragraph and chunk methods as the
+     * source backend generates.
+     */
+    private void generateParagraphs(List<Object[]> methods) {
+        int count = layout.getParagraphs().size();
+        Code perform = new Code(INT, INT);
+        int paragraph = perform.allocate(INT);
+        perform.load(0);
+        perform.store(paragraph);
+        Label loop = new Label();
+        perform.frame(loop);
+        perform.load(paragraph);
+        perform.invoke(Code.INVOKESTATIC, className, layout.getDispatches().get(0).name, "(I)I", false);
+        int next = perform.allocate(INT);
+        perform.store(next);
+        Label notStop = new Label();
+        perform.load(next);
+        perform.pushInt(ProcedureLayout.STOP);
+        perform.jump(Code.IF_ICMPNE, notStop, -2);
+        perform.pushInt(1);
+        perform.op(Code.IRETURN, -1);
+        perform.frame(notStop);
+        Label jumped = new Label();
+        perform.load(next);
+        perform.pushInt(ProcedureLayout.NEXT);
+        perform.jump(Code.IF_ICMPNE, jumped, -2);
+        Label advance = new Label();
+        perform.load(paragraph);
+        perform.load(1);
+        perform.jump(Code.IF_ICMPNE, advance, -2);
+        perform.pushInt(0);
+        perform.op(Code.IRETURN, -1);
+        perform.frame(advance);
+        Label check = new Label();
+        perform.load(paragraph);
+        perform.pushInt(1);
+        perform.op(Code.IADD, -1);
+        perform.store(paragraph);
+        perform.jump(Code.GOTO, check, 0);
+        perform.frame(jumped);
+        perform.load(next);
+        perform.store(paragraph);
+        perform.frame(check);
+        perform.load(paragraph);
+        perform.pushInt(count);
+        perform.jump(Code.IF_ICMPNE, loop, -2);
+        perform.pushInt(1); // fell through the end of the program
+        perform.op(Code.IRETURN, -1);
+        methods.add(new Object[] {ACC_STATIC, "perform", "(II)Z", perform});
+
+        for (ProcedureLayout.Dispatch dispatch : layout.getDispatches()) {
+            Code code = new Code(INT);
+            code.load(0);
+            if (dispatch.shift > 0) {
+                code.pushInt(dispatch.shift);
+                code.op(Code.ISHR, -1);
+            }
+            int cases = dispatch.shift > 0 ? dispatch.children.size() : dispatch.last - dispatch.first + 1;
+            Label[] targets = new Label[cases];
+            for (int i = 0; i < cases; i++) {
+                targets[i] = new Label();
+            }
+            code.tableSwitch(dispatch.shift > 0 ? dispatch.first >> dispatch.shift : dispatch.first, targets[cases - 1], targets);
+            for (int i = 0; i < cases; i++) {
+                code.frame(targets[i]);
+                if (dispatch.shift > 0) {
+                    code.load(0);
+                    code.invoke(Code.INVOKESTATIC, className, dispatch.children.get(i).name, "(I)I", false);
+                } else {
+                    code.invoke(Code.INVOKESTATIC, className, layout.getParagraphs().get(dispatch.first + i).method.name, "()I", false);
+                }
+                code.op(Code.IRETURN, -1);
+            }
+            methods.add(new Object[] {ACC_STATIC, dispatch.name, "(I)I", code});
+        }
+
+        for (ProcedureLayout.Method method : layout.getMethods()) {
+            Code code = new Code();
+            if (method.isDriver()) {
+                for (int i = 0; i < method.calls.size() - 1; i++) {
+                    Label fellThrough = new Label();
+                    code.invoke(Code.INVOKESTATIC, className, method.calls.get(i).name, "()I", false);
+                    code.op(Code.DUP, 1);
+                    code.pushInt(ProcedureLayout.NEXT);
+                    code.jump(Code.IF_ICMPEQ, fellThrough, -2);
+                    code.op(Code.IRETURN, -1);
+                    code.frame(fellThrough, new String[0], INT);
+                    code.op(Code.POP, -1);
+                }
+                code.invoke(Code.INVOKESTATIC, className, method.calls.get(method.calls.size() - 1).name, "()I", false);
+                code.op(Code.IRETURN, -1);
+            } else {
+                generateBlock(code, method.statements);
+                if (code.reachable) {
+                    code.pushInt(ProcedureLayout.NEXT);
+                    code.op(Code.IRETURN, -1);
+                }
+            }
+            methods.add(new Object[] {ACC_STATIC, method.name, "()I", code});
+        }
+    }
+
+    private void generateReturn(Code code) {
+        if (sql.isUsed()) {
+            code.getStatic(className, "sql", "L" + SESSION + ";");
+            code.invoke(Code.INVOKEVIRTUAL, SESSION, "close", "()V", false);
+        }
+        code.op(Code.RETURN, 0);
+    }
+
+    /**
+     * Generates the statements of a block, or a call of the method the layout moved them to,
+     * returning what it returns unless that is {@link ProcedureLayout#NEXT}, as the source backend does.
+     */
+    private void generateBlock(Code code, ASTNode block) {
+        ProcedureLayout.Method method = layout.outlined(block);
+        if (method == null) {
+            generateBlock(code, block.getChildren());
+            return;
+        }
+        code.invoke(Code.INVOKESTATIC, className, method.name, "()I", false);
+        if (!ProcedureLayout.completes(block.getChildren())) {
+            code.op(Code.IRETURN, -1);
+            return;
+        }
+        int scope = code.scope();
+        int next = code.allocate(INT);
+        Label carryOn = new Label();
+        code.store(next);
+        code.load(next);
+        code.pushInt(ProcedureLayout.NEXT);
+        code.jump(Code.IF_ICMPEQ, carryOn, -2);
+        code.load(next);
+        code.op(Code.IRETURN, -1);
+        code.frame(carryOn);
+        code.release(scope);
+    }
+
+    private void generateBlock(Code code, List<ASTNode> statements) {
+        for (ASTNode statement : statements) {
+            switch (statement.getKind()) {
+                case DISPLAY_STATEMENT:
+                    generateDisplay(code, statement);
+                    break;
+                case MOVE_STATEMENT:
+                    generateMove(code, statement);
+                    break;
+                case CALL_STATEMENT:
+                    generateCall(code, statement);
+                    break;
+                case EXEC_SQL:
+                    generateExecSQL(code, statement);
+                    break;
+                case COMPUTE_STATEMENT:
+                    generateCompute(code, statement);
+                    break;
+                case OPEN_STATEMENT:
+                    for (ASTNode file : statement.getChildren()) {
+                        getFile(code, file.getValue());
+                        code.invoke(Code.INVOKEVIRTUAL, FILE, "open" + file.getType(), "()V", false);
+                    }
+                    break;
+                case CLOSE_STATEMENT:
+                    for (ASTNode file : statement.getChildren()) {
+                        getFile(code, file.getValue());
+                        code.invoke(Code.INVOKEVIRTUAL, FILE, "close", "()V", false);
+                    }
+                    break;
+                case READ_STATEMENT:
+                case RETURN_STATEMENT:
+                    generateRead(code, statement);
+                    break;
+                case WRITE_STATEMENT:
+                case RELEASE_STATEMENT:
+                    generateWrite(code, statement);
+                    break;
+                case SORT_STATEMENT:
+                case MERGE_STATEMENT:
+                    generateSort(code, statement);
+                    break;
+                case PERFORM_STATEMENT:
+                    generatePerform(code, statement);
+                    break;
+                case GO_TO_STATEMENT:
+                    code.pushInt(layout.target(statement));
+                    code.op(Code.IRETURN, -1);
+                    break;
+                case STOP_RUN:
+                    if (layout.isFlat()) {
+                        generateReturn(code);
+                    } else {
+                        code.pushInt(ProcedureLayout.STOP);
+                        code.op(Code.IRETURN, -1);
+                    }
+                    break;
+            }
+            if (!ProcedureLayout.completes(statement)) {
+                return; // anything after STOP RUN or GO TO in this block is unreachable
+            }
+        }
+    }
+
+    /**
+     * Counts down a long local from the TIMES count around the performed paragraphs or
+     * inline statements, as the source backend's for loop does.
+     */
+    private void generatePerform(Code code, ASTNode statement) {
+        ASTNode times = statement.getChild(NodeKind.TIMES);
+        int scope = code.scope();
+        Label loop = new Label();
+        Label done = new Label();
+        int counter = -1;
+        if (times != null) {
+            DataField field = JavaCodeGenerator.timesField(times, fields);
+            if (field == null) {
+                code.pushLong(JavaCodeGenerator.timesLiteral(times));
+            } else {
+                read(code, field);
+            }
+            counter = code.allocate(LONG);
+            code.store(counter);
+            code.frame(loop);
+            code.load(counter);
+            code.pushLong(0);
+            code.op(Code.LCMP, -3);
+            code.jump(Code.IFLE, done, -1);
+        }
+        if (statement.getValue().isEmpty()) {
+            generateBlock(code, statement.getChild(NodeKind.BODY));
+        } else {
+            performRange(code, layout.range(statement), null);
+        }
+        if (times != null) {
+            if (code.reachable) {
+                code.load(counter);
+                code.pushLong(1);
+                code.op(Code.LSUB, -2);
+                code.store(counter);
+                code.jump(Code.GOTO, loop, 0);
+            }
+            code.frame(done);
+        }
+        code.release(scope);
+    }
+
+    /**
+     * Runs paragraphs first to last like the source backend: through the dispatch loop if
+     * one has a GO TO, else by calling each one's method, and returns
+     * {@link ProcedureLayout#STOP} if that ended the program.
+     * @param sort The sort file of an INPUT or OUTPUT PROCEDURE, ended before returning, or null.
+     */
+    private void performRange(Code code, int[] range, String sort) {
+        if (layout.jumps(range)) {
+            Label carryOn = new Label();
+            code.pushInt(range[0]);
+            code.pushInt(range[1]);
+            code.invoke(Code.INVOKESTATIC, className, "perform", "(II)Z", false);
+            code.jump(Code.IFEQ, carryOn, -1);
+            generateStop(code, sort);
+            code.frame(carryOn);
+            return;
+        }
+        for (int i = range[0]; i <= range[1]; i++) {
+            ProcedureLayout.Paragraph paragraph = layout.getParagraphs().get(i);
+            code.invoke(Code.INVOKESTATIC, className, paragraph.method.name, "()I", false);
+            if (paragraph.mayStop) {
+                Label carryOn = new Label();
+                code.pushInt(ProcedureLayout.STOP);
+                code.jump(Code.IF_ICMPNE, carryOn, -2);
+                generateStop(code, sort);
+                code.frame(carryOn);
+            } else {
+                code.op(Code.POP, -1);
+            }
+        }
+    }
+
+    private void generateStop(Code code, String sort) {
+        if (sort != null) {
+            getFile(code, sort);
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "end", "()V", false);
+        }
+        code.pushInt(ProcedureLayout.STOP);
+        code.op(Code.IRETURN, -1);
+    }
+
+    /**
+     * Prints the literal, and those of the DISPLAYs the optimizer merged into it with a line
+     * separator between each, with one println.
+     */
+    private void generateDisplay(Code code, ASTNode statement) {
+        code.getStatic("java/lang/System", "out", "Ljava/io/PrintStream;");
+        code.ldc(JavaCodeGenerator.literalText(statement.getValue()));
+        for (ASTNode line : statement.getChildren()) {
+            code.invoke(Code.INVOKESTATIC, "java/lang/System", "lineSeparator", "()L" + STRING + ";", false);
+            code.invoke(Code.INVOKEVIRTUAL, STRING, "concat", "(L" + STRING + ";)L" + STRING + ";", false);
+            code.ldc(JavaCodeGenerator.literalText(line.getValue()));
+            code.invoke(Code.INVOKEVIRTUAL, STRING, "concat", "(L" + STRING + ";)L" + STRING + ";", false);
+        }
+        code.invoke(Code.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(L" + STRING + ";)V", false);
+    }
+
+    /**
+     * Pushes the item's value: a field of its own, or a {@link Storage} get from its record.
+     */
+    private void read(Code code, DataField field) {
+        code.getStatic(className, field.javaName, field.inStorage() ? BYTES : field.descriptor());
+        if (field.inStorage()) {
+            code.pushInt(field.offset);
+            code.pushInt(field.size);
+            String extra = "";
+            if (field.kind == DataField.Kind.DECIMAL) {
+                code.pushInt(field.scale);
+                extra = "I";
+            }
+            code.invoke(Code.INVOKESTATIC, STORAGE, "get" + field.accessor(), "(" + BYTES + "II" + extra + ")" + field.descriptor(), false);
+        }
+    }
+
+    /**
+     * Stores the value on top of the stack into the item.
+     */
+    private void write(Code code, DataField field) {
+        if (!field.inStorage()) {
+            code.putStatic(className, field.javaName, field.descriptor());
+            return;
+        }
+        code.getStatic(className, field.javaName, BYTES);
+        code.pushInt(field.offset);
+        code.pushInt(field.size);
+        String extra = "";
+        if (field.kind != DataField.Kind.TEXT) {
+            code.pushInt(field.signed ? 1 : 0);
+            extra = "Z";
+        }
+        code.invoke(Code.INVOKESTATIC, STORAGE, "put" + field.accessor(), "(" + field.descriptor() + BYTES + "II" + extra + ")V", false);
+    }
+
+    private void generateMove(Code code, ASTNode statement) {
+        ASTNode source = statement.getChildren().get(0);
+        ASTNode target = statement.getChildren().get(1);
+        DataField field = fields.get(DataField.key(target));
+        if (source.getKind() == NodeKind.VARIABLE) {
+            DataField from = fields.get(DataField.key(source));
+            if (from.kind != DataField.Kind.TEXT && field.kind != DataField.Kind.TEXT) {
+                generateCompute(code, JavaCodeGenerator.numericMove(statement));
+            } else if (from.inStorage() && field.inStorage()) {
+                code.getStatic(className, from.javaName, BYTES);
+                code.pushInt(from.offset);
+                code.pushInt(from.size);
+                code.getStatic(className, field.javaName, BYTES);
+                code.pushInt(field.offset);
+                code.pushInt(field.size);
+                code.invoke(Code.INVOKESTATIC, STORAGE, "move", "(" + BYTES + "II" + BYTES + "II)V", false);
+            } else {
+                throw new RuntimeException("Cannot MOVE " + source.getValue() + " to " + target.getValue());
+            }
+            return;
+        }
+        String value = JavaCodeGenerator.moveValue(source.getValue(), field, target.getValue());
+        switch (field.kind) {
+            case LONG:
+                code.pushLong(field.moveLong(value));
+                break;
+            case DECIMAL:
+                newDecimal(code, field.moveDecimal(value));
+                break;
+            default:
+                code.ldc(field.moveText(value));
+        }
+        write(code, field);
+    }
+
+    private void getFile(Code code, String name) {
+        boolean sort = storage.getSymbols().getFile(name).isSort();
+        code.getStatic(className, JavaCodeGenerator.javaName(name), "L" + (sort ? SORT : FILE) + ";");
+    }
+
+    /**
+     * Reads into the record area and branches on the result, as the source backend's if/else does.
+     */
+    private void generateRead(Code code, ASTNode statement) {
+        FileDefinition file = storage.getSymbols().getFile(statement.getValue());
+        String area = storage.recordAreaOf(file);
+        ASTNode atEnd = statement.getChild(NodeKind.AT_END);
+        ASTNode notAtEnd = statement.getChild(NodeKind.NOT_AT_END);
+        ASTNode into = statement.getChild(NodeKind.INTO);
+        Label otherwise = new Label();
+        Label done = new Label();
+        getFile(code, file.getName());
+        code.getStatic(className, area, BYTES);
+        code.pushInt(0);
+        code.pushInt(file.getRecordLength());
+        if (file.isSort()) {
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "returnRecord", "(" + BYTES + "II)Z", false);
+        } else {
+            code.invoke(Code.INVOKEVIRTUAL, FILE, "read", "(" + BYTES + "II)Z", false);
+        }
+        code.jump(Code.IFEQ, otherwise, -1);
+        if (into != null) {
+            DataField field = JavaCodeGenerator.intoField(into, fields);
+            code.getStatic(className, area, BYTES);
+            code.pushInt(0);
+            code.pushInt(file.getRecordLength());
+            code.getStatic(className, field.javaName, BYTES);
+            code.pushInt(field.offset);
+            code.pushInt(field.size);
+            code.invoke(Code.INVOKESTATIC, STORAGE, "move", "(" + BYTES + "II" + BYTES + "II)V", false);
+        }
+        if (notAtEnd != null) {
+            generateBlock(code, notAtEnd);
+        }
+        if (atEnd != null) {
+            code.jump(Code.GOTO, done, 0);
+            code.frame(otherwise);
+            generateBlock(code, atEnd);
+            code.frame(done);
+        } else {
+            code.frame(otherwise);
+        }
+    }
+
+    private void generateWrite(Code code, ASTNode statement) {
+        FileDefinition file = JavaCodeGenerator.writtenFile(statement, storage.getSymbols());
+        DataField record = fields.get(DataField.key(statement.getChildren().get(0)));
+        ASTNode move = JavaCodeGenerator.fromMove(statement);
+        if (move != null) {
+            generateMove(code, move);
+        }
+        getFile(code, file.getName());
+        code.getStatic(className, record.javaName, BYTES);
+        code.pushInt(record.offset);
+        code.pushInt(record.size);
+        if (file.isSort()) {
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "release", "(" + BYTES + "II)V", false);
+        } else {
+            code.invoke(Code.INVOKEVIRTUAL, FILE, "write", "(" + BYTES + "II)V", false);
+        }
+    }
+
+    /**
+     * Emits the same {@link SortFile} calls as the source backend's SORT and MERGE.
+     */
+    private void generateSort(Code code, ASTNode statement) {
+        ASTNode input = statement.getChild(NodeKind.INPUT_PROCEDURE);
+        ASTNode output = statement.getChild(NodeKind.OUTPUT_PROCEDURE);
+        String files = "[L" + FILE + ";";
+        int[] keys = JavaCodeGenerator.sortKeys(statement, fields, storage);
+        getFile(code, statement.getValue());
+        code.pushInt(keys.length);
+        code.newIntArray();
+        for (int i = 0; i < keys.length; i++) {
+            code.op(Code.DUP, 1);
+            code.pushInt(i);
+            code.pushInt(keys[i]);
+            code.op(Code.IASTORE, -3);
+        }
+        if (statement.getKind() == NodeKind.MERGE_STATEMENT) {
+            pushFiles(code, statement, NodeKind.USING);
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "merge", "([I" + files + ")V", false);
+        } else {
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "begin", "([I)V", false);
+            if (input != null) {
+                performRange(code, layout.range(input), statement.getValue());
+            } else {
+                getFile(code, statement.getValue());
+                pushFiles(code, statement, NodeKind.USING);
+                code.invoke(Code.INVOKEVIRTUAL, SORT, "using", "(" + files + ")V", false);
+            }
+        }
+        getFile(code, statement.getValue());
+        if (output != null) {
+            code.op(Code.POP, -1);
+            performRange(code, layout.range(output), statement.getValue());
+            getFile(code, statement.getValue());
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "end", "()V", false);
+        } else {
+            pushFiles(code, statement, NodeKind.GIVING);
+            code.invoke(Code.INVOKEVIRTUAL, SORT, "giving", "(" + files + ")V", false);
+        }
+    }
+
+    private void pushFiles(Code code, ASTNode statement, NodeKind kind) {
+        List<ASTNode> files = new ArrayList<>();
+        for (ASTNode child : statement.getChildren()) {
+            if (child.getKind() == kind) {
+                files.add(child);
+            }
+        }
+        code.pushInt(files.size());
+        code.typeOp(Code.ANEWARRAY, FILE, 0);
+        for (int i = 0; i < files.size(); i++) {
+            code.op(Code.DUP, 1);
+            code.pushInt(i);
+            getFile(code, files.get(i).getValue());
+            code.op(Code.AASTORE, -3);
+        }
+    }
+
+    private static void newDecimal(Code code, String value) {
+        code.typeOp(Code.NEW, DECIMAL, 1);
+        code.op(Code.DUP, 1);
+        code.ldc(value);
+        code.invoke(Code.INVOKESPECIAL, DECIMAL, "<init>", "(L" + STRING + ";)V", false);
+    }
+
+    private void generateCall(Code code, ASTNode statement) {
+        List<ASTNode> parameters = statement.getChildren().subList(1, statement.getChildren().size());
+        code.pushInt(parameters.size());
+        code.typeOp(Code.ANEWARRAY, STRING, 0);
+        for (int i = 0; i < parameters.size(); i++) {
+            code.op(Code.DUP, 1);
+            code.pushInt(i);
+            DataField field = fields.get(DataField.key(parameters.get(i)));
+            read(code, field);
+            if (field.kind == DataField.Kind.LONG) {
+                code.pushInt(field.scale);
+                code.invoke(Code.INVOKESTATIC, FIXED, "toString", "(JI)L" + STRING + ";", false);
+            } else {
+                code.invoke(Code.INVOKESTATIC, STRING, "valueOf", "(L" + OBJECT + ";)L" + STRING + ";", false);
+            }
+            code.op(Code.AASTORE, -3);
+        }
+        code.invoke(Code.INVOKESTATIC, JavaCodeGenerator.calledClass(statement), "main", "(" + ARGS + ")V", false);
+    }
+
+    /**
+     * Emits the same {@link FixedPoint} calls as the source backend's COMPUTE: evaluate once
+     * into a local, then store into each receiving field and collect the size error flag.
+     */
+    private void generateCompute(Code code, ASTNode statement) {
+        List<ASTNode> targets = new ArrayList<>();
+        List<DataField> targetFields = new ArrayList<>();
+        ASTNode expression = null;
+        ASTNode sizeError = null;
+        ASTNode notSizeError = null;
+        for (ASTNode child : statement.getChildren()) {
+            switch (child.getKind()) {
+                case TARGET:
+                    targets.add(child);
+                    targetFields.add(fields.get(DataField.key(child.getChildren().get(0))));
+                    break;
+                case SIZE_ERROR:
+                    sizeError = child;
+                    break;
+                case NOT_SIZE_ERROR:
+                    notSizeError = child;
+                    break;
+                default:
+                    expression = child;
+            }
+        }
+        Arithmetic arithmetic = new Arithmetic(fields, targetFields);
+        boolean decimal = arithmetic.needsDecimal(expression);
+        int scale = arithmetic.scale(expression);
+        boolean checked = sizeError != null || notSizeError != null;
+        int scope = code.scope();
+
+        int result;
+        if (decimal) {
+            decimalExpression(code, arithmetic, expression);
+            result = code.allocate(DECIMAL);
+        } else {
+            longExpression(code, arithmetic, expression);
+            result = code.allocate(LONG);
+        }
+        code.store(result);
+        int flag = -1;
+        if (checked) {
+            code.pushInt(0);
+            flag = code.allocate(INT);
+            code.store(flag);
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            DataField target = targetFields.get(i);
+            int rounded = targets.get(i).getValue().equals("ROUNDED") ? 1 : 0;
+            String bigDecimal = "L" + DECIMAL + ";";
+            code.load(result);
+            if (target.kind == DataField.Kind.LONG) {
+                if (decimal) {
+                    code.pushInt(target.scale);
+                    code.pushInt(rounded);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "rescale", "(" + bigDecimal + "IZ)" + bigDecimal, false);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "toLong", "(" + bigDecimal + ")J", false);
+                } else {
+                    code.pushInt(scale);
+                    code.pushInt(target.scale);
+                    code.pushInt(rounded);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "rescale", "(JIIZ)J", false);
+                }
+            } else if (target.kind == DataField.Kind.DECIMAL) {
+                if (!decimal) {
+                    code.pushInt(scale);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "big", "(JI)" + bigDecimal, false);
+                }
+                if (target.digits > 0) {
+                    code.pushInt(target.scale);
+                    code.pushInt(rounded);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "rescale", "(" + bigDecimal + "IZ)" + bigDecimal, false);
+                }
+            } else {
+                throw new RuntimeException("COMPUTE into non-numeric item " + targets.get(i).getChildren().get(0).getValue());
+            }
+            String type = target.descriptor();
+            int value = code.allocate(target.kind == DataField.Kind.LONG ? LONG : DECIMAL);
+            code.store(value);
+            if (checked) {
+                code.load(flag);
+                code.load(value);
+                code.pushInt(target.digits);
+                code.invoke(Code.INVOKESTATIC, FIXED, "fits", "(" + type + "I)Z", false);
+                code.pushInt(1);
+                code.op(Code.IXOR, -1);
+                code.op(Code.IOR, -1);
+                code.store(flag);
+            }
+            read(code, target);
+            code.load(value);
+            code.pushInt(target.digits);
+            code.pushInt(target.signed ? 1 : 0);
+            code.invoke(Code.INVOKESTATIC, FIXED, checked ? "storeIfFits" : "store", "(" + type + type + "IZ)" + type, false);
+            write(code, target);
+        }
+        if (checked) {
+            Label otherwise = new Label();
+            Label done = new Label();
+            code.load(flag);
+            code.jump(Code.IFEQ, otherwise, -1);
+            if (sizeError != null) {
+                generateBlock(code, sizeError);
+            }
+            if (notSizeError != null) {
+                code.jump(Code.GOTO, done, 0);
+                code.frame(otherwise);
+                generateBlock(code, notSizeError);
+                code.frame(done);
+            } else {
+                code.frame(otherwise);
+            }
+        }
+        code.release(scope);
+    }
+
+    /**
+     * Pushes the value of an expression as a scaled long at scale {@code arithmetic.scale(node)}.
+     */
+    private void longExpression(Code code, Arithmetic arithmetic, ASTNode node) {
+        switch (node.getKind()) {
+            case LITERAL:
+                code.pushLong(Arithmetic.unscaled(node.getValue()));
+                return;
+            case VARIABLE:
+                read(code, arithmetic.field(node));
+                return;
+            case NEGATE:
+                longExpression(code, arithmetic, node.getChildren().get(0));
+                code.invoke(Code.INVOKESTATIC, FIXED, "negate", "(J)J", false);
+                return;
+            default:
+                ASTNode left = node.getChildren().get(0);
+                ASTNode right = node.getChildren().get(1);
+                switch (node.getValue()) {
+                    case "+":
+                    case "-":
+                        int scale = arithmetic.scale(node);
+                        aligned(code, arithmetic, left, scale);
+                        aligned(code, arithmetic, right, scale);
+                        code.invoke(Code.INVOKESTATIC, FIXED, node.getValue().equals("+") ? "add" : "subtract", "(JJ)J", false);
+                        return;
+                    case "*":
+                        longExpression(code, arithmetic, left);
+                        longExpression(code, arithmetic, right);
+                        code.invoke(Code.INVOKESTATIC, FIXED, "multiply", "(JJ)J", false);
+                        return;
+                    case "/":
+                        longExpression(code, arithmetic, left);
+                        longExpression(code, arithmetic, right);
+                        code.pushInt(arithmetic.divisionShift(node));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "divide", "(JJI)J", false);
+                        return;
+                    default:
+                        longExpression(code, arithmetic, left);
+                        code.pushInt(Arithmetic.exponent(node));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "power", "(JI)J", false);
+                }
+        }
+    }
+
+    private void aligned(Code code, Arithmetic arithmetic, ASTNode operand, int scale) {
+        longExpression(code, arithmetic, operand);
+        int operandScale = arithmetic.scale(operand);
+        if (operandScale != scale) {
+            code.pushInt(operandScale);
+            code.pushInt(scale);
+            code.pushInt(0);
+            code.invoke(Code.INVOKESTATIC, FIXED, "rescale", "(JIIZ)J", false);
+        }
+    }
+
+    /**
+     * Pushes the value of an expression as a BigDecimal.
+     */
+    private void decimalExpression(Code code, Arithmetic arithmetic, ASTNode node) {
+        String bigDecimal = "L" + DECIMAL + ";";
+        switch (node.getKind()) {
+            case LITERAL:
+                newDecimal(code, node.getValue());
+                return;
+            case VARIABLE:
+                DataField field = arithmetic.field(node);
+                read(code, field);
+                if (field.kind == DataField.Kind.LONG) {
+                    code.pushInt(field.scale);
+                    code.invoke(Code.INVOKESTATIC, FIXED, "big", "(JI)" + bigDecimal, false);
+                }
+                return;
+            case NEGATE:
+                decimalExpression(code, arithmetic, node.getChildren().get(0));
+                code.invoke(Code.INVOKESTATIC, FIXED, "negate", "(" + bigDecimal + ")" + bigDecimal, false);
+                return;
+            default:
+                decimalExpression(code, arithmetic, node.getChildren().get(0));
+                String binary = "(" + bigDecimal + bigDecimal + ")" + bigDecimal;
+                switch (node.getValue()) {
+                    case "+":
+                        decimalExpression(code, arithmetic, node.getChildren().get(1));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "add", binary, false);
+                        return;
+                    case "-":
+                        decimalExpression(code, arithmetic, node.getChildren().get(1));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "subtract", binary, false);
+                        return;
+                    case "*":
+                        decimalExpression(code, arithmetic, node.getChildren().get(1));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "multiply", binary, false);
+                        return;
+                    case "/":
+                        decimalExpression(code, arithmetic, node.getChildren().get(1));
+                        code.pushInt(arithmetic.scale(node));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "divide", "(" + bigDecimal + bigDecimal + "I)" + bigDecimal, false);
+                        return;
+                    default:
+                        code.pushInt(Arithmetic.exponent(node));
+                        code.invoke(Code.INVOKESTATIC, FIXED, "power", "(" + bigDecimal + "I)" + bigDecimal, false);
+                }
+        }
+    }
+
+    /**
+     * Emits the same {@link SQLSession} calls as the source backend's EXEC SQL.
+     */
+    private void generateExecSQL(Code code, ASTNode statement) {
+        EmbeddedSQL.Kind kind = EmbeddedSQL.kind(statement);
+        String session = "L" + SESSION + ";";
+        switch (kind) {
+            case NONE:
+            case DECLARE:
+                return;
+            case COMMIT:
+            case ROLLBACK:
+                code.getStatic(className, "sql", session);
+                code.invoke(Code.INVOKEVIRTUAL, SESSION, kind == EmbeddedSQL.Kind.COMMIT ? "commit" : "rollback", "()V", false);
+                break;
+            case FETCH:
+            case CLOSE:
+                code.getStatic(className, "sql", session);
+                code.pushInt(sql.numberOf(statement));
+                if (kind == EmbeddedSQL.Kind.FETCH) {
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "fetch", "(I)Z", false);
+                    generateRow(code, statement);
+                } else {
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "closeCursor", "(I)V", false);
+                }
+                break;
+            default:
+                code.getStatic(className, "sql", session);
+                code.pushInt(sql.numberOf(statement));
+                code.invoke(Code.INVOKEVIRTUAL, SESSION, "prepare", "(I)V", false);
+                List<DataField> inputs = sql.hostVariables(statement, NodeKind.INPUT);
+                for (int i = 0; i < inputs.size(); i++) {
+                    DataField input = inputs.get(i);
+                    code.getStatic(className, "sql", session);
+                    code.pushInt(i + 1);
+                    read(code, input);
+                    switch (input.kind) {
+                        case LONG:
+                            code.pushInt(input.scale);
+                            code.invoke(Code.INVOKEVIRTUAL, SESSION, "setLong", "(IJI)V", false);
+                            break;
+                        case DECIMAL:
+                            code.invoke(Code.INVOKEVIRTUAL, SESSION, "setDecimal", "(IL" + DECIMAL + ";)V", false);
+                            break;
+                        default:
+                            code.invoke(Code.INVOKEVIRTUAL, SESSION, "setText", "(IL" + STRING + ";)V", false);
+                    }
+                }
+                code.getStatic(className, "sql", session);
+                if (kind == EmbeddedSQL.Kind.QUERY) {
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "query", "()Z", false);
+                    generateRow(code, statement);
+                } else if (kind == EmbeddedSQL.Kind.OPEN) {
+                    code.pushInt(sql.numberOf(statement));
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "open", "(I)V", false);
+                } else {
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, kind == EmbeddedSQL.Kind.UPDATE ? "update" : "execute", "()V", false);
+                }
+        }
+        if (sql.getSqlCode() != null) {
+            code.getStatic(className, "sql", session);
+            code.invoke(Code.INVOKEVIRTUAL, SESSION, "sqlCode", "()J", false);
+            write(code, sql.getSqlCode());
+        }
+    }
+
+    /**
+     * Branches on the found flag on the stack and moves the row into the INTO host variables.
+     */
+    private void generateRow(Code code, ASTNode statement) {
+        String session = "L" + SESSION + ";";
+        Label noRow = new Label();
+        code.jump(Code.IFEQ, noRow, -1);
+        List<DataField> into = sql.hostVariables(statement, NodeKind.INTO);
+        if (into.isEmpty()) {
+            code.getStatic("java/lang/System", "out", "Ljava/io/PrintStream;");
+            code.getStatic(className, "sql", session);
+            code.pushInt(1);
+            code.invoke(Code.INVOKEVIRTUAL, SESSION, "getText", "(I)L" + STRING + ";", false);
+            code.invoke(Code.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(L" + STRING + ";)V", false);
+        }
+        for (int i = 0; i < into.size(); i++) {
+            DataField field = into.get(i);
+            code.getStatic(className, "sql", session);
+            code.pushInt(i + 1);
+            switch (field.kind) {
+                case LONG:
+                    code.pushInt(field.scale);
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "getLong", "(II)J", false);
+                    break;
+                case DECIMAL:
+                    code.pushInt(field.scale);
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "getDecimal", "(II)L" + DECIMAL + ";", false);
+                    break;
+                default:
+                    code.invoke(Code.INVOKEVIRTUAL, SESSION, "getText", "(I)L" + STRING + ";", false);
+            }
+            write(code, field);
+        }
+        code.frame(noRow);
+    }
+
+    /**
+     * A position in the code, possibly referenced before it is placed.
+     */
+    private static final class Label {
+        int offset = -1;
+        /** Each branch to the label placed later: where its instruction starts, where its offset goes, and its width. */
+        final List<int[]> fixups = new ArrayList<>(2);
+    }
+
+    /**
+     * The bytecode of one method together with its exception table and stack map frames.
+     * Every emit method states its effect on the operand stack, so max_stack comes for free.
+     */
+    private final class Code {
+        static final int ICONST_0 = 0x03;
+        static final int LCONST_0 = 0x09;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ILOAD = 0x15;
+        static final int LLOAD = 0x16;
+        static final int ALOAD = 0x19;
+        static final int ISTORE = 0x36;
+        static final int LSTORE = 0x37;
+        static final int ASTORE = 0x3a;
+        static final int IASTORE = 0x4f;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int IADD = 0x60;
+        static final int LSUB = 0x65;
+        static final int ISHR = 0x7a;
+        static final int IOR = 0x80;
+        static final int IXOR = 0x82;
+        static final int LCMP = 0x94;
+        static final int IFEQ = 0x99;
+        static final int IFLE = 0x9e;
+        static final int IF_ICMPEQ = 0x9f;
+        static final int IF_ICMPNE = 0xa0;
+        static final int GOTO = 0xa7;
+        static final int TABLESWITCH = 0xaa;
+        static final int IRETURN = 0xac;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int PUTSTATIC = 0xb3;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int INVOKEINTERFACE = 0xb9;
+        static final int NEW = 0xbb;
+        static final int NEWARRAY = 0xbc;
+        static final int ANEWARRAY = 0xbd;
+        static final int ATHROW = 0xbf;
+        static final int IFNULL = 0xc6;
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+        /** Verification types of the locals in scope, in slot order; a long takes two slots but one entry. */
+        private final List<String> locals = new ArrayList<>();
+        private final List<Integer> slots = new ArrayList<>();
+        private int nextSlot;
+        /** False after a return, goto or athrow until the next frame, where code is reachable again. */
+        boolean reachable = true;
+        private final List<Object[]> frames = new ArrayList<>();
+        private final List<Label[]> handlers = new ArrayList<>();
+
+        Code(String... parameters) {
+            for (String parameter : parameters) {
+                allocate(parameter);
+            }
+        }
+
+        /**
+         * Reserves a local variable until {@link #release} ends its scope.
+         * @param type {@link #LONG}, {@link #INT}, or an internal class name.
+         * @return Its slot.
+         */
+        int allocate(String type) {
+            int slot = nextSlot;
+            locals.add(type);
+            slots.add(slot);
+            nextSlot += type.equals(LONG) ? 2 : 1;
+            maxLocals = Math.max(maxLocals, nextSlot);
+            return slot;
+        }
+
+        /**
+         * @return A mark to pass to {@link #release} to free the locals allocated after it.
+         */
+        int scope() {
+            return locals.size();
+        }
+
+        void release(int scope) {
+            while (locals.size() > scope) {
+                locals.remove(locals.size() - 1);
+                nextSlot = slots.remove(slots.size() - 1);
+            }
+        }
+
+        String[] locals() {
+            return locals.toArray(new String[0]);
+        }
+
+        private String typeOf(int slot) {
+            return locals.get(slots.indexOf(slot));
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        private void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjust(stackDelta);
+            if (opcode == RETURN || opcode == IRETURN || opcode == ATHROW || opcode == GOTO) {
+                reachable = false;
+            }
+        }
+
+        void typeOp(int opcode, String internalName, int stackDelta) {
+            u1(opcode);
+            u2(pool.classRef(internalName));
+            adjust(stackDelta);
+        }
+
+        void fieldOp(int opcode, String owner, String name, String descriptor, int stackDelta) {
+            u1(opcode);
+            u2(pool.memberRef(ConstantPool.FIELD, owner, name, descriptor));
+            adjust(stackDelta);
+        }
+
+        void getStatic(String owner, String name, String descriptor) {
+            fieldOp(GETSTATIC, owner, name, descriptor, descriptor.equals(LONG) ? 2 : 1);
+        }
+
+        void putStatic(String owner, String name, String descriptor) {
+            fieldOp(PUTSTATIC, owner, name, descriptor, descriptor.equals(LONG) ? -2 : -1);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            int arguments = argumentSlots(descriptor);
+            u1(opcode);
+            u2(pool.memberRef(isInterface ? ConstantPool.INTERFACE_METHOD : ConstantPool.METHOD, owner, name, descriptor));
+            if (opcode == INVOKEINTERFACE) {
+                u1(arguments + 1);
+                u1(0);
+            }
+            char result = descriptor.charAt(descriptor.indexOf(')') + 1);
+            adjust(-arguments - (opcode == INVOKESTATIC ? 0 : 1) + (result == 'V' ? 0 : result == 'J' ? 2 : 1));
+        }
+
+        /**
+         * Replaces the length on the stack with a new int[] of that length.
+         */
+        void newIntArray() {
+            op(NEWARRAY, 0);
+            u1(10); // T_INT
+        }
+
+        void ldc(String value) {
+            int index = pool.string(value);
+            if (index < 256) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        void pushLong(long value) {
+            if (value == 0 || value == 1) {
+                op(LCONST_0 + (int) value, 2);
+            } else {
+                u1(LDC2_W);
+                u2(pool.longConstant(value));
+                adjust(2);
+            }
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                u1(value);
+            } else {
+                op(SIPUSH, 1);
+                u2(value);
+            }
+        }
+
+        /**
+         * Loads an allocated local with the instruction its type needs.
+         */
+        void load(int local) {
+            String type = typeOf(local);
+            localOp(type.equals(LONG) ? LLOAD : type.equals(INT) ? ILOAD : ALOAD, 0x1a, local, type.equals(LONG) ? 2 : 1);
+        }
+
+        void store(int local) {
+            String type = typeOf(local);
+            localOp(type.equals(LONG) ? LSTORE : type.equals(INT) ? ISTORE : ASTORE, 0x3b, local, type.equals(LONG) ? -2 : -1);
+        }
+
+        // The short forms (e.g. lload_1) come in groups of four per type, starting at shortBase for int
+        private void localOp(int opcode, int shortBase, int local, int stackDelta) {
+            int typeIndex = opcode - (shortBase == 0x1a ? ILOAD : ISTORE);
+            if (local <= 3) {
+                op(shortBase + typeIndex * 4 + local, stackDelta);
+            } else {
+                op(opcode, stackDelta);
+                u1(local);
+            }
+        }
+
+        /**
+         * Emits a branch; a goto from unreachable code, e.g. after a STOP RUN, is left out.
+         */
+        void jump(int opcode, Label target, int stackDelta) {
+            if (opcode == GOTO && !reachable) {
+                return;
+            }
+            int instruction = length;
+            op(opcode, stackDelta);
+            branch(target, instruction, 2);
+        }
+
+        /**
+         * Pops an int and jumps to the case for it, from low up, or else to the default.
+         */
+        void tableSwitch(int low, Label otherwise, Label[] cases) {
+            int instruction = length;
+            op(TABLESWITCH, -1);
+            while (length % 4 != 0) {
+                u1(0);
+            }
+            branch(otherwise, instruction, 4);
+            u4(low);
+            u4(low + cases.length - 1);
+            for (Label target : cases) {
+                branch(target, instruction, 4);
+            }
+            reachable = false;
+        }
+
+        // Writes the offset of a label from an instruction, or leaves room for it until the label is placed
+        private void branch(Label target, int instruction, int width) {
+            if (target.offset < 0) {
+                target.fixups.add(new int[] {instruction, length, width});
+            }
+            int delta = target.offset < 0 ? 0 : target.offset - instruction;
+            checkBranch(delta, width);
+            if (width == 4) {
+                u4(delta);
+            } else {
+                u2(delta);
+            }
+        }
+
+        // Branch instructions other than the switches hold a signed 16-bit offset
+        private void checkBranch(int delta, int width) {
+            if (width == 2 && (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE)) {
+                throw new RuntimeException("Branch offset " + delta + " too large for a class file");
+            }
+        }
+
+        void place(Label label) {
+            label.offset = length;
+            for (int[] fixup : label.fixups) {
+                int delta = length - fixup[0];
+                checkBranch(delta, fixup[2]);
+                for (int i = 0; i < fixup[2]; i++) {
+                    bytes[fixup[1] + i] = (byte) (delta >>> (8 * (fixup[2] - 1 - i)));
+                }
+            }
+        }
+
+        /**
+         * Places a jump target with an empty operand stack and the locals now in scope.
+         */
+        void frame(Label label) {
+            frame(label, locals());
+        }
+
+        /**
+         * Places a label that is a jump or handler target and records its stack map frame.
+         * Two labels at the same offset share the first one's frame.
+         * @param locals Types of the live locals, as {@link #LONG}, {@link #INT}, internal names or array descriptors.
+         * @param stack Types on the operand stack.
+         */
+        void frame(Label label, String[] locals, String... stack) {
+            place(label);
+            stack(stack.length);
+            reachable = true;
+            for (Object[] frame : frames) {
+                if ((Integer) frame[0] == label.offset) {
+                    return;
+                }
+            }
+            frames.add(new Object[] {label.offset, locals, stack});
+        }
+
+        private void stack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void handler(Label start, Label end, Label handler) {
+            handlers.add(new Label[] {start, end, handler});
+        }
+
+        /**
+         * @param method The name of the method, for the error if its code is too long.
+         * @return The complete Code attribute, starting with its name index.
+         */
+        byte[] toAttribute(ConstantPool pool, String method) {
+            if (length > 0xFFFF) {
+                throw new RuntimeException("Code of method " + method + " too large for a class file: " + length + " bytes");
+            }
+            ByteArrayOutputStream attribute = new ByteArrayOutputStream(length + 64);
+            try (DataOutputStream out = new DataOutputStream(attribute)) {
+                byte[] stackMap = stackMapTable(pool);
+                out.writeShort(pool.utf8("Code"));
+                out.writeInt(12 + length + handlers.size() * 8 + (stackMap.length > 0 ? 6 + stackMap.length : 0));
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(bytes, 0, length);
+                out.writeShort(handlers.size());
+                for (Label[] handler : handlers) {
+                    out.writeShort(handler[0].offset);
+                    out.writeShort(handler[1].offset);
+                    out.writeShort(handler[2].offset);
+                    out.writeShort(0); // any exception, like a finally block
+                }
+                if (stackMap.length > 0) {
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8("StackMapTable"));
+                    out.writeInt(stackMap.length);
+                    out.write(stackMap);
+                } else {
+                    out.writeShort(0);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return attribute.toByteArray();
+        }
+
+        /**
+         * Encodes every frame as a full_frame; compact frame types would only save a few bytes.
+         */
+        private byte[] stackMapTable(ConstantPool pool) throws IOException {
+            if (frames.isEmpty()) {
+                return new byte[0];
+            }
+            frames.sort((a, b) -> Integer.compare((Integer) a[0], (Integer) b[0]));
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(table);
+            out.writeShort(frames.size());
+            int previous = -1;
+            for (Object[] frame : frames) {
+                int offset = (Integer) frame[0];
+                if (offset == previous) {
+                    throw new IllegalStateException("Two stack map frames at offset " + offset);
+                }
+                out.writeByte(255);
+                out.writeShort(previous < 0 ? offset : offset - previous - 1);
+                writeTypes(out, pool, (String[]) frame[1]);
+                writeTypes(out, pool, (String[]) frame[2]);
+                previous = offset;
+            }
+            out.flush();
+            return table.toByteArray();
+        }
+
+        private void writeTypes(DataOutputStream out, ConstantPool pool, String[] types) throws IOException {
+            out.writeShort(types.length);
+            for (String type : types) {
+                if (type.equals(LONG)) {
+                    out.writeByte(4); // Long_variable_info
+                } else if (type.equals(INT)) {
+                    out.writeByte(1); // Integer_variable_info
+                } else {
+                    out.writeByte(7); // Object_variable_info
+                    out.writeShort(pool.classRef(type));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of argument slots of a method descriptor.
+     */
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            while (c == '[') {
+                c = descriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            } else if (c == 'J' || c == 'D') {
+                slots++;
+            }
+            slots++;
+            i++;
+        }
+        return slots;
+    }
+
+    /**
+     * The class file constant pool. Entries are shared: asking twice for the same
+     * constant returns the same index.
+     */
+    private static final class ConstantPool {
+        static final int UTF8 = 1;
+        static final int LONG_CONSTANT = 5;
+        static final int CLASS = 7;
+        static final int STRING = 8;
+        static final int FIELD = 9;
+        static final int METHOD = 10;
+        static final int INTERFACE_METHOD = 11;
+        static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream(512);
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        private int add(String key, int tag, int first, int second) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            indexes.put(key, count);
+            return count++;
+        }
+
+        int utf8(String value) {
+            String key = UTF8 + ":" + value;
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new RuntimeException("Constant too long for a class file: " + value.substring(0, 40) + "...", e);
+            }
+            indexes.put(key, count);
+            return count++;
+        }
+
+        /**
+         * @return The index of a long constant, which takes two entries of the pool.
+         */
+        int longConstant(long value) {
+            String key = LONG_CONSTANT + ":" + value;
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(LONG_CONSTANT);
+                out.writeLong(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            indexes.put(key, count);
+            count += 2;
+            return count - 2;
+        }
+
+        int classRef(String internalName) {
+            return add(CLASS + ":" + internalName, CLASS, utf8(internalName), -1);
+        }
+
+        int string(String value) {
+            return add(STRING + ":" + value, STRING, utf8(value), -1);
+        }
+
+        int memberRef(int tag, String owner, String name, String descriptor) {
+            int nameAndType = add(NAME_AND_TYPE + ":" + name + ":" + descriptor, NAME_AND_TYPE, utf8(name), utf8(descriptor));
+            return add(tag + ":" + owner + "." + name + ":" + descriptor, tag, classRef(owner), nameAndType);
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            if (count > 0xFFFF) {
+                throw new RuntimeException("Too many constants for a class file");
+            }
+            target.writeShort(count);
+            entries.writeTo(target);
+        }
+    }
+}
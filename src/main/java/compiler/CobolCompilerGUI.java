@@ -1,164 +1,313 @@
-package compiler;
-
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
-
-/**
- * CobolCompilerGUI - A graphical interface for the COBOL to Java Compiler.
- */
-public class CobolCompilerGUI {
-    private static JTextArea cobolInput;
-    private static JTextArea javaOutput;
-    private static JCheckBox debugMode;
-    private static JCheckBox darkMode;
-    private static JFileChooser fileChooser;
-    private static JFileChooser outputFolderChooser;
-    private static File selectedFile;
-    private static File outputFolder;
-    private static JFrame frame;
-    private static JLabel logoLabel;
-
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(CobolCompilerGUI::createAndShowGUI);
-    }
-
-    private static void createAndShowGUI() {
-        frame = new JFrame("COBOL to Java Compiler");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(900, 650);
-        frame.setLayout(new BorderLayout());
-
-        // Top Panel for Logo and File Selection
-        JPanel topPanel = new JPanel();
-        topPanel.setLayout(new BorderLayout());
-
-        logoLabel = new JLabel("Corn's COBOL to Java Compiler", SwingConstants.CENTER);
-        logoLabel.setFont(new Font("Arial", Font.BOLD, 18));
-        topPanel.add(logoLabel, BorderLayout.NORTH);
-
-        JPanel filePanel = new JPanel();
-        JButton browseButton = new JButton("Browse COBOL File");
-        browseButton.addActionListener(CobolCompilerGUI::browseFile);
-
-        JButton outputFolderButton = new JButton("Select Output Folder");
-        outputFolderButton.addActionListener(CobolCompilerGUI::selectOutputFolder);
-
-        debugMode = new JCheckBox("Enable Debugging");
-        darkMode = new JCheckBox("Dark Mode");
-        darkMode.addActionListener(CobolCompilerGUI::toggleDarkMode);
-
-        filePanel.add(browseButton);
-        filePanel.add(outputFolderButton);
-        filePanel.add(debugMode);
-        filePanel.add(darkMode);
-        topPanel.add(filePanel, BorderLayout.SOUTH);
-
-        // Center Panel for COBOL Input and Java Output
-        cobolInput = new JTextArea(15, 60);
-        javaOutput = new JTextArea(15, 60);
-        javaOutput.setEditable(false);
-
-        JPanel textPanel = new JPanel(new GridLayout(2, 1));
-        textPanel.add(new JScrollPane(cobolInput));
-        textPanel.add(new JScrollPane(javaOutput));
-
-        // Bottom Panel for Controls
-        JPanel controlPanel = new JPanel();
-        JButton compileButton = new JButton("Compile");
-        compileButton.addActionListener(CobolCompilerGUI::compileCobol);
-
-        JButton cancelButton = new JButton("Cancel Compilation");
-        cancelButton.addActionListener(CobolCompilerGUI::cancelCompilation);
-
-        controlPanel.add(compileButton);
-        controlPanel.add(cancelButton);
-
-        frame.add(topPanel, BorderLayout.NORTH);
-        frame.add(textPanel, BorderLayout.CENTER);
-        frame.add(controlPanel, BorderLayout.SOUTH);
-
-        frame.setVisible(true);
-    }
-
-    private static void cancelCompilation(ActionEvent e) {
-        int response = JOptionPane.showConfirmDialog(frame, "Are you sure you want to cancel?", "Cancel Compilation", JOptionPane.YES_NO_OPTION);
-        if (response == JOptionPane.YES_OPTION) {
-            javaOutput.setText("Compilation Canceled.");
-            javaOutput.setForeground(Color.RED);
-        }
-    }
-
-    private static void browseFile(ActionEvent e) {
-        fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Select COBOL File");
-        int returnValue = fileChooser.showOpenDialog(frame);
-        if (returnValue == JFileChooser.APPROVE_OPTION) {
-            selectedFile = fileChooser.getSelectedFile();
-            try {
-                cobolInput.setText(new String(Files.readAllBytes(selectedFile.toPath())));
-            } catch (Exception ex) {
-                showError("Error reading file: " + ex.getMessage());
-            }
-        }
-    }
-
-    private static void selectOutputFolder(ActionEvent e) {
-        outputFolderChooser = new JFileChooser();
-        outputFolderChooser.setDialogTitle("Select Output Folder");
-        outputFolderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-        int returnValue = outputFolderChooser.showOpenDialog(frame);
-        if (returnValue == JFileChooser.APPROVE_OPTION) {
-            outputFolder = outputFolderChooser.getSelectedFile();
-        }
-    }
-
-    private static void toggleDarkMode(ActionEvent e) {
-        boolean darkModeEnabled = darkMode.isSelected();
-        Color backgroundColor = darkModeEnabled ? Color.DARK_GRAY : Color.WHITE;
-        Color textColor = darkModeEnabled ? Color.WHITE : Color.BLACK;
-        frame.getContentPane().setBackground(backgroundColor);
-        cobolInput.setBackground(backgroundColor);
-        cobolInput.setForeground(textColor);
-        javaOutput.setBackground(backgroundColor);
-        javaOutput.setForeground(textColor);
-    }
-
-    private static void compileCobol(ActionEvent e) {
-        try {
-            if (selectedFile == null) {
-                showError("No valid COBOL file selected.");
-                return;
-            }
-            if (debugMode.isSelected()) Debugger.enableDebugging();
-            String sourceCode = cobolInput.getText();
-
-            List<Token> tokens = CobolLexer.tokenize(sourceCode);
-            CobolParser parser = new CobolParser(tokens);
-            ASTNode ast = parser.parseProgram();
-
-            JavaCodeGenerator generator = new JavaCodeGenerator(ast);
-            String javaCode = generator.generateCode();
-
-            javaOutput.setText(javaCode);
-            javaOutput.setForeground(Color.GREEN); // Show success in green text
-
-            if (outputFolder != null) {
-                Files.write(Paths.get(outputFolder.getAbsolutePath(), "ConvertedProgram.java"), javaCode.getBytes());
-            }
-        } catch (Exception ex) {
-            javaOutput.setText("Compilation Error: " + ex.getMessage());
-            javaOutput.setForeground(Color.RED); // Show errors in red text
-        }
-    }
-
-    private static void showError(String message) {
-        javaOutput.setText(message);
-        javaOutput.setForeground(Color.RED);
-        JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
-    }
-}
+package compiler;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CobolCompilerGUI - A graphical interface for the COBOL to Java Compiler.
+ * Programs are compiled by a {@link SwingWorker} off the event thread, which shows each phase
+ * as it starts and publishes the Java code when it is done. Cancelling interrupts the worker,
+ * which the lexer, parser and generator check for. An {@link IncrementalFrontEnd} follows every
+ * edit of the input; the worker parses a snapshot of it, only again where the input changed, and
+ * hands the parsed program back for the next compilation.
+ */
+public class CobolCompilerGUI {
+    /** How long typing has to pause before the program is compiled again. */
+    private static final int AUTO_COMPILE_DELAY_MILLIS = 500;
+
+    private static JTextArea cobolInput;
+    private static JTextArea javaOutput;
+    private static JCheckBox debugMode;
+    private static JCheckBox darkMode;
+    private static JFileChooser fileChooser;
+    private static JFileChooser outputFolderChooser;
+    private static File selectedFile;
+    private static File outputFolder;
+    private static JFrame frame;
+    private static JLabel logoLabel;
+    private static JCheckBox autoCompile;
+    private static JProgressBar progress;
+    private static Timer autoCompileTimer;
+    private static CompileWorker worker;
+    private static IncrementalFrontEnd frontEnd;
+
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(CobolCompilerGUI::createAndShowGUI);
+    }
+
+    private static void createAndShowGUI() {
+        frame = new JFrame("COBOL to Java Compiler");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(900, 650);
+        frame.setLayout(new BorderLayout());
+
+        // Top Panel for Logo and File Selection
+        JPanel topPanel = new JPanel();
+        topPanel.setLayout(new BorderLayout());
+
+        logoLabel = new JLabel("Corn's COBOL to Java Compiler", SwingConstants.CENTER);
+        logoLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        topPanel.add(logoLabel, BorderLayout.NORTH);
+
+        JPanel filePanel = new JPanel();
+        JButton browseButton = new JButton("Browse COBOL File");
+        browseButton.addActionListener(CobolCompilerGUI::browseFile);
+
+        JButton outputFolderButton = new JButton("Select Output Folder");
+        outputFolderButton.addActionListener(CobolCompilerGUI::selectOutputFolder);
+
+        debugMode = new JCheckBox("Enable Debugging");
+        autoCompile = new JCheckBox("Compile While Typing");
+        darkMode = new JCheckBox("Dark Mode");
+        darkMode.addActionListener(CobolCompilerGUI::toggleDarkMode);
+
+        filePanel.add(browseButton);
+        filePanel.add(outputFolderButton);
+        filePanel.add(debugMode);
+        filePanel.add(autoCompile);
+        filePanel.add(darkMode);
+        topPanel.add(filePanel, BorderLayout.SOUTH);
+
+        // Center Panel for COBOL Input and Java Output
+        cobolInput = new JTextArea(15, 60);
+        javaOutput = new JTextArea(15, 60);
+        javaOutput.setEditable(false);
+        autoCompileTimer = new Timer(AUTO_COMPILE_DELAY_MILLIS, e -> startCompilation(false));
+        autoCompileTimer.setRepeats(false);
+        listenForEdits();
+
+        JPanel textPanel = new JPanel(new GridLayout(2, 1));
+        textPanel.add(new JScrollPane(cobolInput));
+        textPanel.add(new JScrollPane(javaOutput));
+
+        // Bottom Panel for Controls
+        JPanel controlPanel = new JPanel();
+        JButton compileButton = new JButton("Compile");
+        compileButton.addActionListener(CobolCompilerGUI::compileCobol);
+
+        JButton cancelButton = new JButton("Cancel Compilation");
+        cancelButton.addActionListener(CobolCompilerGUI::cancelCompilation);
+
+        progress = new JProgressBar(0, CompilerMetrics.Phase.values().length);
+        progress.setStringPainted(true);
+        progress.setString("Ready");
+
+        controlPanel.add(compileButton);
+        controlPanel.add(cancelButton);
+        controlPanel.add(progress);
+
+        frame.add(topPanel, BorderLayout.NORTH);
+        frame.add(textPanel, BorderLayout.CENTER);
+        frame.add(controlPanel, BorderLayout.SOUTH);
+
+        frame.setVisible(true);
+    }
+
+    /**
+     * Passes every edit on to the front end and restarts the auto-compile delay. Reading a file
+     * replaces the document, so this is called again after each one.
+     */
+    private static void listenForEdits() {
+        frontEnd = new IncrementalFrontEnd(cobolInput.getText());
+        cobolInput.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                try {
+                    frontEnd.edit(e.getOffset(), 0, e.getDocument().getText(e.getOffset(), e.getLength()));
+                } catch (BadLocationException ex) {
+                    frontEnd = new IncrementalFrontEnd(cobolInput.getText());
+                }
+                edited();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                frontEnd.edit(e.getOffset(), e.getLength(), "");
+                edited();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // attributes only
+            }
+
+            private void edited() {
+                if (autoCompile.isSelected()) {
+                    autoCompileTimer.restart();
+                }
+            }
+        });
+    }
+
+    private static void cancelCompilation(ActionEvent e) {
+        if (worker == null || worker.isDone()) {
+            showError("No compilation is running.");
+            return;
+        }
+        int response = JOptionPane.showConfirmDialog(frame, "Are you sure you want to cancel?", "Cancel Compilation", JOptionPane.YES_NO_OPTION);
+        if (response == JOptionPane.YES_OPTION && worker.cancel(true)) {
+            progress.setValue(0);
+            progress.setString("Canceled");
+            javaOutput.setText("Compilation Canceled.");
+            javaOutput.setForeground(Color.RED);
+        }
+    }
+
+    private static void browseFile(ActionEvent e) {
+        fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Select COBOL File");
+        int returnValue = fileChooser.showOpenDialog(frame);
+        if (returnValue == JFileChooser.APPROVE_OPTION) {
+            selectedFile = fileChooser.getSelectedFile();
+            try (Reader reader = Files.newBufferedReader(selectedFile.toPath(), StandardCharsets.ISO_8859_1)) {
+                cobolInput.read(reader, selectedFile);
+                listenForEdits();
+            } catch (Exception ex) {
+                showError("Error reading file: " + ex.getMessage());
+            }
+        }
+    }
+
+    private static void selectOutputFolder(ActionEvent e) {
+        outputFolderChooser = new JFileChooser();
+        outputFolderChooser.setDialogTitle("Select Output Folder");
+        outputFolderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        int returnValue = outputFolderChooser.showOpenDialog(frame);
+        if (returnValue == JFileChooser.APPROVE_OPTION) {
+            outputFolder = outputFolderChooser.getSelectedFile();
+        }
+    }
+
+    private static void toggleDarkMode(ActionEvent e) {
+        boolean darkModeEnabled = darkMode.isSelected();
+        Color backgroundColor = darkModeEnabled ? Color.DARK_GRAY : Color.WHITE;
+        Color textColor = darkModeEnabled ? Color.WHITE : Color.BLACK;
+        frame.getContentPane().setBackground(backgroundColor);
+        cobolInput.setBackground(backgroundColor);
+        cobolInput.setForeground(textColor);
+        javaOutput.setBackground(backgroundColor);
+        javaOutput.setForeground(textColor);
+    }
+
+    private static void compileCobol(ActionEvent e) {
+        if (cobolInput.getText().isBlank()) {
+            showError("No COBOL source to compile: type a program or browse for a file.");
+            return;
+        }
+        startCompilation(true);
+    }
+
+    /**
+     * Compiles the current text in the background, cancelling a compilation still running
+     * for an older text.
+     * @param writeOutput True to also write the Java code into the output folder, if one is selected.
+     */
+    private static void startCompilation(boolean writeOutput) {
+        autoCompileTimer.stop();
+        String sourceCode = cobolInput.getText();
+        if (sourceCode.isBlank()) {
+            return;
+        }
+        if (worker != null) {
+            worker.cancel(true);
+        }
+        if (debugMode.isSelected()) Debugger.enableDebugging();
+        worker = new CompileWorker(frontEnd, writeOutput ? outputFolder : null, debugMode.isSelected());
+        progress.setValue(0);
+        progress.setString("Starting");
+        worker.execute();
+    }
+
+    /**
+     * CompileWorker - Parses and compiles one snapshot of the input on a background thread.
+     */
+    private static final class CompileWorker extends SwingWorker<String, CompilerMetrics.Phase> {
+        private final IncrementalFrontEnd editor;
+        private final IncrementalFrontEnd snapshot;
+        private final File outputFolder;
+        private final boolean debug;
+        /** Set by the background thread once the snapshot is parsed. */
+        private CompilationUnit unit;
+
+        /**
+         * @param editor The front end following the input; only its snapshot is used off the event thread.
+         * @param debug True to show the unit's debug log after its output.
+         */
+        CompileWorker(IncrementalFrontEnd editor, File outputFolder, boolean debug) {
+            this.editor = editor;
+            this.snapshot = editor.snapshot();
+            this.outputFolder = outputFolder;
+            this.debug = debug;
+        }
+
+        @Override
+        protected String doInBackground() throws Exception {
+            publish(CompilerMetrics.Phase.PARSE);
+            unit = new CompilationUnit("Program", snapshot);
+            unit.setPhaseListener(this::publish);
+            String javaCode = unit.compile("Program");
+            if (outputFolder != null) {
+                CompilationUnit.checkInterrupted();
+                publish(CompilerMetrics.Phase.WRITE);
+                Files.write(Paths.get(outputFolder.getAbsolutePath(), "ConvertedProgram.java"), javaCode.getBytes());
+            }
+            return javaCode;
+        }
+
+        @Override
+        protected void process(List<CompilerMetrics.Phase> phases) {
+            if (this != worker || isCancelled()) {
+                return;
+            }
+            CompilerMetrics.Phase phase = phases.get(phases.size() - 1);
+            progress.setValue(phase.ordinal());
+            progress.setString(phase.name().charAt(0) + phase.name().substring(1).toLowerCase(Locale.ROOT) + "...");
+        }
+
+        @Override
+        protected void done() {
+            if (this != worker || isCancelled()) {
+                return; // replaced by a newer compilation, or canceled
+            }
+            editor.update(snapshot);
+            try {
+                javaOutput.setText(withDebugLog(get()));
+                javaOutput.setForeground(Color.GREEN); // Show success in green text
+                progress.setValue(progress.getMaximum());
+                progress.setString("Done");
+            } catch (ExecutionException ex) {
+                javaOutput.setText(withDebugLog("Compilation Error: " + ex.getCause().getMessage()));
+                javaOutput.setForeground(Color.RED); // Show errors in red text
+                progress.setValue(0);
+                progress.setString("Failed");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String withDebugLog(String text) {
+            if (!debug || unit == null || unit.getDebugLog().isEmpty()) {
+                return text;
+            }
+            return text + "\n\n----- Debug Log -----\n" + String.join("\n", unit.getDebugLog());
+        }
+    }
+
+    private static void showError(String message) {
+        javaOutput.setText(message);
+        javaOutput.setForeground(Color.RED);
+        JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+}
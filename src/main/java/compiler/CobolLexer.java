@@ -1,42 +1,360 @@
-package compiler;
-
-import java.util.*;
-import java.util.regex.*;
-
-/**
- * CobolLexer - Converts COBOL source code into tokens.
- */
-public class CobolLexer {
-    private static final List<TokenDefinition> TOKEN_DEFINITIONS = TokenDefinitions.getTokenDefinitions();
-
-    /**
-     * Tokenizes the COBOL source code.
-     * @param sourceCode COBOL source as a string.
-     * @return List of tokens.
-     */
-    public static List<Token> tokenize(String sourceCode) {
-        List<Token> tokens = new ArrayList<>();
-        String remainingCode = sourceCode;
-
-        while (!remainingCode.isEmpty()) {
-            remainingCode = remainingCode.trim();
-            boolean matched = false;
-
-            for (TokenDefinition def : TOKEN_DEFINITIONS) {
-                Matcher matcher = def.getPattern().matcher(remainingCode);
-                if (matcher.find() && matcher.start() == 0) {
-                    tokens.add(new Token(def.getType(), matcher.group()));
-                    remainingCode = remainingCode.substring(matcher.end());
-                    matched = true;
-                    break;
-                }
-            }
-
-            if (!matched) {
-                throw new RuntimeException("Unexpected token in source: " + remainingCode);
-            }
-        }
-
-        return tokens;
-    }
-}
+package compiler;
+
+import java.util.*;
+
+/**
+ * CobolLexer - Converts COBOL source code into tokens.
+ * The source is scanned once, left to right, by cursor position. Each token is
+ * recognized with the same precedence and word-boundary rules as the patterns in
+ * {@link TokenDefinitions}, so the token stream is identical to matching those
+ * regular expressions one after another. The one exception is the character-string
+ * after PIC or PICTURE, which is read whole as a PICTURE token (e.g. "S9(5)V99").
+ */
+public class CobolLexer {
+    private static final Keyword[][] DIVISION_HEADERS_BY_LETTER = indexByFirstLetter(Keyword.words(true));
+    private static final Keyword[][] KEYWORDS_BY_LETTER = indexByFirstLetter(Keyword.words(false));
+
+    /**
+     * Tokenizes the COBOL source code.
+     * @param sourceCode COBOL source as a string.
+     * @return List of tokens.
+     */
+    public static List<Token> tokenize(String sourceCode) {
+        return lex(sourceCode).asList();
+    }
+
+    /**
+     * Tokenizes the COBOL source code into a compact token buffer.
+     * The source is only read through {@link CharSequence#charAt(int)}, so it can be a
+     * view over a mapped file from {@link CobolSourceReader}.
+     * @param sourceCode COBOL source text.
+     * @return Buffer of tokens referring back into the source.
+     */
+    public static TokenBuffer lex(CharSequence sourceCode) {
+        return lex(sourceCode, new TokenBuffer(sourceCode, sourceCode.length() / 4));
+    }
+
+    /**
+     * Tokenizes the source into a buffer reused from an earlier unit, see {@link TokenBuffer#reset}.
+     * @param arena The buffer to fill; its previous tokens are discarded.
+     */
+    static TokenBuffer lex(CharSequence sourceCode, TokenBuffer arena) {
+        TokenBuffer tokens = arena.reset(sourceCode);
+        scan(sourceCode, tokens, 0, null, 0, 0, 0);
+        return tokens;
+    }
+
+    /**
+     * Lexes the edited part of a source whose tokens from before the edit are known.
+     * Lexing stops at the first token start at or after the inserted text where an old token
+     * started too, {@code delta} characters earlier, with no picture string expected in
+     * either: the rest of the source lexes as it did before.
+     * @param sourceCode The edited source.
+     * @param region Receives the tokens lexed; its source must be {@code sourceCode}.
+     * @param oldFrom Index of the old token to start at; no picture string may be expected there.
+     * @param old The tokens before the edit, still at their old offsets.
+     * @param syncFrom End offset of the inserted text.
+     * @param delta Number of characters the edit added, negative if it removed some.
+     * @return Index of the first old token that is still right, or the number of old tokens.
+     */
+    static int relex(CharSequence sourceCode, TokenBuffer region, int oldFrom, TokenBuffer old, int syncFrom, int delta) {
+        // An edit before the first token moves it, so lexing starts over from the beginning
+        int pos = oldFrom > 0 && oldFrom < old.size() ? old.start(oldFrom) : 0;
+        return scan(sourceCode, region, pos, old, oldFrom, syncFrom, delta);
+    }
+
+    /**
+     * @return True if the lexer expected a picture string when it reached the token, so that
+     *         lexing cannot start over there.
+     */
+    static boolean expectsPicture(TokenBuffer tokens, int index) {
+        if (tokens.is(index, TokenKind.PICTURE)) {
+            return true;
+        }
+        if (index == 0 || !tokens.is(index, TokenKind.IDENTIFIER) || !tokens.text(index).equals("IS")) {
+            return false;
+        }
+        int previous = index - 1;
+        return tokens.isKeyword(previous, Keyword.PIC) || expectsPicture(tokens, previous)
+                || (tokens.is(previous, TokenKind.IDENTIFIER) && tokens.text(previous).equals("PICTURE"));
+    }
+
+    /**
+     * Lexes from {@code pos} to the end of the source, or, with old tokens given, until lexing
+     * is back in step with them, see {@link #relex}.
+     */
+    private static int scan(CharSequence sourceCode, TokenBuffer tokens, int pos, TokenBuffer old, int oldIndex,
+                            int syncFrom, int delta) {
+        int end = sourceCode.length();
+        while (end > 0 && sourceCode.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        boolean pictureNext = false;
+        while (true) {
+            if ((tokens.size() & 0xFFF) == 0) {
+                CompilationUnit.checkInterrupted();
+            }
+            while (pos < end && sourceCode.charAt(pos) <= ' ') {
+                pos++;
+            }
+            if (pos >= end) {
+                break;
+            }
+            if (old != null && pos >= syncFrom && !pictureNext) {
+                while (oldIndex < old.size() && old.start(oldIndex) + delta < pos) {
+                    oldIndex++;
+                }
+                if (oldIndex < old.size() && old.start(oldIndex) + delta == pos && !expectsPicture(old, oldIndex)) {
+                    return oldIndex;
+                }
+            }
+
+            if (pictureNext) {
+                if (pos + 2 < end && regionMatches(sourceCode, pos, "IS") && sourceCode.charAt(pos + 2) <= ' ') {
+                    pos = addToken(tokens, TokenKind.IDENTIFIER, pos, pos + 2);
+                    continue;
+                }
+                pictureNext = false;
+                pos = addToken(tokens, TokenKind.PICTURE, pos, scanPicture(sourceCode, pos, end));
+                continue;
+            }
+
+            char c = sourceCode.charAt(pos);
+            Keyword word;
+            int tokenEnd;
+            if (c >= 'A' && c <= 'Z') {
+                if ((word = matchWord(sourceCode, pos, end, DIVISION_HEADERS_BY_LETTER)) != null) {
+                    tokens.addKeyword(TokenKind.DIVISION_HEADER, word, pos);
+                    pos += word.text().length();
+                    continue;
+                }
+                if ((word = matchWord(sourceCode, pos, end, KEYWORDS_BY_LETTER)) != null) {
+                    tokens.addKeyword(TokenKind.KEYWORD, word, pos);
+                    pos += word.text().length();
+                    pictureNext = word == Keyword.PIC;
+                    continue;
+                }
+                if ((tokenEnd = scanIdentifier(sourceCode, pos, end)) > 0) {
+                    pictureNext = tokenEnd - pos == 7 && regionMatches(sourceCode, pos, "PICTURE");
+                    pos = addToken(tokens, TokenKind.IDENTIFIER, pos, tokenEnd);
+                    continue;
+                }
+            }
+            if (c == '"' && (tokenEnd = scanString(sourceCode, pos, end)) > 0) {
+                pos = addToken(tokens, TokenKind.STRING, pos, tokenEnd);
+                continue;
+            }
+            if (c >= '0' && c <= '9' && (tokenEnd = scanNumber(sourceCode, pos, end)) > 0) {
+                pos = addToken(tokens, TokenKind.NUMBER, pos, tokenEnd);
+                continue;
+            }
+            if (c == '*' && pos + 1 < end && sourceCode.charAt(pos + 1) == '>') {
+                pos = addToken(tokens, TokenKind.COMMENT, pos, scanComment(sourceCode, pos + 2, end));
+                continue;
+            }
+
+            switch (c) {
+                case '<':
+                case '>': {
+                    char next = pos + 1 < end ? sourceCode.charAt(pos + 1) : 0;
+                    boolean pair = next == '=' || (c == '<' && next == '>');
+                    pos = addToken(tokens, TokenKind.OPERATOR, pos, pos + (pair ? 2 : 1));
+                    break;
+                }
+                case '=':
+                case '+':
+                case '-':
+                case '*':
+                case '/':
+                    pos = addToken(tokens, TokenKind.OPERATOR, pos, pos + 1);
+                    break;
+                case ',':
+                case '.':
+                case '"':
+                    pos = addToken(tokens, TokenKind.PUNCTUATION, pos, pos + 1);
+                    break;
+                case '(':
+                case ')':
+                case ':':
+                    pos = addToken(tokens, TokenKind.SYMBOL, pos, pos + 1);
+                    break;
+                default:
+                    throw new RuntimeException("Unexpected token in source: " + sourceCode.subSequence(pos, end));
+            }
+        }
+
+        return old != null ? old.size() : tokens.size();
+    }
+
+    private static int addToken(TokenBuffer tokens, TokenKind kind, int start, int end) {
+        tokens.add(kind, start, end);
+        return end;
+    }
+
+    /**
+     * Returns the first word of the table that appears at {@code pos} and ends on a word boundary.
+     */
+    private static Keyword matchWord(CharSequence source, int pos, int end, Keyword[][] wordsByLetter) {
+        Keyword[] candidates = wordsByLetter[source.charAt(pos) - 'A'];
+        for (Keyword candidate : candidates) {
+            String text = candidate.text();
+            int wordEnd = pos + text.length();
+            if (wordEnd <= end && regionMatches(source, pos, text)
+                    && isWordBoundary(source, pos, wordEnd, end)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionMatches(CharSequence source, int pos, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (source.charAt(pos + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches {@code [A-Z][A-Z0-9-]*} followed by a word boundary, backing off the
+     * way a greedy regex would.
+     * @return End offset of the identifier, or -1 if none ends on a boundary.
+     */
+    private static int scanIdentifier(CharSequence source, int pos, int end) {
+        int run = pos + 1;
+        while (run < end) {
+            char c = source.charAt(run);
+            if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+                run++;
+            } else {
+                break;
+            }
+        }
+        for (int candidate = run; candidate > pos; candidate--) {
+            if (isWordBoundary(source, pos, candidate, end)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Matches a double-quoted literal. Literals may span lines.
+     * @return End offset after the closing quote, or -1 if it is never closed.
+     */
+    private static int scanString(CharSequence source, int pos, int end) {
+        for (int i = pos + 1; i < end; i++) {
+            if (source.charAt(i) == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Matches {@code \d+(\.\d+)?} followed by a word boundary.
+     * @return End offset of the number, or -1 if it does not end on a boundary.
+     */
+    private static int scanNumber(CharSequence source, int pos, int end) {
+        int integerEnd = skipDigits(source, pos, end);
+        if (integerEnd + 1 < end && source.charAt(integerEnd) == '.' && isDigit(source.charAt(integerEnd + 1))) {
+            int fractionEnd = skipDigits(source, integerEnd + 1, end);
+            if (isWordBoundary(source, pos, fractionEnd, end)) {
+                return fractionEnd;
+            }
+        }
+        return isWordBoundary(source, pos, integerEnd, end) ? integerEnd : -1;
+    }
+
+    /**
+     * Matches a picture character-string: everything up to the next space, except a
+     * trailing period or comma, which separates the clause instead.
+     */
+    private static int scanPicture(CharSequence source, int pos, int end) {
+        int pictureEnd = pos;
+        while (pictureEnd < end && source.charAt(pictureEnd) > ' ') {
+            pictureEnd++;
+        }
+        char last = source.charAt(pictureEnd - 1);
+        if (pictureEnd - pos > 1 && (last == '.' || last == ',' || last == ';')) {
+            pictureEnd--;
+        }
+        return pictureEnd;
+    }
+
+    /**
+     * Skips to the end of the line, which terminates a floating comment.
+     */
+    private static int scanComment(CharSequence source, int pos, int end) {
+        while (pos < end) {
+            char c = source.charAt(pos);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(CharSequence source, int pos, int end) {
+        while (pos < end && isDigit(source.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Word boundary test with the semantics of {@code \b} in {@link java.util.regex.Pattern}.
+     * The token starting at {@code from} acts as the start of input, as if it were matched on its own.
+     */
+    private static boolean isWordBoundary(CharSequence source, int from, int index, int end) {
+        boolean left = index > from && isWordChar(source, from, index - 1);
+        boolean right = index < end && isWordChar(source, from, index);
+        return left != right;
+    }
+
+    private static boolean isWordChar(CharSequence source, int from, int index) {
+        char c = source.charAt(index);
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_';
+        }
+        if (Character.isLetterOrDigit(c)) {
+            return true;
+        }
+        if (Character.getType(c) != Character.NON_SPACING_MARK) {
+            return false;
+        }
+        // A combining mark counts as part of the letter or digit it is attached to.
+        for (int i = index - 1; i >= from; i--) {
+            char base = source.charAt(i);
+            if (Character.isLetterOrDigit(base)) {
+                return true;
+            }
+            if (Character.getType(base) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static Keyword[][] indexByFirstLetter(Keyword[] words) {
+        List<List<Keyword>> buckets = new ArrayList<>();
+        for (int i = 0; i < 26; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (Keyword word : words) {
+            buckets.get(word.text().charAt(0) - 'A').add(word);
+        }
+        Keyword[][] index = new Keyword[26][];
+        for (int i = 0; i < 26; i++) {
+            index[i] = buckets.get(i).toArray(new Keyword[0]);
+        }
+        return index;
+    }
+}
@@ -1,200 +1,1161 @@
-package compiler;
-
-import java.util.List;
-
-/**
- * CobolParser - Converts COBOL tokens into an Abstract Syntax Tree (AST).
- */
-public class CobolParser {
-    private final List<Token> tokens;
-    private int position = 0;
-
-    /**
-     * Initializes the COBOL Parser.
-     * @param tokens The list of tokens from the lexer.
-     */
-    public CobolParser(List<Token> tokens) {
-        this.tokens = tokens;
-    }
-
-    /**
-     * Parses the entire COBOL program into an AST.
-     * @return The root AST node representing the program.
-     */
-    public ASTNode parseProgram() {
-        ASTNode programNode = new ASTNode("Program");
-
-
-        // Call skipCobolDivisions() to ignore COBOL division headers before parsing statements
-        skipCobolDivisions();
-
-        while (!isAtEnd()) {
-            programNode.addChild(parseStatement());
-        }
-        return programNode;
-    }
-
-    /**
-     * Skips COBOL division headers like "IDENTIFICATION DIVISION.", "DATA DIVISION."
-     */
-    private void skipCobolDivisions() {
-        while (!isAtEnd()) {
-            Token token = peek();
-            if (token.type().equals("DIVISION_HEADER")) {
-                consume("DIVISION_HEADER"); //  Consume "IDENTIFICATION", "DATA", or "PROCEDURE"
-                consume("KEYWORD", "DIVISION"); //  Consume "DIVISION"
-                consume("PUNCTUATION", "."); //  Consume the period after "DIVISION"
-            } else {
-                break;
-            }
-        }
-    }
-
-    /**
-     * Parses a COBOL statement.
-     * Supports DISPLAY, MOVE, STOP RUN, CALL, EXEC SQL, and more.
-     * @return An ASTNode representing the statement.
-     */
-    private ASTNode parseStatement() {
-        Token token = peek();
-
-        if (match("KEYWORD", "DISPLAY")) {
-            return parseDisplayStatement();
-        } else if (match("KEYWORD", "MOVE")) {
-            return parseMoveStatement();
-        } else if (match("KEYWORD", "STOP")) {
-            return parseStopRunStatement();
-        } else if (match("KEYWORD", "CALL")) {
-            return parseCallStatement();
-        } else if (match("KEYWORD", "EXEC")) {
-            return parseExecSQLStatement();
-        } else {
-            throw new RuntimeException("Unexpected token: " + token.value());
-        }
-    }
-
-    /**
-     * Parses a `DISPLAY` statement.
-     * Example: DISPLAY "Hello World".
-     */
-    private ASTNode parseDisplayStatement() {
-        consume("KEYWORD", "DISPLAY");
-        Token value = consume("STRING");
-        consume("PUNCTUATION", ".");
-
-        return new ASTNode("DisplayStatement", value.value());
-    }
-
-    /**
-     * Parses a `MOVE` statement.
-     * Example: MOVE 10 TO VAR.
-     */
-    private ASTNode parseMoveStatement() {
-        consume("KEYWORD", "MOVE");
-        Token value = consume("NUMBER");
-        consume("KEYWORD", "TO");
-        Token variable = consume("IDENTIFIER");
-        consume("PUNCTUATION", ".");
-
-        ASTNode moveNode = new ASTNode("MoveStatement");
-        moveNode.addChild(new ASTNode("Value", value.value()));
-        moveNode.addChild(new ASTNode("Variable", variable.value()));
-
-        return moveNode;
-    }
-
-    /**
-     * Parses a `STOP RUN` statement.
-     */
-    private ASTNode parseStopRunStatement() {
-        consume("KEYWORD", "STOP");
-        consume("KEYWORD", "RUN");
-        consume("PUNCTUATION", ".");
-
-        return new ASTNode("StopRun");
-    }
-
-    /**
-     * Parses a `CALL` statement.
-     * Example: CALL "SUBROUTINE" USING PARAM1, PARAM2.
-     */
-    private ASTNode parseCallStatement() {
-        consume("KEYWORD", "CALL");
-        Token subroutineName = consume("STRING");
-
-        ASTNode callNode = new ASTNode("CallStatement");
-        callNode.addChild(new ASTNode("Subroutine", subroutineName.value()));
-
-        if (match("KEYWORD", "USING")) {
-            while (!match("PUNCTUATION", ".")) {
-                Token param = consume("IDENTIFIER");
-                callNode.addChild(new ASTNode("Parameter", param.value()));
-                match("PUNCTUATION", ",");
-            }
-        } else {
-            consume("PUNCTUATION", ".");
-        }
-
-        return callNode;
-    }
-
-    /**
-     * Parses an `EXEC SQL` statement.
-     */
-    private ASTNode parseExecSQLStatement() {
-        consume("KEYWORD", "EXEC");
-        consume("KEYWORD", "SQL");
-
-        StringBuilder sqlQuery = new StringBuilder();
-        while (!match("KEYWORD", "END-EXEC")) {
-            sqlQuery.append(consumeAny().value()).append(" ");
-        }
-        consume("PUNCTUATION", ".");
-
-        return new ASTNode("ExecSQL", sqlQuery.toString());
-    }
-
-    // Overloaded method: Allows consuming a token by type only
-    private Token consume(String type) {
-        if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
-        Token token = tokens.get(position);
-        if (token.type().equals(type)) {
-            position++;
-            return token;
-        }
-        throw new RuntimeException("Expected " + type + " but found " + token.value());
-    }
-
-    // Original method: Requires both type and specific value
-    private Token consume(String type, String value) {
-        Token token = tokens.get(position);
-        if (token.type().equals(type) && token.value().equals(value)) {
-            position++;
-            return token;
-        }
-        throw new RuntimeException("Expected " + value + " but found " + token.value());
-    }
-
-    private Token consumeAny() {
-        return tokens.get(position++);
-    }
-
-    private boolean match(String type, String value) {
-        if (isAtEnd()) return false;
-        Token token = tokens.get(position);
-        if (token.type().equals(type) && token.value().equals(value)) {
-            position++;
-            return true;
-        }
-        return false;
-    }
-
-    private Token peek() {
-        return tokens.get(position);
-    }
-
-    private boolean isAtEnd() {
-        return position >= tokens.size();
-    }
-
-}
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CobolParser - Converts COBOL tokens into an Abstract Syntax Tree (AST).
+ * Tokens are matched by kind and keyword id against a {@link TokenBuffer}.
+ * Data description entries are not part of the AST; they are declared in the
+ * unit's {@link SymbolTable}.
+ */
+public class CobolParser {
+    /** Words that start a clause of a data description entry rather than name it. */
+    private static final Set<String> DATA_CLAUSE_WORDS = Set.of(
+            "REDEFINES", "PICTURE", "USAGE", "VALUE", "VALUES", "RENAMES", "SIGN", "JUSTIFIED", "JUST",
+            "BLANK", "SYNC", "SYNCHRONIZED", "EXTERNAL", "GLOBAL");
+    /** Clause words that do not affect storage layout and are skipped. */
+    private static final Set<String> IGNORED_DATA_WORDS = Set.of(
+            "SIGN", "IS", "LEADING", "TRAILING", "SEPARATE", "CHARACTER", "JUSTIFIED", "JUST", "RIGHT", "LEFT",
+            "BLANK", "ZERO", "SYNC", "SYNCHRONIZED", "EXTERNAL", "GLOBAL");
+    /** Words that end the list of keys or files of a SORT or MERGE. */
+    private static final Set<String> SORT_PHRASE_WORDS = Set.of(
+            "ON", "WITH", "DUPLICATES", "COLLATING", "GIVING", "RELEASE", "RETURN");
+    /** Words after EXIT that make it leave a paragraph, section, inline PERFORM or program. */
+    private static final Set<String> EXIT_PHRASE_WORDS = Set.of("PARAGRAPH", "SECTION", "PERFORM", "PROGRAM");
+    private static final Set<String> FIGURATIVE_CONSTANTS = Set.of(
+            "ZERO", "ZEROS", "ZEROES", "SPACE", "SPACES", "HIGH-VALUE", "HIGH-VALUES", "LOW-VALUE", "LOW-VALUES",
+            "QUOTE", "QUOTES", "NULL", "NULLS");
+
+    private final TokenBuffer tokens;
+    private final SymbolTable symbolTable;
+    private int position = 0;
+    /** The file whose FD is being parsed; its level-01 entries are its records. */
+    private FileDefinition currentFile;
+
+    /**
+     * Initializes the COBOL Parser.
+     * @param tokens The list of tokens from the lexer.
+     */
+    public CobolParser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    /**
+     * Initializes the COBOL Parser over a token buffer.
+     * @param tokens The token buffer from {@link CobolLexer#lex(CharSequence)}.
+     */
+    public CobolParser(TokenBuffer tokens) {
+        this(tokens, new SymbolTable());
+    }
+
+    /**
+     * Initializes the COBOL Parser for a compilation unit.
+     * @param tokens The token buffer from {@link CobolLexer#lex(CharSequence)}.
+     * @param symbolTable The unit's symbol table, which receives the DATA DIVISION entries.
+     */
+    public CobolParser(TokenBuffer tokens, SymbolTable symbolTable) {
+        this.tokens = tokens;
+        this.symbolTable = symbolTable;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Parses the entire COBOL program into an AST.
+     * @return The root AST node representing the program; its value is the PROGRAM-ID.
+     *         Its children are the statements before the first paragraph, then a
+     *         "Paragraph" or "Section" node per header, in order, holding the statements
+     *         up to the next header.
+     */
+    public ASTNode parseProgram() {
+        ASTNode programNode = new ASTNode(NodeKind.PROGRAM, parseDivisions());
+        parseStatements(programNode);
+        while (!isAtEnd()) {
+            programNode.addChild(parseParagraph());
+        }
+        return programNode;
+    }
+
+    /**
+     * Parses everything before the first procedure statement: the IDENTIFICATION and DATA
+     * DIVISION and the PROCEDURE DIVISION header.
+     * @return The PROGRAM-ID, or "" if there is no IDENTIFICATION DIVISION.
+     */
+    String parseDivisions() {
+        String programId = check(Keyword.IDENTIFICATION) ? parseIdentificationDivision() : "";
+        if (check(Keyword.DATA)) {
+            parseDataDivision();
+        }
+        if (check(Keyword.PROCEDURE)) {
+            parseProcedureDivisionHeader();
+        }
+
+        // Call skipCobolDivisions() to ignore COBOL division headers before parsing statements
+        skipCobolDivisions();
+        return programId;
+    }
+
+    /**
+     * Parses procedure statements into {@code parent} up to the next paragraph or section header.
+     */
+    void parseStatements(ASTNode parent) {
+        while (!isAtEnd()) {
+            CompilationUnit.checkInterrupted();
+            if (match(TokenKind.PUNCTUATION, '.')) {
+                continue; // end of sentence
+            }
+            if (isProcedureHeader()) {
+                return;
+            }
+            parent.addChild(parseStatement());
+        }
+    }
+
+    /**
+     * Parses a paragraph or section header and the statements up to the next one.
+     * @return The "Paragraph" or "Section" node.
+     */
+    ASTNode parseParagraph() {
+        ASTNode paragraph = parseProcedureHeader();
+        parseStatements(paragraph);
+        return paragraph;
+    }
+
+    /**
+     * @return True if only comments are left.
+     */
+    boolean atEnd() {
+        return isAtEnd();
+    }
+
+    /**
+     * @return Index of the next token to parse.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Parses the IDENTIFICATION DIVISION and skips everything up to the next division
+     * header, including the ENVIRONMENT DIVISION, except the SELECT entries.
+     * @return The PROGRAM-ID.
+     */
+    private String parseIdentificationDivision() {
+        consume(Keyword.IDENTIFICATION);
+        consume(Keyword.DIVISION);
+        consume(TokenKind.PUNCTUATION, '.');
+        consume(Keyword.PROGRAM_ID);
+        consume(TokenKind.PUNCTUATION, '.');
+        String programId = check(TokenKind.STRING)
+                ? unquote(tokens.text(consume(TokenKind.STRING)))
+                : tokens.text(consume(TokenKind.IDENTIFIER));
+        while (!isAtEnd() && !check(TokenKind.DIVISION_HEADER)) {
+            if (matchWord("SELECT")) {
+                parseSelect();
+            } else {
+                position++;
+            }
+        }
+        return programId;
+    }
+
+    /**
+     * Parses a FILE-CONTROL entry into the symbol table.
+     * Example: SELECT CUSTOMERS ASSIGN TO "customers.dat" ORGANIZATION IS LINE SEQUENTIAL.
+     * ACCESS MODE, FILE STATUS and other clauses are skipped.
+     */
+    private void parseSelect() {
+        matchWord("OPTIONAL");
+        FileDefinition file = new FileDefinition(tokens.text(consume(TokenKind.IDENTIFIER)));
+        while (!isAtEnd() && !check(TokenKind.PUNCTUATION, '.')) {
+            if (matchWord("ASSIGN")) {
+                match(Keyword.TO);
+                if (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("DISK")
+                        && position + 1 < tokens.size() && tokens.is(position + 1, TokenKind.STRING)) {
+                    position++;
+                }
+                if (check(TokenKind.STRING)) {
+                    file.setAssignment(unquote(tokens.text(consumeAny())), true);
+                } else {
+                    file.setAssignment(tokens.text(consume(TokenKind.IDENTIFIER)), false);
+                }
+            } else if (matchWord("ORGANIZATION")) {
+                matchWord("IS");
+                if (matchWord("LINE")) {
+                    file.setOrganization(FileDefinition.Organization.LINE_SEQUENTIAL);
+                } else {
+                    matchWord("RECORD");
+                }
+                if (!matchWord("SEQUENTIAL")) {
+                    throw new RuntimeException("Unsupported organization of file " + file.getName() + ": "
+                            + tokens.text(position));
+                }
+            } else {
+                position++;
+            }
+        }
+        consume(TokenKind.PUNCTUATION, '.');
+        symbolTable.declareFile(file);
+    }
+
+    /**
+     * Parses the DATA DIVISION into the symbol table and computes the record layouts.
+     */
+    private void parseDataDivision() {
+        consume(Keyword.DATA);
+        consume(Keyword.DIVISION);
+        consume(TokenKind.PUNCTUATION, '.');
+        while (!isAtEnd() && !check(TokenKind.DIVISION_HEADER)) {
+            CompilationUnit.checkInterrupted();
+            if (check(TokenKind.NUMBER)) {
+                parseDataEntry();
+            } else if (matchWord("FD")) {
+                parseFileDescription();
+            } else if (matchWord("SD")) {
+                parseFileDescription();
+                currentFile.setSort(true);
+            } else if (match(Keyword.WORKING_STORAGE) || check(TokenKind.IDENTIFIER)) {
+                // WORKING-STORAGE, LOCAL-STORAGE, LINKAGE or FILE section header
+                if (check(TokenKind.IDENTIFIER)) {
+                    position++;
+                }
+                consume(Keyword.SECTION);
+                consume(TokenKind.PUNCTUATION, '.');
+                currentFile = null;
+            } else {
+                throw new RuntimeException("Unexpected token in DATA DIVISION: " + tokens.text(position));
+            }
+        }
+        symbolTable.computeLayout();
+    }
+
+    /**
+     * Parses an FD or SD entry; the records that follow it, up to the next FD, SD or section, are the file's.
+     * Example: FD CUSTOMERS RECORD VARYING FROM 10 TO 200 CHARACTERS.
+     * A file whose records vary in size, by RECORD VARYING, RECORD CONTAINS n TO m or
+     * RECORDING MODE V, is written with record descriptor words.
+     */
+    private void parseFileDescription() {
+        String name = tokens.text(consume(TokenKind.IDENTIFIER));
+        currentFile = symbolTable.getFile(name);
+        if (currentFile == null) {
+            throw new RuntimeException("FD for file " + name + " without SELECT");
+        }
+        while (!isAtEnd() && !check(TokenKind.PUNCTUATION, '.')) {
+            if (matchWord("VARYING")) {
+                currentFile.setVariable(true);
+            } else if (matchWord("MODE")) {
+                matchWord("IS");
+                if (matchWord("V")) {
+                    currentFile.setVariable(true);
+                }
+            } else if (check(TokenKind.NUMBER)) {
+                position++;
+                if (match(Keyword.TO)) {
+                    currentFile.setVariable(true);
+                }
+            } else {
+                position++; // BLOCK CONTAINS, LABEL RECORDS, DATA RECORD IS and the like
+            }
+        }
+        consume(TokenKind.PUNCTUATION, '.');
+    }
+
+    /**
+     * Parses one data description entry.
+     * Example: 05 AMOUNT PIC S9(7)V99 COMP-3 VALUE 0.
+     */
+    private void parseDataEntry() {
+        int level = Integer.parseInt(tokens.text(consume(TokenKind.NUMBER)));
+        String name = "FILLER";
+        if (check(TokenKind.IDENTIFIER) && !DATA_CLAUSE_WORDS.contains(tokens.text(position))
+                && Usage.of(tokens.text(position)) == null) {
+            name = tokens.text(consume(TokenKind.IDENTIFIER));
+        }
+        DataItem item = new DataItem(level, name);
+
+        while (!match(TokenKind.PUNCTUATION, '.')) {
+            if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
+            String word = tokens.text(position);
+            Usage usage = Usage.of(word);
+            if (matchWord("REDEFINES")) {
+                item.setRedefines(symbolTable.findRedefined(item, tokens.text(consume(TokenKind.IDENTIFIER))));
+            } else if (match(Keyword.PIC) || matchWord("PICTURE")) {
+                matchWord("IS");
+                item.setPicture(tokens.text(consume(TokenKind.PICTURE)));
+            } else if (matchWord("USAGE")) {
+                matchWord("IS");
+                item.setUsage(parseUsage());
+            } else if (usage != null && !check(TokenKind.STRING)) {
+                position++;
+                item.setUsage(usage);
+            } else if (match(Keyword.OCCURS)) {
+                parseOccurs(item);
+            } else if (matchWord("VALUE") || matchWord("VALUES")) {
+                if (!matchWord("IS")) {
+                    matchWord("ARE");
+                }
+                do {
+                    item.addValue(parseLiteral());
+                    if (matchWord("THRU") || matchWord("THROUGH")) {
+                        item.addValue(parseLiteral());
+                    }
+                    match(TokenKind.PUNCTUATION, ',');
+                } while (item.isConditionName() && !check(TokenKind.PUNCTUATION, '.'));
+            } else if (matchWord("RENAMES")) {
+                DataItem first = resolve(tokens.text(consume(TokenKind.IDENTIFIER)));
+                DataItem last = matchWord("THRU") || matchWord("THROUGH")
+                        ? resolve(tokens.text(consume(TokenKind.IDENTIFIER))) : null;
+                item.setRenames(first, last);
+            } else if ((check(TokenKind.IDENTIFIER) && IGNORED_DATA_WORDS.contains(word))
+                    || check(Keyword.WHEN)) {
+                position++;
+            } else {
+                throw new RuntimeException("Unexpected token in data description of " + name + ": " + word);
+            }
+        }
+        symbolTable.declare(item);
+        if (currentFile != null && level == 1) {
+            currentFile.addRecord(item);
+        }
+    }
+
+    private Usage parseUsage() {
+        String word = tokens.text(consumeAny());
+        Usage usage = Usage.of(word);
+        if (usage == null) {
+            throw new RuntimeException("Unknown USAGE " + word);
+        }
+        return usage;
+    }
+
+    /**
+     * Parses "OCCURS n [TO m] [TIMES] [DEPENDING ON x] [ASCENDING KEY IS k...] [INDEXED BY i...]".
+     * A variable-size table is laid out at its maximum size.
+     */
+    private void parseOccurs(DataItem item) {
+        int occurs = Integer.parseInt(tokens.text(consume(TokenKind.NUMBER)));
+        if (match(Keyword.TO)) {
+            occurs = Integer.parseInt(tokens.text(consume(TokenKind.NUMBER)));
+        }
+        match(Keyword.TIMES);
+        item.setOccurs(occurs);
+        while (true) {
+            if (matchWord("DEPENDING")) {
+                matchWord("ON");
+                consume(TokenKind.IDENTIFIER);
+            } else if (match(Keyword.ASCENDING) || match(Keyword.DESCENDING) || matchWord("INDEXED")) {
+                if (!matchWord("KEY")) {
+                    matchWord("BY");
+                }
+                matchWord("IS");
+                while (check(TokenKind.IDENTIFIER) && !DATA_CLAUSE_WORDS.contains(tokens.text(position))
+                        && Usage.of(tokens.text(position)) == null) {
+                    position++;
+                    match(TokenKind.PUNCTUATION, ',');
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parses a VALUE literal: a string, a signed number, ALL literal, or a figurative constant.
+     * @return The literal as written, e.g. "-12.5", "\"ABC\"" or "SPACES".
+     */
+    private String parseLiteral() {
+        if (check(TokenKind.STRING) || check(TokenKind.NUMBER)) {
+            return tokens.text(consumeAny());
+        }
+        if (check(TokenKind.OPERATOR, '-') || check(TokenKind.OPERATOR, '+')) {
+            String sign = tokens.text(consumeAny());
+            return sign + tokens.text(consume(TokenKind.NUMBER));
+        }
+        if (match(Keyword.ALL)) {
+            return "ALL " + tokens.text(consume(TokenKind.STRING));
+        }
+        if (check(TokenKind.IDENTIFIER) && FIGURATIVE_CONSTANTS.contains(tokens.text(position))) {
+            return tokens.text(consumeAny());
+        }
+        throw new RuntimeException("Expected a literal but found " + tokens.text(position));
+    }
+
+    private DataItem resolve(String name) {
+        DataItem item = symbolTable.lookup(name);
+        if (item == null) {
+            throw new RuntimeException("Unknown data item " + name);
+        }
+        return item;
+    }
+
+    /**
+     * Parses "PROCEDURE DIVISION [USING a b ...]."
+     */
+    private void parseProcedureDivisionHeader() {
+        consume(Keyword.PROCEDURE);
+        consume(Keyword.DIVISION);
+        if (match(Keyword.USING)) {
+            while (check(TokenKind.IDENTIFIER)) {
+                position++;
+                match(TokenKind.PUNCTUATION, ',');
+            }
+        }
+        consume(TokenKind.PUNCTUATION, '.');
+    }
+
+    /**
+     * Skips COBOL division headers like "IDENTIFICATION DIVISION.", "DATA DIVISION."
+     */
+    private void skipCobolDivisions() {
+        while (!isAtEnd()) {
+            if (check(TokenKind.DIVISION_HEADER)) {
+                consume(TokenKind.DIVISION_HEADER); //  Consume "IDENTIFICATION", "DATA", or "PROCEDURE"
+                consume(Keyword.DIVISION); //  Consume "DIVISION"
+                consume(TokenKind.PUNCTUATION, '.'); //  Consume the period after "DIVISION"
+            } else {
+                break;
+            }
+        }
+    }
+
+    // A paragraph name followed by a period, or a section name followed by SECTION
+    private boolean isProcedureHeader() {
+        if (!check(TokenKind.IDENTIFIER) || tokens.text(position).equals("EXIT") || position + 1 >= tokens.size()) {
+            return false;
+        }
+        return tokens.isChar(position + 1, TokenKind.PUNCTUATION, '.') || tokens.isKeyword(position + 1, Keyword.SECTION);
+    }
+
+    /**
+     * Parses "name." or "name SECTION [priority]." into an empty "Paragraph" or "Section" node.
+     * A section's own statements are those before its first paragraph.
+     */
+    private ASTNode parseProcedureHeader() {
+        String name = tokens.text(consume(TokenKind.IDENTIFIER));
+        boolean section = match(Keyword.SECTION);
+        if (section && check(TokenKind.NUMBER)) {
+            position++;
+        }
+        consume(TokenKind.PUNCTUATION, '.');
+        return new ASTNode(section ? NodeKind.SECTION : NodeKind.PARAGRAPH, name);
+    }
+
+    /**
+     * Parses a COBOL statement.
+     * Supports DISPLAY, MOVE, STOP RUN, CALL, EXEC SQL, COMPUTE, the sequential file verbs,
+     * SORT, MERGE, RELEASE and RETURN, and PERFORM, GO TO and EXIT.
+     * @return An ASTNode representing the statement.
+     */
+    private ASTNode parseStatement() {
+        if (check(Keyword.DISPLAY)) {
+            return parseDisplayStatement();
+        } else if (check(Keyword.MOVE)) {
+            return parseMoveStatement();
+        } else if (check(Keyword.STOP_RUN)) {
+            return parseStopRunStatement();
+        } else if (check(Keyword.CALL)) {
+            return parseCallStatement();
+        } else if (check(Keyword.EXEC)) {
+            return parseExecSQLStatement();
+        } else if (check(Keyword.COMPUTE)) {
+            return parseComputeStatement();
+        } else if (check(Keyword.OPEN)) {
+            return parseOpenStatement();
+        } else if (check(Keyword.CLOSE)) {
+            return parseCloseStatement();
+        } else if (check(Keyword.READ)) {
+            return parseReadStatement();
+        } else if (check(Keyword.WRITE)) {
+            return parseWriteStatement();
+        } else if (check(Keyword.SORT) || check(Keyword.MERGE)) {
+            return parseSortStatement();
+        } else if (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("RELEASE")) {
+            return parseReleaseStatement();
+        } else if (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("RETURN")) {
+            return parseReturnStatement();
+        } else if (check(Keyword.PERFORM)) {
+            return parsePerformStatement();
+        } else if (check(Keyword.GOTO) || (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("GO"))) {
+            return parseGoToStatement();
+        } else if (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("EXIT")) {
+            return parseExitStatement();
+        } else {
+            throw new RuntimeException("Unexpected token: " + tokens.text(position));
+        }
+    }
+
+    /**
+     * Parses a `DISPLAY` statement.
+     * Example: DISPLAY "Hello World".
+     */
+    private ASTNode parseDisplayStatement() {
+        consume(Keyword.DISPLAY);
+        int value = consume(TokenKind.STRING);
+
+        return new ASTNode(NodeKind.DISPLAY_STATEMENT, tokens.text(value));
+    }
+
+    /**
+     * Parses a `MOVE` statement from a literal, figurative constant or data item.
+     * Example: MOVE 10 TO VAR. MOVE SPACES TO NAME. MOVE CUSTOMER TO SAVED-CUSTOMER.
+     */
+    private ASTNode parseMoveStatement() {
+        consume(Keyword.MOVE);
+        ASTNode source;
+        if (check(TokenKind.NUMBER) || check(TokenKind.STRING)
+                || (check(TokenKind.IDENTIFIER) && FIGURATIVE_CONSTANTS.contains(tokens.text(position)))) {
+            source = new ASTNode(NodeKind.VALUE, tokens.text(consumeAny()));
+        } else {
+            source = parseDataReference(NodeKind.VARIABLE);
+        }
+        consume(Keyword.TO);
+        ASTNode variable = parseDataReference(NodeKind.VARIABLE);
+
+        ASTNode moveNode = new ASTNode(NodeKind.MOVE_STATEMENT);
+        moveNode.addChild(source);
+        moveNode.addChild(variable);
+
+        return moveNode;
+    }
+
+    /**
+     * Parses a `STOP RUN` statement. The lexer reads "STOP RUN" as a single keyword.
+     */
+    private ASTNode parseStopRunStatement() {
+        consume(Keyword.STOP_RUN);
+
+        return new ASTNode(NodeKind.STOP_RUN);
+    }
+
+    /**
+     * Parses a `CALL` statement.
+     * Example: CALL "SUBROUTINE" USING PARAM1, PARAM2.
+     */
+    private ASTNode parseCallStatement() {
+        consume(Keyword.CALL);
+        int subroutineName = consume(TokenKind.STRING);
+
+        ASTNode callNode = new ASTNode(NodeKind.CALL_STATEMENT);
+        callNode.addChild(new ASTNode(NodeKind.SUBROUTINE, tokens.text(subroutineName)));
+
+        if (match(Keyword.USING)) {
+            do {
+                int param = consume(TokenKind.IDENTIFIER);
+                callNode.addChild(new ASTNode(NodeKind.PARAMETER, tokens.text(param)));
+                match(TokenKind.PUNCTUATION, ',');
+            } while (check(TokenKind.IDENTIFIER));
+        }
+
+        return callNode;
+    }
+
+    /**
+     * Parses an `EXEC SQL` statement.
+     * Example: EXEC SQL SELECT NAME INTO :WS-NAME FROM CUSTOMER WHERE ID = :WS-ID END-EXEC.
+     * The node's value is the SQL text with a ? for each input host variable and without the
+     * INTO list; its children are an "Input" per ? and an "Into" per INTO host variable, in
+     * order, each wrapping a "Variable".
+     */
+    private ASTNode parseExecSQLStatement() {
+        consume(Keyword.EXEC);
+        consume(Keyword.SQL);
+
+        StringBuilder sqlQuery = new StringBuilder();
+        List<ASTNode> hostVariables = new ArrayList<>();
+        while (!match(Keyword.END_EXEC)) {
+            if (check(Keyword.INTO) && position + 1 < tokens.size() && tokens.isChar(position + 1, TokenKind.SYMBOL, ':')) {
+                position++;
+                do {
+                    hostVariables.add(parseHostVariable(NodeKind.INTO));
+                } while (match(TokenKind.PUNCTUATION, ','));
+            } else if (check(TokenKind.SYMBOL, ':')) {
+                hostVariables.add(parseHostVariable(NodeKind.INPUT));
+                sqlQuery.append("? ");
+            } else {
+                sqlQuery.append(tokens.text(consumeAny())).append(" ");
+            }
+        }
+
+        ASTNode execNode = new ASTNode(NodeKind.EXEC_SQL, sqlQuery.toString());
+        for (ASTNode hostVariable : hostVariables) {
+            execNode.addChild(hostVariable);
+        }
+        return execNode;
+    }
+
+    // Parses ":NAME" into a node of the given type wrapping a "Variable"
+    private ASTNode parseHostVariable(NodeKind kind) {
+        consume(TokenKind.SYMBOL, ':');
+        ASTNode hostVariable = new ASTNode(kind);
+        hostVariable.addChild(new ASTNode(NodeKind.VARIABLE, tokens.text(consume(TokenKind.IDENTIFIER))));
+        return hostVariable;
+    }
+
+    /**
+     * Parses a `COMPUTE` statement.
+     * Example: COMPUTE TOTAL ROUNDED = PRICE * QTY ON SIZE ERROR DISPLAY "TOO BIG" END-COMPUTE.
+     * The node's children are one "Target" per receiving item (value "ROUNDED" or empty,
+     * wrapping a "Variable"), the expression, and optional "SizeError" and "NotSizeError"
+     * blocks of statements.
+     */
+    private ASTNode parseComputeStatement() {
+        consume(Keyword.COMPUTE);
+        ASTNode computeNode = new ASTNode(NodeKind.COMPUTE_STATEMENT);
+        do {
+            ASTNode variable = parseDataReference(NodeKind.VARIABLE);
+            ASTNode target = new ASTNode(NodeKind.TARGET, matchWord("ROUNDED") ? "ROUNDED" : "");
+            target.addChild(variable);
+            computeNode.addChild(target);
+            match(TokenKind.PUNCTUATION, ',');
+        } while (check(TokenKind.IDENTIFIER) && !tokens.text(position).equals("EQUAL"));
+        if (!matchWord("EQUAL")) {
+            consume(TokenKind.OPERATOR, '=');
+        }
+        computeNode.addChild(parseExpression());
+
+        if (matchSizeErrorPhrase()) {
+            computeNode.addChild(parseImperativeBlock(NodeKind.SIZE_ERROR));
+        }
+        int start = position;
+        if (matchWord("NOT") && matchSizeErrorPhrase()) {
+            computeNode.addChild(parseImperativeBlock(NodeKind.NOT_SIZE_ERROR));
+        } else {
+            position = start;
+        }
+        match(Keyword.END_COMPUTE);
+        return computeNode;
+    }
+
+    /**
+     * Parses an `OPEN` statement.
+     * Example: OPEN INPUT CUSTOMERS OUTPUT REPORT-FILE.
+     * The node's children are "Input", "Output" or "Extend" nodes whose value is a file name.
+     */
+    private ASTNode parseOpenStatement() {
+        consume(Keyword.OPEN);
+        ASTNode openNode = new ASTNode(NodeKind.OPEN_STATEMENT);
+        do {
+            NodeKind mode;
+            if (match(Keyword.INPUT)) {
+                mode = NodeKind.INPUT;
+            } else if (match(Keyword.OUTPUT)) {
+                mode = NodeKind.OUTPUT;
+            } else if (matchWord("EXTEND")) {
+                mode = NodeKind.EXTEND;
+            } else {
+                throw new RuntimeException("Unsupported OPEN mode: " + tokens.text(position));
+            }
+            do {
+                openNode.addChild(new ASTNode(mode, parseSequentialFileName()));
+                match(TokenKind.PUNCTUATION, ',');
+            } while (check(TokenKind.IDENTIFIER) && !tokens.text(position).equals("EXTEND"));
+        } while (check(Keyword.INPUT) || check(Keyword.OUTPUT)
+                || (check(TokenKind.IDENTIFIER) && tokens.text(position).equals("EXTEND")));
+        return openNode;
+    }
+
+    /**
+     * Parses a `CLOSE` statement.
+     * Example: CLOSE CUSTOMERS REPORT-FILE.
+     * The node's children are "File" nodes whose value is a file name.
+     */
+    private ASTNode parseCloseStatement() {
+        consume(Keyword.CLOSE);
+        ASTNode closeNode = new ASTNode(NodeKind.CLOSE_STATEMENT);
+        do {
+            closeNode.addChild(new ASTNode(NodeKind.FILE, parseSequentialFileName()));
+            match(TokenKind.PUNCTUATION, ',');
+        } while (check(TokenKind.IDENTIFIER));
+        return closeNode;
+    }
+
+    /**
+     * Parses a `READ` statement.
+     * Example: READ CUSTOMERS INTO WS-CUSTOMER AT END MOVE "Y" TO EOF-FLAG END-READ.
+     * The node's value is the file name; its children are an optional "Into" wrapping a
+     * "Variable", and optional "AtEnd" and "NotAtEnd" blocks of statements.
+     */
+    private ASTNode parseReadStatement() {
+        consume(Keyword.READ);
+        ASTNode readNode = new ASTNode(NodeKind.READ_STATEMENT, parseSequentialFileName());
+        matchWord("NEXT");
+        matchWord("RECORD");
+        if (match(Keyword.INTO)) {
+            ASTNode into = new ASTNode(NodeKind.INTO);
+            into.addChild(parseDataReference(NodeKind.VARIABLE));
+            readNode.addChild(into);
+        }
+        if (matchAtEndPhrase()) {
+            readNode.addChild(parseImperativeBlock(NodeKind.AT_END));
+        }
+        int start = position;
+        if (matchWord("NOT") && matchAtEndPhrase()) {
+            readNode.addChild(parseImperativeBlock(NodeKind.NOT_AT_END));
+        } else {
+            position = start;
+        }
+        match(Keyword.END_READ);
+        return readNode;
+    }
+
+    // Matches "[AT] END"
+    private boolean matchAtEndPhrase() {
+        int start = position;
+        match(Keyword.AT);
+        if (match(Keyword.END)) {
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    /**
+     * Parses a `WRITE` statement; ADVANCING phrases are accepted and ignored.
+     * Example: WRITE REPORT-LINE FROM WS-LINE AFTER ADVANCING 1 LINE.
+     * The node's children are the record, a "Variable", and an optional "From" wrapping a "Variable".
+     */
+    private ASTNode parseWriteStatement() {
+        consume(Keyword.WRITE);
+        ASTNode writeNode = new ASTNode(NodeKind.WRITE_STATEMENT);
+        writeNode.addChild(parseDataReference(NodeKind.VARIABLE));
+        if (matchWord("FROM")) {
+            ASTNode from = new ASTNode(NodeKind.FROM);
+            from.addChild(parseDataReference(NodeKind.VARIABLE));
+            writeNode.addChild(from);
+        }
+        if (matchWord("AFTER") || matchWord("BEFORE")) {
+            matchWord("ADVANCING");
+            if (!matchWord("PAGE")) {
+                consumeAny();
+                if (!matchWord("LINES")) {
+                    matchWord("LINE");
+                }
+            }
+        }
+        match(Keyword.END_WRITE);
+        return writeNode;
+    }
+
+    /**
+     * Parses a `SORT` or `MERGE` statement.
+     * Example: SORT SORT-WORK ON DESCENDING KEY AMOUNT ON ASCENDING KEY NAME USING TRANSACTIONS GIVING SORTED.
+     * The node ("SortStatement" or "MergeStatement") has the sort file as its value; its
+     * children are a "Key" per key, in order, with value ASCENDING or DESCENDING and a
+     * "Variable"; "Using" files or an "InputProcedure"; and "Giving" files or an
+     * "OutputProcedure". A procedure's value is its first paragraph, with a "Thru" child
+     * naming the last. Sorts are always stable, so WITH DUPLICATES IN ORDER is implied.
+     */
+    private ASTNode parseSortStatement() {
+        boolean merge = match(Keyword.MERGE);
+        if (!merge) {
+            consume(Keyword.SORT);
+        }
+        String file = parseFileName();
+        if (!symbolTable.getFile(file).isSort()) {
+            throw new RuntimeException((merge ? "MERGE" : "SORT") + " of " + file + ", which has no SD");
+        }
+        ASTNode sortNode = new ASTNode(merge ? NodeKind.MERGE_STATEMENT : NodeKind.SORT_STATEMENT, file);
+        while (true) {
+            int start = position;
+            matchWord("ON");
+            String direction = match(Keyword.ASCENDING) ? "ASCENDING" : match(Keyword.DESCENDING) ? "DESCENDING" : null;
+            if (direction == null) {
+                position = start;
+                break;
+            }
+            matchWord("KEY");
+            matchWord("IS");
+            do {
+                ASTNode key = new ASTNode(NodeKind.KEY, direction);
+                key.addChild(parseDataReference(NodeKind.VARIABLE));
+                sortNode.addChild(key);
+            } while (check(TokenKind.IDENTIFIER) && !SORT_PHRASE_WORDS.contains(tokens.text(position)));
+        }
+        if (sortNode.getChildren().isEmpty()) {
+            throw new RuntimeException((merge ? "MERGE" : "SORT") + " of " + file + " without a KEY");
+        }
+        matchWord("WITH");
+        if (matchWord("DUPLICATES")) {
+            matchWord("IN");
+            matchWord("ORDER");
+        }
+        if (matchWord("COLLATING")) {
+            matchWord("SEQUENCE");
+            matchWord("IS");
+            throw new RuntimeException("COLLATING SEQUENCE is not supported: " + tokens.text(position));
+        }
+        if (!merge && match(Keyword.INPUT)) {
+            sortNode.addChild(parseProcedureRange(NodeKind.INPUT_PROCEDURE));
+        } else {
+            consume(Keyword.USING);
+            parseSortFiles(sortNode, NodeKind.USING);
+        }
+        if (match(Keyword.OUTPUT)) {
+            sortNode.addChild(parseProcedureRange(NodeKind.OUTPUT_PROCEDURE));
+        } else if (matchWord("GIVING")) {
+            parseSortFiles(sortNode, NodeKind.GIVING);
+        } else {
+            throw new RuntimeException("Expected GIVING or OUTPUT PROCEDURE, found: " + tokens.text(position));
+        }
+        return sortNode;
+    }
+
+    private void parseSortFiles(ASTNode sortNode, NodeKind kind) {
+        do {
+            sortNode.addChild(new ASTNode(kind, parseSequentialFileName()));
+            match(TokenKind.PUNCTUATION, ',');
+        } while (check(TokenKind.IDENTIFIER) && !SORT_PHRASE_WORDS.contains(tokens.text(position)));
+    }
+
+    // Parses "PROCEDURE [IS] name [THRU|THROUGH name]" after INPUT or OUTPUT
+    private ASTNode parseProcedureRange(NodeKind kind) {
+        consume(Keyword.PROCEDURE);
+        matchWord("IS");
+        ASTNode procedure = new ASTNode(kind, tokens.text(consume(TokenKind.IDENTIFIER)));
+        if (matchWord("THRU") || matchWord("THROUGH")) {
+            procedure.addChild(new ASTNode(NodeKind.THRU, tokens.text(consume(TokenKind.IDENTIFIER))));
+        }
+        return procedure;
+    }
+
+    /**
+     * Parses a `RELEASE` statement, which hands a record to the sort of its SD.
+     * Example: RELEASE SORT-RECORD FROM WS-RECORD.
+     * The node's children are the record, a "Variable", and an optional "From" wrapping a "Variable".
+     */
+    private ASTNode parseReleaseStatement() {
+        position++;
+        ASTNode releaseNode = new ASTNode(NodeKind.RELEASE_STATEMENT);
+        releaseNode.addChild(parseDataReference(NodeKind.VARIABLE));
+        if (matchWord("FROM")) {
+            ASTNode from = new ASTNode(NodeKind.FROM);
+            from.addChild(parseDataReference(NodeKind.VARIABLE));
+            releaseNode.addChild(from);
+        }
+        return releaseNode;
+    }
+
+    /**
+     * Parses a `RETURN` statement, which takes the next sorted record of a sort file.
+     * Example: RETURN SORT-WORK INTO WS-RECORD AT END MOVE "Y" TO EOF-FLAG END-RETURN.
+     * The node has the shape of a READ: the sort file as its value, an optional "Into",
+     * and optional "AtEnd" and "NotAtEnd" blocks.
+     */
+    private ASTNode parseReturnStatement() {
+        position++;
+        ASTNode returnNode = new ASTNode(NodeKind.RETURN_STATEMENT, parseFileName());
+        if (!symbolTable.getFile(returnNode.getValue()).isSort()) {
+            throw new RuntimeException("RETURN of " + returnNode.getValue() + ", which has no SD");
+        }
+        matchWord("RECORD");
+        if (match(Keyword.INTO)) {
+            ASTNode into = new ASTNode(NodeKind.INTO);
+            into.addChild(parseDataReference(NodeKind.VARIABLE));
+            returnNode.addChild(into);
+        }
+        if (matchAtEndPhrase()) {
+            returnNode.addChild(parseImperativeBlock(NodeKind.AT_END));
+        }
+        int start = position;
+        if (matchWord("NOT") && matchAtEndPhrase()) {
+            returnNode.addChild(parseImperativeBlock(NodeKind.NOT_AT_END));
+        } else {
+            position = start;
+        }
+        match(Keyword.END_RETURN);
+        return returnNode;
+    }
+
+    private String parseFileName() {
+        String name = tokens.text(consume(TokenKind.IDENTIFIER));
+        if (symbolTable.getFile(name) == null) {
+            throw new RuntimeException("Unknown file " + name);
+        }
+        return name;
+    }
+
+    // A file with an FD; a sort file is only used by SORT, MERGE and RETURN
+    private String parseSequentialFileName() {
+        String name = parseFileName();
+        if (symbolTable.getFile(name).isSort()) {
+            throw new RuntimeException("Sort file " + name + " used as a sequential file");
+        }
+        return name;
+    }
+
+    /**
+     * Parses an out-of-line or an inline `PERFORM`.
+     * Example: PERFORM READ-CUSTOMER THRU READ-EXIT 3 TIMES. PERFORM 2 TIMES DISPLAY "HI" END-PERFORM.
+     * The node's value is the first paragraph or section, or empty for an inline PERFORM;
+     * its children are an optional "Thru" naming the last, an optional "Times" wrapping a
+     * "Literal" or "Variable", and for an inline PERFORM a "Body" block of statements.
+     * There are no conditions yet, so UNTIL and VARYING are rejected.
+     */
+    private ASTNode parsePerformStatement() {
+        consume(Keyword.PERFORM);
+        ASTNode performNode;
+        if (check(TokenKind.IDENTIFIER) && !isTimesCount()) {
+            performNode = new ASTNode(NodeKind.PERFORM_STATEMENT, tokens.text(consumeAny()));
+            if (matchWord("THRU") || matchWord("THROUGH")) {
+                performNode.addChild(new ASTNode(NodeKind.THRU, tokens.text(consume(TokenKind.IDENTIFIER))));
+            }
+        } else {
+            performNode = new ASTNode(NodeKind.PERFORM_STATEMENT, "");
+        }
+        if (check(TokenKind.NUMBER) || (check(TokenKind.IDENTIFIER) && isTimesCount())) {
+            ASTNode times = new ASTNode(NodeKind.TIMES);
+            times.addChild(check(TokenKind.NUMBER) ? new ASTNode(NodeKind.LITERAL, tokens.text(consumeAny())) : parseDataReference(NodeKind.VARIABLE));
+            consume(Keyword.TIMES);
+            performNode.addChild(times);
+        }
+        if (check(TokenKind.IDENTIFIER) && (tokens.text(position).equals("UNTIL") || tokens.text(position).equals("VARYING")
+                || tokens.text(position).equals("WITH"))) {
+            throw new RuntimeException("PERFORM " + tokens.text(position) + " is not supported");
+        }
+        if (performNode.getValue().isEmpty()) {
+            ASTNode body = new ASTNode(NodeKind.BODY);
+            while (!match(Keyword.END_PERFORM)) {
+                if (isAtEnd() || check(TokenKind.PUNCTUATION, '.')) {
+                    throw new RuntimeException("Inline PERFORM without END-PERFORM");
+                }
+                body.addChild(parseStatement());
+            }
+            performNode.addChild(body);
+        }
+        return performNode;
+    }
+
+    // An identifier, possibly qualified, followed by TIMES
+    private boolean isTimesCount() {
+        int at = position + 1;
+        while (at + 1 < tokens.size() && tokens.is(at, TokenKind.IDENTIFIER)
+                && (tokens.text(at).equals("OF") || tokens.text(at).equals("IN"))) {
+            at += 2;
+        }
+        return at < tokens.size() && tokens.isKeyword(at, Keyword.TIMES);
+    }
+
+    /**
+     * Parses a `GO TO` statement, written GO TO or GOTO.
+     * Example: GO TO READ-NEXT.
+     * The node's value is the paragraph or section.
+     */
+    private ASTNode parseGoToStatement() {
+        if (!match(Keyword.GOTO)) {
+            position++;
+            match(Keyword.TO);
+        }
+        ASTNode goToNode = new ASTNode(NodeKind.GO_TO_STATEMENT, tokens.text(consume(TokenKind.IDENTIFIER)));
+        int at = position;
+        while (at < tokens.size() && (tokens.is(at, TokenKind.IDENTIFIER) || tokens.isChar(at, TokenKind.PUNCTUATION, ','))) {
+            if (tokens.text(at).equals("DEPENDING")) {
+                throw new RuntimeException("GO TO ... DEPENDING ON is not supported");
+            }
+            at++;
+        }
+        return goToNode;
+    }
+
+    /**
+     * Parses `EXIT`, which does nothing and usually makes up the last paragraph of a PERFORM THRU.
+     */
+    private ASTNode parseExitStatement() {
+        position++;
+        if (check(TokenKind.IDENTIFIER) && EXIT_PHRASE_WORDS.contains(tokens.text(position))) {
+            throw new RuntimeException("EXIT " + tokens.text(position) + " is not supported");
+        }
+        return new ASTNode(NodeKind.EXIT_STATEMENT);
+    }
+
+    // Matches "[ON] SIZE ERROR"
+    private boolean matchSizeErrorPhrase() {
+        int start = position;
+        matchWord("ON");
+        if (matchWord("SIZE") && matchWord("ERROR")) {
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    /**
+     * Parses the statements of a conditional phrase, up to the end of the sentence,
+     * the scope terminator or the next phrase.
+     */
+    private ASTNode parseImperativeBlock(NodeKind kind) {
+        ASTNode block = new ASTNode(kind);
+        while (!isAtEnd() && !check(TokenKind.PUNCTUATION, '.') && !check(Keyword.END_COMPUTE)
+                && !check(Keyword.END_READ) && !check(Keyword.END_WRITE) && !check(Keyword.END_RETURN)
+                && !check(Keyword.END_PERFORM)
+                && !(check(TokenKind.IDENTIFIER) && tokens.text(position).equals("NOT"))) {
+            block.addChild(parseStatement());
+        }
+        return block;
+    }
+
+    /**
+     * Parses an arithmetic expression into "Operator" nodes (value + - * / or **, two children),
+     * "Negate" nodes, "Literal" numbers and "Variable" references.
+     */
+    private ASTNode parseExpression() {
+        ASTNode left = parseTerm();
+        while (check(TokenKind.OPERATOR, '+') || check(TokenKind.OPERATOR, '-')) {
+            left = operator(tokens.text(consumeAny()), left, parseTerm());
+        }
+        return left;
+    }
+
+    private ASTNode parseTerm() {
+        ASTNode left = parseFactor();
+        while ((check(TokenKind.OPERATOR, '*') && !isPower()) || check(TokenKind.OPERATOR, '/')) {
+            left = operator(tokens.text(consumeAny()), left, parseFactor());
+        }
+        return left;
+    }
+
+    private ASTNode parseFactor() {
+        ASTNode base = parseUnary();
+        if (isPower()) {
+            position += 2;
+            return operator("**", base, parseFactor());
+        }
+        return base;
+    }
+
+    private ASTNode parseUnary() {
+        if (match(TokenKind.OPERATOR, '-')) {
+            ASTNode negate = new ASTNode(NodeKind.NEGATE);
+            negate.addChild(parseUnary());
+            return negate;
+        }
+        match(TokenKind.OPERATOR, '+');
+        if (match(TokenKind.SYMBOL, '(')) {
+            ASTNode inner = parseExpression();
+            consume(TokenKind.SYMBOL, ')');
+            return inner;
+        }
+        if (check(TokenKind.NUMBER)) {
+            return new ASTNode(NodeKind.LITERAL, tokens.text(consumeAny()));
+        }
+        return parseDataReference(NodeKind.VARIABLE);
+    }
+
+    // "**" is lexed as two adjacent '*' operators
+    private boolean isPower() {
+        return check(TokenKind.OPERATOR, '*') && position + 1 < tokens.size()
+                && tokens.isChar(position + 1, TokenKind.OPERATOR, '*')
+                && tokens.start(position + 1) == tokens.start(position) + 1;
+    }
+
+    private static ASTNode operator(String operator, ASTNode left, ASTNode right) {
+        ASTNode node = new ASTNode(NodeKind.OPERATOR, operator);
+        node.addChild(left);
+        node.addChild(right);
+        return node;
+    }
+
+    /**
+     * Parses a possibly qualified data name, e.g. "TOTAL OF HEADER OF REPORT-LINE".
+     * @param kind The kind of AST node to create.
+     * @return A node whose value is the data name and whose children are "Qualifier" nodes,
+     *         innermost first.
+     */
+    private ASTNode parseDataReference(NodeKind kind) {
+        ASTNode reference = new ASTNode(kind, tokens.text(consume(TokenKind.IDENTIFIER)));
+        while (matchWord("OF") || matchWord("IN")) {
+            reference.addChild(new ASTNode(NodeKind.QUALIFIER, tokens.text(consume(TokenKind.IDENTIFIER))));
+        }
+        return reference;
+    }
+
+    private static String unquote(String literal) {
+        return literal.substring(1, literal.length() - 1);
+    }
+
+    // Consumes a token by kind only and returns its index
+    private int consume(TokenKind kind) {
+        if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
+        if (tokens.is(position, kind)) {
+            return position++;
+        }
+        throw new RuntimeException("Expected " + kind + " but found " + tokens.text(position));
+    }
+
+    // Requires a specific keyword
+    private int consume(Keyword keyword) {
+        if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
+        if (tokens.isKeyword(position, keyword)) {
+            return position++;
+        }
+        throw new RuntimeException("Expected " + keyword.text() + " but found " + tokens.text(position));
+    }
+
+    // Requires a specific single-character token, such as the closing period
+    private int consume(TokenKind kind, char c) {
+        if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
+        if (check(kind, c)) {
+            return position++;
+        }
+        throw new RuntimeException("Expected " + c + " but found " + tokens.text(position));
+    }
+
+    private int consumeAny() {
+        if (isAtEnd()) throw new RuntimeException("Unexpected end of input");
+        return position++;
+    }
+
+    private boolean check(TokenKind kind) {
+        return !isAtEnd() && tokens.is(position, kind);
+    }
+
+    private boolean check(TokenKind kind, char c) {
+        return !isAtEnd() && tokens.isChar(position, kind, c);
+    }
+
+    private boolean check(Keyword keyword) {
+        return !isAtEnd() && tokens.isKeyword(position, keyword);
+    }
+
+    private boolean match(Keyword keyword) {
+        if (check(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean match(TokenKind kind, char c) {
+        if (check(kind, c)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    // Matches an identifier that acts as a context-sensitive word, such as REDEFINES or OF
+    private boolean matchWord(String word) {
+        if (check(TokenKind.IDENTIFIER) && tokens.text(position).equals(word)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    // Comments are skipped here, so every lookahead sees the next significant token
+    private boolean isAtEnd() {
+        while (position < tokens.size() && tokens.is(position, TokenKind.COMMENT)) {
+            position++;
+        }
+        return position >= tokens.size();
+    }
+
+}
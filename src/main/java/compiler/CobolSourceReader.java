@@ -0,0 +1,291 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CobolSourceReader - Presents a COBOL source file to the lexer without loading it onto the heap.
+ * Files are memory-mapped and exposed as a {@link CharSequence} that decodes bytes on access.
+ * Fixed-format sources are normalized on the fly: the sequence area, the indicator column and
+ * everything after column 72 are skipped, comment and debugging lines become empty lines, and
+ * continuation lines are joined to the line they continue. Only a compact table of line
+ * offsets is kept in memory.
+ * Sources are read as single-byte text (ASCII or ISO-8859-1).
+ *
+ * <p>The text {@link #open} returns, and the tokens lexed from it, read the mapped file on every
+ * access, so they are only valid while the file is unchanged; a file cut shorter can even crash
+ * the reader. The mapping also keeps, until it is garbage collected, the file from being changed or
+ * deleted on some systems. Whatever outlives one compilation, such as a server's sources or cached
+ * copybooks, uses {@link #read} instead, which copies the file onto the heap once.
+ */
+public class CobolSourceReader {
+
+    /**
+     * Maps a source file in the format {@link SourceFormat#of} gives.
+     * @param path The COBOL source file.
+     * @return The program text, ready for {@link CobolLexer#lex(CharSequence)}.
+     */
+    public static CharSequence open(Path path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * Maps a source file.
+     * @param path The COBOL source file.
+     * @param format The reference format, or null for the one {@link SourceFormat#of} gives.
+     * @return The program text, ready for {@link CobolLexer#lex(CharSequence)}.
+     */
+    public static CharSequence open(Path path, SourceFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file too large to map: " + path);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return normalize(new ByteSource(mapped, 0, (int) size), format);
+        }
+    }
+
+    /**
+     * Reads a source file onto the heap, one byte per character, in the format {@link SourceFormat#of}
+     * gives. Unlike {@link #open}, the text stays the same whatever happens to the file afterwards.
+     * @param path The COBOL source file.
+     * @return The program text, ready for {@link CobolLexer#lex(CharSequence)}.
+     */
+    public static CharSequence read(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        return normalize(new ByteSource(ByteBuffer.wrap(bytes), 0, bytes.length), null);
+    }
+
+    /**
+     * Applies the reference format rules to source text that is already in memory,
+     * such as the contents of an editor.
+     * @param raw The source text as written.
+     * @param format The reference format, or null for the one {@link SourceFormat#of} gives.
+     * @return The program text.
+     */
+    public static CharSequence normalize(CharSequence raw, SourceFormat format) {
+        if (format == null) {
+            format = SourceFormat.of(raw);
+        }
+        return format == SourceFormat.FIXED ? new FixedFormatSource(raw) : raw;
+    }
+
+    /**
+     * A read-only view of a byte buffer as single-byte characters.
+     */
+    private static final class ByteSource implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        ByteSource(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSource(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            bytes.duplicate().position(offset).get(copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Fixed-format program text. Each source line becomes a segment of the raw text
+     * (columns 8-72); segments are separated by a newline unless the next line is a
+     * continuation line. A continued literal is padded with spaces to column 72.
+     */
+    private static final class FixedFormatSource implements CharSequence {
+        private static final int INDICATOR = 6;
+        private static final int TEXT_START = 7;
+        private static final int TEXT_END = 72;
+
+        private final CharSequence raw;
+        private int[] rawStarts = new int[64];
+        private int[] lengths = new int[64];
+        private int[] paddings = new int[64];
+        private int[] logicalStarts = new int[64];
+        private int count;
+        private int length;
+        private int lastSegment;
+        /** Raw offset of the physical line added last. */
+        private int lastLineStart;
+
+        FixedFormatSource(CharSequence raw) {
+            this.raw = raw;
+            scanLines();
+        }
+
+        private void scanLines() {
+            int pos = 0;
+            int rawLength = raw.length();
+            char openQuote = 0;
+            while (pos < rawLength) {
+                int lineEnd = pos;
+                while (lineEnd < rawLength && raw.charAt(lineEnd) != '\n' && raw.charAt(lineEnd) != '\r') {
+                    lineEnd++;
+                }
+                openQuote = addLine(pos, lineEnd, openQuote);
+                lastLineStart = pos;
+                pos = lineEnd;
+                if (pos < rawLength && raw.charAt(pos) == '\r') {
+                    pos++;
+                }
+                if (pos < rawLength && raw.charAt(pos) == '\n') {
+                    pos++;
+                }
+            }
+            length = count == 0 ? 0 : logicalStarts[count - 1] + lengths[count - 1] + paddings[count - 1];
+        }
+
+        /**
+         * Adds one physical line.
+         * @param openQuote The quote character of a literal left open by the previous line, or 0.
+         * @return The quote character of a literal this line leaves open, or 0.
+         */
+        private char addLine(int start, int end, char openQuote) {
+            char indicator = end - start > INDICATOR ? raw.charAt(start + INDICATOR) : ' ';
+            int textStart = Math.min(start + TEXT_START, end);
+            int textEnd = Math.min(start + TEXT_END, end);
+
+            if (indicator == '*' || indicator == '/' || indicator == 'D' || indicator == 'd') {
+                addSegment(textStart, textStart, false);
+                return 0;
+            }
+            if (indicator == '-' && count > 0) {
+                while (textStart < textEnd && raw.charAt(textStart) == ' ') {
+                    textStart++;
+                }
+                int previous = count - 1;
+                if (openQuote != 0) {
+                    // Up to column 72 of the line before, whose text may itself start after column 8
+                    paddings[previous] = Math.max(0, lastLineStart + TEXT_END - (rawStarts[previous] + lengths[previous]));
+                    if (textStart < textEnd && raw.charAt(textStart) == openQuote) {
+                        textStart++;
+                    }
+                } else {
+                    while (lengths[previous] > 0 && raw.charAt(rawStarts[previous] + lengths[previous] - 1) == ' ') {
+                        lengths[previous]--;
+                    }
+                }
+                addSegment(textStart, textEnd, true);
+                return scanQuotes(textStart, textEnd, openQuote);
+            }
+            addSegment(textStart, textEnd, false);
+            return scanQuotes(textStart, textEnd, (char) 0);
+        }
+
+        private char scanQuotes(int start, int end, char openQuote) {
+            for (int i = start; i < end; i++) {
+                char c = raw.charAt(i);
+                if (openQuote == 0 && (c == '"' || c == '\'')) {
+                    openQuote = c;
+                } else if (c == openQuote) {
+                    openQuote = 0;
+                }
+            }
+            return openQuote;
+        }
+
+        private void addSegment(int start, int end, boolean continuation) {
+            if (count == rawStarts.length) {
+                int capacity = count * 2;
+                rawStarts = Arrays.copyOf(rawStarts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                paddings = Arrays.copyOf(paddings, capacity);
+                logicalStarts = Arrays.copyOf(logicalStarts, capacity);
+            }
+            int logicalStart = 0;
+            if (count > 0) {
+                int previous = count - 1;
+                logicalStart = logicalStarts[previous] + lengths[previous] + paddings[previous] + (continuation ? 0 : 1);
+            }
+            rawStarts[count] = start;
+            lengths[count] = end - start;
+            logicalStarts[count] = logicalStart;
+            count++;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            int segment = findSegment(index);
+            int offset = index - logicalStarts[segment];
+            if (offset < lengths[segment]) {
+                return raw.charAt(rawStarts[segment] + offset);
+            }
+            return offset < lengths[segment] + paddings[segment] ? ' ' : '\n';
+        }
+
+        /**
+         * Finds the segment containing or immediately preceding a logical offset. The lexer reads
+         * almost sequentially, so the last segment found is tried first.
+         */
+        private int findSegment(int index) {
+            int segment = lastSegment;
+            if (index >= logicalStarts[segment] && (segment + 1 == count || index < logicalStarts[segment + 1])) {
+                return segment;
+            }
+            if (segment + 1 < count && index >= logicalStarts[segment + 1]
+                    && (segment + 2 == count || index < logicalStarts[segment + 2])) {
+                return lastSegment = segment + 1;
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (logicalStarts[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return lastSegment = low;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
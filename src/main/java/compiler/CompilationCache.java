@@ -0,0 +1,260 @@
+package compiler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * CompilationCache - On-disk cache of generated Java code, keyed by content hash.
+ * The key covers the normalized program text (so resequencing a fixed-format file does
+ * not invalidate it), the compiler build and the compile options. An entry also records
+ * the content hash of every file the unit depended on (copybooks, called programs) and
+ * is ignored once any of them changes. Least recently used entries are evicted when the
+ * cache grows past its size limit.
+ * Safe for concurrent use by the units of a batch.
+ */
+public class CompilationCache {
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String COMPILER_FINGERPRINT = compilerFingerprint();
+
+    private final Path folder;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Map<Path, String> fileHashes = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong lastStamp = new AtomicLong();
+
+    /**
+     * Opens (or creates) a cache folder.
+     * @param folder Folder holding the cache entries.
+     * @param maxBytes Size limit; older entries are evicted beyond it.
+     */
+    public CompilationCache(Path folder, long maxBytes) throws IOException {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(folder);
+        for (Path entry : listEntries()) {
+            totalBytes.addAndGet(Files.size(entry));
+        }
+    }
+
+    /**
+     * Computes the cache key of a unit.
+     * @param source The normalized program text.
+     * @param options Everything else that affects the output, e.g. the class name.
+     * @return A hex SHA-256 digest.
+     */
+    public String key(CharSequence source, String options) {
+        MessageDigest digest = sha256();
+        digest.update((COMPILER_FINGERPRINT + '\n' + options + '\n').getBytes(StandardCharsets.UTF_8));
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        for (int i = 0; i < source.length(); i++) {
+            if (chunk.remaining() < 2) {
+                digest.update(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putChar(source.charAt(i));
+        }
+        digest.update(chunk.array(), 0, chunk.position());
+        return hex(digest.digest());
+    }
+
+    /**
+     * Returns the cached output for a key if none of its dependencies changed.
+     * @param key A key from {@link #key(CharSequence, String)}.
+     * @return The generated Java code, or null on a miss.
+     */
+    public String lookup(String key) {
+        Path entry = folder.resolve(key + ENTRY_SUFFIX);
+        try {
+            String content = Files.readString(entry, StandardCharsets.UTF_8);
+            int body = content.indexOf("\n\n");
+            for (String line : content.substring(0, body).split("\n")) {
+                if (line.startsWith("dep ")) {
+                    int space = line.indexOf(' ', 4);
+                    String expectedHash = line.substring(4, space);
+                    if (!expectedHash.equals(hashFile(Path.of(line.substring(space + 1))))) {
+                        misses.incrementAndGet();
+                        return null;
+                    }
+                }
+            }
+            Files.setLastModifiedTime(entry, nextStamp());
+            hits.incrementAndGet();
+            return content.substring(body + 2);
+        } catch (IOException | RuntimeException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores generated output under a key.
+     * @param key A key from {@link #key(CharSequence, String)}.
+     * @param javaCode The generated Java code.
+     * @param dependencies Files the output depends on, hashed now for later validation.
+     */
+    public void store(String key, String javaCode, List<Path> dependencies) throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append("compiler ").append(COMPILER_FINGERPRINT).append('\n');
+        for (Path dependency : dependencies) {
+            String hash = hashFile(dependency);
+            if (hash != null) {
+                content.append("dep ").append(hash).append(' ').append(dependency.toAbsolutePath()).append('\n');
+            }
+        }
+        content.append('\n').append(javaCode);
+
+        Path entry = folder.resolve(key + ENTRY_SUFFIX);
+        Path temp = Files.createTempFile(folder, key, ".tmp");
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(temp, bytes);
+        long previous = Files.exists(entry) ? Files.size(entry) : 0;
+        try {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setLastModifiedTime(entry, nextStamp());
+        if (totalBytes.addAndGet(bytes.length - previous) > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until the cache is back to 90% of its limit.
+     */
+    private synchronized void evict() throws IOException {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        List<Path> entries = new ArrayList<>(listEntries());
+        entries.sort(Comparator.comparing(CompilationCache::lastModified));
+        long target = maxBytes - maxBytes / 10;
+        for (Path entry : entries) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            long size = Files.size(entry);
+            if (Files.deleteIfExists(entry)) {
+                totalBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    /**
+     * Access time for LRU ordering; strictly increasing so entries touched in the same
+     * millisecond still evict in order.
+     */
+    private FileTime nextStamp() {
+        long now = System.currentTimeMillis();
+        return FileTime.fromMillis(lastStamp.updateAndGet(last -> Math.max(now, last + 1)));
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX)).collect(Collectors.toList());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Hashes a dependency once per cache instance; a batch run sees a consistent snapshot.
+     * @return The hex digest, or null if the file cannot be read.
+     */
+    private String hashFile(Path file) {
+        Path absolute = file.toAbsolutePath();
+        String hash = fileHashes.get(absolute);
+        if (hash == null) {
+            try {
+                hash = hex(sha256().digest(Files.readAllBytes(absolute)));
+            } catch (IOException e) {
+                return null;
+            }
+            fileHashes.put(absolute, hash);
+        }
+        return hash;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Identifies the compiler build: the implementation version plus the size and timestamp
+     * of the jar or class folder it was loaded from, so a rebuilt compiler never reuses
+     * output of an older one.
+     */
+    private static String compilerFingerprint() {
+        StringBuilder fingerprint = new StringBuilder();
+        Package pkg = CompilationCache.class.getPackage();
+        fingerprint.append(pkg != null && pkg.getImplementationVersion() != null ? pkg.getImplementationVersion() : "dev");
+        try {
+            CodeSource codeSource = CompilationCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null) {
+                Path location = Path.of(codeSource.getLocation().toURI());
+                if (Files.isDirectory(location)) {
+                    try (Stream<Path> files = Files.walk(location)) {
+                        long newest = files.filter(file -> file.toString().endsWith(".class"))
+                                .mapToLong(file -> lastModified(file).toMillis()).max().orElse(0);
+                        fingerprint.append('-').append(newest);
+                    }
+                } else {
+                    fingerprint.append('-').append(Files.size(location)).append('-').append(lastModified(location).toMillis());
+                }
+            }
+        } catch (IOException | URISyntaxException | SecurityException e) {
+            Debugger.log("Cannot fingerprint compiler build, caching by version only: " + e.getMessage());
+        }
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,273 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * CompilationUnit - One COBOL program on its way to Java source.
+ * A unit owns all state its compilation needs (symbol table, debug log), so
+ * any number of units can be compiled concurrently.
+ */
+public class CompilationUnit {
+    private final String name;
+    private final CharSequence source;
+    private final SymbolTable symbolTable;
+    private final List<String> debugLog = new ArrayList<>();
+    private final Set<String> calledPrograms = new LinkedHashSet<>();
+    private final List<Path> dependencies = new ArrayList<>();
+    private CopybookLibrary copybooks;
+    private TokenBuffer tokenArena;
+    private Set<ASTOptimizer.Pass> optimizations = ASTOptimizer.passesFromSystem();
+    private List<ASTOptimizer.PassStatistics> optimizationStatistics = List.of();
+    private CompilerMetrics metrics;
+    private Consumer<CompilerMetrics.Phase> phaseListener;
+    /** Nodes of the optimized AST, counted only while the phases are being recorded. */
+    private long astNodes;
+    /** The AST from an {@link IncrementalFrontEnd}, which is then not lexed and parsed again. */
+    private ASTNode parsed;
+
+    /**
+     * Creates a compilation unit.
+     * @param name Display name of the unit, usually the source file name.
+     * @param source The program text.
+     */
+    public CompilationUnit(String name, CharSequence source) {
+        this.name = name;
+        this.source = source;
+        this.symbolTable = new SymbolTable();
+    }
+
+    /**
+     * Creates a compilation unit for a program an {@link IncrementalFrontEnd} has lexed and
+     * parsed, so that compiling it only optimizes and generates code. The unit can be compiled
+     * on another thread while the front end is edited further, since the front end never changes
+     * an AST it has handed out and the optimizer works on a copy; create the unit on the thread
+     * that edits the front end. COPY is not expanded.
+     * @param name Display name of the unit.
+     * @param frontEnd The front end holding the program.
+     * @throws RuntimeException The front end's error if the text does not lex or parse.
+     */
+    public CompilationUnit(String name, IncrementalFrontEnd frontEnd) {
+        if (frontEnd.getProgram() == null) {
+            throw frontEnd.getError();
+        }
+        this.name = name;
+        this.source = frontEnd.getText().toString();
+        this.symbolTable = frontEnd.getSymbolTable().copy();
+        this.parsed = frontEnd.getProgram();
+    }
+
+    /**
+     * Lexes, parses and generates Java code for this unit.
+     * Debug messages logged meanwhile on this thread go to {@link #getDebugLog()}.
+     * @param className Name of the generated Java class.
+     * @return The generated Java source.
+     */
+    public String compile(String className) {
+        Debugger.captureUnitLog(debugLog);
+        try {
+            ASTNode ast = parse();
+            CompilerMetrics.Span span = startPhase(CompilerMetrics.Phase.GENERATE);
+            String code = new JavaCodeGenerator(ast, className, symbolTable).generateCode();
+            span.end(astNodes);
+            return code;
+        } finally {
+            Debugger.captureUnitLog(null);
+        }
+    }
+
+    /**
+     * Lexes, parses and generates Java code for this unit, streaming it to a writer.
+     * @param className Name of the generated Java class.
+     * @param out Receives the generated Java source; it is flushed but not closed.
+     */
+    public void compile(String className, Writer out) throws IOException {
+        Debugger.captureUnitLog(debugLog);
+        try {
+            ASTNode ast = parse();
+            CompilerMetrics.Span span = startPhase(CompilerMetrics.Phase.GENERATE);
+            new JavaCodeGenerator(ast, className, symbolTable).generateCode(out);
+            span.end(astNodes);
+        } finally {
+            Debugger.captureUnitLog(null);
+        }
+    }
+
+    /**
+     * Lexes, parses and generates a class file for this unit, without going through Java source.
+     * @param className Name of the generated class.
+     * @return The class file bytes.
+     */
+    public byte[] compileToClass(String className) {
+        Debugger.captureUnitLog(debugLog);
+        try {
+            ASTNode ast = parse();
+            CompilerMetrics.Span span = startPhase(CompilerMetrics.Phase.GENERATE);
+            byte[] classFile = new BytecodeGenerator(ast, className, symbolTable).generate();
+            span.end(astNodes);
+            return classFile;
+        } finally {
+            Debugger.captureUnitLog(null);
+        }
+    }
+
+    private ASTNode parse() {
+        Debugger.log("Compiling " + name);
+        ASTNode ast = parsed != null ? parsed.copy() : null;
+        CompilerMetrics.Span span;
+        if (ast == null) {
+            span = startPhase(CompilerMetrics.Phase.LEX);
+            TokenBuffer tokens = tokenArena != null ? CobolLexer.lex(source, tokenArena) : CobolLexer.lex(source);
+            if (copybooks != null) {
+                tokens = copybooks.expand(tokens, dependencies);
+            }
+            span.end(tokens.size());
+
+            span = startPhase(CompilerMetrics.Phase.PARSE);
+            ast = new CobolParser(tokens, symbolTable).parseProgram();
+            collectCalls(ast);
+            span.end(span.isActive() ? ASTOptimizer.count(ast) : 0);
+        } else {
+            collectCalls(ast);
+        }
+
+        span = startPhase(CompilerMetrics.Phase.OPTIMIZE);
+        ASTOptimizer optimizer = new ASTOptimizer(symbolTable, optimizations);
+        optimizer.optimize(ast);
+        optimizationStatistics = optimizer.getStatistics();
+        astNodes = span.isActive() ? ASTOptimizer.count(ast) : 0;
+        span.end(astNodes);
+        return ast;
+    }
+
+    private CompilerMetrics.Span startPhase(CompilerMetrics.Phase phase) {
+        checkInterrupted();
+        if (phaseListener != null) {
+            phaseListener.accept(phase);
+        }
+        return CompilerMetrics.start(metrics, phase, name);
+    }
+
+    /**
+     * Ends a compilation whose thread was interrupted, e.g. because the GUI cancelled it.
+     * The lexer, parser and generator call it as they go.
+     * @throws CancellationException If the current thread is interrupted.
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Compilation cancelled");
+        }
+    }
+
+    private void collectCalls(ASTNode node) {
+        if (node.getKind() == NodeKind.SUBROUTINE) {
+            String literal = node.getValue();
+            calledPrograms.add(literal.startsWith("\"") ? literal.substring(1, literal.length() - 1) : literal);
+        }
+        for (ASTNode child : node.getChildren()) {
+            collectCalls(child);
+        }
+    }
+
+    /**
+     * Sets the library COPY statements are resolved against. Without one, COPY is not expanded.
+     */
+    public void setCopybookLibrary(CopybookLibrary copybooks) {
+        this.copybooks = copybooks;
+    }
+
+    /**
+     * Lexes into the given buffer instead of a new one. The buffer must not be used by
+     * another unit until this one is compiled.
+     */
+    void setTokenArena(TokenBuffer tokenArena) {
+        this.tokenArena = tokenArena;
+    }
+
+    /**
+     * Adds the time, items and allocations of each phase of this unit to the given totals.
+     */
+    void setMetrics(CompilerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports each phase as it starts, on the compiling thread, e.g. to show progress.
+     */
+    public void setPhaseListener(Consumer<CompilerMetrics.Phase> phaseListener) {
+        this.phaseListener = phaseListener;
+    }
+
+    /**
+     * Sets the AST optimization passes to run; by default those of the cobol.optimize setting.
+     */
+    void setOptimizations(Set<ASTOptimizer.Pass> optimizations) {
+        this.optimizations = optimizations;
+    }
+
+    /**
+     * @return What each optimization pass did, known after {@link #compile(String)}.
+     */
+    List<ASTOptimizer.PassStatistics> getOptimizationStatistics() {
+        return optimizationStatistics;
+    }
+
+    /**
+     * @return Paths of the copybooks this unit includes, known after {@link #compile(String)}.
+     */
+    public List<Path> getDependencies() {
+        return dependencies;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public List<String> getDebugLog() {
+        return debugLog;
+    }
+
+    /**
+     * @return Names of the programs this unit calls statically, known after {@link #compile(String)}.
+     */
+    public Set<String> getCalledPrograms() {
+        return calledPrograms;
+    }
+
+    /**
+     * @return The program text this unit compiles.
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * Derives a valid Java class name from a source file name, e.g. "PAY-ROLL.cbl" becomes "PAY_ROLL".
+     * @param fileName The source file name.
+     * @return A Java identifier.
+     */
+    public static String classNameFor(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        StringBuilder className = new StringBuilder(base.length() + 1);
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            className.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (className.length() == 0 || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            className.insert(0, 'P');
+        }
+        return className.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * CompileClient - Sends compile requests to a {@link CompileServer} on this machine.
+ * One client holds one connection, which can carry any number of requests, one at a time.
+ */
+public class CompileClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private Backend backend = Backend.SOURCE;
+    private String optimize = "";
+    private String copyPath = "";
+
+    /**
+     * Connects to the server on a loopback port.
+     * @param port The server's port, usually {@link CompileServer#DEFAULT_PORT}.
+     */
+    public CompileClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Selects the backend of the following requests; the default generates Java source.
+     */
+    public void setBackend(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Sets the optimization passes of the following requests, as for cobol.optimize; "" leaves them to the server.
+     */
+    public void setOptimizations(String passes) {
+        this.optimize = passes;
+    }
+
+    /**
+     * Sets the folders COPY statements are resolved against, separated by the path separator;
+     * "" resolves them next to a source compiled by path.
+     */
+    public void setCopyPath(String copyPath) {
+        this.copyPath = copyPath;
+    }
+
+    /**
+     * Compiles program text.
+     * @param name Display name of the program, usually its file name.
+     * @param source The program text.
+     * @param className Name of the generated class, or "" to derive it from the name.
+     */
+    public Result compile(String name, CharSequence source, String className) throws IOException {
+        return request(name, source.toString().getBytes(StandardCharsets.UTF_8), className);
+    }
+
+    /**
+     * Compiles a source file that the server reads itself.
+     * @param source Path of the program; the server resolves a relative one against its own folder.
+     */
+    public Result compile(Path source) throws IOException {
+        return request(source.toAbsolutePath().toString(), null, "");
+    }
+
+    private Result request(String name, byte[] text, String className) throws IOException {
+        out.writeUTF(CompileServer.COMPILE);
+        out.writeUTF(name);
+        out.writeUTF(className);
+        out.writeUTF(backend.name().toLowerCase(Locale.ROOT));
+        out.writeUTF(optimize);
+        out.writeUTF(copyPath);
+        out.writeInt(text != null ? text.length : -1);
+        if (text != null) {
+            out.write(text);
+        }
+        out.flush();
+
+        boolean success = in.readBoolean();
+        String compiledClass = in.readUTF();
+        byte[] output = new byte[in.readInt()];
+        in.readFully(output);
+        int count = in.readInt();
+        List<String> diagnostics = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            diagnostics.add(CompileServer.readText(in));
+        }
+        return new Result(success, compiledClass, output, diagnostics);
+    }
+
+    /**
+     * @return The server's phase totals, as printed by {@link CompilerMetrics#toString()}.
+     */
+    public String stats() throws IOException {
+        out.writeUTF(CompileServer.STATS);
+        out.flush();
+        return in.readUTF();
+    }
+
+    /**
+     * Stops the server once the requests it is already serving are done.
+     */
+    public void shutdown() throws IOException {
+        out.writeUTF(CompileServer.SHUTDOWN);
+        out.flush();
+        in.readBoolean();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Result - The reply to one compile request.
+     */
+    public static class Result {
+        private final boolean success;
+        private final String className;
+        private final byte[] output;
+        private final List<String> diagnostics;
+
+        Result(boolean success, String className, byte[] output, List<String> diagnostics) {
+            this.success = success;
+            this.className = className;
+            this.output = output;
+            this.diagnostics = diagnostics;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return The generated Java source in UTF-8, or the class file; empty if the compile failed.
+         */
+        public byte[] getOutput() {
+            return output;
+        }
+
+        /**
+         * @return The error of a failed compile first, then the unit's debug log if debugging is on.
+         */
+        public List<String> getDiagnostics() {
+            return diagnostics;
+        }
+    }
+}
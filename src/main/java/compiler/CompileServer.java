@@ -0,0 +1,239 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CompileServer - A resident compiler that takes compile requests over a loopback socket,
+ * so that many small compilations share one warm, JIT-compiled JVM instead of starting one each.
+ * Every connection is served on its own thread, a virtual one where the JVM has them, and
+ * every request compiles in its own {@link CompilationUnit}. Copybook libraries and their
+ * caches are kept across requests. Talk to it with {@link CompileClient}.
+ *
+ * <p>The protocol is binary, with strings in {@link DataOutputStream#writeUTF} form. A
+ * connection carries any number of requests, each a command string followed by its fields:
+ * <ul>
+ *   <li>{@code COMPILE}: name, class name ("" to derive it from the name), backend ("source"
+ *   or "bytecode"), optimization passes ("" for the server's), copybook folders separated by
+ *   the path separator ("" for the folder of the source), then the length of the UTF-8 source,
+ *   at most {@link #MAX_SOURCE_BYTES}, and its bytes; a length of -1 compiles the file at the
+ *   path given as the name. The reply is a success flag, the class name, the length and bytes
+ *   of the Java source or class file, and a count of diagnostics followed by the length and
+ *   bytes of each one's UTF-8 text, which unlike a writeUTF string has no 64 KB limit.</li>
+ *   <li>{@code STATS}: the reply is the server's phase totals, see {@link CompilerMetrics}.</li>
+ *   <li>{@code SHUTDOWN}: the server stops accepting connections; the reply is true.</li>
+ * </ul>
+ */
+public class CompileServer implements Closeable {
+    public static final int DEFAULT_PORT = 7731;
+    static final String COMPILE = "COMPILE";
+    static final String STATS = "STATS";
+    static final String SHUTDOWN = "SHUTDOWN";
+    /** The longest program text a request may send. */
+    static final int MAX_SOURCE_BYTES = 256 << 20;
+
+    private static final long COPYBOOK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final ServerSocket socket;
+    private final ExecutorService connections = connectionExecutor();
+    private final Map<String, CopybookLibrary> copybooks = new ConcurrentHashMap<>();
+    private final CompilerMetrics metrics = new CompilerMetrics();
+
+    /**
+     * Binds the server to a port of the loopback interface, so only local processes can reach it.
+     * @param port The port, or 0 for any free one.
+     */
+    public CompileServer(int port) throws IOException {
+        this.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return One virtual thread per connection on Java 21 and later, else a pool of daemon threads.
+     */
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "compile-server-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return The phase totals of every request served so far.
+     */
+    public CompilerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Accepts connections until the server is closed or a client sends SHUTDOWN.
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                Socket connection = socket.accept();
+                connections.execute(() -> handle(connection));
+            }
+        } catch (SocketException e) {
+            if (!socket.isClosed()) {
+                throw e;
+            }
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void handle(Socket connection) {
+        try (connection;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            while (true) {
+                String command;
+                try {
+                    command = in.readUTF();
+                } catch (EOFException e) {
+                    return; // the client is done
+                }
+                switch (command) {
+                    case COMPILE:
+                        compile(in, out);
+                        break;
+                    case STATS:
+                        out.writeUTF(metrics.toString());
+                        break;
+                    case SHUTDOWN:
+                        out.writeBoolean(true);
+                        out.flush();
+                        close();
+                        return;
+                    default:
+                        throw new IOException("Unknown command " + command);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            Debugger.log("Compile server connection failed: " + e.getMessage());
+        }
+    }
+
+    private void compile(DataInputStream in, DataOutputStream out) throws IOException {
+        String name = in.readUTF();
+        String className = in.readUTF();
+        String backend = in.readUTF();
+        String optimize = in.readUTF();
+        String copyPath = in.readUTF();
+        int length = in.readInt();
+        if (length < -1 || length > MAX_SOURCE_BYTES) {
+            throw new IOException("Invalid source length " + length);
+        }
+        byte[] text = null;
+        if (length >= 0) {
+            text = new byte[length];
+            in.readFully(text);
+        }
+
+        byte[] output = null;
+        List<String> diagnostics = new ArrayList<>();
+        CompilationUnit unit = null;
+        try {
+            if (className.isEmpty()) {
+                className = CompilationUnit.classNameFor(Paths.get(name).getFileName().toString());
+            }
+            CharSequence source = text != null ? CobolSourceReader.normalize(new String(text, StandardCharsets.UTF_8), null)
+                    : CobolSourceReader.read(Paths.get(name));
+            unit = new CompilationUnit(name, source);
+            unit.setMetrics(metrics);
+            if (!optimize.isEmpty()) {
+                unit.setOptimizations(ASTOptimizer.parsePasses(optimize));
+            }
+            if (!copyPath.isEmpty()) {
+                unit.setCopybookLibrary(copybooks.computeIfAbsent(copyPath, CompileServer::library));
+            } else if (text == null && Paths.get(name).toAbsolutePath().getParent() != null) {
+                unit.setCopybookLibrary(copybooks.computeIfAbsent(
+                        Paths.get(name).toAbsolutePath().getParent().toString(), CompileServer::library));
+            }
+            if (Backend.valueOf(backend.toUpperCase(Locale.ROOT)) == Backend.BYTECODE) {
+                output = unit.compileToClass(className);
+            } else {
+                output = unit.compile(className).getBytes(StandardCharsets.UTF_8);
+            }
+        } catch (Exception e) {
+            diagnostics.add(BatchCompiler.describe(e));
+        }
+        if (unit != null) {
+            diagnostics.addAll(unit.getDebugLog());
+        }
+
+        out.writeBoolean(output != null);
+        out.writeUTF(className);
+        out.writeInt(output != null ? output.length : 0);
+        if (output != null) {
+            out.write(output);
+        }
+        out.writeInt(diagnostics.size());
+        for (String diagnostic : diagnostics) {
+            writeText(out, diagnostic);
+        }
+    }
+
+    /**
+     * Writes a string of any length as the length and bytes of its UTF-8 encoding.
+     */
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeText}.
+     */
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static CopybookLibrary library(String copyPath) {
+        List<Path> folders = new ArrayList<>();
+        for (String folder : copyPath.split(File.pathSeparator)) {
+            folders.add(Paths.get(folder));
+        }
+        return new CopybookLibrary(folders, COPYBOOK_CACHE_BYTES);
+    }
+}
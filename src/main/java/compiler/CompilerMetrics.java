@@ -0,0 +1,168 @@
+package compiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CompilerMetrics - Totals per compiler phase: how often it ran, how long it took, how many
+ * items it handled and how many bytes it allocated. A batch run collects one set for all of
+ * its units, see {@link BatchReport#getMetrics()}. Each phase of each unit is also recorded
+ * as a {@link PhaseEvent} while a JFR recording enables it; with neither, timing a phase
+ * costs one check.
+ */
+public class CompilerMetrics {
+    /**
+     * The phases of compiling a unit. The items of LEX are tokens, those of PARSE, OPTIMIZE
+     * and GENERATE are AST nodes, and those of WRITE are bytes.
+     */
+    public enum Phase {
+        LEX, PARSE, OPTIMIZE, GENERATE, WRITE
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final Span NONE = new Span(null, null, null, null);
+
+    private final LongAdder[] runs = adders();
+    private final LongAdder[] nanos = adders();
+    private final LongAdder[] items = adders();
+    private final LongAdder[] allocated = adders();
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations;
+            }
+        }
+        return null; // allocated bytes are reported as 0
+    }
+
+    /**
+     * Starts timing a phase of a unit.
+     * @param metrics Receives the totals, or null to only record the JFR event.
+     * @param phase The phase that starts.
+     * @param unit Name of the compilation unit.
+     * @return The span to end when the phase is done; an inactive one if nothing records it.
+     */
+    static Span start(CompilerMetrics metrics, Phase phase, String unit) {
+        PhaseEvent event = new PhaseEvent();
+        if (metrics == null && !event.isEnabled()) {
+            return NONE;
+        }
+        return new Span(metrics, phase, unit, event);
+    }
+
+    public long getRuns(Phase phase) {
+        return runs[phase.ordinal()].sum();
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return The tokens, AST nodes or bytes the phase handled, as described at {@link Phase}.
+     */
+    public long getItems(Phase phase) {
+        return items[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return Bytes allocated during the phase by the compiling threads, without the paragraph methods
+     *         that fork/join workers generated; 0 if the JVM does not tell.
+     */
+    public long getAllocatedBytes(Phase phase) {
+        return allocated[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return One line per phase that ran, with its totals and throughput.
+     */
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            long count = getRuns(phase);
+            if (count == 0) {
+                continue;
+            }
+            double seconds = getNanos(phase) / 1e9;
+            table.append(String.format("%-8s %6d runs %10.1f ms %12d items (%.0f/s) %10.1f MB allocated%n",
+                    phase, count, seconds * 1e3, getItems(phase), seconds > 0 ? getItems(phase) / seconds : 0.0,
+                    getAllocatedBytes(phase) / 1e6));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Span - One phase of one unit being timed.
+     */
+    static final class Span {
+        private final CompilerMetrics metrics;
+        private final Phase phase;
+        private final String unit;
+        private final PhaseEvent event;
+        private final long startAllocated;
+        private final long start;
+
+        private Span(CompilerMetrics metrics, Phase phase, String unit, PhaseEvent event) {
+            this.metrics = metrics;
+            this.phase = phase;
+            this.unit = unit;
+            this.event = event;
+            if (event != null) {
+                event.begin();
+            }
+            this.startAllocated = phase != null ? allocatedBytes() : 0;
+            this.start = phase != null ? System.nanoTime() : 0;
+        }
+
+        /**
+         * @return False if nothing records this span, so its item count need not be worked out.
+         */
+        boolean isActive() {
+            return phase != null;
+        }
+
+        /**
+         * Ends the phase and records it.
+         * @param count The tokens, AST nodes or bytes the phase handled.
+         */
+        void end(long count) {
+            if (phase == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocatedBytes() - startAllocated;
+            if (metrics != null) {
+                int index = phase.ordinal();
+                metrics.runs[index].increment();
+                metrics.nanos[index].add(elapsed);
+                metrics.items[index].add(count);
+                metrics.allocated[index].add(bytes);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.unit = unit;
+                event.phase = phase.name();
+                event.items = count;
+                event.allocated = bytes;
+                event.commit();
+            }
+        }
+
+        private static long allocatedBytes() {
+            return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package compiler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConnectionPool - A bounded pool of JDBC connections, each with a cache of prepared
+ * statements keyed by SQL text, so running a statement again neither reconnects nor
+ * prepares it again. Connections are opened on demand up to the pool size; a caller
+ * that finds them all in use waits for one to be released.
+ * The pool counts what it does, so its wait time and cache hit rate can be watched.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    /** How often a waiting caller checks whether a broken connection has freed a place. */
+    private static final long RECHECK_MILLIS = 100;
+
+    private final SQLConfig config;
+    private final BlockingQueue<PooledConnection> idle;
+    private final AtomicInteger open = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public ConnectionPool(SQLConfig config) {
+        this.config = config;
+        this.idle = new ArrayBlockingQueue<>(config.getPoolSize());
+    }
+
+    public SQLConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Takes an idle connection, opens one if the pool is not full, or else waits for one.
+     * Close the returned connection to give it back.
+     * @throws SQLTimeoutException If none is released within the configured wait timeout.
+     */
+    public PooledConnection acquire() throws SQLException {
+        checkOpen();
+        acquisitions.increment();
+        PooledConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        connection = openIfRoom();
+        if (connection != null) {
+            return connection;
+        }
+        waits.increment();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getWaitTimeoutMillis());
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTimeoutException("No connection released within " + config.getWaitTimeoutMillis() + " ms");
+                }
+                connection = idle.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(RECHECK_MILLIS)), TimeUnit.NANOSECONDS);
+                if (connection == null) {
+                    connection = openIfRoom();
+                }
+                if (connection != null) {
+                    return connection;
+                }
+                checkOpen();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private PooledConnection openIfRoom() throws SQLException {
+        int count;
+        do {
+            count = open.get();
+            if (count >= config.getPoolSize()) {
+                return null;
+            }
+        } while (!open.compareAndSet(count, count + 1));
+        try {
+            Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+            connectionsOpened.increment();
+            return new PooledConnection(connection);
+        } catch (SQLException | RuntimeException e) {
+            open.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+    }
+
+    private void release(PooledConnection connection) {
+        boolean usable;
+        try {
+            usable = !closed && !connection.connection.isClosed();
+        } catch (SQLException e) {
+            usable = false;
+        }
+        if (!usable || !idle.offer(connection)) {
+            connection.discard();
+        }
+    }
+
+    /**
+     * Closes the idle connections; connections in use are closed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.discard();
+        }
+    }
+
+    /** @return How many connections were handed out. */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /** @return How many acquisitions found every connection in use and had to wait. */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /** @return The total time callers spent waiting for a connection. */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /** @return How many physical connections were opened. */
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /** @return How many connections are open now, idle or in use. */
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    /** @return How many statements were found in a connection's cache. */
+    public long getStatementHits() {
+        return statementHits.sum();
+    }
+
+    /** @return How many statements had to be prepared. */
+    public long getStatementMisses() {
+        return statementMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{open=" + getOpenConnections() + ", opened=" + getConnectionsOpened()
+                + ", acquisitions=" + getAcquisitions() + ", waits=" + getWaits()
+                + ", waitMillis=" + TimeUnit.NANOSECONDS.toMillis(getWaitNanos())
+                + ", statementHits=" + getStatementHits() + ", statementMisses=" + getStatementMisses() + "}";
+    }
+
+    /**
+     * A connection on loan from the pool. Used by one thread at a time, like the
+     * JDBC connection it wraps.
+     */
+    public final class PooledConnection implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        /** Statements the borrower still uses, e.g. with a batch or an open result set, which are not evicted. */
+        private final Set<PreparedStatement> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true); // least recently used first
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return The connection's prepared statement for the SQL text, prepared on first use.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementHits.increment();
+                return statement;
+            }
+            statementMisses.increment();
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            while (statements.size() > config.getStatementCacheSize() && eldest.hasNext()) {
+                PreparedStatement evicted = eldest.next();
+                if (evicted != statement && !pinned.contains(evicted)) {
+                    eldest.remove();
+                    closeQuietly(evicted);
+                }
+            }
+            return statement;
+        }
+
+        /**
+         * Keeps a statement of this connection's cache open until {@link #unpin}, even while
+         * more statements than the cache holds are prepared; the cache is trimmed back later.
+         */
+        public void pin(PreparedStatement statement) {
+            pinned.add(statement);
+        }
+
+        public void unpin(PreparedStatement statement) {
+            pinned.remove(statement);
+        }
+
+        /**
+         * Gives the connection back to the pool.
+         */
+        @Override
+        public void close() {
+            pinned.clear();
+            release(this);
+        }
+
+        private void discard() {
+            open.decrementAndGet();
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // already unusable
+            }
+        }
+
+        private void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // the connection is going away or the statement is already closed
+            }
+        }
+    }
+}
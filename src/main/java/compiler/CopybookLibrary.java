@@ -0,0 +1,563 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CopybookLibrary - Resolves COPY statements against a list of library folders.
+ * Every copybook is read and lexed once and then kept, fully expanded, as a token
+ * fragment in an LRU cache bounded by an estimate of its memory use. Its text is copied onto
+ * the heap, and a cached copybook is used only while neither its file nor that of any copybook
+ * nested in it has changed since it was read. One library is
+ * meant to be shared by all units of a batch. REPLACING is applied while splicing the
+ * fragment's tokens into the unit, by matching and substituting text-words; copybook
+ * text is never lexed again.
+ */
+public class CopybookLibrary {
+    private static final String[] EXTENSIONS = {"", ".cpy", ".CPY", ".copy", ".cbl", ".cob"};
+    private static final int BYTES_PER_TOKEN = 16;
+    private static final int MAX_NESTING = 32;
+    private static final ThreadLocal<Deque<Path>> LOADING = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final List<Path> folders;
+    private final long maxBytes;
+    private final LinkedHashMap<Path, Copybook> fragments = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Path, CompletableFuture<Copybook>> pending = new HashMap<>();
+    /** The thread loading each pending copybook, guarded by {@code pending}. */
+    private final Map<Path, Thread> loaders = new HashMap<>();
+    /** The pending copybook each waiting thread waits for, guarded by {@code pending}. */
+    private final Map<Thread, Path> waiting = new HashMap<>();
+    private final Map<String, Resolution> resolved = new ConcurrentHashMap<>();
+    private long cachedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param folders Library folders, searched in order.
+     * @param maxBytes Approximate memory cap for cached copybook fragments.
+     */
+    public CopybookLibrary(List<Path> folders, long maxBytes) {
+        this.folders = List.copyOf(folders);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A lexed copybook with its own nested COPY statements already expanded.
+     */
+    static final class Copybook {
+        final Path path;
+        final TokenBuffer tokens;
+        final List<Path> dependencies;
+        /** The file of this copybook and those of its nested ones, as they were when read. */
+        final Map<Path, FileStamp> stamps;
+        final long weight;
+
+        Copybook(Path path, TokenBuffer tokens, List<Path> dependencies, Map<Path, FileStamp> stamps) {
+            this.path = path;
+            this.tokens = tokens;
+            this.dependencies = dependencies;
+            this.stamps = stamps;
+            this.weight = (long) tokens.size() * BYTES_PER_TOKEN + tokens.source().length();
+        }
+
+        /**
+         * @return True if none of the files the copybook was read from has changed since.
+         */
+        boolean isCurrent() {
+            for (Map.Entry<Path, FileStamp> stamp : stamps.entrySet()) {
+                if (!Objects.equals(stamp.getValue(), FileStamp.of(stamp.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The modification time and size of a file.
+     */
+    static final class FileStamp {
+        final FileTime lastModified;
+        final long size;
+
+        private FileStamp(FileTime lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        /**
+         * @return The stamp of the file, or null if it cannot be read.
+         */
+        static FileStamp of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime(), attributes.size());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FileStamp && ((FileStamp) other).lastModified.equals(lastModified)
+                    && ((FileStamp) other).size == size;
+        }
+
+        @Override
+        public int hashCode() {
+            return lastModified.hashCode() * 31 + Long.hashCode(size);
+        }
+    }
+
+    /**
+     * One COPY statement found in a token stream: the tokens [start, end) it replaces.
+     */
+    private static final class CopyStatement {
+        final int start;
+        final int end;
+        final Copybook copybook;
+        final List<int[]> replacing;
+
+        CopyStatement(int start, int end, Copybook copybook, List<int[]> replacing) {
+            this.start = start;
+            this.end = end;
+            this.copybook = copybook;
+            this.replacing = replacing;
+        }
+    }
+
+    /**
+     * Replaces every COPY statement of a token stream with the tokens of its copybook.
+     * @param tokens The lexed unit.
+     * @param dependencies Receives the path of every copybook used, nested ones included.
+     * @return The expanded tokens, or {@code tokens} itself if it has no COPY statement.
+     */
+    public TokenBuffer expand(TokenBuffer tokens, List<Path> dependencies) {
+        return expand(tokens, dependencies, new HashMap<>());
+    }
+
+    /**
+     * @param stamps Receives the stamps the copybooks used were read with.
+     */
+    private TokenBuffer expand(TokenBuffer tokens, List<Path> dependencies, Map<Path, FileStamp> stamps) {
+        List<CopyStatement> copies = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.is(i, TokenKind.IDENTIFIER) && tokens.text(i).equals("COPY")) {
+                CopyStatement copy = parseCopy(tokens, i);
+                copies.add(copy);
+                dependencies.add(copy.copybook.path);
+                dependencies.addAll(copy.copybook.dependencies);
+                stamps.putAll(copy.copybook.stamps);
+                i = copy.end - 1;
+            }
+        }
+        if (copies.isEmpty()) {
+            return tokens;
+        }
+
+        Map<Copybook, Integer> bases = new IdentityHashMap<>();
+        CompositeSource source = new CompositeSource(tokens.source());
+        int expectedTokens = tokens.size();
+        for (CopyStatement copy : copies) {
+            if (!bases.containsKey(copy.copybook)) {
+                bases.put(copy.copybook, source.append(copy.copybook.tokens.source()));
+            }
+            expectedTokens += copy.copybook.tokens.size();
+        }
+
+        TokenBuffer expanded = new TokenBuffer(source, expectedTokens);
+        int next = 0;
+        for (CopyStatement copy : copies) {
+            for (int i = next; i < copy.start; i++) {
+                expanded.copyFrom(tokens, i, 0);
+            }
+            splice(expanded, copy, bases.get(copy.copybook), tokens);
+            next = copy.end;
+        }
+        for (int i = next; i < tokens.size(); i++) {
+            expanded.copyFrom(tokens, i, 0);
+        }
+        return expanded;
+    }
+
+    /**
+     * Parses "COPY name [OF|IN library] [SUPPRESS] [REPLACING operand BY operand ...] .".
+     * A REPLACING operand is ==pseudo-text== or a single text-word, recorded as a token range.
+     */
+    private CopyStatement parseCopy(TokenBuffer tokens, int start) {
+        int i = start + 1;
+        String name = tokens.text(i++);
+        if (name.startsWith("\"")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        String library = null;
+        if (i < tokens.size() && isWord(tokens, i, "OF", "IN")) {
+            library = tokens.text(i + 1);
+            i += 2;
+        }
+        if (i < tokens.size() && isWord(tokens, i, "SUPPRESS")) {
+            i++;
+        }
+        List<int[]> replacing = new ArrayList<>();
+        if (i < tokens.size() && isWord(tokens, i, "REPLACING")) {
+            i++;
+            while (i < tokens.size() && !tokens.isChar(i, TokenKind.PUNCTUATION, '.')) {
+                int[] from = operand(tokens, i);
+                i = from[2];
+                if (i >= tokens.size() || !isWord(tokens, i, "BY")) {
+                    throw new RuntimeException("Expected BY in COPY " + name + " REPLACING");
+                }
+                int[] by = operand(tokens, i + 1);
+                i = by[2];
+                replacing.add(new int[] {from[0], from[1], by[0], by[1]});
+            }
+        }
+        if (i >= tokens.size() || !tokens.isChar(i, TokenKind.PUNCTUATION, '.')) {
+            throw new RuntimeException("Expected . after COPY " + name);
+        }
+        return new CopyStatement(start, i + 1, get(name, library), replacing);
+    }
+
+    /**
+     * @return {first token, end token, index after the operand}
+     */
+    private static int[] operand(TokenBuffer tokens, int i) {
+        if (isPseudoTextDelimiter(tokens, i)) {
+            int first = i + 2;
+            int end = first;
+            while (end < tokens.size() && !isPseudoTextDelimiter(tokens, end)) {
+                end++;
+            }
+            if (end >= tokens.size()) {
+                throw new RuntimeException("Unterminated pseudo-text in COPY REPLACING");
+            }
+            return new int[] {first, end, end + 2};
+        }
+        return new int[] {i, i + 1, i + 1};
+    }
+
+    private static boolean isPseudoTextDelimiter(TokenBuffer tokens, int i) {
+        return i + 1 < tokens.size() && tokens.isChar(i, TokenKind.OPERATOR, '=') && tokens.isChar(i + 1, TokenKind.OPERATOR, '=')
+                && tokens.start(i + 1) == tokens.start(i) + 1;
+    }
+
+    private static boolean isWord(TokenBuffer tokens, int i, String... words) {
+        if (!tokens.is(i, TokenKind.IDENTIFIER)) {
+            return false;
+        }
+        String text = tokens.text(i);
+        for (String word : words) {
+            if (word.equals(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the copybook's tokens, substituting the first matching REPLACING operand at each position.
+     */
+    private static void splice(TokenBuffer expanded, CopyStatement copy, int base, TokenBuffer unit) {
+        TokenBuffer fragment = copy.copybook.tokens;
+        int j = 0;
+        next:
+        while (j < fragment.size()) {
+            for (int[] rule : copy.replacing) {
+                int length = rule[1] - rule[0];
+                if (length > 0 && matches(fragment, j, unit, rule[0], length)) {
+                    for (int k = rule[2]; k < rule[3]; k++) {
+                        expanded.copyFrom(unit, k, 0);
+                    }
+                    j += length;
+                    continue next;
+                }
+            }
+            expanded.copyFrom(fragment, j++, base);
+        }
+    }
+
+    private static boolean matches(TokenBuffer fragment, int at, TokenBuffer unit, int from, int length) {
+        if (at + length > fragment.size()) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (!TokenBuffer.sameToken(fragment, at + k, unit, from + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the lexed copybook, loading it at most once even when many units ask at the same time.
+     * A thread that needs a copybook another thread is loading waits for it, unless that thread
+     * is, directly or through other loading threads, waiting for one this thread is loading:
+     * then the copybooks copy each other and the COPY is rejected instead of deadlocking.
+     */
+    Copybook get(String name, String library) {
+        Path path = resolve(name, library);
+        synchronized (this) {
+            Copybook cached = fragments.get(path);
+            if (cached != null && cached.isCurrent()) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        Deque<Path> loading = LOADING.get();
+        if (loading.contains(path) || loading.size() >= MAX_NESTING) {
+            throw new RuntimeException("Recursive COPY of " + path);
+        }
+        Thread current = Thread.currentThread();
+        CompletableFuture<Copybook> future = new CompletableFuture<>();
+        CompletableFuture<Copybook> existing;
+        synchronized (pending) {
+            existing = pending.putIfAbsent(path, future);
+            if (existing == null) {
+                loaders.put(path, current);
+            } else if (waitsFor(loaders.get(path), current)) {
+                throw new RuntimeException("Recursive COPY of " + path);
+            } else {
+                waiting.put(current, path);
+            }
+        }
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            } finally {
+                synchronized (pending) {
+                    waiting.remove(current);
+                }
+            }
+        }
+        try {
+            loading.push(path);
+            Copybook copybook = load(path);
+            cache(copybook);
+            future.complete(copybook);
+            return copybook;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.pop();
+            synchronized (pending) {
+                pending.remove(path);
+                loaders.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Follows the copybooks loading threads wait for, from a thread, while holding the lock on {@code pending}.
+     * @return True if the chain reaches {@code target}.
+     */
+    private boolean waitsFor(Thread thread, Thread target) {
+        while (thread != null) {
+            if (thread == target) {
+                return true;
+            }
+            Path awaited = waiting.get(thread);
+            thread = awaited == null ? null : loaders.get(awaited);
+        }
+        return false;
+    }
+
+    private Copybook load(Path path) {
+        try {
+            Map<Path, FileStamp> stamps = new HashMap<>();
+            stamps.put(path, FileStamp.of(path)); // before reading, so a change while reading is seen later
+            TokenBuffer tokens = CobolLexer.lex(CobolSourceReader.read(path));
+            List<Path> dependencies = new ArrayList<>();
+            TokenBuffer expanded = expand(tokens, dependencies, stamps);
+            return new Copybook(path, expanded, List.copyOf(dependencies), stamps);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read copybook " + path, e);
+        }
+    }
+
+    private synchronized void cache(Copybook copybook) {
+        Copybook previous = fragments.put(copybook.path, copybook);
+        if (previous != null) {
+            cachedBytes -= previous.weight;
+        }
+        cachedBytes += copybook.weight;
+        Iterator<Copybook> eldest = fragments.values().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Copybook evicted = eldest.next();
+            if (evicted != copybook) {
+                eldest.remove();
+                cachedBytes -= evicted.weight;
+            }
+        }
+    }
+
+    /**
+     * Finds the copybook file, searching the folders again only if one of those searched last
+     * time, up to the one it was found in, has changed since, e.g. by getting a copybook of
+     * the same name.
+     */
+    private Path resolve(String name, String library) {
+        String key = library == null ? name : library + "/" + name;
+        Resolution resolution = resolved.get(key);
+        if (resolution == null || !resolution.isCurrent()) {
+            resolution = find(name, library);
+            resolved.put(key, resolution);
+        }
+        return resolution.path;
+    }
+
+    private Resolution find(String name, String library) {
+        List<Path> searched = new ArrayList<>();
+        List<FileTime> stamps = new ArrayList<>();
+        for (Path folder : folders) {
+            List<Path> candidates = new ArrayList<>(2);
+            if (library != null) {
+                candidates.add(folder.resolve(library));
+            }
+            candidates.add(folder);
+            for (Path candidate : candidates) {
+                searched.add(candidate);
+                stamps.add(folderTime(candidate));
+                for (String extension : EXTENSIONS) {
+                    Path file = candidate.resolve(name + extension);
+                    if (Files.isRegularFile(file)) {
+                        return new Resolution(file.toAbsolutePath().normalize(), searched, stamps);
+                    }
+                }
+            }
+        }
+        throw new RuntimeException("Copybook " + name + " not found in " + folders);
+    }
+
+    private static FileTime folderTime(Path folder) {
+        try {
+            return Files.getLastModifiedTime(folder);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Where a copybook was found, and the modification times of the folders searched for it.
+     */
+    private static final class Resolution {
+        final Path path;
+        final List<Path> searched;
+        final List<FileTime> stamps;
+
+        Resolution(Path path, List<Path> searched, List<FileTime> stamps) {
+            this.path = path;
+            this.searched = searched;
+            this.stamps = stamps;
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < searched.size(); i++) {
+                if (!Objects.equals(stamps.get(i), folderTime(searched.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The library folders, in search order.
+     */
+    public List<Path> getFolders() {
+        return folders;
+    }
+
+    /**
+     * Several source texts presented as one, so spliced tokens keep pointing into
+     * their original text without copying it.
+     */
+    private static final class CompositeSource implements CharSequence {
+        private final List<CharSequence> parts = new ArrayList<>();
+        private int[] bases = new int[4];
+        private int length;
+        private int lastPart;
+
+        CompositeSource(CharSequence first) {
+            append(first);
+        }
+
+        /**
+         * @return The offset at which the appended text starts.
+         */
+        int append(CharSequence part) {
+            if (parts.size() == bases.length) {
+                bases = java.util.Arrays.copyOf(bases, bases.length * 2);
+            }
+            int base = length;
+            bases[parts.size()] = base;
+            parts.add(part);
+            length += part.length();
+            return base;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            int part = lastPart;
+            if (index < bases[part] || index >= bases[part] + parts.get(part).length()) {
+                part = 0;
+                while (part + 1 < parts.size() && bases[part + 1] <= index) {
+                    part++;
+                }
+                lastPart = part;
+            }
+            return parts.get(part).charAt(index - bases[part]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DataField - How a data item the procedure division uses is held in the generated class.
+ * A declared item lives at a fixed offset of its record's byte array (see {@link WorkingStorage})
+ * and is read and written through {@link Storage}; an item used without a declaration is a
+ * static field of its own. Numeric values of up to 18 digits are scaled longs handled by
+ * {@link FixedPoint}, larger ones and undeclared items BigDecimals, anything else a String.
+ * Shared by both backends so they agree on every field.
+ */
+final class DataField {
+    enum Kind { LONG, DECIMAL, TEXT }
+
+    /** The static field of an undeclared item; for a declared one, the name of its record's array. */
+    final String javaName;
+    final Kind kind;
+    /** Number of digit positions, 0 for an undeclared item, which is not truncated. */
+    final int digits;
+    final int scale;
+    final boolean signed;
+    /** Number of bytes of a declared item. */
+    final int size;
+    /** Byte offset in the record array, or -1 for an undeclared item. */
+    final int offset;
+    private final Usage usage;
+
+    private DataField(String javaName, Kind kind, int digits, int scale, boolean signed, int size, int offset, Usage usage) {
+        this.javaName = javaName;
+        this.kind = kind;
+        this.digits = digits;
+        this.scale = scale;
+        this.signed = signed;
+        this.size = size;
+        this.offset = offset;
+        this.usage = usage;
+    }
+
+    static DataField of(String cobolName, DataItem item, WorkingStorage storage) {
+        if (item == null) {
+            return new DataField(JavaCodeGenerator.javaName(cobolName), Kind.DECIMAL, 0, 0, true, 0, -1, null);
+        }
+        String array = storage.arrayOf(item);
+        if (item.getCategory() == DataItem.Category.NUMERIC) {
+            Usage usage = item.getUsage();
+            int digits = usage == Usage.INDEX ? 9 : item.getDigits();
+            Kind kind = digits <= FixedPoint.MAX_DIGITS ? Kind.LONG : Kind.DECIMAL;
+            if (usage == Usage.FLOAT || usage == Usage.DOUBLE || (usage != Usage.DISPLAY && usage != Usage.PACKED_DECIMAL
+                    && kind == Kind.DECIMAL)) {
+                throw new RuntimeException("Unsupported USAGE " + usage + " for " + cobolName);
+            }
+            return new DataField(array, kind, digits, item.getScale(), item.isSigned(), item.getSize(), item.getOffset(), usage);
+        }
+        return new DataField(array, Kind.TEXT, 0, 0, false, item.getSize(), item.getOffset(), Usage.DISPLAY);
+    }
+
+    /**
+     * Collects the data items a program stores into or passes on, in order of first use.
+     * @return Fields by {@link #key} of their references.
+     */
+    static Map<String, DataField> collect(ASTNode root, WorkingStorage storage) {
+        Map<String, DataField> fields = new LinkedHashMap<>();
+        collect(root, storage, fields);
+        return fields;
+    }
+
+    private static void collect(ASTNode node, WorkingStorage storage, Map<String, DataField> fields) {
+        if (node.getKind() == NodeKind.VARIABLE || node.getKind() == NodeKind.PARAMETER) {
+            fields.computeIfAbsent(key(node), name -> of(node.getValue(), lookup(storage.getSymbols(), node), storage));
+        }
+        for (ASTNode child : node.getChildren()) {
+            collect(child, storage, fields);
+        }
+    }
+
+    /**
+     * @return The reference as written, e.g. "CUST-ID OF SUPPLIER", which tells same-named items apart.
+     */
+    static String key(ASTNode reference) {
+        StringBuilder key = new StringBuilder(reference.getValue());
+        for (ASTNode qualifier : reference.getChildren()) {
+            key.append(" OF ").append(qualifier.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return True if the item lives in a record array rather than in a field of its own.
+     */
+    boolean inStorage() {
+        return offset >= 0;
+    }
+
+    /**
+     * @return The suffix of the {@link Storage} get and put methods for the item, e.g. "Packed".
+     */
+    String accessor() {
+        if (kind == Kind.TEXT) {
+            return "Text";
+        }
+        String name = usage == Usage.DISPLAY ? "Display" : usage == Usage.PACKED_DECIMAL ? "Packed" : "Binary";
+        return kind == Kind.DECIMAL ? name + "Decimal" : name;
+    }
+
+    static DataItem lookup(SymbolTable symbols, ASTNode reference) {
+        String[] qualifiers = new String[reference.getChildren().size()];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifiers[i] = reference.getChildren().get(i).getValue();
+        }
+        return symbols.lookup(reference.getValue(), qualifiers);
+    }
+
+    String javaType() {
+        switch (kind) {
+            case LONG:
+                return "long";
+            case DECIMAL:
+                return "java.math.BigDecimal";
+            default:
+                return "String";
+        }
+    }
+
+    String descriptor() {
+        switch (kind) {
+            case LONG:
+                return "J";
+            case DECIMAL:
+                return "Ljava/math/BigDecimal;";
+            default:
+                return "Ljava/lang/String;";
+        }
+    }
+
+    /**
+     * @return The value a numeric literal has once moved into a LONG field: decimals beyond
+     *         the field's scale and integer digits beyond its size are dropped.
+     */
+    long moveLong(String literal) {
+        return FixedPoint.truncate(FixedPoint.rescale(new BigDecimal(literal), scale, false), digits, signed)
+                .unscaledValue().longValueExact();
+    }
+
+    /**
+     * @return The value a numeric literal has once moved into a DECIMAL field, as BigDecimal text.
+     */
+    String moveDecimal(String literal) {
+        BigDecimal value = new BigDecimal(literal);
+        if (digits > 0) {
+            value = FixedPoint.truncate(FixedPoint.rescale(value, scale, false), digits, signed);
+        }
+        return value.toPlainString();
+    }
+
+    /**
+     * @return The value a numeric literal has once moved into a TEXT field: its digits,
+     *         left-justified and padded or cut to the field size.
+     */
+    String moveText(String literal) {
+        String text = literal;
+        if (text.length() >= size) {
+            return text.substring(0, size);
+        }
+        return text + " ".repeat(size - text.length());
+    }
+}
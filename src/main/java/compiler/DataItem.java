@@ -0,0 +1,323 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DataItem - One entry of the DATA DIVISION (a record, group or elementary item).
+ * Offsets are relative to the start of the enclosing level-01 record and are filled in
+ * by {@link SymbolTable#computeLayout()}.
+ */
+public class DataItem {
+    /**
+     * Category - The class of data an item holds, derived from its picture.
+     */
+    public enum Category { GROUP, ALPHANUMERIC, ALPHABETIC, NUMERIC, NUMERIC_EDITED }
+
+    private final int level;
+    private final String name;
+    private DataItem parent;
+    private List<DataItem> children = Collections.emptyList();
+    private String picture;
+    private Usage usage = Usage.DISPLAY;
+    private int occurs;
+    private DataItem redefines;
+    private DataItem renames;
+    private DataItem renamesThrough;
+    private final List<String> values = new ArrayList<>(1);
+
+    private Category category = Category.GROUP;
+    private int digits;
+    private int scale;
+    private boolean signed;
+    private int offset;
+    private int size;
+
+    /**
+     * @param level The level number (01-49, 66, 77 or 88).
+     * @param name The data name, or "FILLER".
+     */
+    public DataItem(int level, String name) {
+        this.level = level;
+        this.name = name;
+    }
+
+    void setParent(DataItem parent) {
+        this.parent = parent;
+    }
+
+    void addChild(DataItem child) {
+        if (children.isEmpty()) {
+            children = new ArrayList<>();
+        }
+        children.add(child);
+    }
+
+    /**
+     * Sets the picture and derives category, digits, scale and sign from it.
+     * @param picture The picture character-string, e.g. "S9(5)V99" or "X(10)".
+     */
+    public void setPicture(String picture) {
+        this.picture = picture;
+        String expanded = expandPicture(picture);
+        boolean alphanumeric = false;
+        boolean alphabetic = true;
+        boolean edited = false;
+        boolean afterPoint = false;
+        digits = 0;
+        scale = 0;
+        signed = false;
+        for (int i = 0; i < expanded.length(); i++) {
+            char c = expanded.charAt(i);
+            switch (c) {
+                case 'X':
+                    alphanumeric = true;
+                    alphabetic = false;
+                    break;
+                case 'A':
+                    alphanumeric = true;
+                    break;
+                case '9':
+                    alphabetic = false;
+                    digits++;
+                    if (afterPoint) scale++;
+                    break;
+                case 'S':
+                    signed = true;
+                    break;
+                case 'V':
+                    afterPoint = true;
+                    break;
+                case 'P':
+                    // Leading P's shift the digits after them right, trailing ones left
+                    if (afterPoint || digits == 0) {
+                        scale++;
+                        afterPoint = true;
+                    } else {
+                        scale--;
+                    }
+                    break;
+                case '.':
+                    afterPoint = true;
+                    edited = true;
+                    break;
+                default:
+                    edited = true;
+                    alphabetic = false;
+                    if (c == 'Z' || c == '*') {
+                        digits++;
+                        if (afterPoint) scale++;
+                    }
+            }
+        }
+        if (alphanumeric) {
+            category = alphabetic ? Category.ALPHABETIC : Category.ALPHANUMERIC;
+        } else {
+            category = edited ? Category.NUMERIC_EDITED : Category.NUMERIC;
+        }
+    }
+
+    /**
+     * Expands repetition factors, e.g. "9(3)V9(2)" becomes "999V99".
+     */
+    static String expandPicture(String picture) {
+        StringBuilder expanded = new StringBuilder();
+        String upper = picture.toUpperCase();
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (c == '(' && expanded.length() > 0) {
+                int close = upper.indexOf(')', i);
+                if (close < 0) {
+                    throw new RuntimeException("Unbalanced parentheses in picture " + picture);
+                }
+                int repeat = Integer.parseInt(upper.substring(i + 1, close).trim());
+                char repeated = expanded.charAt(expanded.length() - 1);
+                for (int r = 1; r < repeat; r++) {
+                    expanded.append(repeated);
+                }
+                i = close;
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    /**
+     * Number of bytes of one occurrence of an elementary item.
+     */
+    int elementarySize() {
+        switch (usage) {
+            case BINARY:
+                return digits <= 4 ? 2 : digits <= 9 ? 4 : 8;
+            case PACKED_DECIMAL:
+                return digits / 2 + 1;
+            case FLOAT:
+            case INDEX:
+                return 4;
+            case DOUBLE:
+                return 8;
+            default:
+                if (picture == null) {
+                    throw new RuntimeException("Elementary item " + name + " has no PIC clause");
+                }
+                int positions = 0;
+                String expanded = expandPicture(picture);
+                for (int i = 0; i < expanded.length(); i++) {
+                    char c = expanded.charAt(i);
+                    if (c != 'S' && c != 'V' && c != 'P') {
+                        positions++;
+                    }
+                }
+                return positions;
+        }
+    }
+
+    void setUsage(Usage usage) {
+        this.usage = usage;
+        if (picture == null && (usage == Usage.FLOAT || usage == Usage.DOUBLE || usage == Usage.INDEX)) {
+            category = Category.NUMERIC;
+        }
+    }
+
+    void setOccurs(int occurs) {
+        this.occurs = occurs;
+    }
+
+    void setRedefines(DataItem redefines) {
+        this.redefines = redefines;
+    }
+
+    void setRenames(DataItem renames, DataItem renamesThrough) {
+        this.renames = renames;
+        this.renamesThrough = renamesThrough;
+    }
+
+    void addValue(String value) {
+        values.add(value);
+    }
+
+    void setLayout(int offset, int size) {
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DataItem getParent() {
+        return parent;
+    }
+
+    public List<DataItem> getChildren() {
+        return children;
+    }
+
+    public String getPicture() {
+        return picture;
+    }
+
+    public Usage getUsage() {
+        return usage;
+    }
+
+    /**
+     * @return The OCCURS count, or 0 if the item is not a table.
+     */
+    public int getOccurs() {
+        return occurs;
+    }
+
+    public DataItem getRedefines() {
+        return redefines;
+    }
+
+    /**
+     * @return For a level-66 item, the first item of the renamed range, or null.
+     */
+    public DataItem getRenames() {
+        return renames;
+    }
+
+    /**
+     * @return For a level-66 item, the last item of the renamed range, or null.
+     */
+    public DataItem getRenamesThrough() {
+        return renamesThrough;
+    }
+
+    /**
+     * @return The VALUE literals, as written. Condition names (level 88) may have several.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public boolean isGroup() {
+        return category == Category.GROUP;
+    }
+
+    public boolean isConditionName() {
+        return level == 88;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * @return Byte offset of the first occurrence from the start of the level-01 record.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Size in bytes of one occurrence.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Size in bytes of all occurrences.
+     */
+    public int getTotalSize() {
+        return size * Math.max(1, occurs);
+    }
+
+    /**
+     * @return The level-01 (or 77) record this item belongs to.
+     */
+    public DataItem getRecord() {
+        DataItem item = this;
+        while (item.parent != null) {
+            item = item.parent;
+        }
+        return item;
+    }
+
+    @Override
+    public String toString() {
+        return "DataItem{" + "level=" + level + ", name='" + name + "', picture='" + picture
+                + "', usage=" + usage + ", offset=" + offset + ", size=" + size + ", occurs=" + occurs + "}";
+    }
+}
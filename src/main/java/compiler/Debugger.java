@@ -1,26 +1,67 @@
-package compiler;
-
-/**
- * Debugger - Utility class for tracing execution.
- * This helps in debugging and can be enabled/disabled.
- */
-public class Debugger {
-    private static boolean DEBUG_MODE = false;
-
-    /**
-     * Enable debugging mode.
-     */
-    public static void enableDebugging() {
-        DEBUG_MODE = true;
-    }
-
-    /**
-     * Logs debugging messages.
-     * @param message Debugging message.
-     */
-    public static void log(String message) {
-        if (DEBUG_MODE) {
-            System.out.println("[DEBUG] " + message);
-        }
-    }
-}
+package compiler;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Debugger - Utility class for tracing execution.
+ * This helps in debugging and can be enabled/disabled.
+ * While a compilation unit is being compiled on a thread, its messages are collected
+ * in that unit's own log instead of being interleaved on standard output.
+ */
+public class Debugger {
+    private static volatile boolean DEBUG_MODE = false;
+    private static final ThreadLocal<List<String>> UNIT_LOG = new ThreadLocal<>();
+
+    /**
+     * Enable debugging mode.
+     */
+    public static void enableDebugging() {
+        DEBUG_MODE = true;
+    }
+
+    /**
+     * @return True if debugging mode is enabled.
+     */
+    public static boolean isEnabled() {
+        return DEBUG_MODE;
+    }
+
+    /**
+     * Logs debugging messages.
+     * @param message Debugging message.
+     */
+    public static void log(String message) {
+        if (DEBUG_MODE) {
+            List<String> unitLog = UNIT_LOG.get();
+            if (unitLog != null) {
+                unitLog.add(message);
+            } else {
+                System.out.println("[DEBUG] " + message);
+            }
+        }
+    }
+
+    /**
+     * Logs a debugging message that is only built when debugging mode is enabled, for
+     * messages that are expensive to build, such as a dump of the AST.
+     * @param message Builds the debugging message.
+     */
+    public static void log(Supplier<String> message) {
+        if (DEBUG_MODE) {
+            log(message.get());
+        }
+    }
+
+    /**
+     * Redirects messages logged on the current thread into a unit log.
+     * @param unitLog The list that receives messages, or null to log to standard output again.
+     */
+    static void captureUnitLog(List<String> unitLog) {
+        if (unitLog == null) {
+            UNIT_LOG.remove();
+        } else {
+            UNIT_LOG.set(unitLog);
+        }
+    }
+}
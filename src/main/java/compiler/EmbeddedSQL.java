@@ -0,0 +1,191 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EmbeddedSQL - The EXEC SQL statements of a program, numbered for its {@link SQLSession}.
+ * Shared by both backends so they agree on the numbering, on what each statement does,
+ * and on the host variables it binds.
+ * A cursor has the number of its DECLARE, whose query and input host variables its OPEN
+ * runs and binds; FETCH and CLOSE refer to it by that number too.
+ */
+final class EmbeddedSQL {
+    /** What the generated code does with a statement. */
+    enum Kind {
+        /** SELECT: fetch the first row into the INTO host variables, or display its first column. */
+        QUERY,
+        /** INSERT, UPDATE, DELETE or MERGE, which may be batched. */
+        UPDATE,
+        /** Anything else the database runs, such as DDL. */
+        EXECUTE,
+        /** DECLARE name CURSOR FOR query, which runs nothing until the cursor is opened. */
+        DECLARE,
+        OPEN,
+        /** FETCH: move a cursor to its next row and into the INTO host variables. */
+        FETCH,
+        CLOSE,
+        COMMIT,
+        ROLLBACK,
+        /** INCLUDE and BEGIN/END DECLARE SECTION, which only matter to a precompiler. */
+        NONE
+    }
+
+    private final List<String> texts = new ArrayList<>();
+    private final Map<ASTNode, Integer> numbers = new IdentityHashMap<>();
+    private final Map<String, ASTNode> cursors = new HashMap<>();
+    private final Map<String, DataField> fields;
+    private final DataField sqlCode;
+    private boolean used;
+
+    EmbeddedSQL(ASTNode root, Map<String, DataField> fields, WorkingStorage storage) {
+        this.fields = fields;
+        collect(root);
+        DataItem item = storage.getSymbols().lookup("SQLCODE");
+        DataField field = item == null || !used ? null : DataField.of("SQLCODE", item, storage);
+        this.sqlCode = field != null && field.kind == DataField.Kind.LONG && field.scale == 0 ? field : null;
+    }
+
+    private void collect(ASTNode node) {
+        if (node.getKind() == NodeKind.EXEC_SQL) {
+            Kind kind = kind(node);
+            used |= kind != Kind.NONE;
+            if (kind == Kind.QUERY || kind == Kind.UPDATE || kind == Kind.EXECUTE) {
+                numbers.put(node, texts.size());
+                texts.add(node.getValue().trim());
+            } else if (kind == Kind.DECLARE) {
+                String text = node.getValue();
+                int query = text.indexOf(" FOR ");
+                if (query < 0) {
+                    throw new RuntimeException("Missing FOR in EXEC SQL " + text.trim());
+                }
+                if (cursors.put(cursorName(node), node) != null) {
+                    throw new RuntimeException("Cursor " + cursorName(node) + " is declared twice");
+                }
+                numbers.put(node, texts.size());
+                texts.add(text.substring(query + 5).trim());
+            }
+        }
+        for (ASTNode child : node.getChildren()) {
+            collect(child);
+        }
+    }
+
+    static Kind kind(ASTNode exec) {
+        String[] words = words(exec);
+        switch (words[0]) {
+            case "SELECT":
+            case "WITH":
+            case "VALUES":
+                return Kind.QUERY;
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+            case "MERGE":
+                return Kind.UPDATE;
+            case "COMMIT":
+                return Kind.COMMIT;
+            case "ROLLBACK":
+                return Kind.ROLLBACK;
+            case "DECLARE":
+                // DECLARE C1 CURSOR [WITH HOLD] FOR ..., as opposed to e.g. a temporary table
+                return words.length > 2 && words[2].equals("CURSOR") ? Kind.DECLARE : Kind.EXECUTE;
+            case "OPEN":
+                return Kind.OPEN;
+            case "FETCH":
+                return Kind.FETCH;
+            case "CLOSE":
+                return Kind.CLOSE;
+            case "INCLUDE":
+            case "BEGIN":
+            case "END":
+                return Kind.NONE;
+            default:
+                return Kind.EXECUTE;
+        }
+    }
+
+    private static String[] words(ASTNode exec) {
+        return exec.getValue().trim().split(" +");
+    }
+
+    /**
+     * @return The cursor a DECLARE, OPEN, FETCH or CLOSE names; FETCH may say NEXT and FROM first.
+     */
+    private static String cursorName(ASTNode exec) {
+        String[] words = words(exec);
+        int name = 1;
+        while (name < words.length - 1 && (words[name].equals("NEXT") || words[name].equals("FROM"))) {
+            name++;
+        }
+        if (name >= words.length) {
+            throw new RuntimeException("Missing cursor name in EXEC SQL " + exec.getValue().trim());
+        }
+        return words[name];
+    }
+
+    /**
+     * @return The DECLARE of the cursor an OPEN, FETCH or CLOSE names, or the statement itself.
+     */
+    private ASTNode declaration(ASTNode exec) {
+        Kind kind = kind(exec);
+        if (kind != Kind.OPEN && kind != Kind.FETCH && kind != Kind.CLOSE) {
+            return exec;
+        }
+        ASTNode declaration = cursors.get(cursorName(exec));
+        if (declaration == null) {
+            throw new RuntimeException("Cursor " + cursorName(exec) + " is not declared");
+        }
+        return declaration;
+    }
+
+    /**
+     * @return True if the program runs any SQL, and so needs a session.
+     */
+    boolean isUsed() {
+        return used;
+    }
+
+    /**
+     * @return The statement texts, by number.
+     */
+    List<String> getTexts() {
+        return texts;
+    }
+
+    /**
+     * @return The number of a statement, or of the cursor it opens, fetches or closes.
+     */
+    int numberOf(ASTNode exec) {
+        return numbers.get(declaration(exec));
+    }
+
+    /**
+     * @return The fields of the "Input" or "Into" host variables of a statement, in order.
+     *         A cursor's inputs are those of its DECLARE.
+     */
+    List<DataField> hostVariables(ASTNode exec, NodeKind kind) {
+        List<DataField> hostFields = new ArrayList<>();
+        for (ASTNode child : (kind == NodeKind.INPUT ? declaration(exec) : exec).getChildren()) {
+            if (child.getKind() == kind) {
+                ASTNode reference = child.getChildren().get(0);
+                DataField field = fields.get(DataField.key(reference));
+                if (!field.inStorage()) {
+                    throw new RuntimeException("Host variable " + reference.getValue() + " is not declared");
+                }
+                hostFields.add(field);
+            }
+        }
+        return hostFields;
+    }
+
+    /**
+     * @return The program's integer SQLCODE item, set after each statement, or null if it has none.
+     */
+    DataField getSqlCode() {
+        return sqlCode;
+    }
+}
@@ -0,0 +1,112 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FileDefinition - A file named by a SELECT entry, with the record descriptions of its FD,
+ * or of its SD if it is a sort file.
+ * All records of a file share one record area, the way the REDEFINES of a record do.
+ */
+public class FileDefinition {
+    /**
+     * Organization - How records are laid out in the file.
+     */
+    public enum Organization {
+        /** Records of the file's record length back to back, or RDW-prefixed when they vary in size. */
+        SEQUENTIAL,
+        /** One record per line, trailing spaces dropped. */
+        LINE_SEQUENTIAL
+    }
+
+    private final String name;
+    private String assignment;
+    private boolean assignedToLiteral;
+    private Organization organization = Organization.SEQUENTIAL;
+    private boolean variable;
+    private boolean sort;
+    private final List<DataItem> records = new ArrayList<>(1);
+
+    /**
+     * @param name The file name used in OPEN, READ and CLOSE.
+     */
+    public FileDefinition(String name) {
+        this.name = name;
+        this.assignment = name;
+    }
+
+    void setAssignment(String assignment, boolean literal) {
+        this.assignment = assignment;
+        this.assignedToLiteral = literal;
+    }
+
+    void setOrganization(Organization organization) {
+        this.organization = organization;
+    }
+
+    void setVariable(boolean variable) {
+        this.variable = variable;
+    }
+
+    void setSort(boolean sort) {
+        this.sort = sort;
+    }
+
+    void addRecord(DataItem record) {
+        records.add(record);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The path of an ASSIGN TO literal, or the external name of an ASSIGN TO word.
+     */
+    public String getAssignment() {
+        return assignment;
+    }
+
+    /**
+     * @return True if ASSIGN named a path literal rather than an external name.
+     */
+    public boolean isAssignedToLiteral() {
+        return assignedToLiteral;
+    }
+
+    public Organization getOrganization() {
+        return organization;
+    }
+
+    /**
+     * @return True if the FD declares RECORD VARYING or a range of record sizes.
+     */
+    public boolean isVariable() {
+        return variable;
+    }
+
+    /**
+     * @return True if the file is described by an SD, and so is only used by SORT and MERGE.
+     */
+    public boolean isSort() {
+        return sort;
+    }
+
+    /**
+     * @return The level-01 records of the FD, in declaration order.
+     */
+    public List<DataItem> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return The size of the record area: the largest record of the FD.
+     */
+    public int getRecordLength() {
+        int length = 0;
+        for (DataItem record : records) {
+            length = Math.max(length, record.getTotalSize());
+        }
+        return length;
+    }
+}
@@ -0,0 +1,256 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * FixedPoint - Decimal arithmetic for generated programs.
+ * A numeric item of up to 18 digits is held as its unscaled value in a long; its scale
+ * (the digits after the implied decimal point) is known when the program is generated,
+ * so the generator emits the rescaling itself. The long operations check for overflow
+ * exactly, but never throw or allocate: a result that does not fit is {@link #OVERFLOW},
+ * which every operation passes on, so a COMPUTE tests for ON SIZE ERROR once, at the end.
+ * Items with more digits use the BigDecimal overloads, where null plays the part of OVERFLOW.
+ */
+public final class FixedPoint {
+    /** Marks a result that overflowed or divided by zero. */
+    public static final long OVERFLOW = Long.MIN_VALUE;
+    /** The most digits a long holds whatever their value. */
+    public static final int MAX_DIGITS = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    public static long add(long a, long b) {
+        long sum = a + b;
+        if (a == OVERFLOW || b == OVERFLOW || ((a ^ sum) & (b ^ sum)) < 0 || sum == OVERFLOW) {
+            return OVERFLOW;
+        }
+        return sum;
+    }
+
+    public static long subtract(long a, long b) {
+        long difference = a - b;
+        if (a == OVERFLOW || b == OVERFLOW || ((a ^ b) & (a ^ difference)) < 0 || difference == OVERFLOW) {
+            return OVERFLOW;
+        }
+        return difference;
+    }
+
+    /**
+     * @return The product; its scale is the sum of the operands' scales.
+     */
+    public static long multiply(long a, long b) {
+        if (a == OVERFLOW || b == OVERFLOW) {
+            return OVERFLOW;
+        }
+        long product = a * b;
+        long high = Math.multiplyHigh(a, b);
+        if ((high != 0 || product < 0) && (high != -1 || product >= 0) || product == OVERFLOW) {
+            return OVERFLOW;
+        }
+        return product;
+    }
+
+    public static long negate(long a) {
+        return a == OVERFLOW ? OVERFLOW : -a;
+    }
+
+    /**
+     * Divides and keeps {@code shift} more decimal places than a/b would, truncating the rest:
+     * the quotient's scale is the dividend's scale plus shift minus the divisor's scale.
+     * @return The quotient, or OVERFLOW if b is zero or the quotient does not fit.
+     */
+    public static long divide(long a, long b, int shift) {
+        if (a == OVERFLOW || b == OVERFLOW || b == 0) {
+            return OVERFLOW;
+        }
+        long quotient = a / b;
+        long remainder = a % b;
+        for (int i = 0; i < shift; i++) {
+            if (Math.abs(remainder) > Long.MAX_VALUE / 10) {
+                return divideWide(a, b, shift);
+            }
+            remainder *= 10;
+            quotient = add(multiply(quotient, 10), remainder / b);
+            remainder %= b;
+        }
+        return quotient;
+    }
+
+    // Long division whose remainder would overflow; only reached with divisors above 10^17
+    private static long divideWide(long a, long b, int shift) {
+        return toLong(BigDecimal.valueOf(a).divide(BigDecimal.valueOf(b), shift, RoundingMode.DOWN));
+    }
+
+    /**
+     * @return a raised to a non-negative integer power; its scale is a's scale times the exponent.
+     */
+    public static long power(long a, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result = multiply(result, a);
+        }
+        return result;
+    }
+
+    /**
+     * Moves a value to another scale, padding with zeros or dropping digits.
+     * @param rounded Round half away from zero, as ROUNDED does, instead of truncating.
+     */
+    public static long rescale(long value, int scale, int targetScale, boolean rounded) {
+        if (value == OVERFLOW || targetScale == scale) {
+            return value;
+        }
+        if (targetScale > scale) {
+            int shift = targetScale - scale;
+            return shift > MAX_DIGITS ? (value == 0 ? 0 : OVERFLOW) : multiply(value, POWERS_OF_TEN[shift]);
+        }
+        int drop = scale - targetScale;
+        if (drop > MAX_DIGITS) {
+            return 0;
+        }
+        long divisor = POWERS_OF_TEN[drop];
+        long quotient = value / divisor;
+        if (rounded) {
+            long remainder = Math.abs(value % divisor);
+            if (remainder >= divisor - remainder) {
+                quotient += value < 0 ? -1 : 1;
+            }
+        }
+        return quotient;
+    }
+
+    /**
+     * Keeps the low-order digits that fit in the item, as storing into it does, and drops
+     * the sign of an unsigned item.
+     */
+    public static long truncate(long value, int digits, boolean signed) {
+        if (value == OVERFLOW) {
+            return OVERFLOW;
+        }
+        long kept = digits > MAX_DIGITS ? value : value % POWERS_OF_TEN[digits];
+        return signed || kept >= 0 ? kept : -kept;
+    }
+
+    /**
+     * @return True if the value can be stored in an item of that many digits without losing
+     *         high-order digits, i.e. storing it raises no size error.
+     */
+    public static boolean fits(long value, int digits) {
+        return value != OVERFLOW && (digits > MAX_DIGITS || Math.abs(value) < POWERS_OF_TEN[digits]);
+    }
+
+    /**
+     * Stores a COMPUTE result without ON SIZE ERROR: high-order digits that do not fit are lost.
+     * @return The new value of the receiving item; the old one if the result overflowed.
+     */
+    public static long store(long old, long value, int digits, boolean signed) {
+        return value == OVERFLOW ? old : truncate(value, digits, signed);
+    }
+
+    /**
+     * Stores a COMPUTE result with ON SIZE ERROR, which leaves the receiving item unchanged.
+     * @return The new value of the receiving item.
+     */
+    public static long storeIfFits(long old, long value, int digits, boolean signed) {
+        return fits(value, digits) ? truncate(value, digits, signed) : old;
+    }
+
+    /**
+     * @return The value as decimal text, e.g. 1250 with scale 2 gives "12.50".
+     */
+    public static String toString(long value, int scale) {
+        if (value == OVERFLOW) {
+            return "OVERFLOW";
+        }
+        return BigDecimal.valueOf(value, scale).toPlainString();
+    }
+
+    /**
+     * @return A BigDecimal for a scaled long, or null for OVERFLOW.
+     */
+    public static BigDecimal big(long value, int scale) {
+        return value == OVERFLOW ? null : BigDecimal.valueOf(value, scale);
+    }
+
+    /**
+     * @return The unscaled value of a BigDecimal, or OVERFLOW if it does not fit a long.
+     */
+    public static long toLong(BigDecimal value) {
+        if (value == null || value.unscaledValue().bitLength() > 63) {
+            return OVERFLOW;
+        }
+        return value.unscaledValue().longValue();
+    }
+
+    public static BigDecimal add(BigDecimal a, BigDecimal b) {
+        return a == null || b == null ? null : a.add(b);
+    }
+
+    public static BigDecimal subtract(BigDecimal a, BigDecimal b) {
+        return a == null || b == null ? null : a.subtract(b);
+    }
+
+    public static BigDecimal multiply(BigDecimal a, BigDecimal b) {
+        return a == null || b == null ? null : a.multiply(b);
+    }
+
+    public static BigDecimal negate(BigDecimal a) {
+        return a == null ? null : a.negate();
+    }
+
+    /**
+     * @return a/b with the given scale, truncated, or null if b is zero.
+     */
+    public static BigDecimal divide(BigDecimal a, BigDecimal b, int scale) {
+        if (a == null || b == null || b.signum() == 0) {
+            return null;
+        }
+        return a.divide(b, scale, RoundingMode.DOWN);
+    }
+
+    public static BigDecimal power(BigDecimal a, int exponent) {
+        return a == null ? null : a.pow(exponent);
+    }
+
+    public static BigDecimal rescale(BigDecimal value, int targetScale, boolean rounded) {
+        return value == null ? null : value.setScale(targetScale, rounded ? RoundingMode.HALF_UP : RoundingMode.DOWN);
+    }
+
+    /**
+     * BigDecimal version of {@link #truncate(long, int, boolean)}; 0 digits means no limit.
+     */
+    public static BigDecimal truncate(BigDecimal value, int digits, boolean signed) {
+        if (value == null || digits <= 0) {
+            return value;
+        }
+        BigInteger kept = value.unscaledValue().remainder(BigInteger.TEN.pow(digits));
+        return new BigDecimal(signed ? kept : kept.abs(), value.scale());
+    }
+
+    /**
+     * BigDecimal version of {@link #fits(long, int)}; 0 digits means no limit.
+     */
+    public static boolean fits(BigDecimal value, int digits) {
+        return value != null && (digits <= 0 || value.unscaledValue().abs().compareTo(BigInteger.TEN.pow(digits)) < 0);
+    }
+
+    public static BigDecimal store(BigDecimal old, BigDecimal value, int digits, boolean signed) {
+        return value == null ? old : truncate(value, digits, signed);
+    }
+
+    public static BigDecimal storeIfFits(BigDecimal old, BigDecimal value, int digits, boolean signed) {
+        return fits(value, digits) ? truncate(value, digits, signed) : old;
+    }
+}
@@ -0,0 +1,288 @@
+package compiler;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * InMemoryJavaCompiler - Compiles generated Java sources with the platform compiler
+ * without touching the file system. Sources are read from strings and class files are
+ * collected in memory, from where they are loaded or streamed into a jar. Any number of
+ * units go through one compiler invocation.
+ */
+public class InMemoryJavaCompiler {
+    /** Runtime classes generated programs call into. */
+    private static final List<Class<?>> RUNTIME = List.of(FixedPoint.class, Storage.class, SequentialFile.class,
+            SortFile.class, SortFile.Run.class, SortConfig.class,
+            SQLHandler.class, SQLConfig.class, SQLSession.class, ConnectionPool.class, ConnectionPool.PooledConnection.class);
+
+    private final JavaCompiler compiler;
+    private final StandardJavaFileManager standardFileManager;
+    private final List<String> options;
+
+    /**
+     * Creates a compiler whose generated classes can use the classes on this JVM's class path,
+     * such as the compiler's own runtime support.
+     */
+    public InMemoryJavaCompiler() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No Java compiler available, run on a JDK rather than a JRE");
+        }
+        standardFileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        options = List.of("-classpath", System.getProperty("java.class.path"), "-proc:none", "-nowarn");
+    }
+
+    /**
+     * Outcome of one compiler invocation.
+     */
+    public static class Result {
+        private final Map<String, byte[]> classes;
+        private final Map<String, String> errors;
+
+        Result(Map<String, byte[]> classes, Map<String, String> errors) {
+            this.classes = classes;
+            this.errors = errors;
+        }
+
+        /**
+         * @return Class files by binary class name, empty if any unit failed.
+         */
+        public Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        /**
+         * @return Error messages by the class name of the failing source.
+         */
+        public Map<String, String> getErrors() {
+            return errors;
+        }
+
+        public boolean isSuccess() {
+            return errors.isEmpty();
+        }
+    }
+
+    /**
+     * Compiles all sources in one invocation.
+     * @param sources Java source code by top-level class name.
+     * @return The class files, or the errors of every failing source.
+     */
+    public synchronized Result compile(Map<String, String> sources) {
+        List<JavaFileObject> units = new ArrayList<>(sources.size());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            units.add(new SourceFile(source.getKey(), source.getValue()));
+        }
+        Map<String, byte[]> classes = new TreeMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        MemoryFileManager fileManager = new MemoryFileManager(standardFileManager, classes);
+        boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                String className = diagnostic.getSource() instanceof SourceFile
+                        ? ((SourceFile) diagnostic.getSource()).className : "";
+                String message = "line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null);
+                errors.merge(className, message, (first, next) -> first + "; " + next);
+            }
+        }
+        if (!success && errors.isEmpty()) {
+            errors.put("", "Java compilation failed");
+        }
+        return new Result(success ? classes : Collections.emptyMap(), errors);
+    }
+
+    /**
+     * Compiles the sources, leaving out those that fail, so one bad unit does not cost the rest.
+     * @param sources Java source code by top-level class name.
+     * @return The class files of the sources that compile, and the errors of those that do not.
+     */
+    public Result compileEach(Map<String, String> sources) {
+        Map<String, String> remaining = new LinkedHashMap<>(sources);
+        Map<String, String> errors = new LinkedHashMap<>();
+        while (!remaining.isEmpty()) {
+            Result result = compile(remaining);
+            if (result.isSuccess()) {
+                return new Result(result.getClasses(), errors);
+            }
+            boolean removed = false;
+            for (Map.Entry<String, String> error : result.getErrors().entrySet()) {
+                removed |= remaining.remove(error.getKey()) != null;
+                errors.put(error.getKey(), error.getValue());
+            }
+            if (!removed) {
+                // Errors not attributable to one source fail the whole invocation
+                for (String className : remaining.keySet()) {
+                    errors.putIfAbsent(className, result.getErrors().values().iterator().next());
+                }
+                remaining.clear();
+            }
+        }
+        return new Result(Collections.emptyMap(), errors);
+    }
+
+    /**
+     * Defines compiled classes in a fresh class loader.
+     * @param classes Class files by binary class name.
+     * @return A loader that finds the classes, delegating everything else to this compiler's loader.
+     */
+    public static ClassLoader load(Map<String, byte[]> classes) {
+        return new MemoryClassLoader(classes, InMemoryJavaCompiler.class.getClassLoader());
+    }
+
+    /**
+     * Runs the main method of a compiled program in this JVM.
+     * @param loader A loader returned by {@link #load(Map)}.
+     * @param className The program class.
+     * @param args Program arguments.
+     */
+    public static void run(ClassLoader loader, String className, String... args) throws Exception {
+        Method main = loader.loadClass(className).getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Streams compiled classes into a jar.
+     * @param classes Class files by binary class name.
+     * @param mainClass Class recorded as Main-Class in the manifest, or null.
+     * @param out Receives the jar; it is finished but not closed.
+     */
+    public static void writeJar(Map<String, byte[]> classes, String mainClass, OutputStream out) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        JarOutputStream jar = new JarOutputStream(out, manifest);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            jar.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+            jar.write(entry.getValue());
+            jar.closeEntry();
+        }
+        for (Class<?> runtime : RUNTIME) {
+            // generated programs call these, so the jar carries them to run on its own
+            if (!classes.containsKey(runtime.getName())) {
+                try (InputStream in = runtime.getResourceAsStream("/" + runtime.getName().replace('.', '/') + ".class")) {
+                    jar.putNextEntry(new JarEntry(runtime.getName().replace('.', '/') + ".class"));
+                    in.transferTo(jar);
+                    jar.closeEntry();
+                }
+            }
+        }
+        jar.finish();
+    }
+
+    /**
+     * A source file held in a string.
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String className;
+        private final String code;
+
+        SourceFile(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.className = className;
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * A class file written to memory; the bytes land in the shared map when the compiler closes it.
+     */
+    private static final class ClassFile extends SimpleJavaFileObject {
+        private final String className;
+        private final Map<String, byte[]> classes;
+
+        ClassFile(String className, Map<String, byte[]> classes) {
+            super(URI.create("mem:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+
+    /**
+     * Sends class output to memory and everything else to the standard file manager.
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        MemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new ClassFile(className, classes);
+        }
+    }
+
+    /**
+     * Finds classes in a map of class files.
+     */
+    private static final class MemoryClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        MemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IncrementalFrontEnd - Keeps the tokens and AST of a program that is being edited up to date
+ * without lexing and parsing all of it again after each edit, for the GUI and for editors.
+ *
+ * <p>An edit is lexed again from the token before it until the lexer reaches a token that
+ * started, in the same state, before the edit; the old tokens from there on are kept and moved.
+ * The procedure statements are kept in blocks: the statements before the first paragraph, then
+ * one block per paragraph or section. Only the blocks the changed tokens fall in are parsed
+ * again, up to the first block after them that starts where a kept block starts; the other
+ * blocks keep their subtrees. Parsing waits until the program is asked for, so a burst of
+ * edits is parsed once. A change before the first procedure statement, where the symbol table
+ * is built, parses the whole program again, as does every edit of a fixed-format source.
+ *
+ * <p>The text, tokens and AST belong to the thread that edits them, usually the GUI's event
+ * thread. That thread only does the cheap bookkeeping of {@link #edit}: lexing and parsing
+ * in full can take long, so it hands a {@link #snapshot()} to a background thread, builds a
+ * {@link CompilationUnit#CompilationUnit(String, IncrementalFrontEnd)} from it there, and
+ * takes the parsed program back with {@link #update(IncrementalFrontEnd)} once it is done.
+ */
+public class IncrementalFrontEnd {
+    /** Tokens past the end of a statement the parser may look at. */
+    private static final int LOOKAHEAD = 3;
+
+    private final StringBuilder text;
+    private SourceFormat format;
+    /** The tokens of the text, or null if they have to be lexed in full. */
+    private TokenBuffer tokens;
+    private SymbolTable symbolTable;
+    private String programId;
+    /** Index of the first procedure token, or -1 if the program has to be parsed in full. */
+    private int procedureStart = -1;
+    private List<Block> blocks = new ArrayList<>();
+    /** Tokens changed since the program was last parsed. */
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = Integer.MIN_VALUE;
+    private boolean analyzed;
+    private ASTNode program;
+    private RuntimeException error;
+    private int relexedTokens;
+    private int reparsedBlocks;
+    /** Number of edits so far, to tell whether a snapshot still has the current text. */
+    private int edits;
+
+    /**
+     * @param text The program text; it is copied.
+     */
+    public IncrementalFrontEnd(CharSequence text) {
+        this.text = new StringBuilder(text);
+        this.format = SourceFormat.of(this.text);
+    }
+
+    private IncrementalFrontEnd(IncrementalFrontEnd other) {
+        text = new StringBuilder(other.text);
+        copyState(other, text);
+    }
+
+    /**
+     * Copies the text and what was lexed and parsed of it, without lexing or parsing anything.
+     * @return A front end the program can be asked of on another thread while this one is edited.
+     */
+    public IncrementalFrontEnd snapshot() {
+        return new IncrementalFrontEnd(this);
+    }
+
+    /**
+     * Takes over the tokens and AST of a snapshot of this front end, so the work done on it is not
+     * repeated. Does nothing if the snapshot was not asked for the program or the text changed since.
+     * @param snapshot A snapshot of this front end that no other thread uses any more.
+     */
+    public void update(IncrementalFrontEnd snapshot) {
+        if (snapshot.analyzed && !analyzed && snapshot.edits == edits) {
+            copyState(snapshot, text);
+        }
+    }
+
+    private void copyState(IncrementalFrontEnd other, CharSequence copiedText) {
+        format = other.format;
+        if (other.tokens != null) {
+            // Fixed-format tokens refer to the normalized text, which never changes
+            tokens = other.tokens.copy(other.tokens.source() == other.text ? copiedText : other.tokens.source());
+        } else {
+            tokens = null;
+        }
+        symbolTable = other.symbolTable;
+        programId = other.programId;
+        procedureStart = other.procedureStart;
+        blocks = new ArrayList<>(other.blocks.size());
+        for (Block block : other.blocks) {
+            blocks.add(new Block(block.start, block.nodes));
+        }
+        dirtyFrom = other.dirtyFrom;
+        dirtyTo = other.dirtyTo;
+        analyzed = other.analyzed;
+        program = other.program;
+        error = other.error;
+        relexedTokens = other.relexedTokens;
+        reparsedBlocks = other.reparsedBlocks;
+        edits = other.edits;
+    }
+
+    /**
+     * Replaces part of the text and lexes the changed tokens again.
+     * @param offset Offset of the replaced text.
+     * @param length Number of characters replaced; 0 inserts.
+     * @param replacement The new text; "" deletes.
+     */
+    public void edit(int offset, int length, CharSequence replacement) {
+        if (offset < 0 || length < 0 || offset + length > text.length()) {
+            throw new IndexOutOfBoundsException("Edit of " + offset + "+" + length + " in text of " + text.length());
+        }
+        edits++;
+        if (analyzed) {
+            analyzed = false;
+            relexedTokens = 0;
+        }
+        text.replace(offset, offset + length, replacement.toString());
+        SourceFormat detected = SourceFormat.of(text);
+        if (tokens == null || detected == SourceFormat.FIXED || format == SourceFormat.FIXED) {
+            format = detected;
+            tokens = null;
+            return;
+        }
+        try {
+            relex(offset, length, replacement);
+        } catch (RuntimeException e) {
+            tokens = null; // lexed in full, and so reported, once the program is asked for
+        }
+    }
+
+    private void relex(int offset, int removed, CharSequence inserted) {
+        int delta = inserted.length() - removed;
+        int from = Math.max(0, firstTokenEndingAtOrAfter(offset) - 1);
+        if (inserted.toString().indexOf('"') >= 0) {
+            // A quote the lexer could not close before may be closed now
+            for (int i = 0; i < from; i++) {
+                if (tokens.isChar(i, TokenKind.PUNCTUATION, '"')) {
+                    from = i;
+                    break;
+                }
+            }
+        }
+        while (from > 0 && CobolLexer.expectsPicture(tokens, from)) {
+            from--;
+        }
+        TokenBuffer region = new TokenBuffer(text, 16);
+        int to = CobolLexer.relex(text, region, from, tokens, offset + inserted.length(), delta);
+        tokens.replace(from, to, region, delta);
+        relexedTokens += region.size();
+        replaced(from, to, region.size());
+    }
+
+    private int firstTokenEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.start(middle) + tokens.length(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Moves the blocks after tokens that were replaced and adds the new tokens to the changed ones.
+     */
+    private void replaced(int from, int to, int count) {
+        if (procedureStart < 0) {
+            return;
+        }
+        if (from <= procedureStart) {
+            procedureStart = -1;
+            return;
+        }
+        int delta = count - (to - from);
+        List<Block> moved = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            if (block.start >= to) {
+                block.start += delta;
+                moved.add(block);
+            } else if (block.start < from) {
+                moved.add(block);
+            } // else its header was replaced
+        }
+        blocks = moved;
+        dirtyFrom = Math.min(dirtyFrom, from);
+        int mappedTo = dirtyTo >= to ? dirtyTo + delta : dirtyTo > from ? from + count : dirtyTo;
+        dirtyTo = Math.max(mappedTo, from + count);
+    }
+
+    /**
+     * Returns the AST of the program. After a change the root is a new node, which shares the
+     * subtrees of the blocks that were kept with the previous one; the front end never changes
+     * a node once it has returned it.
+     * @return The AST, or null if the text does not lex or parse, see {@link #getError()}.
+     */
+    public ASTNode getProgram() {
+        analyze();
+        return program;
+    }
+
+    /**
+     * @return Why the text does not lex or parse, or null if it does.
+     */
+    public RuntimeException getError() {
+        analyze();
+        return error;
+    }
+
+    /**
+     * @return The tokens of the text, or null if it does not lex. They refer to the text, so are
+     *         only valid until the next edit.
+     */
+    public TokenBuffer getTokens() {
+        analyze();
+        return tokens;
+    }
+
+    /**
+     * @return The DATA DIVISION entries of the program, as of its last successful parse.
+     */
+    public SymbolTable getSymbolTable() {
+        analyze();
+        return symbolTable;
+    }
+
+    /**
+     * @return The program text, which changes with the next edit.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return The tokens lexed since the program was last asked for.
+     */
+    int getRelexedTokens() {
+        return relexedTokens;
+    }
+
+    /**
+     * @return The blocks of statements parsed when the program was last asked for.
+     */
+    int getReparsedBlocks() {
+        return reparsedBlocks;
+    }
+
+    private void analyze() {
+        if (analyzed) {
+            return;
+        }
+        analyzed = true;
+        program = null;
+        error = null;
+        reparsedBlocks = 0;
+        try {
+            if (tokens == null) {
+                CharSequence source = format == SourceFormat.FIXED
+                        ? CobolSourceReader.normalize(text.toString(), SourceFormat.FIXED) : text;
+                tokens = CobolLexer.lex(source);
+                relexedTokens += tokens.size();
+                procedureStart = -1;
+            }
+            if (procedureStart < 0) {
+                parseAll();
+            } else {
+                parseChanged();
+            }
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = Integer.MIN_VALUE;
+        } catch (RuntimeException e) {
+            error = e;
+        }
+    }
+
+    private void parseAll() {
+        SymbolTable symbols = new SymbolTable();
+        CobolParser parser = new CobolParser(tokens, symbols);
+        String id = parser.parseDivisions();
+        int start = parser.getPosition();
+        List<Block> parsed = parseBlocks(parser, true, new ArrayList<>(), List.of());
+        symbolTable = symbols;
+        programId = id;
+        procedureStart = start;
+        blocks = parsed;
+        program = assemble();
+    }
+
+    private void parseChanged() {
+        int first = blockAt(Math.max(procedureStart, dirtyFrom - LOOKAHEAD));
+        CobolParser parser = new CobolParser(tokens, symbolTable);
+        parser.setPosition(blocks.get(first).start);
+        blocks = parseBlocks(parser, first == 0, new ArrayList<>(blocks.subList(0, first)),
+                blocks.subList(first + 1, blocks.size()));
+        program = assemble();
+    }
+
+    /**
+     * @return Index of the last block that starts at or before the token.
+     */
+    private int blockAt(int token) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blocks.get(middle).start <= token) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parses blocks until the end of the tokens or until the parser reaches, after the changed
+     * tokens, the start of one of the kept blocks, which are then taken over with those after it.
+     * @param prologue True if the first block is the statements before the first paragraph.
+     * @param parsed The blocks before, to which the new ones are added.
+     * @param kept Old blocks after the first one parsed, in order.
+     * @return The blocks.
+     */
+    private List<Block> parseBlocks(CobolParser parser, boolean prologue, List<Block> parsed, List<Block> kept) {
+        int next = 0;
+        while (prologue || !parser.atEnd()) {
+            int start = parser.getPosition();
+            while (next < kept.size() && kept.get(next).start < start) {
+                next++;
+            }
+            if (start >= dirtyTo && next < kept.size() && kept.get(next).start == start) {
+                parsed.addAll(kept.subList(next, kept.size()));
+                return parsed;
+            }
+            List<ASTNode> nodes;
+            if (prologue) {
+                ASTNode statements = new ASTNode(NodeKind.PROGRAM);
+                parser.parseStatements(statements);
+                nodes = statements.getChildren();
+                prologue = false;
+            } else {
+                nodes = List.of(parser.parseParagraph());
+            }
+            parsed.add(new Block(start, nodes));
+            reparsedBlocks++;
+        }
+        return parsed;
+    }
+
+    private ASTNode assemble() {
+        ASTNode root = new ASTNode(NodeKind.PROGRAM, programId);
+        for (Block block : blocks) {
+            for (ASTNode node : block.nodes) {
+                root.addChild(node);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Block - The statements before the first paragraph, or one paragraph or section, and the
+     * index of its first token.
+     */
+    private static final class Block {
+        int start;
+        final List<ASTNode> nodes;
+
+        Block(int start, List<ASTNode> nodes) {
+            this.start = start;
+            this.nodes = nodes;
+        }
+    }
+}
@@ -1,112 +1,1080 @@
-package compiler;
-
-import java.util.List;
-
-/**
- * JavaCodeGenerator - Converts the COBOL AST into Java source code.
- * This class traverses the AST and generates equivalent Java statements.
- */
-public class JavaCodeGenerator {
-    private final ASTNode root;
-    private final StringBuilder code = new StringBuilder();
-
-    /**
-     * Constructor that initializes the root AST node.
-     * @param root The root AST node of the parsed COBOL program.
-     */
-    public JavaCodeGenerator(ASTNode root) {
-        this.root = root;
-    }
-
-    /**
-     * Generates Java code from the COBOL AST.
-     * @return A formatted Java source code string.
-     */
-    public String generateCode() {
-        code.append("import java.util.*;\n");
-        code.append("import java.sql.*;\n");
-        code.append("public class Program {\n");
-        code.append("    public static void main(String[] args) throws SQLException {\n");
-
-        for (ASTNode child : root.getChildren()) {
-            processNode(child);
-        }
-
-        code.append("    }\n");
-        code.append("}\n");
-        return code.toString();
-    }
-
-    /**
-     * Processes different AST node types and translates them into Java statements.
-     * @param node The ASTNode to process.
-     */
-    private void processNode(ASTNode node) {
-        switch (node.getType()) {
-            case "DisplayStatement":
-                processDisplayStatement(node);
-                break;
-            case "MoveStatement":
-                processMoveStatement(node);
-                break;
-            case "StopRun":
-                code.append("        System.exit(0);\n");
-                break;
-            case "CallStatement":
-                processCallStatement(node);
-                break;
-            case "ExecSQL":
-                processExecSQL(node);
-                break;
-        }
-    }
-
-    /**
-     * Translates `DISPLAY` statements to Java's `System.out.println()`.
-     * @param node ASTNode representing the COBOL DISPLAY statement.
-     */
-    private void processDisplayStatement(ASTNode node) {
-        code.append("        System.out.println(\"").append(node.getValue()).append("\");\n");
-    }
-
-    /**
-     * Translates `MOVE` statements to Java variable assignments.
-     * @param node ASTNode representing the COBOL MOVE statement.
-     */
-    private void processMoveStatement(ASTNode node) {
-        String value = node.getChildren().get(0).getValue();
-        String variable = node.getChildren().get(1).getValue();
-        code.append("        ").append(variable).append(" = ").append(value).append(";\n");
-    }
-
-    /**
-     * Translates `CALL` statements to Java method calls.
-     * @param node ASTNode representing the COBOL CALL statement.
-     */
-    private void processCallStatement(ASTNode node) {
-        String subroutine = node.getChildren().get(0).getValue();
-        List<ASTNode> parameters = node.getChildren().subList(1, node.getChildren().size());
-
-        code.append("        ").append(subroutine).append(".methodName(");
-        for (int i = 0; i < parameters.size(); i++) {
-            if (i > 0) code.append(", ");
-            code.append(parameters.get(i).getValue());
-        }
-        code.append(");\n");
-    }
-
-    /**
-     * Translates `EXEC SQL` statements into Java JDBC.
-     * @param node ASTNode representing the COBOL EXEC SQL statement.
-     */
-    private void processExecSQL(ASTNode node) {
-        String sqlQuery = node.getValue();
-        code.append("        try (Connection conn = DriverManager.getConnection(\"jdbc:mysql://localhost:3306/mydb\", \"user\", \"password\");\n");
-        code.append("             PreparedStatement stmt = conn.prepareStatement(\"").append(sqlQuery).append("\")) {\n");
-        code.append("            ResultSet rs = stmt.executeQuery();\n");
-        code.append("            if (rs.next()) {\n");
-        code.append("                System.out.println(rs.getString(1));\n");
-        code.append("            }\n");
-        code.append("        }\n");
-    }
-}
+package compiler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * JavaCodeGenerator - Converts the COBOL AST into Java source code.
+ * This class traverses the AST and generates equivalent Java statements, in methods laid
+ * out by {@link ProcedureLayout}. The source is streamed to a Writer as it is generated;
+ * the paragraph methods are generated in parallel, a window at a time, and written in order.
+ */
+public class JavaCodeGenerator {
+    /** Most methods generated ahead of the one being written. */
+    private static final int PARALLEL_WINDOW = 64;
+
+    private final ASTNode root;
+    private final String className;
+    private final WorkingStorage storage;
+    private final Map<String, DataField> fields;
+    private final EmbeddedSQL sql;
+    private final ProcedureLayout layout;
+    private final StringBuilder code = new StringBuilder();
+    private String indent = "        ";
+    private int computeCount;
+    private int loopCount;
+    private boolean parallel = true;
+
+    /**
+     * Constructor that initializes the root AST node.
+     * @param root The root AST node of the parsed COBOL program.
+     */
+    public JavaCodeGenerator(ASTNode root) {
+        this(root, "Program");
+    }
+
+    /**
+     * Constructor for generating a program under a specific class name.
+     * @param root The root AST node of the parsed COBOL program.
+     * @param className Name of the generated Java class.
+     */
+    public JavaCodeGenerator(ASTNode root, String className) {
+        this(root, className, new SymbolTable());
+    }
+
+    /**
+     * Constructor for generating a program whose data items are declared in a symbol table.
+     * @param root The root AST node of the parsed COBOL program.
+     * @param className Name of the generated Java class.
+     * @param symbolTable The program's DATA DIVISION, which decides how each item is held.
+     */
+    public JavaCodeGenerator(ASTNode root, String className, SymbolTable symbolTable) {
+        this.root = root;
+        this.className = className;
+        this.storage = new WorkingStorage(symbolTable);
+        this.fields = DataField.collect(root, storage);
+        this.sql = new EmbeddedSQL(root, fields, storage);
+        this.layout = new ProcedureLayout(root);
+    }
+
+    /**
+     * Creates a generator for one method of a program, sharing the analysis of the whole.
+     * Local names are numbered per generator, which is enough as they are local to the method.
+     */
+    private JavaCodeGenerator(JavaCodeGenerator program) {
+        this.root = program.root;
+        this.className = program.className;
+        this.storage = program.storage;
+        this.fields = program.fields;
+        this.sql = program.sql;
+        this.layout = program.layout;
+    }
+
+    /**
+     * @param parallel False to generate every method on the calling thread. By default the
+     *        methods of a program with paragraphs are generated as fork/join tasks.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Generates Java code from the COBOL AST.
+     * @return A formatted Java source code string.
+     */
+    public String generateCode() {
+        StringWriter out = new StringWriter();
+        try {
+            generateCode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringWriter does not throw
+        }
+        return out.toString();
+    }
+
+    /**
+     * Generates Java code from the COBOL AST, writing it out part by part, so that no more
+     * than one record image or a window of methods is held in memory.
+     * @param out Receives the Java source; it is flushed but not closed.
+     */
+    public void generateCode(Writer out) throws IOException {
+        code.append("import java.util.*;\n");
+        code.append("import java.sql.*;\n");
+        code.append("import compiler.FixedPoint;\n");
+        code.append("import compiler.Storage;\n");
+        code.append("import compiler.SequentialFile;\n");
+        code.append("import compiler.SortFile;\n");
+        code.append("import compiler.SQLSession;\n");
+        code.append("public class ").append(className).append(" {\n");
+        for (Map.Entry<String, byte[]> record : storage.getImages().entrySet()) {
+            code.append("    static final byte[] ").append(record.getKey()).append(" = Storage.image(");
+            List<String> chunks = WorkingStorage.chunks(record.getValue());
+            for (int i = 0; i < chunks.size(); i++) {
+                code.append(i > 0 ? ",\n            " : "").append(javaLiteral(chunks.get(i)));
+            }
+            code.append(");\n");
+            flush(out);
+        }
+        for (FileDefinition file : storage.getSymbols().getFiles()) {
+            if (file.isSort()) {
+                code.append("    static final SortFile ").append(javaName(file.getName())).append(" = new SortFile(")
+                        .append(javaLiteral(file.getName())).append(", ").append(file.getRecordLength()).append(");\n");
+                continue;
+            }
+            code.append("    static final SequentialFile ").append(javaName(file.getName())).append(" = new SequentialFile(")
+                    .append(javaLiteral(file.getName())).append(", ").append(javaLiteral(file.getAssignment())).append(", ")
+                    .append(file.isAssignedToLiteral()).append(", ").append(fileFormat(file)).append(", ")
+                    .append(file.getRecordLength()).append(");\n");
+        }
+        if (sql.isUsed()) {
+            code.append("    static final SQLSession sql = new SQLSession(");
+            for (int i = 0; i < sql.getTexts().size(); i++) {
+                code.append(i > 0 ? ",\n            " : "").append(javaLiteral(sql.getTexts().get(i)));
+            }
+            code.append(");\n");
+        }
+        for (DataField field : fields.values()) {
+            if (!field.inStorage()) {
+                code.append("    static ").append(field.javaType()).append(' ').append(field.javaName).append(";\n");
+            }
+        }
+        if (!layout.isFlat()) {
+            code.append("    static final int $NEXT = ").append(ProcedureLayout.NEXT).append(";\n");
+            code.append("    static final int $STOP = ").append(ProcedureLayout.STOP).append(";\n");
+        }
+        code.append("    public static void main(String[] args) throws SQLException {\n");
+        if (sql.isUsed()) {
+            // the run is one unit of work: committed at the end, rolled back on failure
+            line("try {");
+            indent += "    ";
+            boolean completes = processProcedure();
+            indent = "        ";
+            if (completes) {
+                line("    sql.close();");
+            }
+            line("} catch (Throwable e) {");
+            line("    sql.abort();");
+            line("    throw e;");
+            line("}");
+        } else {
+            processProcedure();
+        }
+        code.append("    }\n");
+        if (!layout.isFlat()) {
+            generateDispatch();
+        }
+        flush(out);
+        if (!layout.isFlat()) {
+            generateMethods(out);
+        }
+        out.write("}\n");
+        out.flush();
+    }
+
+    private void flush(Writer out) throws IOException {
+        out.append(code);
+        code.setLength(0);
+    }
+
+    /**
+     * Generates the body of main: the statements of a flat program, or a dispatch loop over
+     * all of the paragraphs.
+     * @return True if control can reach the end of main.
+     */
+    private boolean processProcedure() {
+        if (layout.isFlat()) {
+            processBlock(root.getChildren());
+            return ProcedureLayout.completes(root.getChildren());
+        }
+        line("perform(0, " + (layout.getParagraphs().size() - 1) + ");");
+        return true;
+    }
+
+    /**
+     * Generates the dispatch loop and the dispatch switches. perform runs paragraphs by number
+     * until the last one falls through, and returns true if the program ended instead: by
+     * STOP RUN, or by falling through its last paragraph.
+     */
+    private void generateDispatch() {
+        int count = layout.getParagraphs().size();
+        code.append("    static boolean perform(int first, int last) throws SQLException {\n");
+        code.append("        int paragraph = first;\n");
+        code.append("        while (true) {\n");
+        code.append("            int next = dispatch(paragraph);\n");
+        code.append("            if (next == $STOP || (next == $NEXT && paragraph == last)) {\n");
+        code.append("                return next == $STOP;\n");
+        code.append("            }\n");
+        code.append("            paragraph = next == $NEXT ? paragraph + 1 : next;\n");
+        code.append("            if (paragraph == ").append(count).append(") {\n");
+        code.append("                return true;\n");
+        code.append("            }\n");
+        code.append("        }\n");
+        code.append("    }\n");
+        for (ProcedureLayout.Dispatch dispatch : layout.getDispatches()) {
+            code.append("    static int ").append(dispatch.name).append("(int paragraph) throws SQLException {\n");
+            code.append("        switch (paragraph").append(dispatch.shift > 0 ? " >> " + dispatch.shift : "").append(") {\n");
+            int cases = dispatch.shift > 0 ? dispatch.children.size() : dispatch.last - dispatch.first + 1;
+            for (int i = 0; i < cases; i++) {
+                String label = i == cases - 1 ? "default" : "case " + (dispatch.shift > 0
+                        ? dispatch.children.get(i).first >> dispatch.shift : dispatch.first + i);
+                String call = dispatch.shift > 0 ? dispatch.children.get(i).name + "(paragraph)"
+                        : layout.getParagraphs().get(dispatch.first + i).method.name + "()";
+                code.append("            ").append(label).append(": return ").append(call).append(";\n");
+            }
+            code.append("        }\n");
+            code.append("    }\n");
+        }
+    }
+
+    /**
+     * Generates a method per paragraph and chunk, each with a generator of its own. A window
+     * of methods is forked at a time and the methods are written in layout order, so the
+     * output does not depend on the order the tasks finish in.
+     */
+    private void generateMethods(Writer out) throws IOException {
+        List<ProcedureLayout.Method> methods = layout.getMethods();
+        if (!parallel || methods.size() == 1) {
+            for (ProcedureLayout.Method method : methods) {
+                CompilationUnit.checkInterrupted();
+                out.append(new JavaCodeGenerator(this).generateMethod(method));
+            }
+            return;
+        }
+        for (int start = 0; start < methods.size(); start += PARALLEL_WINDOW) {
+            CompilationUnit.checkInterrupted();
+            List<MethodTask> window = new ArrayList<>();
+            for (int i = start; i < Math.min(start + PARALLEL_WINDOW, methods.size()); i++) {
+                MethodTask task = new MethodTask(methods.get(i));
+                task.fork();
+                window.add(task);
+            }
+            for (MethodTask task : window) {
+                task.join();
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+                out.append(task.text);
+            }
+        }
+    }
+
+    private StringBuilder generateMethod(ProcedureLayout.Method method) {
+        code.append("    static int ").append(method.name).append("() throws SQLException {\n");
+        if (method.isDriver()) {
+            line("int next;");
+            for (int i = 0; i < method.calls.size() - 1; i++) {
+                line("next = " + method.calls.get(i).name + "();");
+                line("if (next != $NEXT) {");
+                line("    return next;");
+                line("}");
+            }
+            line("return " + method.calls.get(method.calls.size() - 1).name + "();");
+        } else {
+            processBlock(method.statements);
+            if (ProcedureLayout.completes(method.statements)) {
+                line("return $NEXT;");
+            }
+        }
+        code.append("    }\n");
+        return code;
+    }
+
+    private void processBlock(List<ASTNode> statements) {
+        for (ASTNode statement : statements) {
+            processNode(statement);
+            if (!ProcedureLayout.completes(statement)) {
+                break; // anything after STOP RUN or GO TO in this block is unreachable
+            }
+        }
+    }
+
+    private void line(String text) {
+        code.append(indent).append(text).append('\n');
+    }
+
+    /**
+     * Processes different AST node types and translates them into Java statements.
+     * @param node The ASTNode to process.
+     */
+    private void processNode(ASTNode node) {
+        switch (node.getKind()) {
+            case DISPLAY_STATEMENT:
+                processDisplayStatement(node);
+                break;
+            case MOVE_STATEMENT:
+                processMoveStatement(node);
+                break;
+            case STOP_RUN:
+                // Return rather than exit, so the program can run inside a host JVM
+                if (!layout.isFlat()) {
+                    line("return $STOP;");
+                    break;
+                }
+                if (sql.isUsed()) {
+                    line("sql.close();");
+                }
+                line("return;");
+                break;
+            case GO_TO_STATEMENT:
+                line("return " + layout.target(node) + "; // GO TO " + node.getValue());
+                break;
+            case PERFORM_STATEMENT:
+                processPerformStatement(node);
+                break;
+            case CALL_STATEMENT:
+                processCallStatement(node);
+                break;
+            case EXEC_SQL:
+                processExecSQL(node);
+                break;
+            case COMPUTE_STATEMENT:
+                processComputeStatement(node);
+                break;
+            case OPEN_STATEMENT:
+                for (ASTNode file : node.getChildren()) {
+                    line(javaName(file.getValue()) + ".open" + file.getType() + "();");
+                }
+                break;
+            case CLOSE_STATEMENT:
+                for (ASTNode file : node.getChildren()) {
+                    line(javaName(file.getValue()) + ".close();");
+                }
+                break;
+            case READ_STATEMENT:
+            case RETURN_STATEMENT:
+                processReadStatement(node);
+                break;
+            case WRITE_STATEMENT:
+            case RELEASE_STATEMENT:
+                processWriteStatement(node);
+                break;
+            case SORT_STATEMENT:
+            case MERGE_STATEMENT:
+                processSortStatement(node);
+                break;
+        }
+    }
+
+    /**
+     * Translates `DISPLAY` statements to Java's `System.out.println()`. DISPLAYs merged by
+     * the optimizer print all their lines with one call.
+     * @param node ASTNode representing the COBOL DISPLAY statement.
+     */
+    private void processDisplayStatement(ASTNode node) {
+        StringBuilder text = new StringBuilder(javaString(node.getValue()));
+        for (ASTNode line : node.getChildren()) {
+            text.append(" + System.lineSeparator() + ").append(javaString(line.getValue()));
+        }
+        line("System.out.println(" + text + ");");
+    }
+
+    /**
+     * Converts a COBOL literal, quoted or not, to a Java string literal.
+     * @param literal The literal as written in COBOL, e.g. "IT""S" or 'IT''S'.
+     * @return The Java literal, e.g. "IT\"S".
+     */
+    static String javaString(String literal) {
+        return javaLiteral(literalText(literal));
+    }
+
+    /**
+     * @return The value of a COBOL literal, without delimiters and with doubled quotes undone.
+     */
+    static String literalText(String literal) {
+        if (literal.length() >= 2 && (literal.charAt(0) == '"' || literal.charAt(0) == '\'')
+                && literal.charAt(literal.length() - 1) == literal.charAt(0)) {
+            String quote = String.valueOf(literal.charAt(0));
+            return literal.substring(1, literal.length() - 1).replace(quote + quote, quote);
+        }
+        return literal;
+    }
+
+    /**
+     * @return A Java string literal for the text.
+     */
+    static String javaLiteral(String text) {
+        StringBuilder java = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                java.append('\\').append(c);
+            } else if (c < ' ' || (c > '~' && c <= 0xFF)) {
+                // octal, since javac turns unicode escapes back into raw characters before lexing
+                java.append(String.format("\\%03o", (int) c));
+            } else {
+                java.append(c);
+            }
+        }
+        return java.append('"').toString();
+    }
+
+    /**
+     * @return A Java expression reading the item's value.
+     */
+    private static String read(DataField field) {
+        if (!field.inStorage()) {
+            return field.javaName;
+        }
+        return "Storage.get" + field.accessor() + "(" + field.javaName + ", " + field.offset + ", " + field.size
+                + (field.kind == DataField.Kind.DECIMAL ? ", " + field.scale : "") + ")";
+    }
+
+    /**
+     * @return A Java statement storing the value of an expression into the item.
+     */
+    private static String write(DataField field, String value) {
+        if (!field.inStorage()) {
+            return field.javaName + " = " + value + ";";
+        }
+        return "Storage.put" + field.accessor() + "(" + value + ", " + field.javaName + ", " + field.offset + ", " + field.size
+                + (field.kind == DataField.Kind.TEXT ? "" : ", " + field.signed) + ");";
+    }
+
+    /**
+     * Translates `MOVE` statements. A literal is converted to the receiving item's representation
+     * here, so the generated code only stores a constant; a move between alphanumeric or group
+     * items is one array copy, and a move between numeric items stores like COMPUTE.
+     * @param node ASTNode representing the COBOL MOVE statement.
+     */
+    private void processMoveStatement(ASTNode node) {
+        ASTNode source = node.getChildren().get(0);
+        DataField field = fields.get(DataField.key(node.getChildren().get(1)));
+        if (source.getKind() == NodeKind.VARIABLE) {
+            DataField from = fields.get(DataField.key(source));
+            if (from.kind != DataField.Kind.TEXT && field.kind != DataField.Kind.TEXT) {
+                processComputeStatement(numericMove(node));
+            } else if (from.inStorage() && field.inStorage()) {
+                line("Storage.move(" + from.javaName + ", " + from.offset + ", " + from.size + ", "
+                        + field.javaName + ", " + field.offset + ", " + field.size + ");");
+            } else {
+                throw new RuntimeException("Cannot MOVE " + source.getValue() + " to " + node.getChildren().get(1).getValue());
+            }
+            return;
+        }
+        String value = moveValue(source.getValue(), field, node.getChildren().get(1).getValue());
+        switch (field.kind) {
+            case LONG:
+                line(write(field, field.moveLong(value) + "L"));
+                break;
+            case DECIMAL:
+                line(write(field, "new java.math.BigDecimal(\"" + field.moveDecimal(value) + "\")"));
+                break;
+            default:
+                line(write(field, javaLiteral(field.moveText(value))));
+        }
+    }
+
+    /**
+     * @return A COMPUTE without ROUNDED that stores one numeric item into another, as MOVE does.
+     */
+    static ASTNode numericMove(ASTNode move) {
+        ASTNode target = new ASTNode(NodeKind.TARGET, "");
+        target.addChild(move.getChildren().get(1));
+        ASTNode compute = new ASTNode(NodeKind.COMPUTE_STATEMENT);
+        compute.addChild(target);
+        compute.addChild(move.getChildren().get(0));
+        return compute;
+    }
+
+    /**
+     * Resolves the literal of a MOVE: a number for a numeric item, the text for any other.
+     * @param literal A number, a quoted string or a figurative constant.
+     */
+    static String moveValue(String literal, DataField field, String target) {
+        Character fill = WorkingStorage.figurative(literal);
+        boolean numeric = field.kind != DataField.Kind.TEXT;
+        if (fill != null) {
+            if (numeric && fill != '0') {
+                throw new RuntimeException("Cannot MOVE " + literal + " to numeric item " + target);
+            }
+            return numeric ? "0" : String.valueOf(fill).repeat(field.size);
+        }
+        if (literal.startsWith("\"") || literal.startsWith("'")) {
+            if (numeric) {
+                throw new RuntimeException("Cannot MOVE a nonnumeric literal to numeric item " + target);
+            }
+            return literalText(literal);
+        }
+        return literal;
+    }
+
+    /**
+     * Translates `COMPUTE` into {@link FixedPoint} calls. The result is evaluated once, then
+     * stored in each receiving item; ON SIZE ERROR tests the items the result did not fit.
+     * @param node ASTNode representing the COBOL COMPUTE statement.
+     */
+    private void processComputeStatement(ASTNode node) {
+        List<ASTNode> targets = new ArrayList<>();
+        List<DataField> targetFields = new ArrayList<>();
+        ASTNode expression = null;
+        ASTNode sizeError = null;
+        ASTNode notSizeError = null;
+        for (ASTNode child : node.getChildren()) {
+            switch (child.getKind()) {
+                case TARGET:
+                    targets.add(child);
+                    targetFields.add(fields.get(DataField.key(child.getChildren().get(0))));
+                    break;
+                case SIZE_ERROR:
+                    sizeError = child;
+                    break;
+                case NOT_SIZE_ERROR:
+                    notSizeError = child;
+                    break;
+                default:
+                    expression = child;
+            }
+        }
+        Arithmetic arithmetic = new Arithmetic(fields, targetFields);
+        boolean decimal = arithmetic.needsDecimal(expression);
+        int scale = arithmetic.scale(expression);
+        boolean checked = sizeError != null || notSizeError != null;
+        int id = ++computeCount;
+
+        String result = "result" + id;
+        line((decimal ? "java.math.BigDecimal " : "long ") + result + " = "
+                + (decimal ? decimalExpression(arithmetic, expression) : longExpression(arithmetic, expression)) + ";");
+        if (checked) {
+            line("boolean sizeError" + id + " = false;");
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            DataField target = targetFields.get(i);
+            boolean rounded = targets.get(i).getValue().equals("ROUNDED");
+            String value = "value" + id + "_" + i;
+            String stored;
+            if (target.kind == DataField.Kind.LONG) {
+                stored = decimal ? "FixedPoint.toLong(FixedPoint.rescale(" + result + ", " + target.scale + ", " + rounded + "))"
+                        : "FixedPoint.rescale(" + result + ", " + scale + ", " + target.scale + ", " + rounded + ")";
+            } else if (target.kind == DataField.Kind.DECIMAL) {
+                String big = decimal ? result : "FixedPoint.big(" + result + ", " + scale + ")";
+                stored = target.digits > 0 ? "FixedPoint.rescale(" + big + ", " + target.scale + ", " + rounded + ")" : big;
+            } else {
+                throw new RuntimeException("COMPUTE into non-numeric item " + targets.get(i).getChildren().get(0).getValue());
+            }
+            line((target.kind == DataField.Kind.LONG ? "long " : "java.math.BigDecimal ") + value + " = " + stored + ";");
+            if (checked) {
+                line("sizeError" + id + " |= !FixedPoint.fits(" + value + ", " + target.digits + ");");
+            }
+            line(write(target, "FixedPoint." + (checked ? "storeIfFits(" : "store(") + read(target) + ", "
+                    + value + ", " + target.digits + ", " + target.signed + ")"));
+        }
+        if (checked) {
+            line("if (sizeError" + id + ") {");
+            processNestedBlock(sizeError);
+            if (notSizeError != null) {
+                line("} else {");
+                processNestedBlock(notSizeError);
+            }
+            line("}");
+        }
+    }
+
+    private void processNestedBlock(ASTNode block) {
+        String outer = indent;
+        indent += "    ";
+        if (block != null) {
+            processBlock(block);
+        }
+        indent = outer;
+    }
+
+    /**
+     * Generates the statements of a block, or a call of the method the layout moved them to,
+     * returning what it returns unless that is {@link ProcedureLayout#NEXT}.
+     */
+    private void processBlock(ASTNode block) {
+        ProcedureLayout.Method method = layout.outlined(block);
+        if (method == null) {
+            processBlock(block.getChildren());
+        } else if (!ProcedureLayout.completes(block.getChildren())) {
+            line("return " + method.name + "();");
+        } else {
+            String next = "next" + ++loopCount;
+            line("int " + next + " = " + method.name + "();");
+            line("if (" + next + " != $NEXT) {");
+            line("    return " + next + ";");
+            line("}");
+        }
+    }
+
+    /**
+     * @return A Java expression computing the value on scaled longs, at scale {@code arithmetic.scale(node)}.
+     */
+    private String longExpression(Arithmetic arithmetic, ASTNode node) {
+        switch (node.getKind()) {
+            case LITERAL:
+                return Arithmetic.unscaled(node.getValue()) + "L";
+            case VARIABLE:
+                return read(arithmetic.field(node));
+            case NEGATE:
+                return "FixedPoint.negate(" + longExpression(arithmetic, node.getChildren().get(0)) + ")";
+            default:
+                ASTNode left = node.getChildren().get(0);
+                ASTNode right = node.getChildren().get(1);
+                switch (node.getValue()) {
+                    case "+":
+                    case "-":
+                        int scale = arithmetic.scale(node);
+                        return "FixedPoint." + (node.getValue().equals("+") ? "add(" : "subtract(")
+                                + aligned(arithmetic, left, scale) + ", " + aligned(arithmetic, right, scale) + ")";
+                    case "*":
+                        return "FixedPoint.multiply(" + longExpression(arithmetic, left) + ", " + longExpression(arithmetic, right) + ")";
+                    case "/":
+                        return "FixedPoint.divide(" + longExpression(arithmetic, left) + ", " + longExpression(arithmetic, right)
+                                + ", " + arithmetic.divisionShift(node) + ")";
+                    default:
+                        return "FixedPoint.power(" + longExpression(arithmetic, left) + ", " + Arithmetic.exponent(node) + ")";
+                }
+        }
+    }
+
+    private String aligned(Arithmetic arithmetic, ASTNode operand, int scale) {
+        String value = longExpression(arithmetic, operand);
+        int operandScale = arithmetic.scale(operand);
+        return operandScale == scale ? value : "FixedPoint.rescale(" + value + ", " + operandScale + ", " + scale + ", false)";
+    }
+
+    /**
+     * @return A Java expression computing the value on BigDecimals.
+     */
+    private String decimalExpression(Arithmetic arithmetic, ASTNode node) {
+        switch (node.getKind()) {
+            case LITERAL:
+                return "new java.math.BigDecimal(\"" + node.getValue() + "\")";
+            case VARIABLE:
+                DataField field = arithmetic.field(node);
+                return field.kind == DataField.Kind.LONG
+                        ? "FixedPoint.big(" + read(field) + ", " + field.scale + ")" : read(field);
+            case NEGATE:
+                return "FixedPoint.negate(" + decimalExpression(arithmetic, node.getChildren().get(0)) + ")";
+            default:
+                String left = decimalExpression(arithmetic, node.getChildren().get(0));
+                switch (node.getValue()) {
+                    case "+":
+                        return "FixedPoint.add(" + left + ", " + decimalExpression(arithmetic, node.getChildren().get(1)) + ")";
+                    case "-":
+                        return "FixedPoint.subtract(" + left + ", " + decimalExpression(arithmetic, node.getChildren().get(1)) + ")";
+                    case "*":
+                        return "FixedPoint.multiply(" + left + ", " + decimalExpression(arithmetic, node.getChildren().get(1)) + ")";
+                    case "/":
+                        return "FixedPoint.divide(" + left + ", " + decimalExpression(arithmetic, node.getChildren().get(1))
+                                + ", " + arithmetic.scale(node) + ")";
+                    default:
+                        return "FixedPoint.power(" + left + ", " + Arithmetic.exponent(node) + ")";
+                }
+        }
+    }
+
+    /**
+     * @return The {@link SequentialFile} record format of a file.
+     */
+    static int fileFormat(FileDefinition file) {
+        if (file.getOrganization() == FileDefinition.Organization.LINE_SEQUENTIAL) {
+            return SequentialFile.LINE;
+        }
+        return file.isVariable() ? SequentialFile.VARIABLE : SequentialFile.FIXED;
+    }
+
+    /**
+     * Translates `READ` into a {@link SequentialFile#read} into the file's record area, then
+     * the INTO move and the NOT AT END phrase if a record was read, or else the AT END phrase.
+     * `RETURN` is the same with a {@link SortFile#returnRecord}.
+     * @param node ASTNode representing the COBOL READ or RETURN statement.
+     */
+    private void processReadStatement(ASTNode node) {
+        FileDefinition file = storage.getSymbols().getFile(node.getValue());
+        String area = storage.recordAreaOf(file);
+        ASTNode atEnd = node.getChild(NodeKind.AT_END);
+        ASTNode notAtEnd = node.getChild(NodeKind.NOT_AT_END);
+        ASTNode into = node.getChild(NodeKind.INTO);
+        line("if (" + javaName(file.getName()) + "." + (file.isSort() ? "returnRecord" : "read") + "(" + area + ", 0, "
+                + file.getRecordLength() + ")) {");
+        String outer = indent;
+        indent += "    ";
+        if (into != null) {
+            DataField field = intoField(into, fields);
+            line("Storage.move(" + area + ", 0, " + file.getRecordLength() + ", "
+                    + field.javaName + ", " + field.offset + ", " + field.size + ");");
+        }
+        indent = outer;
+        processNestedBlock(notAtEnd);
+        if (atEnd != null) {
+            line("} else {");
+            processNestedBlock(atEnd);
+        }
+        line("}");
+    }
+
+    /**
+     * @return The item a READ INTO moves the record to, as a group move.
+     */
+    static DataField intoField(ASTNode into, Map<String, DataField> fields) {
+        ASTNode reference = into.getChildren().get(0);
+        DataField field = fields.get(DataField.key(reference));
+        if (!field.inStorage()) {
+            throw new RuntimeException("READ INTO undeclared item " + reference.getValue());
+        }
+        return field;
+    }
+
+    /**
+     * Translates `WRITE`: the FROM move, then a {@link SequentialFile#write} of the record,
+     * whose size is the length of a variable-length record. `RELEASE` is the same with a
+     * {@link SortFile#release}.
+     * @param node ASTNode representing the COBOL WRITE or RELEASE statement.
+     */
+    private void processWriteStatement(ASTNode node) {
+        FileDefinition file = writtenFile(node, storage.getSymbols());
+        DataField record = fields.get(DataField.key(node.getChildren().get(0)));
+        ASTNode move = fromMove(node);
+        if (move != null) {
+            processMoveStatement(move);
+        }
+        line(javaName(file.getName()) + (file.isSort() ? ".release(" : ".write(") + record.javaName + ", " + record.offset + ", " + record.size + ");");
+    }
+
+    /**
+     * @return The file whose FD describes the record a WRITE names, or whose SD describes
+     *         the record a RELEASE names.
+     */
+    static FileDefinition writtenFile(ASTNode write, SymbolTable symbols) {
+        ASTNode reference = write.getChildren().get(0);
+        DataItem record = DataField.lookup(symbols, reference);
+        FileDefinition file = record == null ? null : symbols.fileOf(record);
+        boolean release = write.getKind() == NodeKind.RELEASE_STATEMENT;
+        if (file == null || file.isSort() != release) {
+            throw new RuntimeException((release ? "RELEASE of " : "WRITE of ") + reference.getValue() + ", which is not a "
+                    + (release ? "sort" : "file") + " record");
+        }
+        return file;
+    }
+
+    /**
+     * Translates `SORT` and `MERGE` into calls on the sort file's {@link SortFile}: begin a
+     * sort and release the USING files into it or perform the INPUT PROCEDURE, or merge the
+     * USING files; then write the result to the GIVING files, or perform the OUTPUT
+     * PROCEDURE, which returns the records, and end the sort.
+     * @param node ASTNode representing the COBOL SORT or MERGE statement.
+     */
+    private void processSortStatement(ASTNode node) {
+        String sort = javaName(node.getValue());
+        ASTNode input = node.getChild(NodeKind.INPUT_PROCEDURE);
+        ASTNode output = node.getChild(NodeKind.OUTPUT_PROCEDURE);
+        StringBuilder keys = new StringBuilder("new int[] {");
+        int[] sortKeys = sortKeys(node, fields, storage);
+        for (int i = 0; i < sortKeys.length; i++) {
+            keys.append(i > 0 ? ", " : "").append(sortKeys[i]);
+        }
+        keys.append('}');
+        if (node.getKind() == NodeKind.MERGE_STATEMENT) {
+            line(sort + ".merge(" + keys + ", " + fileList(node, NodeKind.USING) + ");");
+        } else {
+            line(sort + ".begin(" + keys + ");");
+            if (input != null) {
+                performRange(layout.range(input), sort);
+            } else {
+                line(sort + ".using(" + fileList(node, NodeKind.USING) + ");");
+            }
+        }
+        if (output != null) {
+            performRange(layout.range(output), sort);
+            line(sort + ".end();");
+        } else {
+            line(sort + ".giving(" + fileList(node, NodeKind.GIVING) + ");");
+        }
+    }
+
+    /**
+     * Translates `PERFORM`: the paragraphs it names, or its inline statements, in a loop
+     * counting down from the TIMES count if it has one.
+     * @param node ASTNode representing the COBOL PERFORM statement.
+     */
+    private void processPerformStatement(ASTNode node) {
+        ASTNode times = node.getChild(NodeKind.TIMES);
+        String outer = indent;
+        if (times != null) {
+            String counter = "times" + ++loopCount;
+            DataField field = timesField(times, fields);
+            line("for (long " + counter + " = " + (field == null ? timesLiteral(times) + "L" : read(field)) + "; "
+                    + counter + " > 0; " + counter + "--) {");
+            indent += "    ";
+        }
+        if (node.getValue().isEmpty()) {
+            processBlock(node.getChild(NodeKind.BODY));
+        } else {
+            performRange(layout.range(node), null);
+        }
+        if (times != null) {
+            indent = outer;
+            line("}");
+        }
+    }
+
+    /**
+     * Runs paragraphs first to last: in the dispatch loop if one of them has a GO TO, else
+     * by calling each one's method. If that ends the program, the calling paragraph returns
+     * {@link ProcedureLayout#STOP} in turn, after ending the sort whose procedure this is.
+     * @param sort The sort file of an INPUT or OUTPUT PROCEDURE, or null.
+     */
+    private void performRange(int[] range, String sort) {
+        String stop = sort == null ? "    return $STOP;" : "    " + sort + ".end();\n" + indent + "    return $STOP;";
+        if (layout.jumps(range)) {
+            line("if (perform(" + range[0] + ", " + range[1] + ")) {");
+            line(stop);
+            line("}");
+            return;
+        }
+        for (int i = range[0]; i <= range[1]; i++) {
+            ProcedureLayout.Paragraph paragraph = layout.getParagraphs().get(i);
+            if (paragraph.mayStop) {
+                line("if (" + paragraph.method.name + "() == $STOP) {");
+                line(stop);
+                line("}");
+            } else {
+                line(paragraph.method.name + "();");
+            }
+        }
+    }
+
+    /**
+     * @return The integer item that counts the TIMES of a PERFORM, or null for a literal count.
+     */
+    static DataField timesField(ASTNode times, Map<String, DataField> fields) {
+        ASTNode count = times.getChildren().get(0);
+        if (count.getKind() == NodeKind.LITERAL) {
+            return null;
+        }
+        DataField field = fields.get(DataField.key(count));
+        if (field.kind != DataField.Kind.LONG || field.scale != 0) {
+            throw new RuntimeException("PERFORM " + count.getValue() + " TIMES needs an integer item");
+        }
+        return field;
+    }
+
+    static long timesLiteral(ASTNode times) {
+        String count = times.getChildren().get(0).getValue();
+        try {
+            return Long.parseLong(count);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("PERFORM " + count + " TIMES needs an integer");
+        }
+    }
+
+    private static String fileList(ASTNode sort, NodeKind kind) {
+        StringBuilder files = new StringBuilder();
+        for (ASTNode file : sort.getChildren()) {
+            if (file.getKind() == kind) {
+                files.append(files.length() > 0 ? ", " : "").append(javaName(file.getValue()));
+            }
+        }
+        return files.toString();
+    }
+
+    /**
+     * @return The keys of a SORT or MERGE in the form {@link SortFile#begin} takes: offset,
+     *         length, type and descending flag of each.
+     */
+    static int[] sortKeys(ASTNode sort, Map<String, DataField> fields, WorkingStorage storage) {
+        FileDefinition file = storage.getSymbols().getFile(sort.getValue());
+        String area = storage.recordAreaOf(file);
+        List<int[]> keys = new ArrayList<>();
+        for (ASTNode key : sort.getChildren()) {
+            if (key.getKind() != NodeKind.KEY) {
+                continue;
+            }
+            ASTNode reference = key.getChildren().get(0);
+            DataField field = fields.get(DataField.key(reference));
+            if (!field.inStorage() || !field.javaName.equals(area)) {
+                throw new RuntimeException("Sort key " + reference.getValue() + " is not in a record of " + file.getName());
+            }
+            if (field.kind == DataField.Kind.DECIMAL) {
+                throw new RuntimeException("Sort key " + reference.getValue() + " has more than " + FixedPoint.MAX_DIGITS + " digits");
+            }
+            int type;
+            switch (field.accessor()) {
+                case "Display":
+                    type = SortFile.DISPLAY;
+                    break;
+                case "Packed":
+                    type = SortFile.PACKED;
+                    break;
+                case "Binary":
+                    type = SortFile.BINARY;
+                    break;
+                default:
+                    type = SortFile.TEXT;
+            }
+            keys.add(new int[] {field.offset, field.size, type, key.getValue().equals("DESCENDING") ? 1 : 0});
+        }
+        int[] flat = new int[keys.size() * 4];
+        for (int i = 0; i < keys.size(); i++) {
+            System.arraycopy(keys.get(i), 0, flat, i * 4, 4);
+        }
+        return flat;
+    }
+
+    /**
+     * @return The MOVE that the FROM phrase of a WRITE makes before writing, or null without one.
+     */
+    static ASTNode fromMove(ASTNode write) {
+        ASTNode from = write.getChild(NodeKind.FROM);
+        if (from == null) {
+            return null;
+        }
+        ASTNode move = new ASTNode(NodeKind.MOVE_STATEMENT);
+        move.addChild(from.getChildren().get(0));
+        move.addChild(write.getChildren().get(0));
+        return move;
+    }
+
+    /**
+     * @return A Java identifier for a COBOL name, e.g. "WS-TOTAL" becomes "WS_TOTAL".
+     */
+    static String javaName(String cobolName) {
+        String name = cobolName.replace('-', '_');
+        return Character.isJavaIdentifierStart(name.charAt(0)) ? name : "_" + name;
+    }
+
+    /**
+     * Translates `CALL` statements to a call of the called program's main method.
+     * USING arguments are passed by content, as their display text.
+     * @param node ASTNode representing the COBOL CALL statement.
+     */
+    private void processCallStatement(ASTNode node) {
+        String subroutine = calledClass(node);
+        List<ASTNode> parameters = node.getChildren().subList(1, node.getChildren().size());
+
+        StringBuilder call = new StringBuilder(subroutine).append(".main(new String[] {");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) call.append(", ");
+            DataField field = fields.get(DataField.key(parameters.get(i)));
+            if (field.kind == DataField.Kind.LONG) {
+                call.append("FixedPoint.toString(").append(read(field)).append(", ").append(field.scale).append(")");
+            } else {
+                call.append("String.valueOf(").append(read(field)).append(")");
+            }
+        }
+        line(call.append("});").toString());
+    }
+
+    /**
+     * @return The class name of the program a CALL statement names.
+     */
+    static String calledClass(ASTNode call) {
+        return CompilationUnit.classNameFor(literalText(call.getChildren().get(0).getValue()));
+    }
+
+    /**
+     * Translates `EXEC SQL` into calls on the program's {@link SQLSession}: bind the input host
+     * variables, run the statement, and move a SELECT's or FETCH's row into the INTO host
+     * variables. A SELECT without INTO displays the first column of the first row.
+     * A cursor's DECLARE generates nothing; its OPEN binds and runs the declared query.
+     * @param node ASTNode representing the COBOL EXEC SQL statement.
+     */
+    private void processExecSQL(ASTNode node) {
+        EmbeddedSQL.Kind kind = EmbeddedSQL.kind(node);
+        switch (kind) {
+            case NONE:
+            case DECLARE:
+                return;
+            case COMMIT:
+                line("sql.commit();");
+                break;
+            case ROLLBACK:
+                line("sql.rollback();");
+                break;
+            case FETCH:
+                processRow(node, "sql.fetch(" + sql.numberOf(node) + ")");
+                break;
+            case CLOSE:
+                line("sql.closeCursor(" + sql.numberOf(node) + ");");
+                break;
+            default:
+                line("sql.prepare(" + sql.numberOf(node) + ");");
+                List<DataField> inputs = sql.hostVariables(node, NodeKind.INPUT);
+                for (int i = 0; i < inputs.size(); i++) {
+                    DataField input = inputs.get(i);
+                    String parameter = (i + 1) + ", " + read(input);
+                    switch (input.kind) {
+                        case LONG:
+                            line("sql.setLong(" + parameter + ", " + input.scale + ");");
+                            break;
+                        case DECIMAL:
+                            line("sql.setDecimal(" + parameter + ");");
+                            break;
+                        default:
+                            line("sql.setText(" + parameter + ");");
+                    }
+                }
+                if (kind == EmbeddedSQL.Kind.QUERY) {
+                    processRow(node, "sql.query()");
+                } else if (kind == EmbeddedSQL.Kind.OPEN) {
+                    line("sql.open(" + sql.numberOf(node) + ");");
+                } else {
+                    line(kind == EmbeddedSQL.Kind.UPDATE ? "sql.update();" : "sql.execute();");
+                }
+        }
+        if (sql.getSqlCode() != null) {
+            line(write(sql.getSqlCode(), "sql.sqlCode()"));
+        }
+    }
+
+    /**
+     * Moves the columns of the row the condition finds into the INTO host variables.
+     */
+    private void processRow(ASTNode node, String found) {
+        line("if (" + found + ") {");
+        List<DataField> into = sql.hostVariables(node, NodeKind.INTO);
+        if (into.isEmpty()) {
+            line("    System.out.println(sql.getText(1));");
+        }
+        for (int i = 0; i < into.size(); i++) {
+            line("    " + write(into.get(i), column(into.get(i), i + 1)));
+        }
+        line("}");
+    }
+
+    /**
+     * @return A Java expression reading a column of the current row as the field holds it.
+     */
+    private static String column(DataField field, int column) {
+        switch (field.kind) {
+            case LONG:
+                return "sql.getLong(" + column + ", " + field.scale + ")";
+            case DECIMAL:
+                return "sql.getDecimal(" + column + ", " + field.scale + ")";
+            default:
+                return "sql.getText(" + column + ")";
+        }
+    }
+
+    /**
+     * Generates one method. A failure is kept as it was thrown, for the writing thread to rethrow.
+     */
+    private final class MethodTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ProcedureLayout.Method method;
+        private StringBuilder text;
+        private RuntimeException failure;
+
+        MethodTask(ProcedureLayout.Method method) {
+            this.method = method;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                text = new JavaCodeGenerator(JavaCodeGenerator.this).generateMethod(method);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyword - The reserved words recognized by the lexer.
+ * The ordinal is the keyword id stored in a {@link TokenBuffer}, and the declaration
+ * order is the order in which the lexer tries the words.
+ */
+public enum Keyword {
+    IDENTIFICATION("IDENTIFICATION", true),
+    DATA("DATA", true),
+    PROCEDURE("PROCEDURE", true),
+
+    DIVISION("DIVISION"),
+    PROGRAM_ID("PROGRAM-ID"),
+    WORKING_STORAGE("WORKING-STORAGE"),
+    SECTION("SECTION"),
+    STOP_RUN("STOP RUN"),
+    MOVE("MOVE"),
+    TO("TO"),
+    IF("IF"),
+    ELSE("ELSE"),
+    DISPLAY("DISPLAY"),
+    COMPUTE("COMPUTE"),
+    PERFORM("PERFORM"),
+    TIMES("TIMES"),
+    READ("READ"),
+    WRITE("WRITE"),
+    OPEN("OPEN"),
+    CLOSE("CLOSE"),
+    INTO("INTO"),
+    OUTPUT("OUTPUT"),
+    INPUT("INPUT"),
+    END_IF("END-IF"),
+    END_PERFORM("END-PERFORM"),
+    ACCEPT("ACCEPT"),
+    EVALUATE("EVALUATE"),
+    WHEN("WHEN"),
+    OTHER("OTHER"),
+    END_EVALUATE("END-EVALUATE"),
+    STRING("STRING"),
+    FUNCTION("FUNCTION"),
+    LENGTH("LENGTH"),
+    OCCURS("OCCURS"),
+    SEARCH("SEARCH"),
+    AT("AT"),
+    END_EXEC("END-EXEC"),
+    END_COMPUTE("END-COMPUTE"),
+    END_READ("END-READ"),
+    END_WRITE("END-WRITE"),
+    END_RETURN("END-RETURN"),
+    END("END"),
+    ALL("ALL"),
+    SORT("SORT"),
+    ASCENDING("ASCENDING"),
+    DESCENDING("DESCENDING"),
+    MERGE("MERGE"),
+    CALL("CALL"),
+    USING("USING"),
+    GOTO("GOTO"),
+    EXEC("EXEC"),
+    SQL("SQL"),
+    PIC("PIC");
+
+    private static final Keyword[] VALUES = values();
+    private static final Map<String, Keyword> BY_TEXT = new HashMap<>();
+
+    static {
+        for (Keyword keyword : VALUES) {
+            BY_TEXT.put(keyword.text, keyword);
+        }
+    }
+
+    private final String text;
+    private final boolean divisionHeader;
+
+    Keyword(String text) {
+        this(text, false);
+    }
+
+    Keyword(String text, boolean divisionHeader) {
+        this.text = text;
+        this.divisionHeader = divisionHeader;
+    }
+
+    /**
+     * @return The word as it appears in COBOL source.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * @return True for words lexed as DIVISION_HEADER rather than KEYWORD.
+     */
+    public boolean isDivisionHeader() {
+        return divisionHeader;
+    }
+
+    static Keyword of(int id) {
+        return VALUES[id];
+    }
+
+    /**
+     * Looks up a keyword by its source text.
+     * @return The keyword, or null if the text is not reserved.
+     */
+    public static Keyword lookup(String text) {
+        return BY_TEXT.get(text);
+    }
+
+    static Keyword[] words(boolean divisionHeaders) {
+        List<Keyword> words = new ArrayList<>();
+        for (Keyword keyword : VALUES) {
+            if (keyword.divisionHeader == divisionHeaders) {
+                words.add(keyword);
+            }
+        }
+        return words.toArray(new Keyword[0]);
+    }
+}
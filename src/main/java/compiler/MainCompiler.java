@@ -1,43 +1,217 @@
-package compiler;
-
-
-import java.nio.file.*;
-import java.util.List;
-
-/**
- * MainCompiler - The entry point for the COBOL to Java compiler.
- * This class loads the COBOL source, tokenizes it, parses it into an AST,
- * and generates Java code.
- */
-public class MainCompiler {
-    public static void main(String[] args) {
-        try {
-            // Read COBOL source code from file
-            String sourceCode = Files.readString(Paths.get("path-to-sample1.cbl"));
-
-            // Enable debugging if needed
-            Debugger.enableDebugging();
-
-            // Tokenize COBOL code
-            Debugger.log("Starting Lexical Analysis...");
-            List<Token> tokens = CobolLexer.tokenize(sourceCode);
-            Debugger.log("Tokens: " + tokens);
-
-            // Parse tokens into AST
-            Debugger.log("Parsing Tokens...");
-            CobolParser parser = new CobolParser(tokens);
-            ASTNode ast = parser.parseProgram();
-            Debugger.log("AST: " + ast);
-
-            // Generate Java code
-            Debugger.log("Generating Java Code...");
-            JavaCodeGenerator generator = new JavaCodeGenerator(ast);
-            String javaCode = generator.generateCode();
-
-            // Print final output
-            System.out.println("Generated Java Code:\n" + javaCode);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-}
+package compiler;
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MainCompiler - The entry point for the COBOL to Java compiler.
+ * This class loads the COBOL source, tokenizes it, parses it into an AST,
+ * and generates Java code.
+ * Run with {@code --batch [--out <folder>] [--threads <n>] [--cache <folder>] [--cache-size <MB>]
+ * [--copy-path <folders>] [--jar <file>] [--backend source|bytecode] <folder|@list|file>...} to compile many programs in parallel,
+ * or with {@code --run <file>} to compile one program in memory and run it in this JVM.
+ * {@code --server [--port <n>]} keeps a compiler running for {@code --client [--port <n>]
+ * [--out <folder>] [--backend source|bytecode] [--copy-path <folders>] <file>...}, which has it compile files.
+ */
+public class MainCompiler {
+    private static final long COPYBOOK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--client")) {
+            runClient(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        boolean run = args.length > 0 && args[0].equals("--run");
+        if (run) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        try {
+            // Map the COBOL source file; fixed-format columns are handled while lexing
+            Path sourcePath = Paths.get(args.length > 0 ? args[0] : "path-to-sample1.cbl").toAbsolutePath();
+            CharSequence sourceCode = CobolSourceReader.open(sourcePath);
+
+            // Enable debugging if needed
+            Debugger.enableDebugging();
+
+            // Tokenize COBOL code
+            Debugger.log("Starting Lexical Analysis...");
+            // Copybooks are looked up next to the program
+            TokenBuffer tokens = new CopybookLibrary(List.of(sourcePath.getParent()), COPYBOOK_CACHE_BYTES)
+                    .expand(CobolLexer.lex(sourceCode), new ArrayList<>());
+            Debugger.log(() -> "Tokens: " + tokens);
+
+            // Parse tokens into AST
+            Debugger.log("Parsing Tokens...");
+            CobolParser parser = new CobolParser(tokens);
+            ASTNode ast = parser.parseProgram();
+            Debugger.log(() -> "AST: " + ast);
+
+            // Optimize the AST with the passes cobol.optimize enables
+            Debugger.log("Optimizing AST...");
+            new ASTOptimizer(parser.getSymbolTable(), ASTOptimizer.passesFromSystem()).optimize(ast);
+
+            // Generate Java code
+            Debugger.log("Generating Java Code...");
+            JavaCodeGenerator generator = new JavaCodeGenerator(ast, "Program", parser.getSymbolTable());
+
+            if (run) {
+                // Compile and run the program in this JVM, no files or javac process involved
+                String javaCode = generator.generateCode();
+                InMemoryJavaCompiler.Result compiled = new InMemoryJavaCompiler().compile(Map.of("Program", javaCode));
+                if (!compiled.isSuccess()) {
+                    System.err.println("Java compilation failed: " + compiled.getErrors().values());
+                    return;
+                }
+                InMemoryJavaCompiler.run(InMemoryJavaCompiler.load(compiled.getClasses()), "Program",
+                        Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
+                return;
+            }
+
+            // Print final output as it is generated
+            System.out.println("Generated Java Code:");
+            generator.generateCode(new BufferedWriter(new OutputStreamWriter(System.out)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compiles every source named by the arguments on a pool sized to the core count.
+     */
+    private static void runBatch(List<String> args) {
+        Path outputFolder = Paths.get("converted");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path cacheFolder = null;
+        long cacheMegabytes = 512;
+        List<Path> copyPath = new ArrayList<>();
+        Path jarFile = null;
+        Backend backend = Backend.SOURCE;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--out") && i + 1 < args.size()) {
+                outputFolder = Paths.get(args.get(++i));
+            } else if (args.get(i).equals("--threads") && i + 1 < args.size()) {
+                threads = Integer.parseInt(args.get(++i));
+            } else if (args.get(i).equals("--cache") && i + 1 < args.size()) {
+                cacheFolder = Paths.get(args.get(++i));
+            } else if (args.get(i).equals("--cache-size") && i + 1 < args.size()) {
+                cacheMegabytes = Long.parseLong(args.get(++i));
+            } else if (args.get(i).equals("--jar") && i + 1 < args.size()) {
+                jarFile = Paths.get(args.get(++i));
+            } else if (args.get(i).equals("--backend") && i + 1 < args.size()) {
+                backend = Backend.valueOf(args.get(++i).toUpperCase(Locale.ROOT));
+            } else if (args.get(i).equals("--copy-path") && i + 1 < args.size()) {
+                for (String folder : args.get(++i).split(File.pathSeparator)) {
+                    copyPath.add(Paths.get(folder));
+                }
+            } else {
+                inputs.add(args.get(i));
+            }
+        }
+        try {
+            BatchCompiler compiler = new BatchCompiler(outputFolder, threads);
+            if (cacheFolder != null) {
+                compiler.setCache(new CompilationCache(cacheFolder, cacheMegabytes * 1024 * 1024));
+            }
+            if (!copyPath.isEmpty()) {
+                compiler.setCopybookLibrary(new CopybookLibrary(copyPath, COPYBOOK_CACHE_BYTES));
+            }
+            compiler.setBackend(backend);
+            if (jarFile != null) {
+                compiler.setJarOutput(jarFile);
+            }
+            BatchReport report = compiler.compile(BatchCompiler.collectSources(inputs));
+            System.out.print(report);
+            if (report.getFailed() > 0) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Serves compile requests on a loopback port until a client shuts the server down.
+     */
+    private static void runServer(List<String> args) {
+        int port = CompileServer.DEFAULT_PORT;
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--port") && i + 1 < args.size()) {
+                port = Integer.parseInt(args.get(++i));
+            }
+        }
+        try (CompileServer server = new CompileServer(port)) {
+            System.out.println("Compile server listening on port " + server.getPort());
+            server.serve();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Has a running compile server compile each file, and writes the outputs to a folder.
+     */
+    private static void runClient(List<String> args) {
+        int port = CompileServer.DEFAULT_PORT;
+        Path outputFolder = Paths.get("converted");
+        Backend backend = Backend.SOURCE;
+        String copyPath = "";
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("--port") && i + 1 < args.size()) {
+                port = Integer.parseInt(args.get(++i));
+            } else if (args.get(i).equals("--out") && i + 1 < args.size()) {
+                outputFolder = Paths.get(args.get(++i));
+            } else if (args.get(i).equals("--backend") && i + 1 < args.size()) {
+                backend = Backend.valueOf(args.get(++i).toUpperCase(Locale.ROOT));
+            } else if (args.get(i).equals("--copy-path") && i + 1 < args.size()) {
+                copyPath = args.get(++i);
+            } else {
+                inputs.add(args.get(i));
+            }
+        }
+        int failed = 0;
+        try (CompileClient client = new CompileClient(port)) {
+            client.setBackend(backend);
+            client.setCopyPath(copyPath);
+            Files.createDirectories(outputFolder);
+            for (String input : inputs) {
+                CompileClient.Result result = client.compile(Paths.get(input));
+                for (String diagnostic : result.getDiagnostics()) {
+                    System.err.println(input + ": " + diagnostic);
+                }
+                if (!result.isSuccess()) {
+                    failed++;
+                    continue;
+                }
+                Path output = outputFolder.resolve(result.getClassName() + (backend == Backend.BYTECODE ? ".class" : ".java"));
+                Files.write(output, result.getOutput());
+                System.out.println(input + " -> " + output);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NodeKind - The kinds of {@link ASTNode} the parser builds.
+ * Code that walks the AST switches on the kind, which compiles to a table lookup on the
+ * ordinal, rather than comparing type strings. The label is the type string of the node.
+ */
+public enum NodeKind {
+    PROGRAM("Program"),
+    PARAGRAPH("Paragraph"),
+    SECTION("Section"),
+
+    DISPLAY_STATEMENT("DisplayStatement"),
+    MOVE_STATEMENT("MoveStatement"),
+    STOP_RUN("StopRun"),
+    CALL_STATEMENT("CallStatement"),
+    EXEC_SQL("ExecSQL"),
+    COMPUTE_STATEMENT("ComputeStatement"),
+    OPEN_STATEMENT("OpenStatement"),
+    CLOSE_STATEMENT("CloseStatement"),
+    READ_STATEMENT("ReadStatement"),
+    WRITE_STATEMENT("WriteStatement"),
+    SORT_STATEMENT("SortStatement"),
+    MERGE_STATEMENT("MergeStatement"),
+    RELEASE_STATEMENT("ReleaseStatement"),
+    RETURN_STATEMENT("ReturnStatement"),
+    PERFORM_STATEMENT("PerformStatement"),
+    GO_TO_STATEMENT("GoToStatement"),
+    EXIT_STATEMENT("ExitStatement"),
+
+    /** Blocks of statements inside a statement. */
+    SIZE_ERROR("SizeError"),
+    NOT_SIZE_ERROR("NotSizeError"),
+    AT_END("AtEnd"),
+    NOT_AT_END("NotAtEnd"),
+    BODY("Body"),
+
+    /** Operands and expressions. */
+    VARIABLE("Variable"),
+    QUALIFIER("Qualifier"),
+    VALUE("Value"),
+    LITERAL("Literal"),
+    OPERATOR("Operator"),
+    NEGATE("Negate"),
+
+    /** Phrases of particular statements. */
+    SUBROUTINE("Subroutine"),
+    PARAMETER("Parameter"),
+    INPUT("Input"),
+    OUTPUT("Output"),
+    EXTEND("Extend"),
+    INTO("Into"),
+    FROM("From"),
+    FILE("File"),
+    TARGET("Target"),
+    KEY("Key"),
+    USING("Using"),
+    GIVING("Giving"),
+    INPUT_PROCEDURE("InputProcedure"),
+    OUTPUT_PROCEDURE("OutputProcedure"),
+    THRU("Thru"),
+    TIMES("Times"),
+    LINE("Line");
+
+    private static final Map<String, NodeKind> BY_LABEL = new HashMap<>();
+
+    static {
+        for (NodeKind kind : values()) {
+            BY_LABEL.put(kind.label, kind);
+        }
+    }
+
+    private final String label;
+
+    NodeKind(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return The type string of nodes of this kind, e.g. "DisplayStatement".
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @return True for the kinds that hold a block of statements inside a statement.
+     */
+    public boolean isBlock() {
+        return this == SIZE_ERROR || this == NOT_SIZE_ERROR || this == AT_END || this == NOT_AT_END || this == BODY;
+    }
+
+    /**
+     * @return True for paragraph and section headers.
+     */
+    public boolean isHeader() {
+        return this == PARAGRAPH || this == SECTION;
+    }
+
+    /**
+     * Looks up a kind by its type string.
+     * @throws IllegalArgumentException if no kind has that label.
+     */
+    public static NodeKind of(String label) {
+        NodeKind kind = BY_LABEL.get(label);
+        if (kind == null) {
+            throw new IllegalArgumentException("Unknown AST node type " + label);
+        }
+        return kind;
+    }
+}
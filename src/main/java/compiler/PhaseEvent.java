@@ -0,0 +1,37 @@
+package compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PhaseEvent - JFR event for one phase of compiling one unit, e.g. recorded with
+ * {@code -XX:StartFlightRecording} and read in JDK Mission Control. The event's duration
+ * is the time the phase took. Like every JFR event it costs next to nothing while no
+ * recording has it enabled.
+ */
+@Name("compiler.Phase")
+@Label("COBOL Compiler Phase")
+@Category("COBOL Compiler")
+@Description("Lexing, parsing, optimizing, generating or writing one compilation unit")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Unit")
+    String unit;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Items")
+    @Description("Tokens lexed, AST nodes parsed, optimized or generated from, or bytes written")
+    long items;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the compiling thread during the phase")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,445 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ProcedureLayout - How the PROCEDURE DIVISION is laid out in methods, shared by both
+ * backends so they agree on it.
+ * Each paragraph, and the statements of a section before its first paragraph, is a static
+ * method that returns what runs next: {@link #NEXT} to fall through, {@link #STOP} after
+ * STOP RUN, or the number of the paragraph a GO TO names. A PERFORM of paragraphs without
+ * a GO TO calls their methods directly, where HotSpot can inline them; any other PERFORM,
+ * and the program itself, runs a dispatch loop that calls the paragraphs by number until
+ * control falls through the end of the last one.
+ * Statements that weigh more than {@link #METHOD_WEIGHT} AST nodes are split at statement
+ * boundaries into chunk methods, which driver methods of at most {@link #FAN_OUT} calls
+ * run in turn, so no method comes near the 8000 bytes of bytecode HotSpot will compile.
+ * A statement that weighs more on its own has its heaviest blocks of statements, such as
+ * an inline PERFORM's body or an ON SIZE ERROR or AT END phrase, moved into methods of their
+ * own, laid out the same way, which it calls and returns from like a paragraph.
+ * A program without paragraphs that fits in one method is generated as a plain main.
+ */
+final class ProcedureLayout {
+    /** Returned by a paragraph that falls through to the next. */
+    static final int NEXT = -1;
+    /** Returned by a paragraph that ran STOP RUN, or performed one that did. */
+    static final int STOP = -2;
+    /** The most AST nodes in the statements of one method, about a kilobyte of bytecode. */
+    static final int METHOD_WEIGHT = 64;
+    /** The most methods one driver calls, which keeps a driver small enough to inline. */
+    static final int FAN_OUT = 16;
+    /** The most cases of one dispatch switch; more paragraphs are dispatched in two steps. */
+    static final int DISPATCH_CASES = 256;
+    private static final int DISPATCH_SHIFT = 8;
+
+    /**
+     * A generated method: a chunk of statements, or a driver that calls other methods in
+     * turn and returns as soon as one does not fall through.
+     */
+    static final class Method {
+        final String name;
+        final List<ASTNode> statements;
+        final List<Method> calls;
+        /** The methods of the blocks moved out of this method's statements. */
+        final List<Method> blocks = new ArrayList<>();
+
+        Method(String name, List<ASTNode> statements, List<Method> calls) {
+            this.name = name;
+            this.statements = statements;
+            this.calls = calls;
+        }
+
+        boolean isDriver() {
+            return !calls.isEmpty();
+        }
+    }
+
+    static final class Paragraph {
+        /** The paragraph or section name, or empty for the statements before the first. */
+        final String name;
+        final int number;
+        /** The method that runs the paragraph. */
+        final Method method;
+        /** The last paragraph of a section, or the paragraph itself. */
+        int last;
+        final boolean jumps;
+        boolean mayStop;
+        final List<ASTNode> statements;
+
+        Paragraph(String name, int number, List<ASTNode> statements, Map<ASTNode, Method> outlined) {
+            this.name = name;
+            this.number = number;
+            this.last = number;
+            this.statements = reachable(statements);
+            this.jumps = contains(this.statements, NodeKind.GO_TO_STATEMENT);
+            this.mayStop = contains(this.statements, NodeKind.STOP_RUN);
+            this.method = layOut(name.isEmpty() ? "procedure" : JavaCodeGenerator.javaName(name), this.statements, outlined);
+        }
+    }
+
+    /**
+     * A method that runs the paragraph with the number it is given: a switch over the
+     * paragraphs first to last, or, with more than {@link #DISPATCH_CASES} of them, a
+     * switch over {@code number >> shift} that calls further dispatch methods.
+     */
+    static final class Dispatch {
+        final String name;
+        final int first;
+        final int last;
+        final int shift;
+        final List<Dispatch> children = new ArrayList<>();
+
+        Dispatch(String name, int first, int last, int shift) {
+            this.name = name;
+            this.first = first;
+            this.last = last;
+            this.shift = shift;
+        }
+    }
+
+    private final List<Paragraph> paragraphs = new ArrayList<>();
+    private final Map<String, Paragraph> byName = new HashMap<>();
+    private final List<Dispatch> dispatches = new ArrayList<>();
+    private final Map<ASTNode, Method> outlined = new IdentityHashMap<>();
+    private final boolean flat;
+
+    ProcedureLayout(ASTNode root) {
+        List<ASTNode> leading = new ArrayList<>();
+        List<ASTNode> headers = new ArrayList<>();
+        for (ASTNode child : root.getChildren()) {
+            if (isHeader(child)) {
+                headers.add(child);
+            } else if (headers.isEmpty()) {
+                leading.add(child);
+            }
+        }
+        if (!leading.isEmpty() || headers.isEmpty()) {
+            paragraphs.add(new Paragraph("", 0, leading, outlined));
+        }
+        Paragraph section = null;
+        for (ASTNode header : headers) {
+            Paragraph paragraph = new Paragraph(header.getValue(), paragraphs.size(), header.getChildren(), outlined);
+            if (byName.put(paragraph.name, paragraph) != null) {
+                throw new RuntimeException("Paragraph " + paragraph.name + " is defined twice");
+            }
+            paragraphs.add(paragraph);
+            if (header.getKind() == NodeKind.SECTION) {
+                section = paragraph;
+            } else if (section != null) {
+                section.last = paragraph.number;
+            }
+        }
+        this.flat = headers.isEmpty() && !paragraphs.get(0).method.isDriver() && outlined.isEmpty();
+        for (Paragraph paragraph : paragraphs) {
+            checkReferences(paragraph.statements);
+        }
+        boolean changed = true;
+        while (changed) { // a paragraph may stop if it performs one that may
+            changed = false;
+            for (Paragraph paragraph : paragraphs) {
+                if (!paragraph.mayStop && performsStop(paragraph.statements)) {
+                    paragraph.mayStop = true;
+                    changed = true;
+                }
+            }
+        }
+        if (!flat) {
+            dispatch("dispatch", 0, paragraphs.size() - 1);
+        }
+    }
+
+    private static boolean isHeader(ASTNode node) {
+        return node.getKind().isHeader();
+    }
+
+    /**
+     * @return True if the program is one method's worth of statements without paragraphs,
+     *         generated straight into main.
+     */
+    boolean isFlat() {
+        return flat;
+    }
+
+    List<Paragraph> getParagraphs() {
+        return paragraphs;
+    }
+
+    /**
+     * @return The dispatch methods, the one the dispatch loop calls first.
+     */
+    List<Dispatch> getDispatches() {
+        return dispatches;
+    }
+
+    /**
+     * @return The method a block of statements was moved to, or null if it stays inline.
+     */
+    Method outlined(ASTNode block) {
+        return outlined.get(block);
+    }
+
+    /**
+     * @return Every method of every paragraph, each paragraph's own method before its chunks
+     *         and the methods of its blocks.
+     */
+    List<Method> getMethods() {
+        List<Method> methods = new ArrayList<>();
+        for (Paragraph paragraph : paragraphs) {
+            collect(paragraph.method, methods);
+        }
+        return methods;
+    }
+
+    private static void collect(Method method, List<Method> methods) {
+        methods.add(method);
+        for (Method call : method.calls) {
+            collect(call, methods);
+        }
+        for (Method block : method.blocks) {
+            collect(block, methods);
+        }
+    }
+
+    /**
+     * @return The numbers of the first and last paragraph a PERFORM or a SORT's INPUT or
+     *         OUTPUT PROCEDURE runs; a section runs up to its last paragraph.
+     */
+    int[] range(ASTNode perform) {
+        Paragraph first = paragraph(perform.getValue());
+        ASTNode thru = perform.getChild(NodeKind.THRU);
+        Paragraph last = thru == null ? first : paragraph(thru.getValue());
+        if (last.last < first.number) {
+            throw new RuntimeException("PERFORM " + first.name + " THRU " + last.name + " runs backwards");
+        }
+        return new int[] {first.number, last.last};
+    }
+
+    /**
+     * @return The number of the paragraph a GO TO names.
+     */
+    int target(ASTNode goTo) {
+        return paragraph(goTo.getValue()).number;
+    }
+
+    private Paragraph paragraph(String name) {
+        Paragraph paragraph = byName.get(name);
+        if (paragraph == null) {
+            throw new RuntimeException("Unknown paragraph " + name);
+        }
+        return paragraph;
+    }
+
+    /**
+     * @return True if a paragraph of the range contains a GO TO, so that the range must run
+     *         in the dispatch loop rather than as direct calls.
+     */
+    boolean jumps(int[] range) {
+        for (int i = range[0]; i <= range[1]; i++) {
+            if (paragraphs.get(i).jumps) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if running the range may end the program. A GO TO may leave the range,
+     *         so a range that jumps always may.
+     */
+    boolean mayStop(int[] range) {
+        if (jumps(range)) {
+            return true;
+        }
+        for (int i = range[0]; i <= range[1]; i++) {
+            if (paragraphs.get(i).mayStop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkReferences(List<ASTNode> statements) {
+        for (ASTNode statement : statements) {
+            if (statement.getKind() == NodeKind.GO_TO_STATEMENT) {
+                target(statement);
+            } else if (isPerform(statement)) {
+                range(statement);
+            }
+            checkReferences(statement.getChildren());
+        }
+    }
+
+    private boolean performsStop(List<ASTNode> statements) {
+        for (ASTNode statement : statements) {
+            if ((isPerform(statement) && mayStop(range(statement))) || performsStop(statement.getChildren())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // An out-of-line PERFORM or a SORT procedure, which name paragraphs
+    static boolean isPerform(ASTNode node) {
+        return (node.getKind() == NodeKind.PERFORM_STATEMENT && !node.getValue().isEmpty())
+                || node.getKind() == NodeKind.INPUT_PROCEDURE || node.getKind() == NodeKind.OUTPUT_PROCEDURE;
+    }
+
+    private static boolean contains(List<ASTNode> nodes, NodeKind kind) {
+        for (ASTNode node : nodes) {
+            if (node.getKind() == kind || contains(node.getChildren(), kind)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The statements up to the first one after which control cannot continue.
+     */
+    private static List<ASTNode> reachable(List<ASTNode> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (!completes(statements.get(i))) {
+                return statements.subList(0, i + 1);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * @return True if control can continue after the statement: it is not a STOP RUN or
+     *         GO TO, nor a READ, RETURN or COMPUTE whose two phrases both end in one.
+     */
+    static boolean completes(ASTNode statement) {
+        switch (statement.getKind()) {
+            case STOP_RUN:
+            case GO_TO_STATEMENT:
+                return false;
+            case READ_STATEMENT:
+            case RETURN_STATEMENT:
+                return completes(statement.getChild(NodeKind.AT_END), statement.getChild(NodeKind.NOT_AT_END));
+            case COMPUTE_STATEMENT:
+                return completes(statement.getChild(NodeKind.SIZE_ERROR), statement.getChild(NodeKind.NOT_SIZE_ERROR));
+            default:
+                return true;
+        }
+    }
+
+    private static boolean completes(ASTNode phrase, ASTNode otherPhrase) {
+        return phrase == null || otherPhrase == null || completes(phrase.getChildren()) || completes(otherPhrase.getChildren());
+    }
+
+    static boolean completes(List<ASTNode> statements) {
+        for (ASTNode statement : statements) {
+            if (!completes(statement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the statements of a paragraph into chunks of at most {@link #METHOD_WEIGHT}
+     * nodes, a statement being never split, and builds drivers over them until one method,
+     * named after the paragraph, runs them all. The others are named name$1, name$2, ...
+     * First the heaviest blocks of a statement that weighs more than a chunk are laid out as
+     * methods of their own, named the same way, until what is left of it fits.
+     * @param outlined Receives the method of each block moved out.
+     */
+    private static Method layOut(String name, List<ASTNode> statements, Map<ASTNode, Method> outlined) {
+        int count = 0;
+        List<Method> blocks = new ArrayList<>();
+        for (ASTNode statement : statements) {
+            while (weight(statement, outlined) > METHOD_WEIGHT) {
+                ASTNode heaviest = null;
+                int heaviestWeight = 1;
+                for (ASTNode child : statement.getChildren()) {
+                    int childWeight = child.getKind().isBlock() ? weight(child, outlined) : 0;
+                    if (childWeight > heaviestWeight) {
+                        heaviest = child;
+                        heaviestWeight = childWeight;
+                    }
+                }
+                if (heaviest == null) {
+                    break; // e.g. one huge expression, which cannot be split
+                }
+                Method block = layOut(name + "$" + ++count, heaviest.getChildren(), outlined);
+                outlined.put(heaviest, block);
+                blocks.add(block);
+            }
+        }
+        Method method = chunk(name, statements, outlined, count);
+        method.blocks.addAll(blocks);
+        return method;
+    }
+
+    /**
+     * Builds the chunks and drivers of {@link #layOut}, numbering them after {@code count}.
+     */
+    private static Method chunk(String name, List<ASTNode> statements, Map<ASTNode, Method> outlined, int count) {
+        List<List<ASTNode>> chunks = new ArrayList<>();
+        List<ASTNode> chunk = new ArrayList<>();
+        int weight = 0;
+        for (ASTNode statement : statements) {
+            int statementWeight = weight(statement, outlined);
+            if (!chunk.isEmpty() && weight + statementWeight > METHOD_WEIGHT) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                weight = 0;
+            }
+            chunk.add(statement);
+            weight += statementWeight;
+        }
+        chunks.add(chunk);
+        if (chunks.size() == 1) {
+            return new Method(name, chunk, List.of());
+        }
+        List<Method> methods = new ArrayList<>();
+        for (List<ASTNode> statementChunk : chunks) {
+            methods.add(new Method(name + "$" + ++count, statementChunk, List.of()));
+        }
+        while (methods.size() > FAN_OUT) {
+            List<Method> drivers = new ArrayList<>();
+            for (int i = 0; i < methods.size(); i += FAN_OUT) {
+                List<Method> calls = methods.subList(i, Math.min(methods.size(), i + FAN_OUT));
+                drivers.add(new Method(name + "$" + ++count, List.of(), new ArrayList<>(calls)));
+            }
+            methods = drivers;
+        }
+        return new Method(name, List.of(), methods);
+    }
+
+    /**
+     * @return The number of AST nodes, a block moved into a method of its own counting as one.
+     */
+    private static int weight(ASTNode node, Map<ASTNode, Method> outlined) {
+        if (outlined.containsKey(node)) {
+            return 1;
+        }
+        int weight = 1;
+        for (ASTNode child : node.getChildren()) {
+            weight += weight(child, outlined);
+        }
+        return weight;
+    }
+
+    private Dispatch dispatch(String name, int first, int last) {
+        int shift = 0;
+        while ((last >> shift) - (first >> shift) >= DISPATCH_CASES) {
+            shift += DISPATCH_SHIFT;
+        }
+        Dispatch dispatch = new Dispatch(name, first, last, shift);
+        dispatches.add(dispatch);
+        if (shift > 0) {
+            for (int block = first >> shift; block <= last >> shift; block++) {
+                int blockFirst = Math.max(first, block << shift);
+                int blockLast = Math.min(last, ((block + 1) << shift) - 1);
+                dispatch.children.add(dispatch("dispatch$" + dispatches.size(), blockFirst, blockLast));
+            }
+        }
+        return dispatch;
+    }
+}
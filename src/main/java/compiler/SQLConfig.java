@@ -0,0 +1,146 @@
+package compiler;
+
+/**
+ * SQLConfig - Where EXEC SQL connects to and how the connection pool is sized.
+ * {@link #fromSystem()} reads each setting from a system property such as
+ * {@code -Dcobol.sql.url=...}, then from the matching environment variable
+ * ({@code COBOL_SQL_URL}), and falls back to the defaults below.
+ */
+public final class SQLConfig {
+    public static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/mydb";
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    public static final long DEFAULT_WAIT_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int poolSize;
+    private final int statementCacheSize;
+    private final long waitTimeoutMillis;
+    private final int batchSize;
+    private final int commitInterval;
+    private final int fetchSize;
+
+    /**
+     * A configuration with the default pool settings.
+     */
+    public SQLConfig(String url, String user, String password) {
+        this(url, user, password, defaultPoolSize(), DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_WAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param poolSize The most connections open at once.
+     * @param statementCacheSize The most prepared statements kept per connection.
+     * @param waitTimeoutMillis How long to wait for a connection when all are in use.
+     */
+    public SQLConfig(String url, String user, String password, int poolSize, int statementCacheSize,
+                     long waitTimeoutMillis) {
+        this(url, user, password, poolSize, statementCacheSize, waitTimeoutMillis, DEFAULT_BATCH_SIZE, 0, DEFAULT_FETCH_SIZE);
+    }
+
+    private SQLConfig(String url, String user, String password, int poolSize, int statementCacheSize,
+                      long waitTimeoutMillis, int batchSize, int commitInterval, int fetchSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + poolSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.poolSize = poolSize;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitInterval = Math.max(0, commitInterval);
+        this.fetchSize = Math.max(0, fetchSize);
+    }
+
+    /**
+     * @param batchSize How many INSERT, UPDATE or DELETE executions of one statement are sent
+     *                  to the database together; 1 sends each on its own.
+     * @param commitInterval How many rows a program changes between automatic commits;
+     *                       0 commits only at EXEC SQL COMMIT and at the end of the program.
+     * @return A copy of this configuration with those settings.
+     */
+    public SQLConfig withBatching(int batchSize, int commitInterval) {
+        return new SQLConfig(url, user, password, poolSize, statementCacheSize, waitTimeoutMillis, batchSize, commitInterval,
+                fetchSize);
+    }
+
+    /**
+     * @param fetchSize How many rows a cursor asks the driver for at a time; 0 leaves it to the driver.
+     * @return A copy of this configuration with that fetch size.
+     */
+    public SQLConfig withFetchSize(int fetchSize) {
+        return new SQLConfig(url, user, password, poolSize, statementCacheSize, waitTimeoutMillis, batchSize, commitInterval,
+                fetchSize);
+    }
+
+    /**
+     * @return The configuration given by system properties and environment variables.
+     */
+    public static SQLConfig fromSystem() {
+        return new SQLConfig(
+                setting("url", DEFAULT_URL),
+                setting("user", "user"),
+                setting("password", "password"),
+                Integer.parseInt(setting("pool.size", String.valueOf(defaultPoolSize()))),
+                Integer.parseInt(setting("statement.cache.size", String.valueOf(DEFAULT_STATEMENT_CACHE_SIZE))),
+                Long.parseLong(setting("wait.timeout", String.valueOf(DEFAULT_WAIT_TIMEOUT_MILLIS))))
+                .withBatching(Integer.parseInt(setting("batch.size", String.valueOf(DEFAULT_BATCH_SIZE))),
+                        Integer.parseInt(setting("commit.interval", "0")))
+                .withFetchSize(Integer.parseInt(setting("fetch.size", String.valueOf(DEFAULT_FETCH_SIZE))));
+    }
+
+    /**
+     * @return The value of {@code cobol.sql.<name>}, or of {@code COBOL_SQL_<NAME>}, or the fallback.
+     */
+    static String setting(String name, String fallback) {
+        String value = System.getProperty("cobol.sql." + name);
+        if (value == null) {
+            value = System.getenv("COBOL_SQL_" + name.replace('.', '_').toUpperCase());
+        }
+        return value != null ? value : fallback;
+    }
+
+    private static int defaultPoolSize() {
+        return Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public long getWaitTimeoutMillis() {
+        return waitTimeoutMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+}
@@ -1,46 +1,74 @@
-package compiler;
-
-import java.sql.*;
-
-/**
- * SQLHandler - Executes SQL queries within COBOL EXEC SQL statements.
- */
-public class SQLHandler {
-    private static final String URL = "jdbc:mysql://localhost:3306/mydb";
-    private static final String USER = "user";
-    private static final String PASSWORD = "password";
-
-    /**
-     * Executes a SELECT query and returns a result.
-     */
-    public static String executeQuery(String query, Object... params) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
-            }
-
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString(1);
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Executes an INSERT, UPDATE, or DELETE query.
-     */
-    public static void executeUpdate(String query, Object... params) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
-            }
-
-            stmt.executeUpdate();
-        }
-    }
-}
+package compiler;
+
+import java.sql.*;
+
+/**
+ * SQLHandler - Executes SQL queries within COBOL EXEC SQL statements.
+ * Connections come from a shared {@link ConnectionPool}, created from
+ * {@link SQLConfig#fromSystem()} on first use, and statements from its per-connection cache.
+ */
+public class SQLHandler {
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Replaces the shared pool with one for the given configuration and closes the old one.
+     */
+    public static synchronized void configure(SQLConfig config) {
+        ConnectionPool old = pool;
+        pool = new ConnectionPool(config);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * @return The shared pool, whose metrics show how EXEC SQL spends its time.
+     */
+    public static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (SQLHandler.class) {
+                if (pool == null) {
+                    pool = new ConnectionPool(SQLConfig.fromSystem());
+                }
+                current = pool;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Executes a SELECT query and returns a result.
+     * @return The first column of the first row, or null if there is no row.
+     */
+    public static String executeQuery(String query, Object... params) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getPool().acquire()) {
+            PreparedStatement stmt = conn.prepare(query);
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executes an INSERT, UPDATE, or DELETE query.
+     * @return The number of rows changed.
+     */
+    public static int executeUpdate(String query, Object... params) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getPool().acquire()) {
+            PreparedStatement stmt = conn.prepare(query);
+            bind(stmt, params);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+}
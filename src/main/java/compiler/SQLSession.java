@@ -0,0 +1,336 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * SQLSession - The EXEC SQL statements of one generated program and the connection they run on.
+ * The program's statements are numbered when it is generated. Each run of one takes its
+ * PreparedStatement from the pool's statement cache, so reuse shows in the pool's hit count
+ * and the statements the program uses stay the most recently used there. A run is one unit
+ * of work, committed when the program ends and rolled back if it fails.
+ * Host variables are bound by the generated code with the set methods and received with the
+ * get methods, in the representation of the item they come from or go to: scaled longs,
+ * BigDecimals or text.
+ * INSERT, UPDATE and DELETE are sent in JDBC batches of {@link SQLConfig#getBatchSize()}
+ * executions of the same statement; a batch is sent before any other statement runs, so
+ * the program always reads its own changes, and the pool's cache keeps its statement open
+ * until then.
+ * A cursor is the forward-only ResultSet of its DECLARE's statement, opened with a fetch
+ * size of {@link SQLConfig#getFetchSize()} so the driver streams it a block of rows at a
+ * time; each FETCH moves to the next row, which the get methods then read. The cache keeps
+ * the statement of an open cursor open, however many other statements run meanwhile.
+ */
+public final class SQLSession {
+    /** SQLCODE after a SELECT INTO or FETCH that found no row, or a change that touched none. */
+    public static final long NOT_FOUND = 100;
+
+    private final String[] sql;
+    /** The PreparedStatement each statement last ran with. */
+    private final PreparedStatement[] statements;
+    private ConnectionPool.PooledConnection connection;
+    private SQLConfig config;
+    private PreparedStatement current;
+    private ResultSet row;
+    /** The open cursors, by the number of their statement; null until the first OPEN. */
+    private ResultSet[] cursors;
+    /** The row the get methods read: the last query's, or the last fetched. */
+    private ResultSet reading;
+    private PreparedStatement batched;
+    private int batchedCount;
+    private long changedSinceCommit;
+    private long sqlCode;
+
+    /**
+     * @param sql The text of each statement of the program, with a ? for each input host variable.
+     */
+    public SQLSession(String... sql) {
+        this.sql = sql;
+        this.statements = new PreparedStatement[sql.length];
+    }
+
+    /**
+     * Makes a statement current for binding and executing, connecting on first use.
+     * @throws SQLException If the statement is a cursor's and the cursor is open.
+     */
+    public void prepare(int statement) throws SQLException {
+        if (cursor(statement) != null) {
+            throw new SQLException("Cursor is already open: " + sql[statement]);
+        }
+        if (connection == null) {
+            ConnectionPool pool = SQLHandler.getPool();
+            connection = pool.acquire();
+            config = pool.getConfig();
+            connection.getConnection().setAutoCommit(false);
+        }
+        closeRow();
+        if (batched != null && batched != statements[statement]) {
+            flush();
+        }
+        statements[statement] = connection.prepare(sql[statement]);
+        current = statements[statement];
+    }
+
+    public void setLong(int parameter, long unscaled, int scale) throws SQLException {
+        if (scale == 0) {
+            current.setLong(parameter, unscaled);
+        } else {
+            current.setBigDecimal(parameter, BigDecimal.valueOf(unscaled, scale));
+        }
+    }
+
+    public void setDecimal(int parameter, BigDecimal value) throws SQLException {
+        current.setBigDecimal(parameter, value);
+    }
+
+    /**
+     * Binds the text of an alphanumeric item without the spaces that pad it.
+     */
+    public void setText(int parameter, String value) throws SQLException {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        current.setString(parameter, value.substring(0, end));
+    }
+
+    /**
+     * Runs the current statement as a query and positions on its first row.
+     * @return True if there is a row, whose columns the get methods then read.
+     */
+    public boolean query() throws SQLException {
+        row = current.executeQuery();
+        boolean found = row.next();
+        reading = row;
+        sqlCode = found ? 0 : NOT_FOUND;
+        if (!found) {
+            closeRow();
+        }
+        return found;
+    }
+
+    /**
+     * Opens a cursor: runs the current statement, the cursor's query with its host variables
+     * bound, and keeps its result set positioned before the first row.
+     */
+    public void open(int statement) throws SQLException {
+        current.setFetchSize(config.getFetchSize());
+        ResultSet cursor = current.executeQuery();
+        if (cursors == null) {
+            cursors = new ResultSet[sql.length];
+        }
+        cursors[statement] = cursor;
+        connection.pin(current); // closing the statement would close the cursor
+        sqlCode = 0;
+    }
+
+    /**
+     * Moves an open cursor to its next row.
+     * @return True if there is a row, whose columns the get methods then read.
+     */
+    public boolean fetch(int statement) throws SQLException {
+        ResultSet cursor = openCursor(statement);
+        closeRow();
+        boolean found = cursor.next();
+        reading = found ? cursor : null;
+        sqlCode = found ? 0 : NOT_FOUND;
+        return found;
+    }
+
+    public void closeCursor(int statement) throws SQLException {
+        ResultSet cursor = openCursor(statement);
+        cursors[statement] = null;
+        if (reading == cursor) {
+            reading = null;
+        }
+        connection.unpin(statements[statement]);
+        cursor.close();
+        sqlCode = 0;
+    }
+
+    private ResultSet cursor(int statement) {
+        return cursors == null ? null : cursors[statement];
+    }
+
+    private ResultSet openCursor(int statement) throws SQLException {
+        ResultSet cursor = cursor(statement);
+        if (cursor == null) {
+            throw new SQLException("Cursor is not open: " + sql[statement]);
+        }
+        return cursor;
+    }
+
+    /**
+     * Runs the current INSERT, UPDATE or DELETE, or adds it to the batch being collected.
+     */
+    public void update() throws SQLException {
+        if (config.getBatchSize() <= 1) {
+            int count = current.executeUpdate();
+            sqlCode = count == 0 ? NOT_FOUND : 0;
+            changed(count);
+            return;
+        }
+        current.addBatch();
+        if (batched == null) {
+            connection.pin(current); // the cache must not close it with the batch unsent
+        }
+        batched = current;
+        sqlCode = 0;
+        if (++batchedCount >= config.getBatchSize()) {
+            flush();
+        }
+        changed(1);
+    }
+
+    /**
+     * Runs any other statement, e.g. DDL.
+     */
+    public void execute() throws SQLException {
+        current.execute();
+        sqlCode = 0;
+    }
+
+    private void changed(long count) throws SQLException {
+        changedSinceCommit += count;
+        if (config.getCommitInterval() > 0 && changedSinceCommit >= config.getCommitInterval()) {
+            commit();
+        }
+    }
+
+    /**
+     * Sends the batch being collected.
+     */
+    public void flush() throws SQLException {
+        if (batched != null) {
+            PreparedStatement statement = batched;
+            batched = null;
+            batchedCount = 0;
+            connection.unpin(statement);
+            statement.executeBatch();
+        }
+    }
+
+    public void commit() throws SQLException {
+        if (connection != null) {
+            flush();
+            connection.getConnection().commit();
+            changedSinceCommit = 0;
+        }
+        sqlCode = 0;
+    }
+
+    public void rollback() throws SQLException {
+        if (connection != null) {
+            discardBatch();
+            connection.getConnection().rollback();
+            changedSinceCommit = 0;
+        }
+        sqlCode = 0;
+    }
+
+    /**
+     * @return The unscaled value of a numeric column at the given scale; 0 for NULL.
+     */
+    public long getLong(int column, int scale) throws SQLException {
+        if (scale == 0) {
+            return reading.getLong(column);
+        }
+        BigDecimal value = reading.getBigDecimal(column);
+        return value == null ? 0 : FixedPoint.toLong(value.setScale(scale, RoundingMode.DOWN));
+    }
+
+    public BigDecimal getDecimal(int column, int scale) throws SQLException {
+        BigDecimal value = reading.getBigDecimal(column);
+        return value == null ? BigDecimal.ZERO.setScale(scale) : value.setScale(scale, RoundingMode.DOWN);
+    }
+
+    /**
+     * @return The text of a column; NULL reads as an empty string, which moves in as spaces.
+     */
+    public String getText(int column) throws SQLException {
+        String value = reading.getString(column);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * @return The SQLCODE of the last statement: 0, or {@link #NOT_FOUND}.
+     */
+    public long sqlCode() {
+        return sqlCode;
+    }
+
+    /**
+     * Ends the unit of work when the program ends normally: sends the last batch, commits
+     * and gives the connection back.
+     */
+    public void close() throws SQLException {
+        if (connection != null) {
+            commit();
+            release();
+        }
+    }
+
+    /**
+     * Ends the unit of work when the program fails: drops the batch, rolls back and gives
+     * the connection back. Errors here are suppressed, so the original failure propagates.
+     */
+    public void abort() {
+        if (connection != null) {
+            try {
+                discardBatch();
+                connection.getConnection().rollback();
+            } catch (SQLException e) {
+                // the connection is probably broken; the pool drops it if it is closed
+            }
+            release();
+        }
+    }
+
+    private void discardBatch() throws SQLException {
+        if (batched != null) {
+            connection.unpin(batched);
+            batched.clearBatch();
+            batched = null;
+            batchedCount = 0;
+        }
+    }
+
+    private void closeRow() throws SQLException {
+        if (row != null) {
+            ResultSet open = row;
+            row = null;
+            if (reading == open) {
+                reading = null;
+            }
+            open.close();
+        }
+    }
+
+    private void release() {
+        try {
+            closeRow();
+            if (cursors != null) {
+                for (int i = 0; i < cursors.length; i++) {
+                    if (cursors[i] != null) {
+                        ResultSet cursor = cursors[i];
+                        cursors[i] = null;
+                        cursor.close();
+                    }
+                }
+            }
+            connection.getConnection().setAutoCommit(true);
+        } catch (SQLException e) {
+            // released as is; the pool checks whether it is still usable
+        }
+        connection.close();
+        connection = null;
+        current = null;
+        reading = null;
+        changedSinceCommit = 0;
+        Arrays.fill(statements, null);
+    }
+}
@@ -0,0 +1,262 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SequentialFile - The runtime behind OPEN, READ, WRITE and CLOSE of a sequential file.
+ * Input is memory-mapped in large windows and output goes through one page-aligned
+ * direct buffer that is written in whole blocks, so reading or writing a record is a copy
+ * between the buffer and the record array plus an offset bump: no system call and no
+ * allocation per record.
+ * Records are either fixed-length, variable-length with a 4-byte record descriptor word
+ * (2-byte big-endian length including the RDW, 2 zero bytes), or lines.
+ */
+public final class SequentialFile {
+    public static final int FIXED = 0;
+    public static final int VARIABLE = 1;
+    public static final int LINE = 2;
+
+    private static final int WINDOW = 64 << 20;
+    private static final int BLOCK = 4096;
+    private static final int OUTPUT_BUFFER = 256 * BLOCK;
+
+    private final String name;
+    private final Path path;
+    private final int format;
+    private final int recordLength;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long size;
+    private ByteBuffer output;
+
+    /**
+     * @param name The file name for messages.
+     * @param assignment The path to open; an external name is looked up as environment variable
+     *                   DD_name or name first, as mainframe-style JCL names are.
+     * @param format {@link #FIXED}, {@link #VARIABLE} or {@link #LINE}.
+     * @param recordLength The size of the record area; fixed records are padded to it.
+     */
+    public SequentialFile(String name, String assignment, boolean literal, int format, int recordLength) {
+        this.name = name;
+        this.path = Paths.get(literal ? assignment : resolve(assignment));
+        this.format = format;
+        this.recordLength = recordLength;
+    }
+
+    private static String resolve(String externalName) {
+        String path = System.getenv("DD_" + externalName);
+        if (path == null) {
+            path = System.getenv(externalName);
+        }
+        return path != null ? path : externalName;
+    }
+
+    /**
+     * @return The size of the record area; fixed records are padded to it.
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    public void openInput() {
+        checkClosed();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + name + " for input: " + path, e);
+        }
+    }
+
+    public void openOutput() {
+        openForWrite(StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public void openExtend() {
+        openForWrite(StandardOpenOption.APPEND);
+    }
+
+    private void openForWrite(StandardOpenOption mode) {
+        checkClosed();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, mode);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + name + " for output: " + path, e);
+        }
+        if (output == null) {
+            output = ByteBuffer.allocateDirect(OUTPUT_BUFFER + BLOCK).alignedSlice(BLOCK);
+        }
+        output.clear();
+    }
+
+    private void checkClosed() {
+        if (channel != null) {
+            throw new IllegalStateException("File " + name + " is already open");
+        }
+    }
+
+    public void close() {
+        if (channel == null) {
+            throw new IllegalStateException("File " + name + " is not open");
+        }
+        try {
+            if (window == null) {
+                flush();
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close " + name, e);
+        } finally {
+            channel = null;
+            window = null;
+        }
+    }
+
+    /**
+     * Reads the next record into the record area, padding a short record with spaces.
+     * @return False at end of file, the AT END condition.
+     */
+    public boolean read(byte[] record, int offset, int length) {
+        if (window == null) {
+            throw new IllegalStateException("File " + name + " is not open for input");
+        }
+        if (windowStart + window.position() >= size) {
+            return false;
+        }
+        if (format == LINE) {
+            return readLine(record, offset, length);
+        }
+        int available;
+        if (format == VARIABLE) {
+            long position = windowStart + window.position();
+            if (!ensure(4)) {
+                throw new IllegalStateException("Truncated record descriptor in " + name + " at " + position);
+            }
+            available = (window.getShort() & 0xFFFF) - 4;
+            window.position(window.position() + 2);
+            if (available < 0 || !ensure(available)) {
+                throw new IllegalStateException("Bad record descriptor in " + name + " at " + position);
+            }
+        } else {
+            ensure(recordLength);
+            available = Math.min(recordLength, window.remaining()); // a short last record
+        }
+        int copied = Math.min(available, length);
+        window.get(record, offset, copied);
+        window.position(window.position() + available - copied);
+        pad(record, offset + copied, offset + length);
+        return true;
+    }
+
+    private boolean readLine(byte[] record, int offset, int length) {
+        int end = findNewline();
+        if (end < 0 && windowStart + window.limit() < size) {
+            map(windowStart + window.position());
+            end = findNewline();
+            if (end < 0 && windowStart + window.limit() < size) {
+                throw new IllegalStateException("Line longer than " + WINDOW + " bytes in " + name);
+            }
+        }
+        int start = window.position();
+        int next = end < 0 ? window.limit() : end + 1;
+        int lineEnd = end < 0 ? window.limit() : end;
+        if (lineEnd > start && window.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        int copied = Math.min(lineEnd - start, length);
+        window.get(record, offset, copied);
+        window.position(next);
+        pad(record, offset + copied, offset + length);
+        return true;
+    }
+
+    private int findNewline() {
+        for (int i = window.position(); i < window.limit(); i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes sure the next bytes are in the mapped window, sliding it forward if needed.
+     * @return False if the file has fewer bytes left.
+     */
+    private boolean ensure(int bytes) {
+        if (window.remaining() < bytes && windowStart + window.limit() < size) {
+            map(windowStart + window.position());
+        }
+        return window.remaining() >= bytes;
+    }
+
+    private void map(long start) {
+        try {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + name, e);
+        }
+    }
+
+    private static void pad(byte[] record, int from, int to) {
+        for (int i = from; i < to; i++) {
+            record[i] = ' ';
+        }
+    }
+
+    /**
+     * Writes a record from the record area.
+     * @param length The size of the record written, which sets a variable record's length.
+     */
+    public void write(byte[] record, int offset, int length) {
+        if (channel == null || window != null) {
+            throw new IllegalStateException("File " + name + " is not open for output");
+        }
+        int written = length;
+        if (format == LINE) {
+            while (written > 0 && record[offset + written - 1] == ' ') {
+                written--;
+            }
+        }
+        int needed = format == FIXED ? Math.max(length, recordLength) : written + (format == VARIABLE ? 4 : 1);
+        if (output.remaining() < needed) {
+            flush();
+            if (output.remaining() < needed) {
+                throw new IllegalStateException("Record of " + needed + " bytes too long for " + name);
+            }
+        }
+        if (format == VARIABLE) {
+            output.putShort((short) (written + 4)).putShort((short) 0);
+        }
+        output.put(record, offset, written);
+        if (format == LINE) {
+            output.put((byte) '\n');
+        } else if (format == FIXED) {
+            for (int i = length; i < recordLength; i++) {
+                output.put((byte) ' ');
+            }
+        }
+    }
+
+    private void flush() {
+        output.flip();
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + name, e);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package compiler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * SortConfig - How much memory and how many threads SORT and MERGE may use, and where
+ * they spill. {@link #fromSystem()} reads each setting from a system property such as
+ * {@code -Dcobol.sort.memory.mb=256}, then from the matching environment variable
+ * ({@code COBOL_SORT_MEMORY_MB}), and falls back to the defaults below.
+ */
+public final class SortConfig {
+    public static final int DEFAULT_MEMORY_MB = 64;
+
+    private final long memoryBytes;
+    private final int threads;
+    private final Path tempDirectory;
+
+    /**
+     * @param memoryBytes The most a sort holds in record buffers; records beyond it are
+     *                    sorted in runs that spill to temporary files.
+     * @param threads How many runs are sorted and spilled at once, next to the thread that
+     *                releases the records.
+     * @param tempDirectory Where the runs are spilled.
+     */
+    public SortConfig(long memoryBytes, int threads, Path tempDirectory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Sort threads must be at least 1: " + threads);
+        }
+        this.memoryBytes = Math.max(1, memoryBytes);
+        this.threads = threads;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * @return The configuration given by system properties and environment variables.
+     */
+    public static SortConfig fromSystem() {
+        return new SortConfig(
+                Long.parseLong(setting("memory.mb", String.valueOf(DEFAULT_MEMORY_MB))) << 20,
+                Integer.parseInt(setting("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Paths.get(setting("temp.dir", System.getProperty("java.io.tmpdir"))));
+    }
+
+    private static String setting(String name, String fallback) {
+        String value = System.getProperty("cobol.sort." + name);
+        if (value == null) {
+            value = System.getenv("COBOL_SORT_" + name.replace('.', '_').toUpperCase());
+        }
+        return value != null ? value : fallback;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+}
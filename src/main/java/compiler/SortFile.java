@@ -0,0 +1,671 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SortFile - The runtime behind SORT and MERGE on a sort file (an SD).
+ * Released records are copied into run buffers. When a buffer is full, a worker thread
+ * sorts it and spills it to a temporary file while the next buffer fills. The spilled runs
+ * are read back through direct buffers and merged k ways, with extra merge passes if
+ * there are more runs than the memory budget allows open at once. A sort that fits in
+ * one buffer never touches the disk.
+ * Keys are compared on the raw record bytes: text byte by byte, numeric keys by value,
+ * decoded with the same {@link Storage} routines the program uses. The sort is stable, so
+ * records with equal keys come out in the order they went in.
+ * Memory and threads come from {@link SortConfig}, read from the system on first use or
+ * set with {@link #configure}.
+ */
+public final class SortFile {
+    /** Key types: alphanumeric, zoned decimal, COMP and COMP-3. */
+    public static final int TEXT = 0;
+    public static final int DISPLAY = 1;
+    public static final int BINARY = 2;
+    public static final int PACKED = 3;
+
+    /** Size of the direct buffers runs are spilled and read back through. */
+    private static final int BLOCK = 64 << 10;
+    /** What a buffered record costs besides its bytes: its slot in the sort order and in the scratch order. */
+    private static final int INDEX_BYTES = 8;
+    private static final int FIRST_BUFFER_RECORDS = 1024;
+
+    private static volatile SortConfig config;
+
+    private final String name;
+    private final int recordLength;
+    private int[] keys;
+    private SortConfig settings;
+    private boolean releasing;
+    private boolean returning;
+
+    private int capacity;
+    private int buffersAllocated;
+    private BlockingQueue<byte[]> free;
+    private byte[] buffer;
+    private int count;
+    private ExecutorService workers;
+    private final List<Future<Path>> spills = new ArrayList<>();
+    private final Queue<ByteBuffer> blocks = new ConcurrentLinkedQueue<>();
+    private int spilledRuns;
+    private long spilledRecords;
+
+    private final List<Run> runs = new ArrayList<>();
+    private Run[] heap;
+    private int heapSize;
+
+    /**
+     * @param name The sort file name for messages.
+     * @param recordLength The size of its record area, which every sorted record has.
+     */
+    public SortFile(String name, int recordLength) {
+        this.name = name;
+        this.recordLength = recordLength;
+    }
+
+    /**
+     * Sets the memory and threads of the sorts started from now on.
+     */
+    public static void configure(SortConfig sortConfig) {
+        config = sortConfig;
+    }
+
+    public static SortConfig getConfig() {
+        SortConfig current = config;
+        if (current == null) {
+            current = SortConfig.fromSystem();
+            config = current;
+        }
+        return current;
+    }
+
+    /**
+     * Starts a sort that takes records with {@link #release} or {@link #using}.
+     * @param keys Four ints per key, most significant first: offset in the record, length,
+     *             type ({@link #TEXT}, {@link #DISPLAY}, {@link #BINARY} or {@link #PACKED}),
+     *             and 1 for descending or 0 for ascending.
+     */
+    public void begin(int[] keys) {
+        start(keys);
+        long share = settings.getMemoryBytes() / (settings.getThreads() + 1);
+        capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / recordLength, share / (recordLength + INDEX_BYTES)));
+        free = new ArrayBlockingQueue<>(settings.getThreads() + 1);
+        buffer = new byte[Math.min(capacity, FIRST_BUFFER_RECORDS) * recordLength];
+        buffersAllocated = 1;
+        releasing = true;
+    }
+
+    /**
+     * Starts a merge of files already in key order; the merged records are then returned
+     * with {@link #returnRecord} or {@link #giving}.
+     */
+    public void merge(int[] keys, SequentialFile... files) {
+        start(keys);
+        for (int i = 0; i < files.length; i++) {
+            files[i].openInput();
+            runs.add(new Run(i, files[i]));
+        }
+        startReturning();
+    }
+
+    private void start(int[] sortKeys) {
+        end();
+        keys = sortKeys;
+        settings = getConfig();
+        spilledRuns = 0;
+        spilledRecords = 0;
+    }
+
+    /**
+     * Adds a record to the sort, padded with spaces or cut to the record length: RELEASE.
+     */
+    public void release(byte[] record, int offset, int length) {
+        if (!releasing) {
+            throw new IllegalStateException("Sort " + name + " is not taking records");
+        }
+        if ((count + 1) * recordLength > buffer.length) {
+            if (count < capacity) {
+                buffer = Arrays.copyOf(buffer, Math.min(capacity, count * 2) * recordLength);
+            } else {
+                spill();
+            }
+        }
+        int at = count * recordLength;
+        int copied = Math.min(length, recordLength);
+        System.arraycopy(record, offset, buffer, at, copied);
+        Arrays.fill(buffer, at + copied, at + recordLength, (byte) ' ');
+        count++;
+    }
+
+    /**
+     * Releases every record of each file, which it opens and closes: SORT ... USING.
+     */
+    public void using(SequentialFile... files) {
+        byte[] record = new byte[recordLength];
+        for (SequentialFile file : files) {
+            file.openInput();
+            while (file.read(record, 0, recordLength)) {
+                release(record, 0, recordLength);
+            }
+            file.close();
+        }
+    }
+
+    private void spill() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(settings.getThreads(), task -> {
+                Thread thread = new Thread(task, "cobol-sort-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        byte[] full = buffer;
+        int records = count;
+        spills.add(workers.submit(() -> spillRun(full, records)));
+        spilledRuns++;
+        spilledRecords += records;
+        byte[] next = free.poll();
+        if (next == null && buffersAllocated <= settings.getThreads()) {
+            buffersAllocated++;
+            next = new byte[capacity * recordLength];
+        }
+        if (next == null) {
+            try {
+                next = free.take(); // every buffer is being sorted; wait for one to be spilled
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sorting " + name, e);
+            }
+        }
+        buffer = next;
+        count = 0;
+    }
+
+    private Path spillRun(byte[] data, int records) throws IOException {
+        try {
+            int[] order = sortedOrder(data, records);
+            Path file = Files.createTempFile(settings.getTempDirectory(), "cobol-sort-", ".run");
+            ByteBuffer out = block();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < records; i++) {
+                    if (out.remaining() < recordLength) {
+                        drain(out, channel);
+                    }
+                    out.put(data, order[i] * recordLength, recordLength);
+                }
+                drain(out, channel);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            } finally {
+                blocks.offer(out);
+            }
+            return file;
+        } finally {
+            free.offer(data);
+        }
+    }
+
+    /**
+     * @return The record numbers of the buffer in key order, by a stable merge sort.
+     */
+    private int[] sortedOrder(byte[] data, int records) {
+        int[] order = new int[records];
+        for (int i = 0; i < records; i++) {
+            order[i] = i;
+        }
+        int[] scratch = new int[records];
+        int width = 16;
+        for (int start = 0; start < records; start += width) {
+            int end = Math.min(records, start + width);
+            for (int i = start + 1; i < end; i++) { // insertion sort of short stretches first
+                int record = order[i];
+                int j = i - 1;
+                while (j >= start && compare(data, order[j] * recordLength, data, record * recordLength) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = record;
+            }
+        }
+        for (; width < records; width *= 2) {
+            for (int start = 0; start < records; start += 2 * width) {
+                int middle = Math.min(records, start + width);
+                int end = Math.min(records, start + 2 * width);
+                int left = start;
+                int right = middle;
+                for (int i = start; i < end; i++) {
+                    if (right >= end || (left < middle
+                            && compare(data, order[left] * recordLength, data, order[right] * recordLength) <= 0)) {
+                        scratch[i] = order[left++];
+                    } else {
+                        scratch[i] = order[right++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = scratch;
+            scratch = swap;
+        }
+        return order;
+    }
+
+    private int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+        for (int k = 0; k < keys.length; k += 4) {
+            int offset = keys[k];
+            int length = keys[k + 1];
+            int result;
+            switch (keys[k + 2]) {
+                case TEXT:
+                    result = Arrays.compareUnsigned(a, aOffset + offset, aOffset + offset + length,
+                            b, bOffset + offset, bOffset + offset + length);
+                    break;
+                case DISPLAY:
+                    result = Long.compare(Storage.getDisplay(a, aOffset + offset, length),
+                            Storage.getDisplay(b, bOffset + offset, length));
+                    break;
+                case BINARY:
+                    result = Long.compare(Storage.getBinary(a, aOffset + offset, length),
+                            Storage.getBinary(b, bOffset + offset, length));
+                    break;
+                default:
+                    result = Long.compare(Storage.getPacked(a, aOffset + offset, length),
+                            Storage.getPacked(b, bOffset + offset, length));
+            }
+            if (result != 0) {
+                return keys[k + 3] != 0 ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Ends the input: sorts the last buffer, which stays in memory, waits for the spills,
+     * and merges runs ahead until few enough are left to merge in one pass. Each pass merges
+     * groups of adjacent runs, each group into one run in its place, and only as many groups
+     * as it takes to get down to that number; so every record is written about log(runs)/log(fan-in)
+     * times, and runs merged together always hold consecutive records, which keeps the sort stable.
+     */
+    private void finishInput() {
+        releasing = false;
+        Throwable failure = null;
+        for (Future<Path> spill : spills) {
+            try {
+                // collected as runs even after a failure, so that end() deletes them
+                runs.add(new Run(runs.size(), spill.get()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+            } catch (ExecutionException e) {
+                failure = failure != null ? failure : e.getCause();
+            }
+        }
+        spills.clear();
+        if (failure instanceof IOException) {
+            throw new UncheckedIOException("Cannot spill sort " + name, (IOException) failure);
+        } else if (failure != null) {
+            throw new IllegalStateException("Cannot sort " + name, failure);
+        }
+        free = null;
+        int fanIn = (int) Math.max(2, Math.min(1024, settings.getMemoryBytes() / BLOCK / 2));
+        while (runs.size() >= fanIn) {
+            int excess = runs.size() - (fanIn - 1);
+            List<Run> merged = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); ) {
+                    int group = Math.min(Math.min(fanIn, runs.size() - i), excess + 1);
+                    if (group > 1) {
+                        merged.add(mergePass(runs.subList(i, i + group)));
+                        excess -= group - 1;
+                    } else {
+                        merged.add(runs.get(i));
+                    }
+                    i += group;
+                }
+            } catch (RuntimeException e) {
+                runs.addAll(merged); // so that end() deletes them too
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(merged);
+            for (int i = 0; i < runs.size(); i++) {
+                runs.get(i).order = i;
+            }
+        }
+        runs.add(new Run(runs.size(), buffer, sortedOrder(buffer, count), count));
+        buffer = null;
+        for (int i = 0; i < runs.size(); i++) {
+            runs.get(i).order = i;
+        }
+        startReturning();
+    }
+
+    private Run mergePass(List<Run> sources) {
+        Run[] passHeap = new Run[sources.size()];
+        int size = 0;
+        for (Run run : sources) {
+            size = offer(passHeap, size, run);
+        }
+        Path file = null;
+        ByteBuffer out = block();
+        try {
+            file = Files.createTempFile(settings.getTempDirectory(), "cobol-sort-", ".run");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                while (size > 0) {
+                    Run top = passHeap[0];
+                    if (out.remaining() < recordLength) {
+                        drain(out, channel);
+                    }
+                    out.put(top.data, top.offset, recordLength);
+                    spilledRecords++;
+                    size = advance(passHeap, size);
+                }
+                drain(out, channel);
+            }
+            spilledRuns++;
+            return new Run(0, file);
+        } catch (IOException e) {
+            delete(file);
+            throw new UncheckedIOException("Cannot merge sort " + name, e);
+        } finally {
+            blocks.offer(out);
+            for (Run run : sources) {
+                run.close();
+            }
+        }
+    }
+
+    private void startReturning() {
+        heap = new Run[runs.size()];
+        heapSize = 0;
+        for (Run run : runs) {
+            heapSize = offer(heap, heapSize, run);
+        }
+        returning = true;
+    }
+
+    /**
+     * Moves the next record in key order into the record area, padded with spaces or cut
+     * to the given length: RETURN. The first call ends the input of a sort.
+     * @return False when every record has been returned, the AT END condition.
+     */
+    public boolean returnRecord(byte[] record, int offset, int length) {
+        if (releasing) {
+            finishInput();
+        }
+        if (!returning) {
+            throw new IllegalStateException("Sort " + name + " has no records to return");
+        }
+        if (heapSize == 0) {
+            return false;
+        }
+        Run top = heap[0];
+        int copied = Math.min(length, recordLength);
+        System.arraycopy(top.data, top.offset, record, offset, copied);
+        Arrays.fill(record, offset + copied, offset + length, (byte) ' ');
+        heapSize = advance(heap, heapSize);
+        return true;
+    }
+
+    /**
+     * Writes every record in key order to each file, which it opens and closes, and ends
+     * the sort: SORT ... GIVING.
+     */
+    public void giving(SequentialFile... files) {
+        try {
+            for (SequentialFile file : files) {
+                file.openOutput();
+            }
+            byte[] record = new byte[recordLength];
+            while (returnRecord(record, 0, recordLength)) {
+                for (SequentialFile file : files) {
+                    file.write(record, 0, Math.min(recordLength, file.getRecordLength()));
+                }
+            }
+            for (SequentialFile file : files) {
+                file.close();
+            }
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Releases the buffers and deletes the runs of the current sort or merge, if any.
+     */
+    public void end() {
+        releasing = false;
+        returning = false;
+        for (Future<Path> spill : spills) {
+            try {
+                delete(spill.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the spill deleted its own file
+            }
+        }
+        spills.clear();
+        for (Run run : runs) {
+            run.close();
+        }
+        runs.clear();
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+        heap = null;
+        heapSize = 0;
+        buffer = null;
+        free = null;
+        count = 0;
+        blocks.clear();
+    }
+
+    /**
+     * @return How many runs the last sort spilled to disk, merge passes included.
+     */
+    public int getSpilledRuns() {
+        return spilledRuns;
+    }
+
+    /**
+     * @return How many records the last sort wrote to disk, merge passes included.
+     */
+    public long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    private int offer(Run[] runHeap, int size, Run run) {
+        if (!run.next()) {
+            run.close();
+            return size;
+        }
+        int i = size;
+        runHeap[i] = run;
+        while (i > 0 && before(runHeap[i], runHeap[(i - 1) / 2])) {
+            swap(runHeap, i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+        return size + 1;
+    }
+
+    /**
+     * Moves the run on top of the heap to its next record and restores the heap.
+     * @return The new heap size.
+     */
+    private int advance(Run[] runHeap, int size) {
+        Run top = runHeap[0];
+        if (!top.next()) {
+            top.close();
+            runHeap[0] = runHeap[--size];
+            runHeap[size] = null;
+        }
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            if (left < size && before(runHeap[left], runHeap[smallest])) {
+                smallest = left;
+            }
+            if (left + 1 < size && before(runHeap[left + 1], runHeap[smallest])) {
+                smallest = left + 1;
+            }
+            if (smallest == i) {
+                return size;
+            }
+            swap(runHeap, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private boolean before(Run a, Run b) {
+        int result = compare(a.data, a.offset, b.data, b.offset);
+        return result < 0 || (result == 0 && a.order < b.order);
+    }
+
+    private static void swap(Run[] runHeap, int i, int j) {
+        Run run = runHeap[i];
+        runHeap[i] = runHeap[j];
+        runHeap[j] = run;
+    }
+
+    private ByteBuffer block() {
+        ByteBuffer block = blocks.poll();
+        if (block == null) {
+            block = ByteBuffer.allocateDirect(Math.max(BLOCK, recordLength));
+        }
+        block.clear();
+        return block;
+    }
+
+    private static void drain(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static void delete(Path file) {
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // left for the system to clean up with the temporary directory
+        }
+    }
+
+    /**
+     * One sorted stream of records being merged: a buffer sorted in memory, a spilled run,
+     * or an input file of a MERGE. Its current record is {@code data} at {@code offset}.
+     */
+    final class Run {
+        int order;
+        byte[] data;
+        int offset;
+        private int[] sorted;
+        private int count;
+        private int next;
+        private Path file;
+        private FileChannel channel;
+        private ByteBuffer block;
+        private SequentialFile input;
+
+        Run(int order, byte[] buffer, int[] sorted, int count) {
+            this.order = order;
+            this.data = buffer;
+            this.sorted = sorted;
+            this.count = count;
+        }
+
+        Run(int order, Path file) {
+            this.order = order;
+            this.file = file;
+            this.data = new byte[recordLength];
+        }
+
+        Run(int order, SequentialFile input) {
+            this.order = order;
+            this.input = input;
+            this.data = new byte[recordLength];
+        }
+
+        /**
+         * @return False at the end of the run.
+         */
+        boolean next() {
+            if (sorted != null) {
+                if (next == count) {
+                    return false;
+                }
+                offset = sorted[next++] * recordLength;
+                return true;
+            }
+            if (input != null) {
+                return input.read(data, 0, recordLength);
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.READ);
+                    block = block();
+                    block.flip();
+                }
+                if (block.remaining() < recordLength) {
+                    block.compact();
+                    while (block.hasRemaining() && channel.read(block) >= 0) {
+                        // fill the block
+                    }
+                    block.flip();
+                    if (block.remaining() < recordLength) {
+                        if (block.hasRemaining()) {
+                            throw new IllegalStateException("Truncated run of sort " + name + ": " + file);
+                        }
+                        return false;
+                    }
+                }
+                block.get(data, 0, recordLength);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read run of sort " + name + ": " + file, e);
+            }
+        }
+
+        void close() {
+            sorted = null;
+            if (input != null) {
+                SequentialFile open = input;
+                input = null;
+                open.close();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // deleted below anyway
+                }
+                channel = null;
+                blocks.offer(block);
+                block = null;
+            }
+            delete(file);
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package compiler;
+
+import java.util.Locale;
+
+/**
+ * SourceFormat - The reference format of a COBOL source file.
+ */
+public enum SourceFormat {
+    /**
+     * Fixed format: sequence area in columns 1-6, indicator in column 7,
+     * program text in columns 8-72, and anything after column 72 ignored.
+     */
+    FIXED,
+
+    /**
+     * Free format: every character of every line is program text.
+     */
+    FREE;
+
+    private static final int SAMPLE_LINES = 50;
+    /** Last column of the program text in fixed format. */
+    private static final int TEXT_END = 72;
+    /** Last column of the identification area in fixed format. */
+    private static final int IDENTIFICATION_END = 80;
+
+    /**
+     * Returns the format the system property {@code cobol.format} or the environment variable
+     * {@code COBOL_FORMAT} forces ("fixed" or "free"), or else the format detected from the source.
+     * @param source The raw source text.
+     * @return FIXED or FREE.
+     */
+    public static SourceFormat of(CharSequence source) {
+        String setting = System.getProperty("cobol.format");
+        if (setting == null) {
+            setting = System.getenv("COBOL_FORMAT");
+        }
+        if (setting == null || setting.isBlank()) {
+            return detect(source);
+        }
+        try {
+            return valueOf(setting.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Unknown source format: " + setting + " (use fixed or free)");
+        }
+    }
+
+    /**
+     * Guesses the format from the first non-blank lines of the source. A source is
+     * considered fixed format when each sampled line has only digits or spaces in the
+     * sequence area and a valid indicator in column 7, and either one of them shows it is fixed
+     * format (a sequence number, an indicator other than a space, or an identification area in
+     * columns 73-80) or no line of the source has text after column 72, which fixed format would
+     * drop. Free-format code that is merely indented by seven or more spaces is thus only taken
+     * for fixed format when reading it either way gives the same text.
+     * @param source The raw source text.
+     * @return FIXED or FREE.
+     */
+    public static SourceFormat detect(CharSequence source) {
+        int pos = 0;
+        int sampled = 0;
+        boolean evidence = false;
+        int length = source.length();
+        while (pos < length && sampled < SAMPLE_LINES) {
+            int lineEnd = lineEnd(source, pos);
+            if (!isBlank(source, pos, lineEnd)) {
+                if (!isFixedFormatLine(source, pos, lineEnd)) {
+                    return FREE;
+                }
+                evidence |= showsFixedFormat(source, pos, lineEnd);
+                sampled++;
+            }
+            pos = lineEnd + 1;
+        }
+        if (sampled == 0) {
+            return FREE;
+        }
+        if (evidence) {
+            return FIXED;
+        }
+        for (pos = 0; pos < length; pos = lineEnd(source, pos) + 1) {
+            int lineEnd = lineEnd(source, pos);
+            if (lineEnd - pos > TEXT_END && !isBlank(source, pos + TEXT_END, lineEnd)) {
+                return FREE;
+            }
+        }
+        return FIXED;
+    }
+
+    private static int lineEnd(CharSequence source, int pos) {
+        int length = source.length();
+        while (pos < length && source.charAt(pos) != '\n' && source.charAt(pos) != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isFixedFormatLine(CharSequence source, int start, int end) {
+        if (end - start < 7) {
+            return isBlank(source, start, end);
+        }
+        for (int i = start; i < start + 6; i++) {
+            char c = source.charAt(i);
+            if (c != ' ' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        char indicator = source.charAt(start + 6);
+        return indicator == ' ' || indicator == '-' || indicator == '*' || indicator == '/'
+                || indicator == 'D' || indicator == 'd';
+    }
+
+    /**
+     * @return True if the line has a sequence number, an indicator other than a space, or text
+     *         in columns 73-80 set apart from the program text by a blank column 72.
+     */
+    private static boolean showsFixedFormat(CharSequence source, int start, int end) {
+        if (end - start < 7) {
+            return false;
+        }
+        for (int i = start; i < start + 6; i++) {
+            if (source.charAt(i) != ' ') {
+                return true;
+            }
+        }
+        if (source.charAt(start + 6) != ' ') {
+            return true;
+        }
+        return end - start > TEXT_END && end - start <= IDENTIFICATION_END
+                && source.charAt(start + TEXT_END - 1) == ' ' && !isBlank(source, start + TEXT_END, end);
+    }
+
+    private static boolean isBlank(CharSequence source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
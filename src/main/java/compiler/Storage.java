@@ -0,0 +1,198 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Storage - Typed access to data items held in record byte arrays.
+ * Every level-01 record of a generated program is one byte[]; an item is a fixed
+ * offset and length inside it, so REDEFINES is two items over the same bytes and a
+ * group MOVE or a record READ is a single array copy. Numeric getters return the
+ * unscaled value, like {@link FixedPoint}; setters take the value first and store
+ * only the low-order digits that fit.
+ * Text is one byte per character (ISO-8859-1). Signed DISPLAY items carry the sign
+ * in the last byte, which becomes 'p' to 'y' for a negative value, as ASCII COBOL
+ * compilers do.
+ */
+public final class Storage {
+    private static final byte SPACE = ' ';
+    /** Characters per string constant of a record image, well inside the class file limit. */
+    static final int IMAGE_CHUNK = 16384;
+
+    private Storage() {
+    }
+
+    /**
+     * Rebuilds a record's initial contents from the string constants the generator split it into.
+     */
+    public static byte[] image(String... chunks) {
+        int size = 0;
+        for (String chunk : chunks) {
+            size += chunk.length();
+        }
+        byte[] data = new byte[size];
+        int offset = 0;
+        for (String chunk : chunks) {
+            for (int i = 0; i < chunk.length(); i++) {
+                data[offset++] = (byte) chunk.charAt(i);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Moves alphanumeric or group data: copies what fits and pads the rest with spaces.
+     * Overlapping moves, e.g. between an item and its REDEFINES, work like a copy via a buffer.
+     */
+    public static void move(byte[] from, int fromOffset, int fromLength, byte[] to, int toOffset, int toLength) {
+        int copied = Math.min(fromLength, toLength);
+        System.arraycopy(from, fromOffset, to, toOffset, copied);
+        if (copied < toLength) {
+            Arrays.fill(to, toOffset + copied, toOffset + toLength, SPACE);
+        }
+    }
+
+    public static String getText(byte[] data, int offset, int length) {
+        return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Stores text left-justified, padded with spaces or cut to the item's length.
+     */
+    public static void putText(String value, byte[] data, int offset, int length) {
+        int copied = Math.min(value.length(), length);
+        for (int i = 0; i < copied; i++) {
+            data[offset + i] = (byte) value.charAt(i);
+        }
+        Arrays.fill(data, offset + copied, offset + length, SPACE);
+    }
+
+    /**
+     * Reads a DISPLAY (zoned decimal) item; spaces read as zeros.
+     */
+    public static long getDisplay(byte[] data, int offset, int length) {
+        long value = 0;
+        int end = offset + length - 1;
+        for (int i = offset; i < end; i++) {
+            value = value * 10 + (data[i] & 0x0F);
+        }
+        int last = data[end];
+        value = value * 10 + (last & 0x0F);
+        return (last & 0xF0) == 0x70 ? -value : value;
+    }
+
+    public static void putDisplay(long value, byte[] data, int offset, int length, boolean signed) {
+        boolean negative = signed && value < 0;
+        long rest = Math.abs(value);
+        for (int i = offset + length - 1; i >= offset; i--) {
+            data[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        if (negative) {
+            data[offset + length - 1] += 0x40; // '0'..'9' become 'p'..'y'
+        }
+    }
+
+    public static BigDecimal getDisplayDecimal(byte[] data, int offset, int length, int scale) {
+        if (length <= FixedPoint.MAX_DIGITS) {
+            return BigDecimal.valueOf(getDisplay(data, offset, length), scale);
+        }
+        char[] digits = new char[length + 1];
+        for (int i = 0; i < length; i++) {
+            digits[i + 1] = (char) ('0' + (data[offset + i] & 0x0F));
+        }
+        digits[0] = (data[offset + length - 1] & 0xF0) == 0x70 ? '-' : '+';
+        return new BigDecimal(new BigInteger(new String(digits)), scale);
+    }
+
+    public static void putDisplayDecimal(BigDecimal value, byte[] data, int offset, int length, boolean signed) {
+        String digits = value.unscaledValue().abs().toString();
+        int copied = Math.min(digits.length(), length);
+        int start = offset + length - copied;
+        Arrays.fill(data, offset, start, (byte) '0');
+        for (int i = 0; i < copied; i++) {
+            data[start + i] = (byte) digits.charAt(digits.length() - copied + i);
+        }
+        if (signed && value.signum() < 0) {
+            data[offset + length - 1] += 0x40;
+        }
+    }
+
+    /**
+     * Reads a COMP (big-endian two's complement) item of 2, 4 or 8 bytes.
+     */
+    public static long getBinary(byte[] data, int offset, int length) {
+        long value = data[offset]; // sign-extended
+        for (int i = offset + 1; i < offset + length; i++) {
+            value = (value << 8) | (data[i] & 0xFF);
+        }
+        return value;
+    }
+
+    public static void putBinary(long value, byte[] data, int offset, int length, boolean signed) {
+        long stored = signed ? value : Math.abs(value);
+        for (int i = offset + length - 1; i >= offset; i--) {
+            data[i] = (byte) stored;
+            stored >>= 8;
+        }
+    }
+
+    /**
+     * Reads a COMP-3 (packed decimal) item: two digits per byte, the sign in the last nibble.
+     */
+    public static long getPacked(byte[] data, int offset, int length) {
+        long value = 0;
+        int end = offset + length - 1;
+        for (int i = offset; i < end; i++) {
+            value = value * 100 + ((data[i] >> 4) & 0x0F) * 10 + (data[i] & 0x0F);
+        }
+        value = value * 10 + ((data[end] >> 4) & 0x0F);
+        return (data[end] & 0x0F) == 0x0D ? -value : value;
+    }
+
+    public static void putPacked(long value, byte[] data, int offset, int length, boolean signed) {
+        long rest = Math.abs(value);
+        int end = offset + length - 1;
+        int sign = !signed ? 0x0F : value < 0 ? 0x0D : 0x0C;
+        data[end] = (byte) ((rest % 10) << 4 | sign);
+        rest /= 10;
+        for (int i = end - 1; i >= offset; i--) {
+            data[i] = (byte) ((rest / 10 % 10) << 4 | rest % 10);
+            rest /= 100;
+        }
+    }
+
+    public static BigDecimal getPackedDecimal(byte[] data, int offset, int length, int scale) {
+        if (length * 2 - 1 <= FixedPoint.MAX_DIGITS) {
+            return BigDecimal.valueOf(getPacked(data, offset, length), scale);
+        }
+        char[] digits = new char[length * 2];
+        int end = offset + length - 1;
+        for (int i = offset; i <= end; i++) {
+            digits[(i - offset) * 2 + 1] = (char) ('0' + ((data[i] >> 4) & 0x0F));
+            if (i < end) {
+                digits[(i - offset) * 2 + 2] = (char) ('0' + (data[i] & 0x0F));
+            }
+        }
+        digits[0] = (data[end] & 0x0F) == 0x0D ? '-' : '+';
+        return new BigDecimal(new BigInteger(new String(digits)), scale);
+    }
+
+    public static void putPackedDecimal(BigDecimal value, byte[] data, int offset, int length, boolean signed) {
+        String digits = value.unscaledValue().abs().toString();
+        int end = offset + length - 1;
+        int sign = !signed ? 0x0F : value.signum() < 0 ? 0x0D : 0x0C;
+        int position = digits.length() - 1; // next digit to store, from the right
+        data[end] = (byte) (digit(digits, position--) << 4 | sign);
+        for (int i = end - 1; i >= offset; i--) {
+            int low = digit(digits, position--);
+            data[i] = (byte) (digit(digits, position--) << 4 | low);
+        }
+    }
+
+    private static int digit(String digits, int position) {
+        return position < 0 ? 0 : digits.charAt(position) - '0';
+    }
+}
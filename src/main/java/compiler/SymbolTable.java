@@ -1,29 +1,269 @@
-package compiler;
-
-import java.util.HashMap;
-
-/**
- * SymbolTable - Manages COBOL variable declarations.
- */
-public class SymbolTable {
-    private static final HashMap<String, String> variables = new HashMap<>();
-
-    /**
-     * Declares a COBOL variable.
-     * @param name Variable name.
-     * @param type Variable type.
-     */
-    public static void declareVariable(String name, String type) {
-        variables.put(name, type);
-        Debugger.log("Declared variable: " + name + " of type " + type);
-    }
-
-    /**
-     * Retrieves the type of a variable.
-     * @param name Variable name.
-     * @return Variable type.
-     */
-    public static String getType(String name) {
-        return variables.getOrDefault(name, "UNKNOWN");
-    }
-}
+package compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SymbolTable - Manages COBOL variable declarations.
+ * Each compilation unit owns its own table, so units can be compiled concurrently
+ * without sharing declarations. Data items are kept in their level-number hierarchy
+ * with byte offsets and sizes, and every name is indexed so that qualified references
+ * ("X OF Y") only look at the items that carry that name.
+ */
+public class SymbolTable {
+    private final List<DataItem> records = new ArrayList<>();
+    private final Map<String, List<DataItem>> byName = new HashMap<>();
+    private final Deque<DataItem> open = new ArrayDeque<>();
+    private final Map<String, FileDefinition> files = new LinkedHashMap<>();
+    private DataItem lastItem;
+
+    /**
+     * Declares a COBOL variable.
+     * @param name Variable name.
+     * @param type Variable type.
+     */
+    public void declareVariable(String name, String type) {
+        DataItem item = new DataItem(1, name);
+        item.setPicture(type);
+        declare(item);
+        Debugger.log(() -> "Declared variable: " + name + " of type " + type);
+    }
+
+    /**
+     * Adds a data description entry below the open item with a lower level number.
+     * Entries must be declared in source order.
+     * @param item The entry; level 01 and 77 start a new record.
+     */
+    public void declare(DataItem item) {
+        int level = item.getLevel();
+        if (level == 88) {
+            if (lastItem == null) {
+                throw new RuntimeException("Condition name " + item.getName() + " has no data item");
+            }
+            item.setParent(lastItem);
+            lastItem.addChild(item);
+        } else if (level == 66) {
+            if (records.isEmpty()) {
+                throw new RuntimeException("RENAMES entry " + item.getName() + " has no record");
+            }
+            DataItem record = records.get(records.size() - 1);
+            item.setParent(record);
+            record.addChild(item);
+        } else if (level == 1 || level == 77) {
+            open.clear();
+            records.add(item);
+            open.push(item);
+            lastItem = item;
+        } else {
+            while (!open.isEmpty() && open.peek().getLevel() >= level) {
+                open.pop();
+            }
+            if (open.isEmpty()) {
+                throw new RuntimeException("Level " + level + " item " + item.getName() + " is not inside a record");
+            }
+            item.setParent(open.peek());
+            open.peek().addChild(item);
+            open.push(item);
+            lastItem = item;
+        }
+        byName.computeIfAbsent(item.getName(), name -> new ArrayList<>(1)).add(item);
+    }
+
+    /**
+     * Finds the item a REDEFINES clause refers to: the closest preceding item at the same level.
+     * @param item The redefining entry, not yet declared.
+     * @param name The redefined data name.
+     * @return The redefined item.
+     */
+    public DataItem findRedefined(DataItem item, String name) {
+        List<DataItem> siblings = records;
+        if (item.getLevel() != 1) {
+            DataItem parent = open.peek();
+            while (parent != null && parent.getLevel() >= item.getLevel()) {
+                parent = parent.getParent();
+            }
+            siblings = parent == null ? List.of() : parent.getChildren();
+        }
+        for (int i = siblings.size() - 1; i >= 0; i--) {
+            DataItem sibling = siblings.get(i);
+            if (sibling.getName().equals(name) && sibling.getLevel() == item.getLevel()) {
+                return sibling;
+            }
+        }
+        throw new RuntimeException(item.getName() + " REDEFINES unknown item " + name);
+    }
+
+    /**
+     * Computes byte offsets and sizes of every record. Call once all entries are declared.
+     */
+    public void computeLayout() {
+        for (DataItem record : records) {
+            layout(record, 0);
+        }
+        for (List<DataItem> items : byName.values()) {
+            for (DataItem item : items) {
+                if (item.getLevel() == 66) {
+                    layoutRenames(item);
+                }
+            }
+        }
+    }
+
+    private void layout(DataItem item, int offset) {
+        if (item.getRedefines() != null) {
+            offset = item.getRedefines().getOffset();
+        }
+        if (item.isGroup()) {
+            int cursor = offset;
+            for (DataItem child : item.getChildren()) {
+                if (child.isConditionName() || child.getLevel() == 66) {
+                    continue;
+                }
+                layout(child, cursor);
+                cursor = Math.max(cursor, child.getOffset() + child.getTotalSize());
+            }
+            item.setLayout(offset, cursor - offset);
+        } else {
+            item.setLayout(offset, item.elementarySize());
+        }
+    }
+
+    private void layoutRenames(DataItem item) {
+        DataItem first = item.getRenames();
+        DataItem last = item.getRenamesThrough() != null ? item.getRenamesThrough() : first;
+        item.setLayout(first.getOffset(), last.getOffset() + last.getTotalSize() - first.getOffset());
+    }
+
+    /**
+     * Resolves a possibly qualified data name.
+     * @param name The data name.
+     * @param qualifiers Enclosing group names from innermost to outermost ("X OF Y OF Z" gives Y, Z).
+     * @return The single matching item, or null if none matches.
+     * @throws RuntimeException if the reference is ambiguous.
+     */
+    public DataItem lookup(String name, String... qualifiers) {
+        List<DataItem> candidates = byName.get(name);
+        if (candidates == null) {
+            return null;
+        }
+        DataItem found = null;
+        for (DataItem candidate : candidates) {
+            if (isQualifiedBy(candidate, qualifiers)) {
+                if (found != null) {
+                    throw new RuntimeException("Ambiguous reference to " + name + ", qualify it with OF");
+                }
+                found = candidate;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isQualifiedBy(DataItem item, String[] qualifiers) {
+        DataItem ancestor = item.getParent();
+        for (String qualifier : qualifiers) {
+            while (ancestor != null && !ancestor.getName().equals(qualifier)) {
+                ancestor = ancestor.getParent();
+            }
+            if (ancestor == null) {
+                return false;
+            }
+            ancestor = ancestor.getParent();
+        }
+        return true;
+    }
+
+    /**
+     * @return The level-01 and level-77 items, in declaration order.
+     */
+    public List<DataItem> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return A table of the same items and files, whose records can be removed without
+     *         removing them from this one.
+     */
+    SymbolTable copy() {
+        SymbolTable copy = new SymbolTable();
+        copy.records.addAll(records);
+        for (Map.Entry<String, List<DataItem>> entry : byName.entrySet()) {
+            copy.byName.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        copy.files.putAll(files);
+        return copy;
+    }
+
+    /**
+     * Removes a level-01 or 77 record and every name declared in it.
+     */
+    void removeRecord(DataItem record) {
+        records.remove(record);
+        unindex(record);
+    }
+
+    private void unindex(DataItem item) {
+        List<DataItem> items = byName.get(item.getName());
+        if (items != null) {
+            items.remove(item);
+            if (items.isEmpty()) {
+                byName.remove(item.getName());
+            }
+        }
+        for (DataItem child : item.getChildren()) {
+            unindex(child);
+        }
+    }
+
+    /**
+     * Declares a file from its SELECT entry.
+     */
+    public void declareFile(FileDefinition file) {
+        if (files.putIfAbsent(file.getName(), file) != null) {
+            throw new RuntimeException("File " + file.getName() + " is selected twice");
+        }
+    }
+
+    /**
+     * @return The file with that name, or null if no SELECT names it.
+     */
+    public FileDefinition getFile(String name) {
+        return files.get(name);
+    }
+
+    /**
+     * @return The files, in SELECT order.
+     */
+    public List<FileDefinition> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * @return The file whose FD describes the record, or null for a WORKING-STORAGE record.
+     */
+    public FileDefinition fileOf(DataItem record) {
+        for (FileDefinition file : files.values()) {
+            if (file.getRecords().contains(record)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the type of a variable.
+     * @param name Variable name.
+     * @return Variable type.
+     */
+    public String getType(String name) {
+        DataItem item = lookup(name);
+        if (item == null) {
+            return "UNKNOWN";
+        }
+        return item.getPicture() != null ? item.getPicture() : item.isGroup() ? "GROUP" : item.getUsage().name();
+    }
+}
@@ -0,0 +1,373 @@
+package compiler;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TokenBuffer - Compact storage for the token stream of one compilation unit.
+ * Tokens are kept as parallel primitive arrays (kind, id, start offset, length) that
+ * point back into the source text, so no String is created per token. The id is the
+ * {@link Keyword} ordinal for keywords and division headers, an interned name id
+ * for identifiers, and the character itself for one-character operators, punctuation
+ * and symbols; other tokens have id -1.
+ */
+public final class TokenBuffer {
+    private CharSequence source;
+    private final NameTable names;
+    private byte[] kinds;
+    private int[] ids;
+    private int[] starts;
+    private int[] lengths;
+    private int size;
+
+    /**
+     * Creates an empty buffer over the given source text.
+     * @param source The source the token offsets refer to.
+     * @param expectedTokens Initial capacity hint.
+     */
+    public TokenBuffer(CharSequence source, int expectedTokens) {
+        int capacity = Math.max(16, expectedTokens);
+        this.source = source;
+        this.names = new NameTable();
+        this.kinds = new byte[capacity];
+        this.ids = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    private TokenBuffer(TokenBuffer other, CharSequence source) {
+        this.source = source;
+        this.names = other.names.copy();
+        this.kinds = Arrays.copyOf(other.kinds, other.size);
+        this.ids = Arrays.copyOf(other.ids, other.size);
+        this.starts = Arrays.copyOf(other.starts, other.size);
+        this.lengths = Arrays.copyOf(other.lengths, other.size);
+        this.size = other.size;
+    }
+
+    /**
+     * Copies the buffer, so the copy can be read on another thread while this one changes.
+     * @param source A copy of the source text, with the tokens at the same offsets.
+     * @return A buffer with the same tokens over the given source.
+     */
+    TokenBuffer copy(CharSequence source) {
+        return new TokenBuffer(this, source);
+    }
+
+    /**
+     * Empties the buffer for the tokens of another source. The arrays are kept, so a thread
+     * that lexes many units in turn allocates them once rather than once per unit.
+     * @return This buffer.
+     */
+    TokenBuffer reset(CharSequence source) {
+        this.source = source;
+        this.size = 0;
+        names.clear();
+        return this;
+    }
+
+    /**
+     * Builds a buffer from a list of tokens, for callers that still produce {@link Token} objects.
+     * @param tokens The tokens, in source order.
+     * @return A buffer over a synthetic source made of the token values separated by spaces.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        StringBuilder text = new StringBuilder();
+        for (Token token : tokens) {
+            text.append(token.value()).append(' ');
+        }
+        TokenBuffer buffer = new TokenBuffer(text, tokens.size());
+        int offset = 0;
+        for (Token token : tokens) {
+            TokenKind kind = TokenKind.valueOf(token.type());
+            int length = token.value().length();
+            Keyword keyword = Keyword.lookup(token.value());
+            if (keyword != null && (kind == TokenKind.KEYWORD || kind == TokenKind.DIVISION_HEADER)) {
+                buffer.addKeyword(kind, keyword, offset);
+            } else {
+                buffer.add(kind, offset, offset + length);
+            }
+            offset += length + 1;
+        }
+        return buffer;
+    }
+
+    void addKeyword(TokenKind kind, Keyword keyword, int start) {
+        append(kind, keyword.ordinal(), start, keyword.text().length());
+    }
+
+    void add(TokenKind kind, int start, int end) {
+        int id = -1;
+        if (kind == TokenKind.IDENTIFIER) {
+            id = names.intern(source, start, end);
+        } else if (end - start == 1 && kind.ordinal() >= TokenKind.OPERATOR.ordinal() && kind != TokenKind.PICTURE) {
+            id = source.charAt(start);
+        }
+        append(kind, id, start, end - start);
+    }
+
+    /**
+     * Appends a token of another buffer whose source text sits at {@code baseOffset}
+     * of this buffer's source. Identifier ids are re-interned in this buffer.
+     */
+    void copyFrom(TokenBuffer other, int index, int baseOffset) {
+        int id = other.ids[index];
+        if (other.kinds[index] == TokenKind.IDENTIFIER.ordinal()) {
+            id = names.intern(other.names.name(id));
+        }
+        append(TokenKind.of(other.kinds[index]), id, other.starts[index] + baseOffset, other.lengths[index]);
+    }
+
+    /**
+     * Replaces the tokens from {@code from} up to {@code to} with those of another buffer over
+     * the same source, after an edit that changed the length of the source by {@code delta}
+     * between them. The tokens after the replaced ones are moved by {@code delta}.
+     */
+    void replace(int from, int to, TokenBuffer region, int delta) {
+        int count = region.size;
+        int tail = size - to;
+        ensureCapacity(from + count + tail);
+        System.arraycopy(kinds, to, kinds, from + count, tail);
+        System.arraycopy(ids, to, ids, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        size = from + count + tail;
+        for (int i = from + count; i < size; i++) {
+            starts[i] += delta;
+        }
+        for (int i = 0; i < count; i++) {
+            int id = region.ids[i];
+            if (region.kinds[i] == TokenKind.IDENTIFIER.ordinal()) {
+                id = names.intern(region.names.name(id));
+            }
+            kinds[from + i] = region.kinds[i];
+            ids[from + i] = id;
+            starts[from + i] = region.starts[i];
+            lengths[from + i] = region.lengths[i];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            capacity = Math.max(capacity, kinds.length + (kinds.length >> 1));
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    private void append(TokenKind kind, int id, int start, int length) {
+        ensureCapacity(size + 1);
+        kinds[size] = (byte) kind.ordinal();
+        ids[size] = id;
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenKind kind(int index) {
+        return TokenKind.of(kinds[index]);
+    }
+
+    /**
+     * @return The keyword ordinal, interned name id or character of the token, or -1.
+     */
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * @return True if the token has the given kind.
+     */
+    public boolean is(int index, TokenKind kind) {
+        return kinds[index] == kind.ordinal();
+    }
+
+    /**
+     * @return True if the token is the given keyword or division header.
+     */
+    public boolean isKeyword(int index, Keyword keyword) {
+        return ids[index] == keyword.ordinal() && kinds[index] <= TokenKind.KEYWORD.ordinal();
+    }
+
+    /**
+     * @return True if the token is the single character {@code c} of the given kind.
+     */
+    public boolean isChar(int index, TokenKind kind, char c) {
+        return ids[index] == c && kinds[index] == kind.ordinal() && lengths[index] == 1;
+    }
+
+    /**
+     * Compares two tokens, possibly of different buffers, by kind and text.
+     * @return True if both tokens have the same kind and spelling.
+     */
+    static boolean sameToken(TokenBuffer a, int i, TokenBuffer b, int j) {
+        if (a.kinds[i] != b.kinds[j] || a.lengths[i] != b.lengths[j]) {
+            return false;
+        }
+        int kind = a.kinds[i];
+        if (kind <= TokenKind.KEYWORD.ordinal() && a.ids[i] >= 0) {
+            return a.ids[i] == b.ids[j];
+        }
+        if (kind == TokenKind.IDENTIFIER.ordinal()) {
+            return a.names.name(a.ids[i]).equals(b.names.name(b.ids[j]));
+        }
+        for (int k = 0; k < a.lengths[i]; k++) {
+            if (a.source.charAt(a.starts[i] + k) != b.source.charAt(b.starts[j] + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token text. Keywords and identifiers return shared instances;
+     * other tokens are copied out of the source on each call.
+     */
+    public String text(int index) {
+        int kind = kinds[index];
+        if (kind <= TokenKind.KEYWORD.ordinal() && ids[index] >= 0) {
+            return Keyword.of(ids[index]).text();
+        }
+        if (kind == TokenKind.IDENTIFIER.ordinal()) {
+            return names.name(ids[index]);
+        }
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    /**
+     * @return The interned identifier for a name id.
+     */
+    public String name(int nameId) {
+        return names.name(nameId);
+    }
+
+    /**
+     * @return A read-only {@link Token} view of the buffer. Tokens are created on access.
+     */
+    public List<Token> asList() {
+        return new AbstractList<Token>() {
+            @Override
+            public Token get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Token index " + index + " out of " + size);
+                }
+                return new Token(kind(index).name(), text(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    /**
+     * Open-addressing intern table for identifier text. Lookups hash the source
+     * region directly, so a String is only created the first time a name is seen.
+     */
+    private static final class NameTable {
+        private int[] slots = new int[64];
+        private String[] names = new String[32];
+        private int count;
+
+        int intern(CharSequence source, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + source.charAt(i);
+            }
+            int mask = slots.length - 1;
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0) {
+                String name = names[slots[slot] - 1];
+                if (name.hashCode() == hash && contentEquals(name, source, start, end)) {
+                    return slots[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            names[count] = source.subSequence(start, end).toString();
+            slots[slot] = ++count;
+            if (count * 2 > slots.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        int intern(String name) {
+            return intern(name, 0, name.length());
+        }
+
+        NameTable copy() {
+            NameTable copy = new NameTable();
+            copy.slots = slots.clone();
+            copy.names = names.clone();
+            copy.count = count;
+            return copy;
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            Arrays.fill(names, 0, count, null);
+            count = 0;
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        private void rehash() {
+            int[] grown = new int[slots.length * 2];
+            int mask = grown.length - 1;
+            for (int i = 0; i < count; i++) {
+                int slot = mix(names[i].hashCode()) & mask;
+                while (grown[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                grown[slot] = i + 1;
+            }
+            slots = grown;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean contentEquals(String name, CharSequence source, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != source.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package compiler;
+
+/**
+ * TokenKind - The token categories produced by the lexer.
+ * The constant names match the type strings used in {@link TokenDefinitions}.
+ */
+public enum TokenKind {
+    DIVISION_HEADER,
+    KEYWORD,
+    IDENTIFIER,
+    STRING,
+    NUMBER,
+    COMMENT,
+    OPERATOR,
+    PUNCTUATION,
+    SYMBOL,
+    /**
+     * The character-string of a PIC clause. Recognized from context, so it has no
+     * entry in {@link TokenDefinitions}.
+     */
+    PICTURE;
+
+    private static final TokenKind[] VALUES = values();
+
+    static TokenKind of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
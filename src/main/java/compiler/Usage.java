@@ -0,0 +1,53 @@
+package compiler;
+
+/**
+ * Usage - How a COBOL data item is stored.
+ */
+public enum Usage {
+    /** One character per digit or character position. */
+    DISPLAY,
+    /** Big-endian two's complement binary (COMP, COMP-4, COMP-5, BINARY). */
+    BINARY,
+    /** Packed decimal, two digits per byte with the sign in the last nibble (COMP-3, PACKED-DECIMAL). */
+    PACKED_DECIMAL,
+    /** Single-precision floating point (COMP-1). */
+    FLOAT,
+    /** Double-precision floating point (COMP-2). */
+    DOUBLE,
+    /** Table index (INDEX). */
+    INDEX;
+
+    /**
+     * Maps a USAGE word to its usage.
+     * @param word The word as written in the source.
+     * @return The usage, or null if the word is not a usage.
+     */
+    public static Usage of(String word) {
+        switch (word) {
+            case "DISPLAY":
+                return DISPLAY;
+            case "COMP":
+            case "COMP-4":
+            case "COMP-5":
+            case "COMPUTATIONAL":
+            case "COMPUTATIONAL-4":
+            case "COMPUTATIONAL-5":
+            case "BINARY":
+                return BINARY;
+            case "COMP-3":
+            case "COMPUTATIONAL-3":
+            case "PACKED-DECIMAL":
+                return PACKED_DECIMAL;
+            case "COMP-1":
+            case "COMPUTATIONAL-1":
+                return FLOAT;
+            case "COMP-2":
+            case "COMPUTATIONAL-2":
+                return DOUBLE;
+            case "INDEX":
+                return INDEX;
+            default:
+                return null;
+        }
+    }
+}
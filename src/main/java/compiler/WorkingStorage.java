@@ -0,0 +1,194 @@
+package compiler;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * WorkingStorage - The record byte arrays of a generated program and their initial contents.
+ * Each level-01 or 77 record becomes one static byte[]; a record that REDEFINES another
+ * shares its array, and so do all the records of one FD, which share the file's record
+ * area. The initial image (spaces, zeros in numeric items, then the VALUE
+ * clauses) is built here at compile time with the same {@link Storage} routines the
+ * program uses, so the generated class only has to copy it out of its string constants.
+ */
+final class WorkingStorage {
+    private final SymbolTable symbols;
+    private final Map<DataItem, String> arrays = new HashMap<>();
+    private final Map<String, byte[]> images = new LinkedHashMap<>();
+    /** Each FD record but the first, mapped to the first record of its file. */
+    private final Map<DataItem, DataItem> overlays = new HashMap<>();
+
+    WorkingStorage(SymbolTable symbols) {
+        this.symbols = symbols;
+        for (FileDefinition file : symbols.getFiles()) {
+            List<DataItem> records = file.getRecords();
+            for (int i = 1; i < records.size(); i++) {
+                overlays.put(records.get(i), records.get(0));
+            }
+        }
+        Set<String> used = new HashSet<>();
+        Map<DataItem, Integer> sizes = new LinkedHashMap<>();
+        for (DataItem record : symbols.getRecords()) {
+            DataItem base = base(record);
+            sizes.merge(base, record.getTotalSize(), Math::max);
+        }
+        for (Map.Entry<DataItem, Integer> entry : sizes.entrySet()) {
+            String name = JavaCodeGenerator.javaName(entry.getKey().getName());
+            for (int i = 2; !used.add(name); i++) {
+                name = JavaCodeGenerator.javaName(entry.getKey().getName()) + "_" + i; // e.g. several 01 FILLERs
+            }
+            byte[] image = new byte[entry.getValue()];
+            Arrays.fill(image, (byte) ' ');
+            initialize(entry.getKey(), image, 0);
+            arrays.put(entry.getKey(), name);
+            images.put(name, image);
+        }
+    }
+
+    private DataItem base(DataItem record) {
+        while (record.getRedefines() != null) {
+            record = record.getRedefines();
+        }
+        return overlays.getOrDefault(record, record);
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return The Java name of the array holding the item.
+     */
+    String arrayOf(DataItem item) {
+        return arrays.get(base(item.getRecord()));
+    }
+
+    /**
+     * @return The Java name of the array holding the record area of a file.
+     */
+    String recordAreaOf(FileDefinition file) {
+        if (file.getRecords().isEmpty()) {
+            throw new RuntimeException("File " + file.getName() + " has no FD record");
+        }
+        return arrayOf(file.getRecords().get(0));
+    }
+
+    /**
+     * @return The initial contents of every record array, by Java name.
+     */
+    Map<String, byte[]> getImages() {
+        return images;
+    }
+
+    /**
+     * Splits an image into string constants for {@link Storage#image(String...)}.
+     */
+    static List<String> chunks(byte[] image) {
+        String text = new String(image, StandardCharsets.ISO_8859_1);
+        List<String> chunks = new ArrayList<>(text.length() / Storage.IMAGE_CHUNK + 1);
+        for (int i = 0; i < text.length(); i += Storage.IMAGE_CHUNK) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + Storage.IMAGE_CHUNK)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Zeros numeric items and applies VALUE clauses, in every occurrence of a table.
+     * Entries that REDEFINES another start out with the bytes of the item they overlay.
+     */
+    private static void initialize(DataItem item, byte[] image, int shift) {
+        if (item.isConditionName() || item.getLevel() == 66 || item.getRedefines() != null) {
+            return;
+        }
+        for (int occurrence = 0; occurrence < Math.max(1, item.getOccurs()); occurrence++) {
+            int offset = shift + item.getOffset() + occurrence * item.getSize();
+            if (!item.getValues().isEmpty()) {
+                applyValue(item, item.getValues().get(0), image, offset);
+            } else if (item.isGroup()) {
+                for (DataItem child : item.getChildren()) {
+                    initialize(child, image, offset - item.getOffset());
+                }
+            } else if (item.getCategory() == DataItem.Category.NUMERIC) {
+                putNumber(item, BigDecimal.ZERO, image, offset);
+            }
+        }
+    }
+
+    private static void applyValue(DataItem item, String literal, byte[] image, int offset) {
+        boolean numeric = item.getCategory() == DataItem.Category.NUMERIC;
+        Character fill = figurative(literal);
+        if (literal.startsWith("ALL ")) {
+            String text = JavaCodeGenerator.literalText(literal.substring(4));
+            Storage.putText(text.repeat(item.getSize() / Math.max(1, text.length()) + 1), image, offset, item.getSize());
+        } else if (fill != null) {
+            if (numeric && fill == '0') {
+                putNumber(item, BigDecimal.ZERO, image, offset);
+            } else {
+                Arrays.fill(image, offset, offset + item.getSize(), (byte) fill.charValue());
+            }
+        } else if (literal.startsWith("\"") || literal.startsWith("'") || !numeric) {
+            Storage.putText(JavaCodeGenerator.literalText(literal), image, offset, item.getSize());
+        } else {
+            putNumber(item, new BigDecimal(literal), image, offset);
+        }
+    }
+
+    /**
+     * Stores a number into a numeric item, dropping the digits that do not fit.
+     */
+    private static void putNumber(DataItem item, BigDecimal value, byte[] image, int offset) {
+        BigDecimal stored = FixedPoint.truncate(value.setScale(item.getScale(), RoundingMode.DOWN),
+                item.getDigits(), item.isSigned());
+        switch (item.getUsage()) {
+            case DISPLAY:
+                Storage.putDisplayDecimal(stored, image, offset, item.getSize(), item.isSigned());
+                break;
+            case PACKED_DECIMAL:
+                Storage.putPackedDecimal(stored, image, offset, item.getSize(), item.isSigned());
+                break;
+            case BINARY:
+            case INDEX:
+                Storage.putBinary(stored.unscaledValue().longValue(), image, offset, item.getSize(), item.isSigned());
+                break;
+            default:
+                Arrays.fill(image, offset, offset + item.getSize(), (byte) 0); // COMP-1 and COMP-2 zero is all zero bytes
+        }
+    }
+
+    /**
+     * @return The character a figurative constant fills an item with, or null if the word is not one.
+     */
+    static Character figurative(String word) {
+        switch (word) {
+            case "ZERO":
+            case "ZEROS":
+            case "ZEROES":
+                return '0';
+            case "SPACE":
+            case "SPACES":
+                return ' ';
+            case "HIGH-VALUE":
+            case "HIGH-VALUES":
+                return (char) 0xFF;
+            case "LOW-VALUE":
+            case "LOW-VALUES":
+            case "NULL":
+            case "NULLS":
+                return (char) 0;
+            case "QUOTE":
+            case "QUOTES":
+                return '"';
+            default:
+                return null;
+        }
+    }
+}
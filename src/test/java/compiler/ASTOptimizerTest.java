@@ -0,0 +1,104 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * ASTOptimizerTest - Checks what each optimization pass rewrites, one pass at a time.
+ */
+public class ASTOptimizerTest {
+    private static final String DATA = "IDENTIFICATION DIVISION.\n"
+            + "PROGRAM-ID. OPT.\n"
+            + "DATA DIVISION.\n"
+            + "WORKING-STORAGE SECTION.\n"
+            + "01 RATE PIC 9V99.\n"
+            + "01 TOTAL PIC 9(5)V99.\n"
+            + "01 UNUSED-REC.\n"
+            + "   05 UNUSED-FIELD PIC X(4).\n"
+            + "PROCEDURE DIVISION.\n";
+
+    private static ASTOptimizer optimize(ASTNode[] root, SymbolTable symbols, String procedure, ASTOptimizer.Pass pass) {
+        root[0] = new CobolParser(CobolLexer.lex(DATA + procedure), symbols).parseProgram();
+        ASTOptimizer optimizer = new ASTOptimizer(symbols, EnumSet.of(pass));
+        optimizer.optimize(root[0]);
+        return optimizer;
+    }
+
+    @Test
+    public void foldsLiteralArithmetic() {
+        ASTNode[] root = new ASTNode[1];
+        optimize(root, new SymbolTable(), "COMPUTE TOTAL = 2 * 1.50 - 4 + RATE / 2.", ASTOptimizer.Pass.FOLD_CONSTANTS);
+
+        ASTNode sum = root[0].getChildren().get(0).getChildren().get(1);
+        ASTNode negate = sum.getChildren().get(0);
+        assertEquals("Negate", negate.getType());
+        assertEquals("1.00", negate.getChildren().get(0).getValue());
+        assertEquals("/", sum.getChildren().get(1).getValue());
+    }
+
+    @Test
+    public void propagatesMovedLiteralsAtTheItemsScale() {
+        ASTNode[] root = new ASTNode[1];
+        ASTOptimizer optimizer = optimize(root, new SymbolTable(),
+                "MOVE 1.5 TO RATE.\nCOMPUTE TOTAL = RATE * 2.\nMOVE 123 TO RATE.\nCOMPUTE TOTAL = RATE.",
+                ASTOptimizer.Pass.PROPAGATE_MOVES);
+
+        ASTNode product = root[0].getChildren().get(1).getChildren().get(1);
+        assertEquals("1.50", product.getChildren().get(0).getValue());
+        // 123 does not fit PIC 9V99, so RATE is no longer known
+        assertEquals("Variable", root[0].getChildren().get(3).getChildren().get(1).getType());
+        assertEquals(1, optimizer.getStatistics().get(0).changes);
+    }
+
+    @Test
+    public void removesUnreachableCode() {
+        ASTNode[] root = new ASTNode[1];
+        optimize(root, new SymbolTable(), "MAIN-PARA.\nPERFORM USED.\nSTOP RUN.\nDISPLAY \"AFTER STOP\".\n"
+                + "USED.\nDISPLAY \"USED\".\nGO TO DONE.\nNEVER.\nDISPLAY \"NEVER\".\nDONE.\nEXIT.",
+                ASTOptimizer.Pass.REMOVE_DEAD_CODE);
+
+        List<ASTNode> paragraphs = root[0].getChildren();
+        assertEquals(3, paragraphs.size());
+        assertEquals(2, paragraphs.get(0).getChildren().size());
+        assertEquals("DONE", paragraphs.get(2).getValue());
+    }
+
+    @Test
+    public void mergesConsecutiveDisplays() {
+        ASTNode[] root = new ASTNode[1];
+        optimize(root, new SymbolTable(), "DISPLAY \"A\".\nDISPLAY \"B\".\nDISPLAY \"C\".\nMOVE 1 TO RATE.\nDISPLAY \"D\".",
+                ASTOptimizer.Pass.MERGE_DISPLAYS);
+
+        List<ASTNode> statements = root[0].getChildren();
+        assertEquals(3, statements.size());
+        assertEquals("\"A\"", statements.get(0).getValue());
+        assertEquals("\"C\"", statements.get(0).getChildren().get(1).getValue());
+        assertEquals(0, statements.get(2).getChildren().size());
+    }
+
+    @Test
+    public void removesUnusedRecords() {
+        ASTNode[] root = new ASTNode[1];
+        SymbolTable symbols = new SymbolTable();
+        optimize(root, symbols, "MOVE 1 TO RATE.\nCOMPUTE TOTAL = RATE.", ASTOptimizer.Pass.REMOVE_UNUSED_DATA);
+
+        assertEquals(2, symbols.getRecords().size());
+        assertNull(symbols.lookup("UNUSED-FIELD"));
+        assertNotNull(symbols.lookup("TOTAL"));
+    }
+
+    @Test
+    public void parsesPassSettings() {
+        assertEquals(EnumSet.allOf(ASTOptimizer.Pass.class), ASTOptimizer.parsePasses("all"));
+        assertEquals(Set.of(), ASTOptimizer.parsePasses("none"));
+        assertEquals(EnumSet.of(ASTOptimizer.Pass.FOLD_CONSTANTS, ASTOptimizer.Pass.MERGE_DISPLAYS),
+                ASTOptimizer.parsePasses("displays, fold"));
+    }
+}
@@ -0,0 +1,107 @@
+package compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BatchCompilerTest - Checks parallel batch compilation, failure isolation and the phase metrics.
+ */
+public class BatchCompilerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compilesEveryUnitAndIsolatesFailures() throws Exception {
+        Path sources = folder.newFolder("src").toPath();
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(sources.resolve("PROG" + i + ".cbl"),
+                    "PROCEDURE DIVISION.\nDISPLAY \"UNIT " + i + "\".\nSTOP RUN.");
+        }
+        Files.writeString(sources.resolve("BROKEN.cbl"), "PROCEDURE DIVISION.\nDISPLAY ?.");
+        Path output = folder.newFolder("out").toPath();
+
+        List<Path> inputs = BatchCompiler.collectSources(List.of(sources.toString()));
+        BatchReport report = new BatchCompiler(output, 4).compile(inputs);
+
+        assertEquals(21, report.getResults().size());
+        assertEquals(20, report.getSucceeded());
+        assertEquals(1, report.getFailed());
+        assertFalse(report.getResults().get(0).isSuccess());
+        String prog7 = Files.readString(output.resolve("PROG7.java"));
+        assertTrue(prog7.contains("public class PROG7 {"));
+        assertTrue(prog7.contains("UNIT 7"));
+        assertTrue(Files.readString(output.resolve("batch-summary.txt")).contains("21 units, 20 succeeded (0 from cache), 1 failed"));
+        // the broken unit fails while lexing, so no phase counts it
+        assertEquals(20, report.getMetrics().getRuns(CompilerMetrics.Phase.LEX));
+        assertEquals(20, report.getMetrics().getRuns(CompilerMetrics.Phase.GENERATE));
+        assertEquals(0, report.getMetrics().getRuns(CompilerMetrics.Phase.WRITE)); // streamed while generated
+        assertTrue(report.getMetrics().getItems(CompilerMetrics.Phase.LEX) > 20 * 5);
+    }
+
+    @Test
+    public void recordsAFlightRecorderEventPerPhase() throws Exception {
+        Path recording = folder.getRoot().toPath().resolve("phases.jfr");
+        List<String> started = new ArrayList<>();
+        try (Recording flight = new Recording()) {
+            flight.enable("compiler.Phase").withThreshold(Duration.ZERO);
+            flight.start();
+            CompilationUnit unit = new CompilationUnit("PROG", "PROCEDURE DIVISION.\nDISPLAY \"HELLO\".\nSTOP RUN.");
+            unit.setPhaseListener(phase -> started.add(phase.name()));
+            unit.compile("PROG");
+            flight.stop();
+            flight.dump(recording);
+        }
+
+        List<String> phases = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            assertEquals("PROG", event.getString("unit"));
+            assertTrue(event.getLong("items") > 0);
+            phases.add(event.getString("phase"));
+        }
+        assertEquals(List.of("LEX", "PARSE", "OPTIMIZE", "GENERATE"), phases);
+        assertEquals(phases, started);
+    }
+
+    @Test
+    public void compilesGeneratedSourcesIntoOneJar() throws Exception {
+        Path sources = folder.newFolder("src").toPath();
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(sources.resolve("PROG" + i + ".cbl"), "PROCEDURE DIVISION.\nDISPLAY \"UNIT " + i + "\".\nSTOP RUN.");
+        }
+        Path output = folder.newFolder("out").toPath();
+        Path jar = output.resolve("programs.jar");
+
+        BatchCompiler compiler = new BatchCompiler(output, 2);
+        compiler.setJarOutput(jar);
+        BatchReport report = compiler.compile(BatchCompiler.collectSources(List.of(sources.toString())));
+
+        assertEquals(5, report.getSucceeded());
+        try (JarFile classes = new JarFile(jar.toFile())) {
+            assertNotNull(classes.getEntry("PROG0.class"));
+            assertNotNull(classes.getEntry("PROG4.class"));
+        }
+    }
+
+    @Test
+    public void derivesDistinctClassNames() {
+        assertEquals("PAY_ROLL", CompilationUnit.classNameFor("PAY-ROLL.cbl"));
+        assertEquals("P1STEP", CompilationUnit.classNameFor("1STEP.cob"));
+    }
+}
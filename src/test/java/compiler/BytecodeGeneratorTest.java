@@ -0,0 +1,507 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BytecodeGeneratorTest - Runs programs built by both backends and checks they behave the same.
+ */
+public class BytecodeGeneratorTest {
+    private static final String CALLER = "PROCEDURE DIVISION.\n"
+            + "DISPLAY \"START 50% \\ DONE\".\n"
+            + "MOVE 12.50 TO WS-AMOUNT.\n"
+            + "MOVE 7 TO WS-COUNT.\n"
+            + "CALL \"SUB-PROG\" USING WS-AMOUNT, WS-COUNT.\n"
+            + "STOP RUN.\n"
+            + "DISPLAY \"UNREACHABLE\".";
+    private static final String CALLEE = "PROCEDURE DIVISION.\nDISPLAY \"IN SUB\".\nMOVE 1 TO FLAG.";
+
+    /**
+     * Builds the programs with one backend and loads them into a fresh class loader.
+     */
+    private static ClassLoader build(Backend backend, Map<String, String> programs) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Map.Entry<String, String> program : programs.entrySet()) {
+            CompilationUnit unit = new CompilationUnit(program.getKey(), program.getValue());
+            if (backend == Backend.BYTECODE) {
+                classes.put(program.getKey(), unit.compileToClass(program.getKey()));
+            } else {
+                sources.put(program.getKey(), unit.compile(program.getKey()));
+            }
+        }
+        if (backend == Backend.SOURCE) {
+            InMemoryJavaCompiler.Result result = new InMemoryJavaCompiler().compile(sources);
+            assertTrue(result.getErrors().toString(), result.isSuccess());
+            classes = result.getClasses();
+        }
+        return InMemoryJavaCompiler.load(classes);
+    }
+
+    private static String run(ClassLoader loader, String className) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            InMemoryJavaCompiler.run(loader, className);
+        } finally {
+            System.setOut(original);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Object field(ClassLoader loader, String className, String name) throws Exception {
+        Field field = loader.loadClass(className).getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(null);
+    }
+
+    private static byte[] record(ClassLoader loader, String className, String name) throws Exception {
+        return (byte[]) field(loader, className, name);
+    }
+
+    @Test
+    public void backendsAgreeOnDisplayMoveCallAndStopRun() throws Exception {
+        Map<String, String> programs = new LinkedHashMap<>();
+        programs.put("CALLER", CALLER);
+        programs.put("SUB_PROG", CALLEE);
+
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, programs);
+            assertEquals(backend.name(), "START 50% \\ DONE\nIN SUB\n", run(loader, "CALLER").replace("\r\n", "\n"));
+            assertEquals(new BigDecimal("12.50"), field(loader, "CALLER", "WS_AMOUNT"));
+            assertEquals(new BigDecimal("7"), field(loader, "CALLER", "WS_COUNT"));
+            assertEquals(new BigDecimal("1"), field(loader, "SUB_PROG", "FLAG"));
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnCompute() throws Exception {
+        String program = "IDENTIFICATION DIVISION.\n"
+                + "PROGRAM-ID. CALC.\n"
+                + "DATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n"
+                + "01 PRICE PIC S9(5)V99.\n"
+                + "01 QTY PIC 9(3).\n"
+                + "01 TOTAL PIC S9(7)V99.\n"
+                + "01 AVERAGE PIC S9(3)V9.\n"
+                + "01 SMALL PIC 9(2).\n"
+                + "01 HUGE PIC S9(20)V99.\n"
+                + "01 FLAG PIC 9.\n"
+                + "PROCEDURE DIVISION.\n"
+                + "MOVE 12.345 TO PRICE.\n"
+                + "MOVE 3 TO QTY.\n"
+                + "COMPUTE TOTAL = 0.5 + PRICE * QTY.\n"
+                + "COMPUTE AVERAGE ROUNDED = TOTAL / 7.\n"
+                + "COMPUTE SMALL = QTY * 40 ON SIZE ERROR MOVE 1 TO FLAG NOT ON SIZE ERROR MOVE 2 TO FLAG END-COMPUTE.\n"
+                + "COMPUTE HUGE = TOTAL * 1000000000000000 * 1000.\n"
+                + "COMPUTE SMALL = QTY * 40.\n"
+                + "COMPUTE SMALL = SMALL / 0 ON SIZE ERROR DISPLAY \"DIVIDE BY ZERO\" STOP RUN END-COMPUTE.\n"
+                + "DISPLAY \"UNREACHABLE\".";
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, Map.of("CALC", program));
+            assertEquals(backend.name(), "DIVIDE BY ZERO\n", run(loader, "CALC").replace("\r\n", "\n"));
+            assertEquals(1234L, Storage.getDisplay(record(loader, "CALC", "PRICE"), 0, 7));
+            assertEquals(3752L, Storage.getDisplay(record(loader, "CALC", "TOTAL"), 0, 9));
+            assertEquals(54L, Storage.getDisplay(record(loader, "CALC", "AVERAGE"), 0, 4));
+            assertEquals(20L, Storage.getDisplay(record(loader, "CALC", "SMALL"), 0, 2));
+            assertEquals(1L, Storage.getDisplay(record(loader, "CALC", "FLAG"), 0, 1));
+            assertEquals(new BigDecimal("37520000000000000000.00"),
+                    Storage.getDisplayDecimal(record(loader, "CALC", "HUGE"), 0, 22, 2));
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnRecordStorage() throws Exception {
+        String program = "IDENTIFICATION DIVISION.\n"
+                + "PROGRAM-ID. RECORDS.\n"
+                + "DATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n"
+                + "01 CUSTOMER.\n"
+                + "   05 CUST-ID PIC 9(6) VALUE 42.\n"
+                + "   05 CUST-NAME PIC X(10) VALUE \"ACME\".\n"
+                + "   05 BALANCE PIC S9(7)V99 COMP-3 VALUE -12.5.\n"
+                + "   05 VISITS PIC S9(4) COMP VALUE 7.\n"
+                + "01 SAVED PIC X(30).\n"
+                + "01 DATE-TEXT PIC X(8) VALUE \"20261018\".\n"
+                + "01 DATE-PARTS REDEFINES DATE-TEXT.\n"
+                + "   05 YYYY PIC 9(4).\n"
+                + "   05 MM PIC 99.\n"
+                + "   05 DD PIC 99.\n"
+                + "PROCEDURE DIVISION.\n"
+                + "COMPUTE BALANCE = BALANCE * 2 + VISITS.\n"
+                + "MOVE CUSTOMER TO SAVED.\n"
+                + "MOVE SPACES TO CUST-NAME.\n"
+                + "COMPUTE YYYY = YYYY + 1.\n"
+                + "MOVE MM TO VISITS.\n"
+                + "STOP RUN.";
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, Map.of("RECORDS", program));
+            run(loader, "RECORDS");
+            byte[] customer = record(loader, "RECORDS", "CUSTOMER");
+            assertEquals(backend.name(), 23, customer.length);
+            assertEquals(42L, Storage.getDisplay(customer, 0, 6));
+            assertEquals(" ".repeat(10), Storage.getText(customer, 6, 10));
+            assertEquals(-1800L, Storage.getPacked(customer, 16, 5));
+            assertEquals(10L, Storage.getBinary(customer, 21, 2));
+
+            byte[] saved = record(loader, "RECORDS", "SAVED");
+            assertEquals("000042ACME      ", Storage.getText(saved, 0, 16));
+            assertEquals(-1800L, Storage.getPacked(saved, 16, 5));
+            assertEquals(7L, Storage.getBinary(saved, 21, 2));
+            assertEquals(" ".repeat(7), Storage.getText(saved, 23, 7));
+
+            // DATE-PARTS overlays DATE-TEXT, so the two share one array
+            assertEquals("20271018", Storage.getText(record(loader, "RECORDS", "DATE_TEXT"), 0, 8));
+            for (Field field : loader.loadClass("RECORDS").getDeclaredFields()) {
+                assertTrue(field.getName(), !field.getName().equals("DATE_PARTS"));
+            }
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnSequentialFiles() throws Exception {
+        Path directory = Files.createTempDirectory("files");
+        Path lines = directory.resolve("in.txt");
+        Files.write(lines, "ALPHA\nBRAVO CHARLIE\n".getBytes(StandardCharsets.ISO_8859_1));
+        for (Backend backend : Backend.values()) {
+            Path copy = directory.resolve(backend + ".dat");
+            String program = "IDENTIFICATION DIVISION.\n"
+                    + "PROGRAM-ID. COPIER.\n"
+                    + "ENVIRONMENT DIVISION.\n"
+                    + "INPUT-OUTPUT SECTION.\n"
+                    + "FILE-CONTROL.\n"
+                    + "    SELECT INFILE ASSIGN TO \"" + lines + "\" ORGANIZATION IS LINE SEQUENTIAL.\n"
+                    + "    SELECT OUTFILE ASSIGN TO \"" + copy + "\" FILE STATUS IS WS-STATUS.\n"
+                    + "DATA DIVISION.\n"
+                    + "FILE SECTION.\n"
+                    + "FD INFILE.\n"
+                    + "01 IN-REC PIC X(12).\n"
+                    + "FD OUTFILE RECORD VARYING FROM 4 TO 12 CHARACTERS.\n"
+                    + "01 SHORT-REC PIC X(4).\n"
+                    + "01 LONG-REC.\n"
+                    + "   05 LONG-TEXT PIC X(8).\n"
+                    + "   05 LONG-COUNT PIC 9(4).\n"
+                    + "WORKING-STORAGE SECTION.\n"
+                    + "01 WS-LINE PIC X(12).\n"
+                    + "01 WS-COUNT PIC 9(4) VALUE 0.\n"
+                    + "PROCEDURE DIVISION.\n"
+                    + "OPEN INPUT INFILE OUTPUT OUTFILE.\n"
+                    + "READ INFILE INTO WS-LINE AT END DISPLAY \"EMPTY\" NOT AT END COMPUTE WS-COUNT = WS-COUNT + 1 END-READ.\n"
+                    + "WRITE SHORT-REC FROM WS-LINE.\n"
+                    + "READ INFILE AT END DISPLAY \"EMPTY\".\n"
+                    + "MOVE IN-REC TO LONG-TEXT.\n"
+                    + "MOVE WS-COUNT TO LONG-COUNT.\n"
+                    + "WRITE LONG-REC AFTER ADVANCING 1 LINE.\n"
+                    + "READ INFILE NEXT RECORD AT END DISPLAY \"DONE\".\n"
+                    + "CLOSE INFILE OUTFILE.\n"
+                    + "STOP RUN.";
+            ClassLoader loader = build(backend, Map.of("COPIER", program));
+            assertEquals(backend.name(), "DONE" + System.lineSeparator(), run(loader, "COPIER"));
+            assertEquals("\0\10\0\0ALPH\0\20\0\0BRAVO CH0001",
+                    new String(Files.readAllBytes(copy), StandardCharsets.ISO_8859_1));
+            assertEquals(12, record(loader, "COPIER", "SHORT_REC").length);
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnSortAndMerge() throws Exception {
+        Path directory = Files.createTempDirectory("sort");
+        Path input = directory.resolve("in.txt");
+        Path extra = directory.resolve("extra.txt");
+        Files.write(input, "BOLT  0007\nACME  0012\nCRANE 0007\n".getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(extra, "ZINC  0040\nBOLT  0003\n".getBytes(StandardCharsets.ISO_8859_1));
+        for (Backend backend : Backend.values()) {
+            Path sorted = directory.resolve(backend + ".sorted");
+            Path merged = directory.resolve(backend + ".merged");
+            String program = "IDENTIFICATION DIVISION.\n"
+                    + "PROGRAM-ID. SORTER.\n"
+                    + "ENVIRONMENT DIVISION.\n"
+                    + "INPUT-OUTPUT SECTION.\n"
+                    + "FILE-CONTROL.\n"
+                    + "    SELECT INFILE ASSIGN TO \"" + input + "\" ORGANIZATION IS LINE SEQUENTIAL.\n"
+                    + "    SELECT EXTRA ASSIGN TO \"" + extra + "\" ORGANIZATION IS LINE SEQUENTIAL.\n"
+                    + "    SELECT SORTED ASSIGN TO \"" + sorted + "\" ORGANIZATION IS LINE SEQUENTIAL.\n"
+                    + "    SELECT MERGED ASSIGN TO \"" + merged + "\" ORGANIZATION IS LINE SEQUENTIAL.\n"
+                    + "    SELECT SORTWK ASSIGN TO \"sortwork\".\n"
+                    + "DATA DIVISION.\n"
+                    + "FILE SECTION.\n"
+                    + "FD INFILE.\n"
+                    + "01 IN-REC PIC X(10).\n"
+                    + "FD EXTRA.\n"
+                    + "01 EXTRA-REC PIC X(10).\n"
+                    + "FD SORTED.\n"
+                    + "01 SORTED-REC PIC X(10).\n"
+                    + "FD MERGED.\n"
+                    + "01 MERGED-REC PIC X(10).\n"
+                    + "SD SORTWK.\n"
+                    + "01 SR.\n"
+                    + "   05 SR-NAME PIC X(6).\n"
+                    + "   05 SR-AMOUNT PIC 9(4).\n"
+                    + "PROCEDURE DIVISION.\n"
+                    + "SORT SORTWK ON DESCENDING KEY SR-AMOUNT ON ASCENDING KEY SR-NAME\n"
+                    + "    WITH DUPLICATES IN ORDER USING INFILE GIVING SORTED.\n"
+                    + "MERGE SORTWK ASCENDING SR-NAME USING EXTRA, SORTED GIVING MERGED.\n"
+                    + "STOP RUN.";
+            run(build(backend, Map.of("SORTER", program)), "SORTER");
+            assertEquals(backend.name(), "ACME  0012\nBOLT  0007\nCRANE 0007\n", Files.readString(sorted));
+            // EXTRA is not in name order, so the merge keeps its ZINC ahead of the rest
+            assertEquals("ACME  0012\nBOLT  0007\nCRANE 0007\nZINC  0040\nBOLT  0003\n", Files.readString(merged));
+
+            Path filtered = directory.resolve(backend + ".filtered");
+            String procedures = program
+                    .replace("    SELECT SORTWK", "    SELECT FILTERED ASSIGN TO \"" + filtered + "\" ORGANIZATION IS LINE SEQUENTIAL.\n    SELECT SORTWK")
+                    .replace("SD SORTWK.", "FD FILTERED.\n01 FILTERED-REC PIC X(10).\nSD SORTWK.")
+                    .replace("USING INFILE GIVING SORTED.\nMERGE SORTWK ASCENDING SR-NAME USING EXTRA, SORTED GIVING MERGED.\nSTOP RUN.",
+                            "INPUT PROCEDURE IS LOAD-SR THRU LOAD-DONE OUTPUT PROCEDURE IS UNLOAD-SR THRU UNLOAD-DONE.\n"
+                            + "STOP RUN.\n"
+                            + "LOAD-SR.\n"
+                            + "    OPEN INPUT INFILE.\n"
+                            + "LOAD-NEXT.\n"
+                            + "    READ INFILE AT END GO TO LOAD-DONE.\n"
+                            + "    RELEASE SR FROM IN-REC.\n"
+                            + "    GO TO LOAD-NEXT.\n"
+                            + "LOAD-DONE.\n"
+                            + "    CLOSE INFILE.\n"
+                            + "UNLOAD-SR.\n"
+                            + "    OPEN OUTPUT FILTERED.\n"
+                            + "UNLOAD-NEXT.\n"
+                            + "    RETURN SORTWK AT END GO TO UNLOAD-DONE.\n"
+                            + "    WRITE FILTERED-REC FROM SR.\n"
+                            + "    GO TO UNLOAD-NEXT.\n"
+                            + "UNLOAD-DONE.\n"
+                            + "    CLOSE FILTERED.\n");
+            run(build(backend, Map.of("SORTER", procedures)), "SORTER");
+            assertEquals(backend.name(), "ACME  0012\nBOLT  0007\nCRANE 0007\n", Files.readString(filtered));
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnParagraphsPerformAndGoTo() throws Exception {
+        String program = "IDENTIFICATION DIVISION.\n"
+                + "PROGRAM-ID. FLOW.\n"
+                + "DATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n"
+                + "01 N PIC 9(2).\n"
+                + "01 TOTAL PIC 9(4).\n"
+                + "PROCEDURE DIVISION.\n"
+                + "MAIN-LINE SECTION.\n"
+                + "START-UP.\n"
+                + "    MOVE 3 TO N.\n"
+                + "    PERFORM ADD-ONE N TIMES.\n"
+                + "    PERFORM SHOW THRU SHOW-END.\n"
+                + "    PERFORM 2 TIMES DISPLAY \"INLINE\" END-PERFORM.\n"
+                + "    PERFORM SKIPPER THRU SKIPPER-END.\n"
+                + "    PERFORM FINISH.\n"
+                + "    DISPLAY \"UNREACHABLE\".\n"
+                + "ADD-ONE.\n"
+                + "    COMPUTE TOTAL = TOTAL + 1.\n"
+                + "SHOW.\n"
+                + "    DISPLAY \"SHOW\".\n"
+                + "SHOW-END.\n"
+                + "    DISPLAY \"SHOWN\".\n"
+                + "SKIPPER.\n"
+                + "    GO TO SKIPPER-END.\n"
+                + "    DISPLAY \"SKIPPED\".\n"
+                + "SKIPPER-END.\n"
+                + "    COMPUTE TOTAL = TOTAL + 10.\n"
+                + "FINISH SECTION.\n"
+                + "FINISH-UP.\n"
+                + "    DISPLAY \"DONE\".\n"
+                + "    STOP RUN.\n"
+                + "NEVER-RUN.\n"
+                + "    DISPLAY \"FELL THROUGH\".";
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, Map.of("FLOW", program));
+            assertEquals(backend.name(), "SHOW\nSHOWN\nINLINE\nINLINE\nDONE\n", run(loader, "FLOW").replace("\r\n", "\n"));
+            assertEquals(13L, Storage.getDisplay(record(loader, "FLOW", "TOTAL"), 0, 4));
+        }
+    }
+
+    @Test
+    public void backendsSplitHugeParagraphsIntoChunks() throws Exception {
+        StringBuilder program = new StringBuilder("PROCEDURE DIVISION.\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            program.append("DISPLAY \"LINE ").append(i).append("\".\nMOVE ").append(i).append(" TO COUNTER.\n");
+            expected.append("LINE ").append(i).append('\n');
+        }
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, Map.of("HUGE", program.toString()));
+            assertEquals(backend.name(), expected.toString(), run(loader, "HUGE").replace("\r\n", "\n"));
+            loader.loadClass("HUGE").getDeclaredMethod("procedure$1");
+        }
+    }
+
+    @Test
+    public void backendsMoveHugeNestedBlocksIntoMethods() throws Exception {
+        StringBuilder program = new StringBuilder("IDENTIFICATION DIVISION.\nPROGRAM-ID. NESTED.\nDATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n01 A PIC 9(8) VALUE 0.\n01 B PIC 9(8) VALUE 0.\n01 SMALL PIC 9(2) VALUE 0.\n"
+                + "PROCEDURE DIVISION.\nMAIN-PARA.\n    PERFORM 2 TIMES\n");
+        long total = 0;
+        for (int i = 0; i < 1500; i++) {
+            program.append("        COMPUTE A = A + ").append(i % 7 + 1).append("\n        MOVE A TO B\n");
+            total += 2 * (i % 7 + 1);
+        }
+        program.append("    END-PERFORM.\n    COMPUTE SMALL = B / 0 ON SIZE ERROR\n");
+        for (int i = 0; i < 100; i++) {
+            program.append("        MOVE ").append(i).append(" TO SMALL\n");
+        }
+        program.append("        DISPLAY \"OVERFLOW\"\n        STOP RUN\n    END-COMPUTE.\n    DISPLAY \"UNREACHABLE\".\n");
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, Map.of("NESTED", program.toString()));
+            assertEquals(backend.name(), "OVERFLOW\n", run(loader, "NESTED").replace("\r\n", "\n"));
+            assertEquals(total, Storage.getDisplay(record(loader, "NESTED", "B"), 0, 8));
+            assertEquals(99L, Storage.getDisplay(record(loader, "NESTED", "SMALL"), 0, 2));
+            loader.loadClass("NESTED").getDeclaredMethod("MAIN_PARA$1");
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnExecSql() throws Exception {
+        Map<String, String> programs = Map.of("QUERY",
+                "PROCEDURE DIVISION.\nEXEC SQL SELECT NAME FROM CUSTOMER END-EXEC.\nDISPLAY \"AFTER\".");
+        for (Backend backend : Backend.values()) {
+            ClassLoader loader = build(backend, programs);
+            try {
+                run(loader, "QUERY");
+            } catch (SQLException e) {
+                continue; // no database here; both backends must fail the same way
+            }
+            throw new AssertionError(backend + " ran EXEC SQL without a database");
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnExecSqlAgainstAnEmbeddedDatabase() throws Exception {
+        SQLHandler.configure(SQLHandlerTest.embedded("programs", 2, 1000));
+        try {
+            SQLHandler.executeUpdate("CREATE TABLE CUSTOMER (NAME VARCHAR(20))");
+            SQLHandler.executeUpdate("INSERT INTO CUSTOMER VALUES ('ACME')");
+            Map<String, String> programs = Map.of("QUERY", "PROCEDURE DIVISION.\n"
+                    + "EXEC SQL SELECT NAME FROM CUSTOMER END-EXEC.\n"
+                    + "EXEC SQL SELECT NAME FROM CUSTOMER WHERE 1 = 0 END-EXEC.\n"
+                    + "DISPLAY \"AFTER\".");
+            for (Backend backend : Backend.values()) {
+                String newline = System.lineSeparator();
+                assertEquals(backend.name(), "ACME" + newline + "AFTER" + newline, run(build(backend, programs), "QUERY"));
+            }
+            assertEquals(1, SQLHandler.getPool().getConnectionsOpened());
+        } finally {
+            SQLHandler.configure(SQLConfig.fromSystem());
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnHostVariablesAndUnitsOfWork() throws Exception {
+        String data = "IDENTIFICATION DIVISION.\n"
+                + "PROGRAM-ID. HOSTVARS.\n"
+                + "DATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n"
+                + "01 CUSTOMER.\n"
+                + "   05 CUST-ID PIC 9(6) VALUE 42.\n"
+                + "   05 CUST-NAME PIC X(10) VALUE \"ACME\".\n"
+                + "   05 BALANCE PIC S9(7)V99 COMP-3 VALUE -12.5.\n"
+                + "01 FOUND.\n"
+                + "   05 FOUND-NAME PIC X(10).\n"
+                + "   05 FOUND-BALANCE PIC S9(7)V99 COMP-3.\n"
+                + "01 SQLCODE PIC S9(3) VALUE -1.\n"
+                + "PROCEDURE DIVISION.\n"
+                + "EXEC SQL INSERT INTO ACCOUNT (ID, NAME, BALANCE) VALUES (:CUST-ID, :CUST-NAME, :BALANCE) END-EXEC.\n";
+        Map<String, String> programs = Map.of(
+                "HOSTVARS", data
+                        + "EXEC SQL SELECT NAME, BALANCE INTO :FOUND-NAME, :FOUND-BALANCE FROM ACCOUNT WHERE ID = :CUST-ID END-EXEC.\n"
+                        + "MOVE 7 TO CUST-ID.\n"
+                        + "EXEC SQL SELECT NAME INTO :FOUND-NAME FROM ACCOUNT WHERE ID = :CUST-ID END-EXEC.\n"
+                        + "STOP RUN.",
+                "FAILING", data.replace("HOSTVARS", "FAILING")
+                        + "EXEC SQL INSERT INTO MISSING VALUES (:CUST-ID) END-EXEC.");
+        SQLHandler.configure(SQLHandlerTest.embedded("hostvars", 2, 1000));
+        try {
+            SQLHandler.executeUpdate("CREATE TABLE ACCOUNT (ID INT, NAME VARCHAR(10), BALANCE DECIMAL(9, 2))");
+            for (Backend backend : Backend.values()) {
+                SQLHandler.executeUpdate("DELETE FROM ACCOUNT");
+                ClassLoader loader = build(backend, programs);
+                run(loader, "HOSTVARS");
+                byte[] found = record(loader, "HOSTVARS", "FOUND");
+                assertEquals(backend.name(), "ACME      ", Storage.getText(found, 0, 10));
+                assertEquals(-1250L, Storage.getPacked(found, 10, 5));
+                assertEquals(SQLSession.NOT_FOUND, Storage.getDisplay(record(loader, "HOSTVARS", "SQLCODE"), 0, 3));
+                assertEquals("-12.50", SQLHandler.executeQuery("SELECT BALANCE FROM ACCOUNT WHERE NAME = ?", "ACME"));
+
+                // the failed run's INSERT is rolled back
+                try {
+                    run(loader, "FAILING");
+                    throw new AssertionError(backend + " ran an INSERT into a missing table");
+                } catch (SQLException e) {
+                    assertEquals("1", SQLHandler.executeQuery("SELECT COUNT(*) FROM ACCOUNT"));
+                }
+            }
+            assertEquals(0, SQLHandler.getPool().getWaits());
+        } finally {
+            SQLHandler.configure(SQLConfig.fromSystem());
+        }
+    }
+
+    @Test
+    public void backendsAgreeOnCursors() throws Exception {
+        String program = "IDENTIFICATION DIVISION.\n"
+                + "PROGRAM-ID. CURSORS.\n"
+                + "DATA DIVISION.\n"
+                + "WORKING-STORAGE SECTION.\n"
+                + "01 LIMIT PIC S9(3) VALUE 5.\n"
+                + "01 ROW-NAME PIC X(10).\n"
+                + "01 ROW-BALANCE PIC S9(7)V99 COMP-3.\n"
+                + "01 FIRST-NAME PIC X(10).\n"
+                + "01 SQLCODE PIC S9(3).\n"
+                + "PROCEDURE DIVISION.\n"
+                + "EXEC SQL DECLARE BIG CURSOR FOR SELECT NAME, BALANCE FROM LEDGER WHERE BALANCE > :LIMIT ORDER BY NAME END-EXEC.\n"
+                + "EXEC SQL OPEN BIG END-EXEC.\n"
+                + "EXEC SQL FETCH BIG INTO :ROW-NAME, :ROW-BALANCE END-EXEC.\n"
+                + "MOVE ROW-NAME TO FIRST-NAME.\n"
+                + "EXEC SQL FETCH NEXT FROM BIG INTO :ROW-NAME, :ROW-BALANCE END-EXEC.\n"
+                + "EXEC SQL FETCH BIG INTO :ROW-NAME END-EXEC.\n"
+                + "EXEC SQL CLOSE BIG END-EXEC.";
+        SQLHandler.configure(SQLHandlerTest.embedded("cursors", 2, 1000).withFetchSize(1));
+        try {
+            SQLHandler.executeUpdate("CREATE TABLE LEDGER (NAME VARCHAR(10), BALANCE DECIMAL(9, 2))");
+            SQLHandler.executeUpdate("INSERT INTO LEDGER VALUES ('ACME', 10.25), ('BOLT', 7), ('CRANE', 1)");
+            for (Backend backend : Backend.values()) {
+                ClassLoader loader = build(backend, Map.of("CURSORS", program));
+                run(loader, "CURSORS");
+                assertEquals(backend.name(), "ACME      ", Storage.getText(record(loader, "CURSORS", "FIRST_NAME"), 0, 10));
+                assertEquals("BOLT      ", Storage.getText(record(loader, "CURSORS", "ROW_NAME"), 0, 10));
+                assertEquals(700L, Storage.getPacked(record(loader, "CURSORS", "ROW_BALANCE"), 0, 5));
+                // the third FETCH found no row; CLOSE then succeeded
+                assertEquals(0L, Storage.getDisplay(record(loader, "CURSORS", "SQLCODE"), 0, 3));
+            }
+        } finally {
+            SQLHandler.configure(SQLConfig.fromSystem());
+        }
+    }
+
+    @Test
+    public void manyStringConstantsUseWideIndexes() throws Exception {
+        StringBuilder program = new StringBuilder("PROCEDURE DIVISION.\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            program.append("DISPLAY \"LINE ").append(i).append("\".\n");
+            expected.append("LINE ").append(i).append('\n');
+        }
+        ClassLoader loader = build(Backend.BYTECODE, Map.of("LONG", program.toString()));
+        assertEquals(expected.toString(), run(loader, "LONG").replace("\r\n", "\n"));
+    }
+}
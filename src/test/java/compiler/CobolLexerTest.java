@@ -0,0 +1,143 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * CobolLexerTest - Checks the scanner against the regex definitions it replaces.
+ */
+public class CobolLexerTest {
+    private static final Pattern PICTURE = Pattern.compile("(IS)(?=\\s)|(\\S+?)(?=[.,;]?(\\s|$))|\\S");
+
+    @Test
+    public void matchesRegexDefinitionsOnSamples() {
+        assertSameTokens("DISPLAY \"Hello, COBOL\".\nMOVE 100 TO VAR1.\nSTOP RUN.");
+        assertSameTokens("IDENTIFICATION DIVISION.\n   PROGRAM-ID. SAMPLE1.\n   DATA DIVISION.\n"
+                + "   WORKING-STORAGE SECTION.\n   01 VAR1 PIC 9(4).\n   PROCEDURE DIVISION.\n"
+                + "       IF VAR1 >= 100 THEN DISPLAY \"big\" END-IF.\n       STOP RUN.");
+        assertSameTokens("COMPUTE RESULT = NUM1 + NUM2 * 3.25 / 2. *> trailing comment\nEXEC SQL SELECT 1 END-EXEC.");
+        assertSameTokens("DATA-ITEM ABC-. TOTAL TO STOP  RUN 1.X 12.5. A<>B A<=B \"open");
+    }
+
+    @Test
+    public void matchesRegexDefinitionsOnRandomInput() {
+        String alphabet = "ABCDEFGHIJKLMNOPSTUVXYZ0123456789-.\"*><=+/():, \n\tabz_é";
+        String[] words = {"DATA", "DIVISION", "STOP RUN", "END-IF", "END-EXEC", "TO", "TIMES", "PIC", "MOVE", "*>"};
+        Random random = new Random(42);
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder source = new StringBuilder();
+            int length = random.nextInt(40);
+            while (source.length() < length) {
+                if (random.nextInt(4) == 0) {
+                    source.append(words[random.nextInt(words.length)]);
+                } else {
+                    source.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertSameTokens(source.toString().trim());
+        }
+    }
+
+    @Test
+    public void ignoresTrailingWhitespace() {
+        assertEquals(2, CobolLexer.tokenize("STOP RUN.\n  ").size());
+    }
+
+    private static void assertSameTokens(String source) {
+        String expected;
+        try {
+            expected = legacyTokenize(source).toString();
+        } catch (RuntimeException e) {
+            expected = e.getMessage();
+        }
+        String actual;
+        try {
+            actual = CobolLexer.tokenize(source).toString();
+        } catch (RuntimeException e) {
+            actual = e.getMessage();
+        }
+        if (!expected.equals(actual)) {
+            fail("Token streams differ for <" + source + ">\nexpected: " + expected + "\nactual:   " + actual);
+        }
+    }
+
+    @Test
+    public void readsPictureStringsWhole() {
+        List<Token> tokens = CobolLexer.tokenize("05 AMOUNT PIC S9(5)V99. 05 CODE PICTURE IS $$,$$9.99-.");
+
+        assertEquals("Token{type='PICTURE', value='S9(5)V99'}", tokens.get(3).toString());
+        assertEquals("Token{type='PUNCTUATION', value='.'}", tokens.get(4).toString());
+        assertEquals("Token{type='PICTURE', value='$$,$$9.99-'}", tokens.get(9).toString());
+    }
+
+    @Test
+    public void reusedArenaLexesLikeAFreshBuffer() {
+        TokenBuffer arena = new TokenBuffer("", 4);
+        CobolLexer.lex("MOVE 1 TO COUNTER. DISPLAY \"LONGER PROGRAM\". MOVE COUNTER TO TOTAL.", arena);
+        String source = "MOVE 2 TO TOTAL.";
+
+        TokenBuffer reused = CobolLexer.lex(source, arena);
+
+        assertEquals(CobolLexer.lex(source).toString(), reused.toString());
+        assertEquals(0, reused.id(3)); // TOTAL is the first name of the new source
+    }
+
+    @Test
+    public void stopsLexingWhenTheThreadIsInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            CobolLexer.lex("MOVE 1 TO COUNTER.");
+            fail("lexed on an interrupted thread");
+        } catch (CancellationException e) {
+            assertEquals("Compilation cancelled", e.getMessage());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * The original lexer: tries every definition against the remaining text. The only
+     * addition is the context rule that reads the string after PIC/PICTURE as one token.
+     */
+    private static List<Token> legacyTokenize(String sourceCode) {
+        List<Token> tokens = new ArrayList<>();
+        String remainingCode = sourceCode;
+        boolean pictureNext = false;
+        while (!remainingCode.isEmpty()) {
+            remainingCode = remainingCode.trim();
+            if (pictureNext && !remainingCode.isEmpty()) {
+                Matcher matcher = PICTURE.matcher(remainingCode);
+                matcher.lookingAt();
+                String picture = matcher.group(1) != null ? matcher.group(1) : matcher.group();
+                pictureNext = picture.equals("IS");
+                tokens.add(new Token(pictureNext ? "IDENTIFIER" : "PICTURE", picture));
+                remainingCode = remainingCode.substring(picture.length());
+                continue;
+            }
+            boolean matched = false;
+            for (TokenDefinition def : TokenDefinitions.getTokenDefinitions()) {
+                Matcher matcher = def.getPattern().matcher(remainingCode);
+                if (matcher.find() && matcher.start() == 0) {
+                    tokens.add(new Token(def.getType(), matcher.group()));
+                    pictureNext = matcher.group().equals("PIC") || matcher.group().equals("PICTURE");
+                    remainingCode = remainingCode.substring(matcher.end());
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                throw new RuntimeException("Unexpected token in source: " + remainingCode);
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,19 +1,89 @@
-package compiler;
-
-import java.util.List;
-
-/**
- * CobolParserTest - Basic test cases for the COBOL parser.
- */
-public class CobolParserTest {
-    public static void main(String[] args) {
-        String cobolCode = "DISPLAY \"Hello, COBOL\".\nMOVE 100 TO VAR1.\nSTOP RUN.";
-
-        List<Token> tokens = CobolLexer.tokenize(cobolCode);
-        CobolParser parser = new CobolParser(tokens);
-        ASTNode ast = parser.parseProgram();
-
-        assert ast.getChildren().size() == 3;
-        System.out.println("All tests passed!");
-    }
-}
+package compiler;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * CobolParserTest - Basic test cases for the COBOL parser.
+ */
+public class CobolParserTest {
+    public static void main(String[] args) {
+        String cobolCode = "DISPLAY \"Hello, COBOL\".\nMOVE 100 TO VAR1.\nSTOP RUN.";
+
+        List<Token> tokens = CobolLexer.tokenize(cobolCode);
+        CobolParser parser = new CobolParser(tokens);
+        ASTNode ast = parser.parseProgram();
+
+        assert ast.getChildren().size() == 3;
+        System.out.println("All tests passed!");
+    }
+
+    @Test
+    public void parsesBasicStatements() {
+        String cobolCode = "PROCEDURE DIVISION.\nDISPLAY \"Hello, COBOL\".\nMOVE 100 TO VAR1.\n"
+                + "CALL \"SUB\" USING VAR1, VAR2.\nSTOP RUN.";
+
+        ASTNode ast = new CobolParser(CobolLexer.lex(cobolCode)).parseProgram();
+
+        assertEquals(4, ast.getChildren().size());
+        assertEquals("\"Hello, COBOL\"", ast.getChildren().get(0).getValue());
+        assertEquals("VAR1", ast.getChildren().get(1).getChildren().get(1).getValue());
+        assertEquals(3, ast.getChildren().get(2).getChildren().size());
+        assertEquals("StopRun", ast.getChildren().get(3).getType());
+    }
+
+    @Test
+    public void tokenListAndBufferParseAlike() {
+        String cobolCode = "DISPLAY \"Hello, COBOL\".\nMOVE 100 TO VAR1.\nSTOP RUN.";
+
+        ASTNode fromList = new CobolParser(CobolLexer.tokenize(cobolCode)).parseProgram();
+        ASTNode fromBuffer = new CobolParser(CobolLexer.lex(cobolCode)).parseProgram();
+
+        assertEquals(fromBuffer.toString(), fromList.toString());
+    }
+
+    @Test
+    public void internsIdentifiers() {
+        TokenBuffer tokens = CobolLexer.lex("MOVE 1 TO COUNTER. MOVE 2 TO COUNTER.");
+
+        assertEquals(tokens.id(3), tokens.id(8));
+        assertSame(tokens.text(3), tokens.text(8));
+        assertEquals(Keyword.MOVE.ordinal(), tokens.id(5));
+    }
+
+    @Test
+    public void parsesParagraphsAndPerform() {
+        String cobolCode = "PROCEDURE DIVISION.\nDISPLAY \"FIRST\".\nMAIN SECTION.\nSTART-UP.\n"
+                + "PERFORM WORK THRU WORK-END 3 TIMES.\nGO TO DONE.\nWORK.\nEXIT.\nWORK-END.\nDONE.\nSTOP RUN.";
+
+        ASTNode ast = new CobolParser(CobolLexer.lex(cobolCode)).parseProgram();
+
+        assertEquals(6, ast.getChildren().size());
+        assertEquals("Section", ast.getChildren().get(1).getType());
+        ASTNode perform = ast.getChildren().get(2).getChildren().get(0);
+        assertEquals("WORK", perform.getValue());
+        assertEquals("WORK-END", perform.getChild("Thru").getValue());
+        assertEquals("3", perform.getChild("Times").getChildren().get(0).getValue());
+        assertEquals("DONE", ast.getChildren().get(2).getChildren().get(1).getValue());
+        assertEquals(0, ast.getChildren().get(4).getChildren().size());
+    }
+
+    @Test
+    public void nodesHaveKindsAndLeavesShareNoChildList() {
+        ASTNode ast = new CobolParser(CobolLexer.lex("MOVE 1 TO VAR1.\nSTOP RUN.")).parseProgram();
+
+        ASTNode move = ast.getChildren().get(0);
+        assertEquals(NodeKind.MOVE_STATEMENT, move.getKind());
+        assertSame(move.getChildren().get(0).getChildren(), ast.getChildren().get(1).getChildren());
+        assertSame(move.getChildren().get(1), move.getChild(NodeKind.VARIABLE));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsPerformUntil() {
+        new CobolParser(CobolLexer.lex("PROCEDURE DIVISION.\nPERFORM WORK UNTIL DONE.\nWORK.\nEXIT.")).parseProgram();
+    }
+}
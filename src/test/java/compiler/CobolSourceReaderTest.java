@@ -0,0 +1,112 @@
+package compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CobolSourceReaderTest - Checks memory-mapped reading and fixed-format normalization.
+ */
+public class CobolSourceReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stripsSequenceAreaAndIdentificationArea() {
+        String raw = "000100 PROCEDURE DIVISION.                                              PROG0001\n"
+                + "000200*    THIS IS A COMMENT LINE\n"
+                + "000300     DISPLAY \"HI\".\n";
+
+        CharSequence text = CobolSourceReader.normalize(raw, SourceFormat.FIXED);
+
+        assertEquals("PROCEDURE DIVISION.                                              \n\n    DISPLAY \"HI\".",
+                text.toString());
+    }
+
+    @Test
+    public void joinsContinuationLines() {
+        String raw = "000100     DISPLAY \"HELLO\n"
+                + "000200-    \"WORLD\".\n"
+                + "000300     MOVE 1 TO COUNT   \n"
+                + "000400-        ER.\n";
+
+        TokenBuffer tokens = CobolLexer.lex(CobolSourceReader.normalize(raw, SourceFormat.FIXED));
+
+        assertEquals("\"HELLO" + " ".repeat(47) + "WORLD\"", tokens.text(1));
+        assertEquals("COUNTER", tokens.text(6));
+    }
+
+    @Test
+    public void continuesLiteralOverThreeLines() {
+        String raw = "000100     DISPLAY \"AAA\n"
+                + "000200-    \"" + "B".repeat(60) + "\n"
+                + "000300-    \"CCC\".\n";
+
+        TokenBuffer tokens = CobolLexer.lex(CobolSourceReader.normalize(raw, SourceFormat.FIXED));
+
+        assertEquals("\"AAA" + " ".repeat(49) + "B".repeat(60) + "CCC\"", tokens.text(1));
+    }
+
+    @Test
+    public void detectsFormat() {
+        assertEquals(SourceFormat.FIXED, SourceFormat.detect("000100 IDENTIFICATION DIVISION.\n      * NOTE\n"));
+        assertEquals(SourceFormat.FREE, SourceFormat.detect("IDENTIFICATION DIVISION.\n   PROGRAM-ID. SAMPLE1.\n"));
+    }
+
+    @Test
+    public void keepsIndentedFreeFormatTextPastColumn72() {
+        String indent = " ".repeat(7);
+        String raw = indent + "IDENTIFICATION DIVISION.\n" + indent + "PROGRAM-ID. WIDE.\n" + indent + "PROCEDURE DIVISION.\n"
+                + indent + "DISPLAY \"" + "W".repeat(80) + "\".\n" + indent + "STOP RUN.\n";
+
+        assertEquals(SourceFormat.FREE, SourceFormat.detect(raw));
+        TokenBuffer tokens = CobolLexer.lex(CobolSourceReader.normalize(raw, null));
+        assertEquals("\"" + "W".repeat(80) + "\"", tokens.text(tokens.size() - 4));
+        assertEquals(SourceFormat.FIXED, SourceFormat.detect(indent + "DISPLAY \"HI\".\n"));
+        assertEquals(SourceFormat.FIXED, SourceFormat.detect(
+                indent + "DISPLAY \"HI\"." + " ".repeat(52) + "PROG0001\n" + indent + "STOP RUN.\n"));
+    }
+
+    @Test
+    public void formatCanBeForced() {
+        System.setProperty("cobol.format", "free");
+        try {
+            assertEquals(SourceFormat.FREE, SourceFormat.of("000100 IDENTIFICATION DIVISION.\n"));
+        } finally {
+            System.clearProperty("cobol.format");
+        }
+        assertEquals(SourceFormat.FIXED, SourceFormat.of("000100 IDENTIFICATION DIVISION.\n"));
+    }
+
+    @Test
+    public void lexesMappedFileLikeInMemoryText() throws IOException {
+        String raw = "000100 PROCEDURE DIVISION.\r\n000200     DISPLAY \"MAPPED\".\r\n000300     STOP RUN.\r\n";
+        Path file = folder.newFile("mapped.cbl").toPath();
+        Files.write(file, raw.getBytes(StandardCharsets.ISO_8859_1));
+
+        TokenBuffer mapped = CobolLexer.lex(CobolSourceReader.open(file));
+        TokenBuffer inMemory = CobolLexer.lex(CobolSourceReader.normalize(raw, SourceFormat.FIXED));
+
+        assertEquals(inMemory.toString(), mapped.toString());
+        assertEquals(8, mapped.size());
+    }
+
+    @Test
+    public void readTextStaysTheSameWhenTheFileChanges() throws IOException {
+        String raw = "DISPLAY \"BEFORE\".\nSTOP RUN.\n";
+        Path file = folder.newFile("read.cbl").toPath();
+        Files.write(file, raw.getBytes(StandardCharsets.ISO_8859_1));
+
+        TokenBuffer tokens = CobolLexer.lex(CobolSourceReader.read(file));
+        Files.write(file, "STOP RUN.\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals(CobolLexer.lex(raw).toString(), tokens.toString());
+    }
+}
@@ -0,0 +1,83 @@
+package compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompilationCacheTest - Checks keying, dependency invalidation and eviction of the cache.
+ */
+public class CompilationCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keyIgnoresSequenceNumbersButNotOptions() throws Exception {
+        CompilationCache cache = new CompilationCache(folder.newFolder("cache").toPath(), 1 << 20);
+        CharSequence first = CobolSourceReader.normalize("000100     DISPLAY \"A\".\n", SourceFormat.FIXED);
+        CharSequence resequenced = CobolSourceReader.normalize("000900     DISPLAY \"A\".\n", SourceFormat.FIXED);
+
+        assertEquals(cache.key(first, "class=A"), cache.key(resequenced, "class=A"));
+        assertNotEquals(cache.key(first, "class=A"), cache.key(first, "class=B"));
+    }
+
+    @Test
+    public void invalidatesEntryWhenDependencyChanges() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        Path copybook = folder.newFile("CUSTREC.cpy").toPath();
+        Files.writeString(copybook, "01 CUSTOMER PIC X(10).");
+        CompilationCache cache = new CompilationCache(cacheFolder, 1 << 20);
+        String key = cache.key("DISPLAY \"A\".", "class=A");
+
+        cache.store(key, "class A {}", List.of(copybook));
+        assertEquals("class A {}", cache.lookup(key));
+
+        Files.writeString(copybook, "01 CUSTOMER PIC X(20).");
+        assertNull(new CompilationCache(cacheFolder, 1 << 20).lookup(key));
+    }
+
+    @Test
+    public void evictsOldestEntriesBeyondLimit() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        CompilationCache cache = new CompilationCache(cacheFolder, 4096);
+        String payload = "x".repeat(1000);
+        for (int i = 0; i < 20; i++) {
+            cache.store(cache.key("UNIT" + i, ""), payload, List.of());
+        }
+
+        assertTrue(cache.getTotalBytes() <= 4096);
+        assertEquals(payload, cache.lookup(cache.key("UNIT19", "")));
+        assertNull(cache.lookup(cache.key("UNIT0", "")));
+    }
+
+    @Test
+    public void batchRerunIsServedFromCache() throws Exception {
+        Path sources = folder.newFolder("src").toPath();
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(sources.resolve("PROG" + i + ".cbl"), "DISPLAY \"UNIT " + i + "\".\nSTOP RUN.");
+        }
+        Path output = folder.newFolder("out").toPath();
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        List<Path> inputs = BatchCompiler.collectSources(List.of(sources.toString()));
+
+        BatchCompiler compiler = new BatchCompiler(output, 2);
+        compiler.setCache(new CompilationCache(cacheFolder, 1 << 20));
+        assertEquals(0, compiler.compile(inputs).getCached());
+
+        Files.writeString(sources.resolve("PROG3.cbl"), "DISPLAY \"CHANGED\".\nSTOP RUN.");
+        compiler.setCache(new CompilationCache(cacheFolder, 1 << 20));
+        BatchReport rerun = compiler.compile(inputs);
+
+        assertEquals(4, rerun.getCached());
+        assertTrue(Files.readString(output.resolve("PROG3.java")).contains("CHANGED"));
+    }
+}
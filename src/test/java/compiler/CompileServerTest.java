@@ -0,0 +1,72 @@
+package compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompileServerTest - Compiles through a server on a loopback port, over one connection.
+ */
+public class CompileServerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compilesRequestsUntilShutDown() throws Exception {
+        Path copybooks = folder.newFolder("copy").toPath();
+        Files.writeString(copybooks.resolve("GREETING.cpy"), "DISPLAY \"FROM COPYBOOK\".");
+        Path program = folder.getRoot().toPath().resolve("HELLO-FILE.cbl");
+        Files.writeString(program, "PROCEDURE DIVISION.\nCOPY GREETING.\nSTOP RUN.");
+
+        CompileServer server = new CompileServer(0);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serving.start();
+        try (CompileClient client = new CompileClient(server.getPort())) {
+            CompileClient.Result java = client.compile("HELLO.cbl", "PROCEDURE DIVISION.\nDISPLAY \"HI\".", "");
+            assertTrue(java.isSuccess());
+            assertEquals("HELLO", java.getClassName());
+            String source = new String(java.getOutput(), StandardCharsets.UTF_8);
+            assertTrue(source.contains("public class HELLO {"));
+            assertTrue(new InMemoryJavaCompiler().compile(Map.of("HELLO", source)).isSuccess());
+
+            CompileClient.Result broken = client.compile("BROKEN.cbl", "PROCEDURE DIVISION.\nDISPLAY ?.", "");
+            assertFalse(broken.isSuccess());
+            assertEquals(0, broken.getOutput().length);
+            assertFalse(broken.getDiagnostics().isEmpty());
+
+            String rest = " DISPLAY \"TAIL\".".repeat(8000); // the lexer's error quotes all of it
+            CompileClient.Result lengthy = client.compile("LONG.cbl", "PROCEDURE DIVISION.\nDISPLAY ?" + rest, "");
+            assertFalse(lengthy.isSuccess());
+            assertTrue(lengthy.getDiagnostics().get(0).endsWith(rest));
+
+            client.setBackend(Backend.BYTECODE);
+            client.setCopyPath(copybooks.toString());
+            CompileClient.Result fromFile = client.compile(program);
+            assertTrue(fromFile.getDiagnostics().toString(), fromFile.isSuccess());
+            assertEquals("HELLO_FILE", fromFile.getClassName());
+            assertEquals(0xCAFEBABE, ByteBuffer.wrap(fromFile.getOutput()).getInt());
+
+            assertTrue(client.stats().startsWith("LEX"));
+            client.shutdown();
+        }
+        serving.join(10_000);
+        assertFalse(serving.isAlive());
+        assertEquals(2, server.getMetrics().getRuns(CompilerMetrics.Phase.GENERATE));
+    }
+}
@@ -0,0 +1,145 @@
+package compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CopybookLibraryTest - Checks COPY expansion, REPLACING and the shared copybook cache.
+ */
+public class CopybookLibraryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PROGRAM = "DATA DIVISION.\nWORKING-STORAGE SECTION.\n"
+            + "COPY CUSTREC REPLACING CUST-REC BY ORDER-REC ==CUST-ID== BY ==ORDER-ID==.\n"
+            + "PROCEDURE DIVISION.\nMOVE 5 TO ORDER-ID.\nSTOP RUN.";
+
+    @Test
+    public void expandsNestedCopybooksWithReplacing() throws Exception {
+        Path library = folder.newFolder("copy").toPath();
+        Files.writeString(library.resolve("CUSTREC.cpy"),
+                "01 CUST-REC.\n   05 CUST-ID PIC 9(5).\n   COPY NAMEFLD.\n");
+        Files.writeString(library.resolve("NAMEFLD.cpy"), "   05 CUST-NAME PIC X(20).\n");
+
+        CompilationUnit unit = new CompilationUnit("ORDERS", PROGRAM);
+        unit.setCopybookLibrary(new CopybookLibrary(List.of(library), 1 << 20));
+        unit.compile("ORDERS");
+
+        DataItem id = unit.getSymbolTable().lookup("ORDER-ID", "ORDER-REC");
+        assertNotNull(id);
+        assertEquals(5, id.getTotalSize());
+        assertEquals(25, unit.getSymbolTable().lookup("ORDER-REC").getTotalSize());
+        assertNull(unit.getSymbolTable().lookup("CUST-ID"));
+        assertEquals(2, unit.getDependencies().size());
+    }
+
+    @Test
+    public void lexesEachCopybookOnce() throws Exception {
+        Path library = folder.newFolder("copy").toPath();
+        Files.writeString(library.resolve("CUSTREC.cpy"), "01 CUST-REC.\n   05 CUST-ID PIC 9(5).\n");
+        CopybookLibrary copybooks = new CopybookLibrary(List.of(library), 1 << 20);
+
+        for (int i = 0; i < 3; i++) {
+            TokenBuffer tokens = copybooks.expand(CobolLexer.lex(PROGRAM), new ArrayList<>());
+            assertEquals("ORDER-ID", tokens.text(tokens.size() - 4));
+        }
+        assertEquals(1, copybooks.getMisses());
+        assertEquals(2, copybooks.getHits());
+        assertTrue(copybooks.getCachedBytes() > 0);
+    }
+
+    @Test
+    public void rejectsRecursiveCopy() throws Exception {
+        Path library = folder.newFolder("copy").toPath();
+        Files.writeString(library.resolve("LOOP.cpy"), "05 A PIC X.\nCOPY LOOP.\n");
+        try {
+            new CopybookLibrary(List.of(library), 1 << 20).expand(CobolLexer.lex("COPY LOOP."), new ArrayList<>());
+            fail("Expected a recursive COPY error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Recursive COPY"));
+        }
+    }
+
+    @Test
+    public void rejectsCopybooksCopyingEachOtherFromTwoThreads() throws Exception {
+        Path library = folder.newFolder("copy").toPath();
+        Files.writeString(library.resolve("FIRST.cpy"), "05 A PIC X.\nCOPY SECOND.\n");
+        Files.writeString(library.resolve("SECOND.cpy"), "05 B PIC X.\nCOPY FIRST.\n");
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 200; round++) {
+                CopybookLibrary copybooks = new CopybookLibrary(List.of(library), 1 << 20);
+                CyclicBarrier start = new CyclicBarrier(2);
+                List<Future<?>> units = new ArrayList<>();
+                for (String name : List.of("FIRST", "SECOND")) {
+                    units.add(threads.submit(() -> {
+                        start.await();
+                        return copybooks.expand(CobolLexer.lex("COPY " + name + "."), new ArrayList<>());
+                    }));
+                }
+                for (Future<?> unit : units) {
+                    try {
+                        unit.get(10, TimeUnit.SECONDS);
+                        fail("Expected a recursive COPY error");
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause().getMessage().contains("Recursive COPY"));
+                    }
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void findsCopybookAddedToAnEarlierFolder() throws Exception {
+        Path first = folder.newFolder("first").toPath();
+        Path second = folder.newFolder("second").toPath();
+        Files.writeString(second.resolve("CUSTREC.cpy"), "01 CUST-REC.\n   05 CUST-ID PIC 9(5).\n");
+        CopybookLibrary copybooks = new CopybookLibrary(List.of(first, second), 1 << 20);
+        List<Path> dependencies = new ArrayList<>();
+        copybooks.expand(CobolLexer.lex(PROGRAM), dependencies);
+        assertEquals(List.of(second.resolve("CUSTREC.cpy")), dependencies);
+
+        Files.writeString(first.resolve("CUSTREC.cpy"), "01 CUST-REC.\n   05 CUST-ID PIC 9(7).\n");
+        dependencies.clear();
+        copybooks.expand(CobolLexer.lex(PROGRAM), dependencies);
+        assertEquals(List.of(first.resolve("CUSTREC.cpy")), dependencies);
+    }
+
+    @Test
+    public void readsCopybookAgainWhenANestedOneChanges() throws Exception {
+        Path library = folder.newFolder("copy").toPath();
+        Path inner = library.resolve("INNER.cpy");
+        Files.writeString(library.resolve("OUTER.cpy"), "COPY INNER.\n");
+        Files.writeString(inner, "01 CUSTOMER-RECORD PIC X(10).\n");
+        CopybookLibrary copybooks = new CopybookLibrary(List.of(library), 1 << 20);
+        copybooks.expand(CobolLexer.lex("COPY OUTER."), new ArrayList<>());
+
+        FileTime written = Files.getLastModifiedTime(inner);
+        Files.writeString(inner, "01 ORDER PIC X.\n");
+        Files.setLastModifiedTime(inner, written); // a change within the file system's time resolution
+        TokenBuffer tokens = copybooks.expand(CobolLexer.lex("COPY OUTER."), new ArrayList<>());
+
+        assertEquals(CobolLexer.lex("01 ORDER PIC X.").toString(), tokens.toString());
+    }
+}
@@ -0,0 +1,52 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FixedPointTest - Checks overflow, rounding and truncation of the decimal runtime.
+ */
+public class FixedPointTest {
+    @Test
+    public void overflowIsDetectedAndPassedOn() {
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.add(Long.MAX_VALUE, 1));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.subtract(Long.MIN_VALUE + 1, 1));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.multiply(3_000_000_000L, 4_000_000_000L));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.divide(1, 0, 2));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.add(FixedPoint.negate(FixedPoint.OVERFLOW), 0));
+        assertEquals(-12_000_000_000L, FixedPoint.multiply(-3_000_000L, 4_000L));
+        assertEquals(1_000_000_000_000_000_000L, FixedPoint.power(10, 18));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.power(10, 19));
+    }
+
+    @Test
+    public void divisionAndRescalingTruncateOrRound() {
+        assertEquals(333, FixedPoint.divide(1, 3, 3));
+        assertEquals(-666, FixedPoint.divide(-200, 3, 1));
+        assertEquals(12, FixedPoint.rescale(125, 1, 0, false));
+        assertEquals(13, FixedPoint.rescale(125, 1, 0, true));
+        assertEquals(-13, FixedPoint.rescale(-125, 1, 0, true));
+        assertEquals(12500, FixedPoint.rescale(125, 1, 3, false));
+        assertEquals(new BigDecimal("1.25"), FixedPoint.rescale(new BigDecimal("1.254"), 2, true));
+        assertEquals(new BigDecimal("0.33"), FixedPoint.divide(BigDecimal.ONE, new BigDecimal(3), 2));
+    }
+
+    @Test
+    public void storingKeepsLowOrderDigitsUnlessSizeErrorIsHandled() {
+        assertTrue(FixedPoint.fits(99, 2));
+        assertFalse(FixedPoint.fits(100, 2));
+        assertEquals(23, FixedPoint.store(7, 123, 2, true));
+        assertEquals(7, FixedPoint.store(7, FixedPoint.OVERFLOW, 2, true));
+        assertEquals(7, FixedPoint.storeIfFits(7, 123, 2, true));
+        assertEquals(5, FixedPoint.store(0, -5, 2, false));
+        assertEquals("-12.50", FixedPoint.toString(-1250, 2));
+        assertEquals(new BigDecimal("23.45"), FixedPoint.store(null, new BigDecimal("123.45"), 4, true));
+        assertNull(FixedPoint.storeIfFits(null, new BigDecimal("123.45"), 4, true));
+    }
+}
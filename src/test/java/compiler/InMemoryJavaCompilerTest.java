@@ -0,0 +1,78 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * InMemoryJavaCompilerTest - Checks compiling, loading and jarring generated programs without files.
+ */
+public class InMemoryJavaCompilerTest {
+    private static String generate(String className, String cobol) {
+        return new CompilationUnit(className, cobol).compile(className);
+    }
+
+    @Test
+    public void compilesManyUnitsAndRunsThemInProcess() throws Exception {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("HELLO", generate("HELLO", "PROCEDURE DIVISION.\nDISPLAY \"HELLO, WORLD\".\nSTOP RUN."));
+        sources.put("BYE", generate("BYE", "PROCEDURE DIVISION.\nDISPLAY \"BYE \\ NOW\".\nSTOP RUN.\nDISPLAY \"NEVER\"."));
+
+        InMemoryJavaCompiler.Result result = new InMemoryJavaCompiler().compile(sources);
+        assertTrue(result.getErrors().toString(), result.isSuccess());
+        assertEquals(2, result.getClasses().size());
+
+        ClassLoader loader = InMemoryJavaCompiler.load(result.getClasses());
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            InMemoryJavaCompiler.run(loader, "HELLO");
+            InMemoryJavaCompiler.run(loader, "BYE");
+        } finally {
+            System.setOut(original);
+        }
+        assertEquals("HELLO, WORLD\nBYE \\ NOW\n", captured.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void reportsFailingUnitsAndKeepsTheRest() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("GOOD", generate("GOOD", "PROCEDURE DIVISION.\nDISPLAY \"OK\"."));
+        sources.put("BAD", "public class BAD { int x = ; }");
+
+        InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+        assertFalse(compiler.compile(sources).isSuccess());
+
+        InMemoryJavaCompiler.Result result = compiler.compileEach(sources);
+        assertEquals(List.of("BAD"), new ArrayList<>(result.getErrors().keySet()));
+        assertTrue(result.getClasses().containsKey("GOOD"));
+    }
+
+    @Test
+    public void streamsClassesIntoAJar() throws Exception {
+        InMemoryJavaCompiler.Result result = new InMemoryJavaCompiler()
+                .compile(Map.of("MAIN", generate("MAIN", "PROCEDURE DIVISION.\nSTOP RUN.")));
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        InMemoryJavaCompiler.writeJar(result.getClasses(), "MAIN", jar);
+
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar.toByteArray()))) {
+            assertEquals("MAIN", in.getManifest().getMainAttributes().getValue("Main-Class"));
+            JarEntry entry = in.getNextJarEntry();
+            assertEquals("MAIN.class", entry.getName());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * IncrementalFrontEndTest - Edits a program through the front end and compares the tokens and
+ * AST with those of lexing and parsing the edited text from scratch.
+ */
+public class IncrementalFrontEndTest {
+    private static final String[] SNIPPETS = {
+            " ", "\n", ".", "\"", "X", "1", "DISPLAY \"NEW\".", "MOVE 5 TO COUNTER.", "EXTRA-PARA.\n",
+            "PIC 9(3)", " OF ", "PERFORM WORK-1.", "*> note\n", "IF COUNTER > 1 DISPLAY \"BIG\" END-IF."};
+
+    private static String program(int paragraphs) {
+        StringBuilder text = new StringBuilder();
+        text.append("IDENTIFICATION DIVISION.\nPROGRAM-ID. EDITED.\nDATA DIVISION.\nWORKING-STORAGE SECTION.\n");
+        text.append("01 COUNTER PIC 9(4) VALUE 0.\n01 NAME PIC X(10) VALUE \"NAME\".\n");
+        text.append("PROCEDURE DIVISION.\nDISPLAY \"START\".\nPERFORM WORK-1 THRU WORK-").append(paragraphs).append(".\n");
+        for (int p = 1; p <= paragraphs; p++) {
+            text.append("WORK-").append(p).append(".\n");
+            text.append("    MOVE ").append(p).append(" TO COUNTER.\n");
+            text.append("    DISPLAY \"PARAGRAPH ").append(p).append("\".\n");
+            text.append("    COMPUTE COUNTER = COUNTER + 1.\n");
+        }
+        text.append("STOP RUN.\n");
+        return text.toString();
+    }
+
+    private static void assertLikeFullParse(IncrementalFrontEnd frontEnd) {
+        String text = frontEnd.getText().toString();
+        TokenBuffer tokens;
+        String expected;
+        try {
+            tokens = CobolLexer.lex(text);
+        } catch (RuntimeException e) {
+            assertNull(text, frontEnd.getTokens());
+            assertNotNull(frontEnd.getError());
+            return;
+        }
+        assertEquals(text, tokens.toString(), frontEnd.getTokens().toString());
+        try {
+            expected = new CobolParser(tokens).parseProgram().toString();
+        } catch (RuntimeException e) {
+            assertNull(text, frontEnd.getProgram());
+            assertNotNull(frontEnd.getError());
+            return;
+        }
+        assertNull(frontEnd.getError());
+        assertEquals(text, expected, frontEnd.getProgram().toString());
+    }
+
+    @Test
+    public void editsParseLikeTheWholeText() {
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(program(5));
+        assertLikeFullParse(frontEnd);
+
+        String text = frontEnd.getText().toString();
+        int literal = text.indexOf("PARAGRAPH 3");
+        frontEnd.edit(literal, "PARAGRAPH".length(), "SECTION");
+        assertLikeFullParse(frontEnd);
+
+        int header = frontEnd.getText().toString().indexOf("WORK-4.");
+        frontEnd.edit(header + "WORK-4".length(), 1, ""); // the header joins the paragraph before
+        assertLikeFullParse(frontEnd);
+        frontEnd.edit(header + "WORK-4".length(), 0, ".");
+        assertLikeFullParse(frontEnd);
+
+        int quote = frontEnd.getText().toString().indexOf("\"START\"");
+        frontEnd.edit(quote, 1, ""); // leaves a quote open until the next literal
+        assertLikeFullParse(frontEnd);
+        frontEnd.edit(quote, 0, "\"");
+        assertLikeFullParse(frontEnd);
+
+        int picture = frontEnd.getText().toString().indexOf("9(4)");
+        frontEnd.edit(picture, 4, "9(6)"); // changes the symbol table, so parses everything again
+        assertLikeFullParse(frontEnd);
+    }
+
+    @Test
+    public void randomEditsParseLikeTheWholeText() {
+        Random random = new Random(25);
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(program(8));
+        for (int i = 0; i < 2000; i++) {
+            int length = frontEnd.getText().length();
+            int offset = random.nextInt(length + 1);
+            if (random.nextBoolean() && offset < length) {
+                frontEnd.edit(offset, Math.min(length - offset, 1 + random.nextInt(12)), "");
+            } else {
+                frontEnd.edit(offset, 0, SNIPPETS[random.nextInt(SNIPPETS.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                assertLikeFullParse(frontEnd);
+            }
+            if (frontEnd.getText().length() > 6000) {
+                frontEnd = new IncrementalFrontEnd(program(8));
+            }
+        }
+    }
+
+    @Test
+    public void reusesTheParagraphsAnEditDoesNotTouch() {
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(program(2000));
+        ASTNode before = frontEnd.getProgram();
+        int tokens = frontEnd.getTokens().size();
+
+        int literal = frontEnd.getText().toString().indexOf("PARAGRAPH 1000\"");
+        frontEnd.edit(literal + "PARAGRAPH 1".length(), 3, "234");
+        ASTNode after = frontEnd.getProgram();
+
+        assertTrue(frontEnd.getRelexedTokens() < 5);
+        assertEquals(1, frontEnd.getReparsedBlocks());
+        assertEquals(tokens, frontEnd.getTokens().size());
+        assertSame(before.getChildren().get(500), after.getChildren().get(500));
+        assertSame(before.getChildren().get(1500), after.getChildren().get(1500));
+        assertEquals("\"PARAGRAPH 1234\"", after.getChildren().get(1001).getChildren().get(1).getValue());
+    }
+
+    @Test
+    public void snapshotsParseApartFromLaterEdits() {
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(program(50));
+        frontEnd.getProgram();
+        int literal = frontEnd.getText().toString().indexOf("PARAGRAPH 20\"");
+        frontEnd.edit(literal, "PARAGRAPH".length(), "SECTION");
+
+        IncrementalFrontEnd snapshot = frontEnd.snapshot();
+        String edited = snapshot.getText().toString();
+        frontEnd.edit(0, 0, "  "); // the text the snapshot copied stays as it was
+        assertLikeFullParse(snapshot);
+        assertEquals(1, snapshot.getReparsedBlocks());
+        assertEquals(edited, snapshot.getText().toString());
+        assertLikeFullParse(frontEnd);
+
+        frontEnd.edit(0, 2, "");
+        IncrementalFrontEnd current = frontEnd.snapshot();
+        ASTNode program = current.getProgram();
+        frontEnd.update(current);
+        assertSame(program, frontEnd.getProgram());
+        frontEnd.edit(literal + 2, "SECTION".length(), "CHAPTER");
+        assertLikeFullParse(frontEnd);
+        assertEquals(1, frontEnd.getReparsedBlocks());
+    }
+
+    @Test
+    public void compilesFromTheParsedProgram() {
+        String text = program(3);
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(text);
+        String ast = frontEnd.getProgram().toString();
+
+        String java = new CompilationUnit("EDITED", frontEnd).compile("EDITED");
+
+        assertEquals(new CompilationUnit("EDITED", text).compile("EDITED"), java);
+        assertEquals(ast, frontEnd.getProgram().toString());
+    }
+}
@@ -1,4 +1,50 @@
-package compiler;
-
-public class JavaCodeGeneratorTest {
-}
+package compiler;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JavaCodeGeneratorTest - Checks that streamed, parallel generation writes the same source as generating in one go.
+ */
+public class JavaCodeGeneratorTest {
+    private static final String DATA = "IDENTIFICATION DIVISION.\n"
+            + "PROGRAM-ID. PARAS.\n"
+            + "DATA DIVISION.\n"
+            + "WORKING-STORAGE SECTION.\n"
+            + "01 TOTAL PIC 9(7).\n"
+            + "PROCEDURE DIVISION.\n";
+
+    private static JavaCodeGenerator generator(String program) {
+        SymbolTable symbols = new SymbolTable();
+        ASTNode root = new CobolParser(CobolLexer.lex(program), symbols).parseProgram();
+        return new JavaCodeGenerator(root, "PARAS", symbols);
+    }
+
+    @Test
+    public void parallelGenerationWritesMethodsInLayoutOrder() throws Exception {
+        StringBuilder program = new StringBuilder(DATA).append("MAIN-PARA.\n");
+        for (int i = 0; i < 300; i++) {
+            program.append("PERFORM PARA-").append(i).append(".\n");
+        }
+        program.append("STOP RUN.\n");
+        for (int i = 0; i < 300; i++) {
+            program.append("PARA-").append(i).append(".\nCOMPUTE TOTAL = TOTAL + ").append(i).append(".\n");
+        }
+
+        JavaCodeGenerator sequential = generator(program.toString());
+        sequential.setParallel(false);
+        String expected = sequential.generateCode();
+        StringWriter streamed = new StringWriter();
+        generator(program.toString()).generateCode(streamed);
+
+        assertEquals(expected, streamed.toString());
+        assertTrue(expected.indexOf("static int PARA_299()") > expected.indexOf("static int PARA_0()"));
+        InMemoryJavaCompiler.Result result = new InMemoryJavaCompiler().compile(Map.of("PARAS", expected));
+        assertTrue(result.getErrors().toString(), result.isSuccess());
+    }
+}
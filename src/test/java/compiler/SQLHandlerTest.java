@@ -0,0 +1,179 @@
+package compiler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SQLHandlerTest - Runs the pooled SQL runtime against an in-process H2 database.
+ */
+public class SQLHandlerTest {
+    static SQLConfig embedded(String name, int poolSize, long waitTimeoutMillis) {
+        return new SQLConfig("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "", poolSize,
+                SQLConfig.DEFAULT_STATEMENT_CACHE_SIZE, waitTimeoutMillis);
+    }
+
+    @After
+    public void restoreDefaultPool() {
+        SQLHandler.configure(SQLConfig.fromSystem());
+    }
+
+    @Test
+    public void repeatedStatementsReuseOneConnectionAndStatement() throws Exception {
+        SQLHandler.configure(embedded("handler", 4, 1000));
+        SQLHandler.executeUpdate("CREATE TABLE CUSTOMER (ID INT, NAME VARCHAR(20))");
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(1, SQLHandler.executeUpdate("INSERT INTO CUSTOMER VALUES (?, ?)", i, "NAME" + i));
+        }
+        assertEquals("NAME2", SQLHandler.executeQuery("SELECT NAME FROM CUSTOMER WHERE ID = ?", 2));
+        assertEquals(null, SQLHandler.executeQuery("SELECT NAME FROM CUSTOMER WHERE ID = ?", 9));
+
+        ConnectionPool pool = SQLHandler.getPool();
+        assertEquals(1, pool.getConnectionsOpened());
+        assertEquals(6, pool.getAcquisitions());
+        assertEquals(3, pool.getStatementMisses());
+        assertEquals(3, pool.getStatementHits());
+        assertEquals(0, pool.getWaits());
+    }
+
+    @Test
+    public void aFullPoolMakesCallersWaitForARelease() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(embedded("bounded", 1, 5000))) {
+            ConnectionPool.PooledConnection first = pool.acquire();
+            PreparedStatement statement = first.prepare("SELECT 1");
+            CompletableFuture<ConnectionPool.PooledConnection> second = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.acquire();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(50);
+            assertTrue(!second.isDone());
+            first.close();
+            ConnectionPool.PooledConnection next = second.get(5, TimeUnit.SECONDS);
+            assertSame(first, next);
+            assertSame(statement, next.prepare("SELECT 1"));
+            next.close();
+            assertEquals(1, pool.getConnectionsOpened());
+            assertEquals(1, pool.getWaits());
+            assertTrue(pool.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void waitingGivesUpAfterTheTimeout() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(embedded("timeout", 1, 50))) {
+            try (ConnectionPool.PooledConnection held = pool.acquire()) {
+                pool.acquire();
+                fail("acquired a second connection from a pool of one");
+            } catch (SQLTimeoutException expected) {
+                assertEquals(1, pool.getOpenConnections());
+            }
+        }
+    }
+
+    @Test
+    public void sessionBatchesUpdatesAndCommitsAtTheInterval() throws Exception {
+        SQLHandler.configure(embedded("session", 2, 1000).withBatching(3, 4));
+        SQLHandler.executeUpdate("CREATE TABLE EVENT (ID INT)");
+        SQLSession session = new SQLSession("INSERT INTO EVENT VALUES (?)", "SELECT COUNT(*) FROM EVENT");
+        long hits = SQLHandler.getPool().getStatementHits();
+        for (int i = 1; i <= 5; i++) {
+            session.prepare(0);
+            session.setLong(1, i, 0);
+            session.update();
+        }
+        assertEquals(hits + 4, SQLHandler.getPool().getStatementHits()); // every run after the first reuses it
+        // three sent as one batch; the fourth filled the commit interval, so four are visible elsewhere
+        assertEquals("4", SQLHandler.executeQuery("SELECT COUNT(*) FROM EVENT"));
+        session.prepare(1);
+        assertTrue(session.query());
+        assertEquals(5, session.getLong(1, 0));
+        session.close();
+        assertEquals("5", SQLHandler.executeQuery("SELECT COUNT(*) FROM EVENT"));
+        assertEquals(4, SQLHandler.getPool().getStatementMisses()); // each statement prepared once
+    }
+
+    @Test
+    public void batchIsSentBeforeTheStatementCacheEvictsItsStatement() throws Exception {
+        SQLHandler.configure(new SQLConfig("jdbc:h2:mem:evicted;DB_CLOSE_DELAY=-1", "sa", "", 2, 1, 1000).withBatching(10, 0));
+        SQLHandler.executeUpdate("CREATE TABLE EVENT (ID INT)");
+        SQLSession session = new SQLSession("INSERT INTO EVENT VALUES (?)", "SELECT COUNT(*) FROM EVENT");
+        for (int i = 1; i <= 3; i++) {
+            session.prepare(0);
+            session.setLong(1, i, 0);
+            session.update();
+            session.prepare(1); // a cache of one statement has to make room for it
+            assertTrue(session.query());
+            assertEquals(i, session.getLong(1, 0));
+        }
+        session.close();
+    }
+
+    @Test
+    public void cursorWalksEveryRowAndMustBeOpenToFetch() throws Exception {
+        SQLHandler.configure(embedded("cursor", 2, 1000).withFetchSize(50));
+        SQLHandler.executeUpdate("CREATE TABLE READING AS SELECT X AS ID FROM SYSTEM_RANGE(1, 1000)");
+        SQLSession session = new SQLSession("SELECT ID FROM READING WHERE ID > ? ORDER BY ID");
+        session.prepare(0);
+        session.setLong(1, 10, 0);
+        session.open(0);
+        try {
+            session.prepare(0);
+            fail("opened a cursor twice");
+        } catch (SQLException expected) {
+            // still open
+        }
+        long sum = 0;
+        int rows = 0;
+        while (session.fetch(0)) {
+            sum += session.getLong(1, 0);
+            rows++;
+        }
+        assertEquals(990, rows);
+        assertEquals(500500 - 55, sum);
+        assertEquals(SQLSession.NOT_FOUND, session.sqlCode());
+        session.closeCursor(0);
+        try {
+            session.fetch(0);
+            fail("fetched from a closed cursor");
+        } catch (SQLException expected) {
+            session.close();
+        }
+    }
+
+    @Test
+    public void cursorStaysOpenWhileMoreStatementsThanTheCacheHoldsRun() throws Exception {
+        SQLHandler.configure(new SQLConfig("jdbc:h2:mem:pinned;DB_CLOSE_DELAY=-1", "sa", "", 2, 1, 1000).withFetchSize(10));
+        SQLHandler.executeUpdate("CREATE TABLE READING AS SELECT X AS ID FROM SYSTEM_RANGE(1, 100)");
+        SQLSession session = new SQLSession("SELECT ID FROM READING ORDER BY ID",
+                "SELECT COUNT(*) FROM READING WHERE ID <= ?", "SELECT MAX(ID) FROM READING");
+        session.prepare(0);
+        session.open(0);
+        int rows = 0;
+        while (session.fetch(0)) {
+            long id = session.getLong(1, 0);
+            session.prepare(1 + rows % 2);
+            if (rows % 2 == 0) {
+                session.setLong(1, id, 0);
+            }
+            assertTrue(session.query());
+            assertEquals(rows % 2 == 0 ? id : 100, session.getLong(1, 0));
+            rows++;
+        }
+        assertEquals(100, rows);
+        session.closeCursor(0);
+        session.close();
+    }
+}
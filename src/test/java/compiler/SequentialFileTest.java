@@ -0,0 +1,95 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SequentialFileTest - Round-trips each record format through a file.
+ */
+public class SequentialFileTest {
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static SequentialFile file(Path path, int format, int recordLength) {
+        return new SequentialFile("TEST", path.toString(), true, format, recordLength);
+    }
+
+    @Test
+    public void variableRecordsCarryTheirLengthInARecordDescriptorWord() throws Exception {
+        Path path = Files.createTempFile("variable", ".dat");
+        SequentialFile output = file(path, SequentialFile.VARIABLE, 8);
+        output.openOutput();
+        output.write(bytes("ABC"), 0, 3);
+        output.write(bytes("xxDEFGHIJK"), 2, 8);
+        output.close();
+        assertArrayEquals(bytes("\0\7\0\0ABC\0\14\0\0DEFGHIJK"), Files.readAllBytes(path));
+
+        SequentialFile input = file(path, SequentialFile.VARIABLE, 8);
+        byte[] record = new byte[8];
+        input.openInput();
+        assertTrue(input.read(record, 0, 8));
+        assertEquals("ABC     ", new String(record, StandardCharsets.ISO_8859_1));
+        assertTrue(input.read(record, 0, 8));
+        assertEquals("DEFGHIJK", new String(record, StandardCharsets.ISO_8859_1));
+        assertFalse(input.read(record, 0, 8));
+        input.close();
+    }
+
+    @Test
+    public void fixedRecordsArePaddedAndAShortLastRecordIsRead() throws Exception {
+        Path path = Files.createTempFile("fixed", ".dat");
+        SequentialFile output = file(path, SequentialFile.FIXED, 5);
+        output.openOutput();
+        output.write(bytes("AB"), 0, 2);
+        output.close();
+        output.openExtend();
+        output.write(bytes("CDEFG"), 0, 5);
+        output.close();
+        Files.write(path, bytes("HI"), java.nio.file.StandardOpenOption.APPEND);
+        assertEquals("AB   CDEFGHI", new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1));
+
+        SequentialFile input = file(path, SequentialFile.FIXED, 5);
+        byte[] record = new byte[5];
+        input.openInput();
+        assertTrue(input.read(record, 0, 5));
+        assertTrue(input.read(record, 0, 5));
+        assertEquals("CDEFG", new String(record, StandardCharsets.ISO_8859_1));
+        assertTrue(input.read(record, 0, 5));
+        assertEquals("HI   ", new String(record, StandardCharsets.ISO_8859_1));
+        assertFalse(input.read(record, 0, 5));
+        input.close();
+    }
+
+    @Test
+    public void linesDropTrailingSpacesAndCarriageReturns() throws Exception {
+        Path path = Files.createTempFile("lines", ".txt");
+        SequentialFile output = file(path, SequentialFile.LINE, 6);
+        output.openOutput();
+        output.write(bytes("ONE   "), 0, 6);
+        output.write(bytes("      "), 0, 6);
+        output.close();
+        assertEquals("ONE\n\n", new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1));
+
+        Files.write(path, bytes("FIRST\r\nSECOND-LINE\nLAST"));
+        SequentialFile input = file(path, SequentialFile.LINE, 6);
+        byte[] record = new byte[6];
+        input.openInput();
+        assertTrue(input.read(record, 0, 6));
+        assertEquals("FIRST ", new String(record, StandardCharsets.ISO_8859_1));
+        assertTrue(input.read(record, 0, 6));
+        assertEquals("SECOND", new String(record, StandardCharsets.ISO_8859_1));
+        assertTrue(input.read(record, 0, 6));
+        assertEquals("LAST  ", new String(record, StandardCharsets.ISO_8859_1));
+        assertFalse(input.read(record, 0, 6));
+        input.close();
+    }
+}
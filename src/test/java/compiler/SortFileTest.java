@@ -0,0 +1,114 @@
+package compiler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SortFileTest - Sorts in memory and through spilled runs and checks the order.
+ */
+public class SortFileTest {
+    // A 9-byte record: a COMP-3 S9(5) amount, sorted descending, then a 6-byte name sorted on its first 5
+    private static final int[] KEYS = {0, 3, SortFile.PACKED, 1, 3, 5, SortFile.TEXT, 0};
+
+    @After
+    public void restoreDefaultConfig() {
+        SortFile.configure(SortConfig.fromSystem());
+    }
+
+    private static byte[] record(long amount, String name) {
+        byte[] record = new byte[9];
+        Storage.putPacked(amount, record, 0, 3, true);
+        Storage.putText(name, record, 3, 6);
+        return record;
+    }
+
+    private static List<String> sortAndReturn(SortFile sort, List<byte[]> records) {
+        sort.begin(KEYS);
+        for (byte[] record : records) {
+            sort.release(record, 0, record.length);
+        }
+        List<String> sorted = new ArrayList<>();
+        byte[] area = new byte[9];
+        while (sort.returnRecord(area, 0, 9)) {
+            sorted.add(Storage.getPacked(area, 0, 3) + " " + Storage.getText(area, 3, 6));
+        }
+        sort.end();
+        return sorted;
+    }
+
+    @Test
+    public void keysCompareByValueAndEqualKeysKeepTheirOrder() {
+        List<byte[]> records = List.of(record(5, "B"), record(-20, "A"), record(300, "C"), record(5, "A"),
+                record(5, "B2"), record(5, "B"));
+        records.get(5)[8] = '!'; // equal keys apart from a byte beyond them
+        SortFile sort = new SortFile("SORTWK", 9);
+        List<String> sorted = sortAndReturn(sort, records);
+        assertEquals(List.of("300 C     ", "5 A     ", "5 B     ", "5 B    !", "5 B2    ", "-20 A     "), sorted);
+        assertEquals(0, sort.getSpilledRuns());
+    }
+
+    @Test
+    public void largeSortsSpillRunsAndMergeThemInSeveralPasses() throws Exception {
+        Path temp = Files.createTempDirectory("sort");
+        // about 960 records per buffer, and merges of 2 runs at a time
+        SortFile.configure(new SortConfig(64 << 10, 3, temp));
+        Random random = new Random(42);
+        List<byte[]> records = new ArrayList<>();
+        List<long[]> expected = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long amount = random.nextInt(2000) - 1000;
+            long name = random.nextInt(100);
+            records.add(record(amount, String.format("N%03d", name)));
+            expected.add(new long[] {amount, name, i});
+        }
+        expected.sort(Comparator.<long[]>comparingLong(e -> -e[0]).thenComparingLong(e -> e[1]).thenComparingLong(e -> e[2]));
+
+        SortFile sort = new SortFile("SORTWK", 9);
+        List<String> sorted = sortAndReturn(sort, records);
+        assertEquals(expected.size(), sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            long[] e = expected.get(i);
+            assertEquals(e[0] + " " + String.format("N%03d  ", e[1]), sorted.get(i));
+        }
+        assertTrue(sort.getSpilledRuns() > 28);
+        // about 20 runs merged two at a time: each record written once and merged about five times
+        assertTrue(sort.getSpilledRecords() <= 6 * 20_000);
+        try (Stream<Path> left = Files.list(temp)) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    public void usingGivingAndMergeGoThroughFiles() throws Exception {
+        Path first = Files.createTempFile("first", ".dat");
+        Path second = Files.createTempFile("second", ".dat");
+        Path merged = Files.createTempFile("merged", ".dat");
+        Files.write(first, "B2\nA1\nC3\n".getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(second, "B1\nD0\n".getBytes(StandardCharsets.ISO_8859_1));
+        SequentialFile firstFile = new SequentialFile("FIRST", first.toString(), true, SequentialFile.LINE, 2);
+        SequentialFile secondFile = new SequentialFile("SECOND", second.toString(), true, SequentialFile.LINE, 2);
+        SortFile sort = new SortFile("SORTWK", 2);
+        int[] byLetter = {0, 1, SortFile.TEXT, 0};
+
+        sort.begin(byLetter);
+        sort.using(firstFile);
+        sort.giving(firstFile);
+        assertEquals("A1\nB2\nC3\n", Files.readString(first));
+
+        sort.merge(byLetter, firstFile, secondFile);
+        sort.giving(new SequentialFile("MERGED", merged.toString(), true, SequentialFile.LINE, 2));
+        assertEquals("A1\nB2\nB1\nC3\nD0\n", Files.readString(merged));
+    }
+}
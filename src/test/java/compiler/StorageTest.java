@@ -0,0 +1,66 @@
+package compiler;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * StorageTest - Checks the record encodings against their COBOL byte layouts.
+ */
+public class StorageTest {
+    @Test
+    public void displayItemsKeepTheSignInTheLastByte() {
+        byte[] data = new byte[6];
+        Storage.putDisplay(-1234, data, 1, 5, true);
+        assertEquals("0123t", Storage.getText(data, 1, 5));
+        assertEquals(-1234, Storage.getDisplay(data, 1, 5));
+        Storage.putDisplay(-1234, data, 1, 5, false);
+        assertEquals(1234, Storage.getDisplay(data, 1, 5));
+
+        BigDecimal big = new BigDecimal("-12345678901234567890.12");
+        byte[] wide = new byte[22];
+        Storage.putDisplayDecimal(big, wide, 0, 22, true);
+        assertEquals(big, Storage.getDisplayDecimal(wide, 0, 22, 2));
+    }
+
+    @Test
+    public void packedAndBinaryItemsMatchTheirByteLayouts() {
+        byte[] data = new byte[3];
+        Storage.putPacked(-12345, data, 0, 3, true);
+        assertArrayEquals(new byte[] {0x12, 0x34, 0x5D}, data);
+        assertEquals(-12345, Storage.getPacked(data, 0, 3));
+        Storage.putPacked(7, data, 0, 3, false);
+        assertArrayEquals(new byte[] {0x00, 0x00, 0x7F}, data);
+
+        BigDecimal big = new BigDecimal("-1234567890123456789012345");
+        byte[] wide = new byte[13];
+        Storage.putPackedDecimal(big, wide, 0, 13, true);
+        assertEquals(big, Storage.getPackedDecimal(wide, 0, 13, 0));
+
+        byte[] binary = new byte[4];
+        Storage.putBinary(-2, binary, 0, 2, true);
+        Storage.putBinary(258, binary, 2, 2, true);
+        assertArrayEquals(new byte[] {(byte) 0xFF, (byte) 0xFE, 0x01, 0x02}, binary);
+        assertEquals(-2, Storage.getBinary(binary, 0, 2));
+        assertEquals(258, Storage.getBinary(binary, 2, 2));
+    }
+
+    @Test
+    public void textAndGroupMovesPadWithSpaces() {
+        byte[] data = new byte[10];
+        Storage.putText("ABCDEFGH", data, 0, 4);
+        Storage.putText("XY", data, 4, 6);
+        assertEquals("ABCDXY    ", Storage.getText(data, 0, 10));
+
+        Storage.move(data, 0, 6, data, 2, 8); // overlapping, like a REDEFINES
+        assertEquals("ABABCDXY  ", Storage.getText(data, 0, 10));
+
+        byte[] image = new byte[Storage.IMAGE_CHUNK + 3];
+        Arrays.fill(image, (byte) 0xFF);
+        assertArrayEquals(image, Storage.image(WorkingStorage.chunks(image).toArray(new String[0])));
+    }
+}
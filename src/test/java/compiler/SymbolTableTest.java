@@ -0,0 +1,114 @@
+package compiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SymbolTableTest - Checks the data hierarchy, field layout and qualified lookups.
+ */
+public class SymbolTableTest {
+    private static final String PROGRAM = "IDENTIFICATION DIVISION.\n"
+            + "PROGRAM-ID. LAYOUT.\n"
+            + "DATA DIVISION.\n"
+            + "WORKING-STORAGE SECTION.\n"
+            + "01 CUSTOMER.\n"
+            + "   05 CUST-ID PIC 9(6).\n"
+            + "   05 CUST-NAME PIC X(20).\n"
+            + "   05 BALANCE PIC S9(7)V99 COMP-3 VALUE 0.\n"
+            + "   05 HISTORY OCCURS 12 TIMES.\n"
+            + "      10 AMOUNT PIC S9(5)V99 USAGE IS COMP.\n"
+            + "      10 FILLER PIC X(2).\n"
+            + "   05 CUST-KEY REDEFINES CUST-NAME PIC X(8).\n"
+            + "      88 IS-VIP VALUES \"VIP\" \"GOLD\".\n"
+            + "01 SUPPLIER.\n"
+            + "   05 CUST-ID PIC 9(4).\n"
+            + "   05 SUPP-NAME PIC X(10).\n"
+            + "77 COUNTER PIC 9(4) VALUE ZERO.\n"
+            + "PROCEDURE DIVISION.\n"
+            + "MOVE 1 TO CUST-ID OF SUPPLIER.\n"
+            + "STOP RUN.";
+
+    private static SymbolTable parse() {
+        CobolParser parser = new CobolParser(CobolLexer.lex(PROGRAM));
+        ASTNode ast = parser.parseProgram();
+        assertEquals("LAYOUT", ast.getValue());
+        return parser.getSymbolTable();
+    }
+
+    @Test
+    public void computesOffsetsAndSizes() {
+        SymbolTable symbols = parse();
+
+        DataItem customer = symbols.lookup("CUSTOMER");
+        assertEquals(6 + 20 + 5 + 12 * (4 + 2), customer.getSize());
+        assertEquals(26, symbols.lookup("BALANCE").getOffset());
+        assertEquals(5, symbols.lookup("BALANCE").getSize());
+        assertEquals(2, symbols.lookup("BALANCE").getScale());
+
+        DataItem history = symbols.lookup("HISTORY");
+        assertEquals(31, history.getOffset());
+        assertEquals(6, history.getSize());
+        assertEquals(72, history.getTotalSize());
+        assertEquals(31, symbols.lookup("AMOUNT").getOffset());
+        assertEquals(Usage.BINARY, symbols.lookup("AMOUNT").getUsage());
+    }
+
+    @Test
+    public void scalesPicturesWithP() {
+        CobolParser parser = new CobolParser(CobolLexer.lex("IDENTIFICATION DIVISION.\nPROGRAM-ID. SCALED.\n"
+                + "DATA DIVISION.\nWORKING-STORAGE SECTION.\n"
+                + "01 HUNDREDS PIC 9(3)PP.\n01 MILLIONTHS PIC PPP999.\n01 SMALL PIC SVPP99.\n"
+                + "PROCEDURE DIVISION.\nSTOP RUN."));
+        parser.parseProgram();
+        SymbolTable symbols = parser.getSymbolTable();
+
+        assertEquals(-2, symbols.lookup("HUNDREDS").getScale());
+        assertEquals(3, symbols.lookup("HUNDREDS").getDigits());
+        assertEquals(6, symbols.lookup("MILLIONTHS").getScale());
+        assertEquals(4, symbols.lookup("SMALL").getScale());
+        assertEquals(3, symbols.lookup("MILLIONTHS").getSize());
+    }
+
+    @Test
+    public void overlaysRedefines() {
+        SymbolTable symbols = parse();
+
+        DataItem key = symbols.lookup("CUST-KEY");
+        assertSame(symbols.lookup("CUST-NAME"), key.getRedefines());
+        assertEquals(6, key.getOffset());
+        assertEquals(8, key.getSize());
+        assertEquals(2, symbols.lookup("IS-VIP").getValues().size());
+    }
+
+    @Test
+    public void resolvesQualifiedNames() {
+        SymbolTable symbols = parse();
+
+        assertEquals(4, symbols.lookup("CUST-ID", "SUPPLIER").getSize());
+        assertEquals(6, symbols.lookup("CUST-ID", "CUSTOMER").getSize());
+        assertNull(symbols.lookup("CUST-ID", "HISTORY"));
+        assertEquals("9(4)", symbols.getType("COUNTER"));
+        try {
+            symbols.lookup("CUST-ID");
+            fail("Expected an ambiguous reference");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Ambiguous"));
+        }
+    }
+
+    @Test
+    public void tablesAreIndependentPerUnit() {
+        SymbolTable first = parse();
+        SymbolTable second = new SymbolTable();
+
+        second.declareVariable("COUNTER", "X(3)");
+
+        assertEquals("9(4)", first.getType("COUNTER"));
+        assertEquals("X(3)", second.getType("COUNTER"));
+    }
+}